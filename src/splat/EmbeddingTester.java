@@ -0,0 +1,526 @@
+package splat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+import splat.executor.ExecutionException;
+import splat.executor.ExecutionMode;
+import splat.executor.MemoCache;
+import splat.executor.Value;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Tests of what Java code does with Splat beyond running a file: host
+ * functions, the functions of a compiled SplatProgram, and the memo
+ * statistics, which count the calls an optimization makes.  SplatTester
+ * cannot reach these, since they need Java on the other side, so each
+ * case here is a method, run on the programs in tests/embedding with and
+ * without optimization, and in every engine where the engine is a choice.
+ * Run it from the project directory, like SplatTester.
+ */
+public class EmbeddingTester {
+
+    private final String testDirName = "./tests/embedding";
+
+    private int totalTests;
+    private int passedTests;
+
+    public static void main(String[] args) throws Exception {
+        EmbeddingTester tester = new EmbeddingTester();
+        tester.runTests();
+    }
+
+    public void runTests() {
+        System.out.println("Running embedding tests...");
+
+        runTest("host functions in every engine", this::hostFunctionsInEveryEngine);
+        runTest("host function signatures", this::hostFunctionSignatures);
+        runTest("host function calls are type-checked", this::hostCallsAreTypeChecked);
+        runTest("host function failures", this::hostFunctionFailures);
+        runTest("compiled program functions", this::compiledFunctions);
+        runTest("calls from Java", this::callsFromJava);
+        runTest("typed views of functions", this::typedViews);
+        runTest("errors in calls from Java", this::failedCalls);
+        runTest("calls from many threads", this::callsFromManyThreads);
+        runTest("batches that do not fit", this::batchArguments);
+        runTest("batches in parallel", this::parallelBatches);
+        runTest("batch rows that fail", this::batchRowErrors);
+        runTest("inlined arguments are evaluated once", this::inlinedArgumentsEvaluatedOnce);
+        runTest("memoized functions", this::memoizedFunctions);
+
+        System.out.println("---------------------------");
+        System.out.println("Total tests cases:   " + totalTests);
+        System.out.println("Test cases passed:   " + passedTests + " ("
+                + String.format("%.1f", 100.0 * passedTests / totalTests) + " %)");
+    }
+
+    private void runTest(String name, TestCase test) {
+        totalTests++;
+        System.out.print("Test Case " + totalTests + ": " + name + "...");
+        try {
+            test.run();
+            passedTests++;
+            System.out.println("passed");
+        } catch (Throwable ex) {
+            System.out.println("failed");
+            System.out.println(" >>> " + ex);
+        }
+    }
+
+    /* ----------------------------------------------------
+     * Host functions
+     * ---------------------------------------------------- */
+
+    /**
+     * Host functions with side effects, called from the main body and
+     * from functions of the program: none of them may be folded, memoized
+     * or merged, since their purity is unknown.  A function the program
+     * declares hides the host function of that name, and a host function
+     * hides the intrinsic.
+     */
+    private void hostFunctionsInEveryEngine() throws Throwable {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            for (boolean optimize : new boolean[] { true, false }) {
+                for (int memoCacheSize : new int[] { 0, 64 }) {
+                    Counters counters = new Counters();
+                    Splat splat = hostSplat("host.splat", counters);
+                    splat.setExecutionMode(mode);
+                    splat.setOptimize(optimize);
+                    splat.setMemoCacheSize(memoCacheSize);
+                    String where = " in " + mode + (optimize ? "" : " without optimization")
+                            + (memoCacheSize > 0 ? " with memoization" : "");
+
+                    checkEquals("90 5 3 3 4 18 hi there -5\n", runProgram(splat), "output" + where);
+                    checkEquals(5, counters.bumped, "bumps" + where);
+                    checkEquals(7, counters.ticks, "ticks" + where);
+                }
+            }
+        }
+    }
+
+    private void hostFunctionSignatures() throws Throwable {
+        Splat splat = new Splat(testFile("host.splat"));
+        MethodHandle greet = MethodHandles.lookup().findStatic(EmbeddingTester.class, "greet",
+                MethodType.methodType(String.class, String.class));
+
+        expectThrows(IllegalArgumentException.class,
+                () -> splat.registerHostFunction("greet", greet, Type.INTEGER, Type.STRING));
+        expectThrows(IllegalArgumentException.class,
+                () -> splat.registerHostFunction("greet", greet, Type.STRING, Type.INTEGER, Type.INTEGER));
+        expectThrows(IllegalArgumentException.class,
+                () -> splat.registerHostFunction("greet", greet, Type.STRING, Type.INTEGER_ARRAY));
+        expectThrows(IllegalArgumentException.class,
+                () -> splat.registerHostFunction("while", greet, Type.STRING, Type.STRING));
+
+        splat.registerHostFunction("greet", greet, Type.STRING, Type.STRING);
+        expectThrows(IllegalArgumentException.class,
+                () -> splat.registerHostFunction("greet", greet, Type.STRING, Type.STRING));
+        checkEquals(1, splat.getHostFunctions().size(), "registered host functions");
+    }
+
+    private void hostCallsAreTypeChecked() throws Throwable {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Splat splat = hostSplat("host_badsemantics.splat", new Counters());
+            splat.setExecutionMode(mode);
+            expectThrows(SemanticAnalysisException.class, () -> runProgram(splat));
+        }
+    }
+
+    /**
+     * An exception thrown by a host function is an ExecutionException of
+     * the program, raised at the call.
+     */
+    private void hostFunctionFailures() throws Throwable {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            for (boolean optimize : new boolean[] { true, false }) {
+                Splat splat = hostSplat("host_badexecution.splat", new Counters());
+                splat.setExecutionMode(mode);
+                splat.setOptimize(optimize);
+                ExecutionException ex = expectThrows(ExecutionException.class, () -> runProgram(splat));
+                check(ex.getMessage().startsWith("Host function 'boom' failed"), "message " + ex.getMessage());
+                checkEquals(5, ex.getLine(), "line of the failure");
+            }
+        }
+    }
+
+    /**
+     * The host functions of the host*.splat programs, whose side effects
+     * are counted here.
+     */
+    public static final class Counters {
+        private int bumped;
+        private int ticks;
+
+        public void bump(int n) {
+            bumped += n;
+        }
+
+        public int count() {
+            return bumped;
+        }
+
+        public int tick() {
+            return ++ticks;
+        }
+    }
+
+    public static int scale(int n, boolean twice) {
+        return twice ? n * 4 : n * 2;
+    }
+
+    public static String greet(String who) {
+        return "hello " + who;
+    }
+
+    public static int boom(int n) {
+        throw new IllegalStateException("boom " + n);
+    }
+
+    private Splat hostSplat(String fileName, Counters counters) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Splat splat = new Splat(testFile(fileName));
+        splat.registerHostFunction("scale", lookup.findStatic(EmbeddingTester.class, "scale",
+                MethodType.methodType(int.class, int.class, boolean.class)), Type.INTEGER, Type.INTEGER, Type.BOOLEAN);
+        splat.registerHostFunction("greet", lookup.findStatic(EmbeddingTester.class, "greet",
+                MethodType.methodType(String.class, String.class)), Type.STRING, Type.STRING);
+        splat.registerHostFunction("boom", lookup.findStatic(EmbeddingTester.class, "boom",
+                MethodType.methodType(int.class, int.class)), Type.INTEGER, Type.INTEGER);
+        splat.registerHostFunction("abs", lookup.findStatic(Math.class, "negateExact",
+                MethodType.methodType(int.class, int.class)), Type.INTEGER, Type.INTEGER);
+        splat.registerHostFunction("bump", lookup.findVirtual(Counters.class, "bump",
+                MethodType.methodType(void.class, int.class)).bindTo(counters), Type.VOID, Type.INTEGER);
+        splat.registerHostFunction("count", lookup.findVirtual(Counters.class, "count",
+                MethodType.methodType(int.class)).bindTo(counters), Type.INTEGER);
+        splat.registerHostFunction("tick", lookup.findVirtual(Counters.class, "tick",
+                MethodType.methodType(int.class)).bindTo(counters), Type.INTEGER);
+        return splat;
+    }
+
+    /* ----------------------------------------------------
+     * Compiled programs
+     * ---------------------------------------------------- */
+
+    /**
+     * Compiling runs nothing, and the program's own functions, not its
+     * host functions, are exported in declaration order.
+     */
+    private void compiledFunctions() throws Throwable {
+        for (boolean optimize : new boolean[] { true, false }) {
+            Splat splat = hostSplat("export.splat", new Counters());
+            splat.setOptimize(optimize);
+            SplatProgram[] program = new SplatProgram[1];
+            checkEquals("", captureOutput(() -> program[0] = splat.compile()), "output of compile");
+
+            checkEquals(List.of("Square", "Add", "IsEven", "Divide", "Label", "Fib", "Log", "Squares", "Depth"),
+                    List.copyOf(program[0].getFunctionNames()), "function names");
+            SplatFunction label = program[0].function("Label");
+            checkEquals(Type.STRING, label.getReturnType(), "return type of Label");
+            checkEquals(List.of(Type.STRING, Type.BOOLEAN), label.getParamTypes(), "parameters of Label");
+            expectThrows(IllegalArgumentException.class, () -> program[0].function("Missing"));
+            expectThrows(IllegalArgumentException.class, () -> program[0].function("greet"));
+        }
+    }
+
+    private void callsFromJava() throws Throwable {
+        for (boolean optimize : new boolean[] { true, false }) {
+            SplatProgram program = compile("export.splat", optimize);
+            SplatFunction square = program.function("Square");
+            SplatFunction label = program.function("Label");
+
+            checkEquals(Value.ofInteger(49), square.call(Value.ofInteger(-7)), "Square(-7)");
+            checkEquals(Value.ofString("hi!"), label.call(Value.ofString("hi"), Value.ofBoolean(true)),
+                    "Label(\"hi\", true)");
+            checkEquals(Value.ofBoolean(false), program.function("IsEven").call(Value.ofInteger(3)), "IsEven(3)");
+            // a program prints to the System.out of the time it was compiled
+            checkEquals("logged", captureOutput(() -> {
+                SplatFunction log = compile("export.splat", optimize).function("Log");
+                check(log.call(Value.ofString("logged")) == null, "result of a void function");
+            }), "output of Log");
+
+            expectThrows(IllegalArgumentException.class, () -> square.call());
+            expectThrows(IllegalArgumentException.class, () -> square.call(Value.ofInteger(1), Value.ofInteger(2)));
+            expectThrows(IllegalArgumentException.class, () -> square.call(Value.ofBoolean(true)));
+            expectThrows(IllegalArgumentException.class, () -> square.call((Value) null));
+        }
+    }
+
+    private void typedViews() throws Throwable {
+        for (boolean optimize : new boolean[] { true, false }) {
+            SplatProgram program = compile("export.splat", optimize);
+            SplatFunction add = program.function("Add");
+
+            checkEquals(144, program.function("Square").asIntUnaryOperator().applyAsInt(12), "Square(12)");
+            checkEquals(5, add.asIntBinaryOperator().applyAsInt(2, 3), "Add(2, 3)");
+            check(program.function("IsEven").asIntPredicate().test(-4), "IsEven(-4)");
+            expectThrows(IllegalStateException.class, () -> add.asIntUnaryOperator());
+            expectThrows(IllegalStateException.class, () -> add.asIntPredicate());
+            expectThrows(IllegalStateException.class, () -> program.function("IsEven").asIntBinaryOperator());
+
+            MethodHandle label = program.function("Label").asMethodHandle();
+            checkEquals("quiet", (String) label.invokeExact("quiet", false), "Label(\"quiet\", false)");
+            checkEquals(42, (int) add.asMethodHandle().invokeExact(40, 2), "Add(40, 2)");
+            checkEquals("handled", captureOutput(() -> {
+                MethodHandle log = compile("export.splat", optimize).function("Log").asMethodHandle();
+                log.invokeExact("handled");
+            }), "output of Log");
+            expectThrows(IllegalStateException.class, () -> program.function("Squares").asMethodHandle());
+        }
+    }
+
+    /**
+     * An ExecutionException in a function called from Java reaches it as
+     * a SplatCallException, whichever way the function was called.
+     */
+    private void failedCalls() throws Throwable {
+        for (boolean optimize : new boolean[] { true, false }) {
+            SplatFunction divide = compile("export.splat", optimize).function("Divide");
+            checkEquals(Value.ofInteger(-3), divide.call(Value.ofInteger(-7), Value.ofInteger(2)), "Divide(-7, 2)");
+
+            SplatCallException ex = expectThrows(SplatCallException.class,
+                    () -> divide.call(Value.ofInteger(1), Value.ofInteger(0)));
+            check(ex.getCause() != null, "cause of " + ex);
+            checkEquals("Division by zero", ex.getCause().getMessage(), "message of the cause");
+            checkEquals(-1, ex.getRow(), "row of a single call");
+
+            IntBinaryOperator operator = divide.asIntBinaryOperator();
+            expectThrows(SplatCallException.class, () -> operator.applyAsInt(1, 0));
+            MethodHandle handle = divide.asMethodHandle();
+            expectThrows(SplatCallException.class, () -> {
+                int unused = (int) handle.invokeExact(1, 0);
+            });
+            checkEquals(Value.ofInteger(5), divide.call(Value.ofInteger(10), Value.ofInteger(2)),
+                    "Divide(10, 2) after a failure");
+
+            // too deep for the Java stack: reported at the outermost call inside Depth
+            SplatFunction depth = compile("export.splat", optimize).function("Depth");
+            ex = expectThrows(SplatCallException.class, () -> depth.call(Value.ofInteger(3000000)));
+            checkEquals(60, ex.getCause().getLine(), "line of the overflow");
+        }
+    }
+
+    private void callsFromManyThreads() throws Throwable {
+        IntUnaryOperator fib = compile("export.splat", true).function("Fib").asIntUnaryOperator();
+        int[] expected = IntStream.range(0, 2000).map(i -> fib.applyAsInt(i % 20)).toArray();
+        int[] actual = IntStream.range(0, 2000).parallel().map(i -> fib.applyAsInt(i % 20)).toArray();
+        check(Arrays.equals(expected, actual), "results of parallel calls");
+        checkEquals(4181, actual[19], "Fib(19)");
+    }
+
+    private void batchArguments() throws Throwable {
+        SplatProgram program = compile("export.splat", true);
+        SplatFunction add = program.function("Add");
+        SplatFunction label = program.function("Label");
+        int[] xs = { 1, 2, 3 };
+
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs }, new int[3], 3, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs, new boolean[3] }, new int[3], 3, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs, new int[2] }, new int[3], 3, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs, xs }, new int[2], 3, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs, xs }, new boolean[3], 3, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> add.callBatch(new Object[] { xs, xs }, new int[3], -1, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> label.callBatch(new Object[] { new String[] { "a", null }, new boolean[2] },
+                        new String[2], 2, false));
+        expectThrows(IllegalArgumentException.class,
+                () -> program.function("Log").callBatch(new Object[] { new String[1] }, new int[1], 1, false));
+
+        // only the first rows rows are called, and longer arrays are fine
+        int[] sums = { -1, -1, -1, -1 };
+        add.callBatch(new Object[] { xs, new int[] { 10, 20, 30 } }, sums, 2, false);
+        checkEquals("[11, 22, -1, -1]", Arrays.toString(sums), "results of two rows");
+    }
+
+    /**
+     * A parallel batch, split into parts of BATCH_SPLIT_ROWS rows, stores
+     * every result in its own row, just as a sequential batch and single
+     * calls do.
+     */
+    private void parallelBatches() throws Throwable {
+        int rows = 5 * SplatFunction.BATCH_SPLIT_ROWS + 7;
+        int[] xs = new int[rows];
+        int[] ys = new int[rows];
+        String[] words = new String[rows];
+        boolean[] loud = new boolean[rows];
+        for (int row = 0; row < rows; row++) {
+            xs[row] = row * 7 - 1000;
+            ys[row] = rows - row;
+            words[row] = "w" + row;
+            loud[row] = row % 3 == 0;
+        }
+
+        for (boolean optimize : new boolean[] { true, false }) {
+            SplatProgram program = compile("export.splat", optimize);
+            SplatFunction add = program.function("Add");
+            int[] sequential = new int[rows];
+            int[] parallel = new int[rows];
+            add.callBatch(new Object[] { xs, ys }, sequential, rows, false);
+            add.callBatch(new Object[] { xs, ys }, parallel, rows, true);
+            check(Arrays.equals(sequential, parallel), "parallel and sequential results of Add");
+            for (int row = 0; row < rows; row += 997) {
+                checkEquals(add.call(Value.ofInteger(xs[row]), Value.ofInteger(ys[row])).asInteger(),
+                        parallel[row], "Add at row " + row);
+            }
+
+            String[] labels = new String[rows];
+            program.function("Label").callBatch(new Object[] { words, loud }, labels, rows, true);
+            boolean[] even = new boolean[rows];
+            program.function("IsEven").callBatch(new Object[] { xs }, even, rows, true);
+            for (int row = 0; row < rows; row++) {
+                checkEquals(loud[row] ? words[row] + "!" : words[row], labels[row], "Label at row " + row);
+                checkEquals(xs[row] % 2 == 0, even[row], "IsEven at row " + row);
+            }
+        }
+    }
+
+    /**
+     * The lowest failing row is reported, and every row before it has its
+     * result, whether or not the batch runs in parallel.
+     */
+    private void batchRowErrors() throws Throwable {
+        int rows = 4 * SplatFunction.BATCH_SPLIT_ROWS;
+        int[] xs = new int[rows];
+        int[] ys = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            xs[row] = row;
+            ys[row] = 1;
+        }
+        int lowest = SplatFunction.BATCH_SPLIT_ROWS + 5;
+        ys[lowest] = 0;
+        ys[rows - 1] = 0;
+
+        SplatFunction divide = compile("export.splat", true).function("Divide");
+        for (boolean parallel : new boolean[] { false, true }) {
+            int[] results = new int[rows];
+            SplatCallException ex = expectThrows(SplatCallException.class,
+                    () -> divide.callBatch(new Object[] { xs, ys }, results, rows, parallel));
+            String how = parallel ? " in parallel" : "";
+            checkEquals(lowest, ex.getRow(), "failing row" + how);
+            checkEquals("Division by zero", ex.getCause().getMessage(), "message of the cause" + how);
+            for (int row = 0; row < lowest; row++) {
+                checkEquals(row, results[row], "result at row " + row + how);
+            }
+        }
+    }
+
+    /* ----------------------------------------------------
+     * Optimizations, counted by the memo caches
+     * ---------------------------------------------------- */
+
+    /**
+     * Sq(x) = (x * x) is not inlined into Sq(Sq(H(y))), where H is kept,
+     * since its argument would then be evaluated once per use of x.  The
+     * memo cache of H counts every call to it as a hit or a miss.
+     */
+    private void inlinedArgumentsEvaluatedOnce() throws Throwable {
+        for (boolean optimize : new boolean[] { true, false }) {
+            Splat splat = new Splat(testFile("inline.splat"));
+            splat.setExecutionMode(ExecutionMode.TREE);
+            splat.setOptimize(optimize);
+            splat.setMemoCacheSize(16);
+            String where = optimize ? "" : " without optimization";
+
+            checkEquals("1296\n", runProgram(splat), "output" + where);
+            MemoCache memo = splat.getMemoCaches().get("H");
+            check(memo != null, "memo cache of H" + where);
+            checkEquals(1L, memo.getHits() + memo.getMisses(), "calls to H" + where);
+        }
+    }
+
+    /**
+     * Only pure functions of Integers, Booleans and Strings are memoized.
+     * Choose(6, 3) makes 19 calls for 15 distinct argument pairs, and the
+     * second Choose(6, 3) is one hit.  Without optimization, so that no
+     * call is folded or inlined away.
+     */
+    private void memoizedFunctions() throws Throwable {
+        Splat splat = new Splat(testFile("memo.splat"));
+        splat.setExecutionMode(ExecutionMode.TREE);
+        splat.setOptimize(false);
+        splat.setMemoCacheSize(64);
+
+        checkEquals("20 20 8 tt16\n", runProgram(splat), "output");
+        checkEquals(List.of("Choose"), List.copyOf(splat.getMemoCaches().keySet()), "memoized functions");
+        MemoCache memo = splat.getMemoCaches().get("Choose");
+        checkEquals(15L, memo.getMisses(), "misses of Choose");
+        checkEquals(5L, memo.getHits(), "hits of Choose");
+        checkEquals(15, memo.size(), "entries of Choose");
+    }
+
+    private SplatProgram compile(String fileName, boolean optimize) throws SplatException {
+        Splat splat = new Splat(testFile(fileName));
+        splat.setOptimize(optimize);
+        return splat.compile();
+    }
+
+    /* ----------------------------------------------------
+     * Utility helpers
+     * ---------------------------------------------------- */
+
+    @FunctionalInterface
+    private interface TestCase {
+        void run() throws Throwable;
+    }
+
+    private File testFile(String fileName) {
+        return new File(testDirName, fileName);
+    }
+
+    /**
+     * Runs the program and returns what it printed.
+     */
+    private static String runProgram(Splat splat) throws Throwable {
+        return captureOutput(splat::processFileAndExecute);
+    }
+
+    private static String captureOutput(TestCase action) throws Throwable {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            action.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+        return output.toString().replace("\r", "");
+    }
+
+    private static <T extends Throwable> T expectThrows(Class<T> expected, TestCase action) {
+        try {
+            action.run();
+        } catch (Throwable ex) {
+            if (expected.isInstance(ex)) {
+                return expected.cast(ex);
+            }
+            throw new AssertionError("expected " + expected.getSimpleName() + " but got " + ex, ex);
+        }
+        throw new AssertionError("expected " + expected.getSimpleName() + " but nothing was thrown");
+    }
+
+    private static void checkEquals(Object expected, Object actual, String what) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -1,27 +1,311 @@
 package splat;
 
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import splat.lexer.Lexer;
 import splat.lexer.Token;
 import splat.parser.Parser;
 import splat.parser.ParseException;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
 import splat.parser.elements.ProgramAST;
 import splat.semanticanalyzer.SemanticAnalyzer;
+import splat.semanticanalyzer.Type;
+import splat.executor.ExecutionMode;
 import splat.executor.Executor;
+import splat.executor.HostFunction;
+import splat.executor.MemoCache;
+import splat.executor.StackMachine;
+import splat.ir.IrInterpreter;
+import splat.ir.IrProgram;
+import splat.optimizer.CallResolution;
+import splat.optimizer.ConstantSubstitution;
+import splat.optimizer.Optimizer;
+import splat.optimizer.ParallelCallPlanner;
+import splat.optimizer.TreeShaker;
 
 
 public class Splat {
 
     private final File progFile;
 
+    private ExecutionMode executionMode;
+    private int maxCallDepth;
+    private boolean optimize;
+    private boolean logInlining;
+    private int memoCacheSize;
+    private boolean logMemo;
+    private boolean parallelCalls;
+    private int parallelThreshold;
+    private boolean treeShaking;
+    private boolean logTreeShaking;
+    private List<String> removedFunctions = Collections.emptyList();
+    private Map<String, MemoCache> memoCaches = Collections.emptyMap();
+    private final Map<String, HostFunction> hostFunctions = new LinkedHashMap<>();
+
     public Splat(File progFile) {
         this.progFile = progFile;
+        this.executionMode = ExecutionMode.fromName(System.getProperty("splat.mode"));
+        this.maxCallDepth = Integer.getInteger("splat.maxCallDepth", StackMachine.DEFAULT_MAX_CALL_DEPTH);
+        this.optimize = !"false".equalsIgnoreCase(System.getProperty("splat.optimize"));
+        this.logInlining = Boolean.getBoolean("splat.logInlining");
+        this.memoCacheSize = Integer.getInteger("splat.memoCacheSize", 0);
+        this.logMemo = Boolean.getBoolean("splat.logMemo");
+        this.treeShaking = !"false".equalsIgnoreCase(System.getProperty("splat.treeShake"));
+        this.logTreeShaking = Boolean.getBoolean("splat.logTreeShaking");
+        this.parallelCalls = Boolean.getBoolean("splat.parallel");
+        this.parallelThreshold = Integer.getInteger("splat.parallelThreshold",
+                ParallelCallPlanner.DEFAULT_THRESHOLD);
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getMaxCallDepth() {
+        return maxCallDepth;
+    }
+
+    /**
+     * Limits how deep SPLAT calls may nest in ExecutionMode.STACK and
+     * ExecutionMode.IR.  Exceeding it raises an ExecutionException at the
+     * offending call.
+     */
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    public boolean isOptimize() {
+        return optimize;
+    }
+
+    /**
+     * Turns the optimization stage between semantic analysis and execution
+     * on or off.  It is on by default.
+     */
+    public void setOptimize(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    public boolean isLogInlining() {
+        return logInlining;
+    }
+
+    /**
+     * Makes the optimizer report each call site it considered for inlining
+     * on standard error, with the reason whenever a call was kept.
+     */
+    public void setLogInlining(boolean logInlining) {
+        this.logInlining = logInlining;
+    }
+
+    public int getMemoCacheSize() {
+        return memoCacheSize;
+    }
+
+    /**
+     * Memoizes pure functions in ExecutionMode.TREE, keeping at most this
+     * many results per function and evicting the least recently used one.
+     * Zero, the default, turns memoization off.
+     */
+    public void setMemoCacheSize(int memoCacheSize) {
+        this.memoCacheSize = memoCacheSize;
+    }
+
+    public boolean isLogMemo() {
+        return logMemo;
+    }
+
+    /**
+     * Makes the tree walker report the hit and miss counts of every memo
+     * cache on standard error once the program has finished.
+     */
+    public void setLogMemo(boolean logMemo) {
+        this.logMemo = logMemo;
+    }
+
+    /**
+     * The memo caches of the last run, by function name; empty unless it
+     * ran in ExecutionMode.TREE with memoization on.
+     */
+    public Map<String, MemoCache> getMemoCaches() {
+        return memoCaches;
+    }
+
+    public boolean isTreeShaking() {
+        return treeShaking;
+    }
+
+    /**
+     * Drops the functions the main program body can never reach before
+     * anything is optimized or executed, and again after optimization, when
+     * inlining may have left more of them unused.  It is on by default.
+     */
+    public void setTreeShaking(boolean treeShaking) {
+        this.treeShaking = treeShaking;
+    }
+
+    public boolean isLogTreeShaking() {
+        return logTreeShaking;
+    }
+
+    /**
+     * Reports every function tree shaking removed on standard error.
+     */
+    public void setLogTreeShaking(boolean logTreeShaking) {
+        this.logTreeShaking = logTreeShaking;
+    }
+
+    /**
+     * Names of the functions tree shaking removed from the last program.
+     */
+    public List<String> getRemovedFunctions() {
+        return removedFunctions;
+    }
+
+    public boolean isParallelCalls() {
+        return parallelCalls;
+    }
+
+    /**
+     * Lets ExecutionMode.TREE evaluate independent, expensive pure calls in
+     * the same expression on a ForkJoinPool.  Output and errors are those of
+     * the sequential run.  Needs the optimizer, which finds such calls.
+     */
+    public void setParallelCalls(boolean parallelCalls) {
+        this.parallelCalls = parallelCalls;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Estimated cost, in weighted AST nodes, a call must reach before it is
+     * evaluated in parallel; cheaper calls stay inline.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Lets programs call handle as name(...), checked against the given
+     * signature like a function of their own.  A function or global
+     * variable the program declares under the same name takes precedence;
+     * a host function takes precedence over an intrinsic.
+     *
+     * Throws IllegalArgumentException if name is not an identifier or is
+     * already registered, if the signature has types other than Integer,
+     * Boolean and String (or a void result), or if the handle's type cannot
+     * be converted to it.
+     */
+    public void registerHostFunction(String name, MethodHandle handle, Type returnType, Type... paramTypes) {
+        if (!Parser.isIdentifier(name)) {
+            throw new IllegalArgumentException("'" + name + "' cannot name a host function");
+        }
+        if (hostFunctions.containsKey(name)) {
+            throw new IllegalArgumentException("Host function '" + name + "' is already registered");
+        }
+        hostFunctions.put(name, new HostFunction(name, handle, returnType, List.of(paramTypes)));
+    }
+
+    public Map<String, HostFunction> getHostFunctions() {
+        return Collections.unmodifiableMap(hostFunctions);
+    }
+
+    /**
+     * Compiles the program for calling its functions from Java, through
+     * SplatProgram.function; the main program body is not run.  Nothing is
+     * tree-shaken, since any function may be called, and the program is
+     * optimized unless optimization is off.
+     */
+    public SplatProgram compile() throws SplatException {
+        ProgramAST progAST = analyzeProgram();
+        if (optimize) {
+            Optimizer optimizer = new Optimizer(progAST);
+            if (logInlining) {
+                optimizer.setInlineLog(System.err);
+            }
+            progAST = optimizer.optimize();
+        }
+        return new SplatProgram(progAST, optimize, maxCallDepth);
     }
 
     public void processFileAndExecute() throws SplatException {
 
+        // Steps 1 to 3.1
+        ProgramAST progAST = analyzeProgram();
+
+        // Step 3.25.  Tree shaking
+        TreeShaker shaker = new TreeShaker();
+        if (treeShaking) {
+            progAST = shaker.shake(progAST);
+        }
+
+        // Step 3.5.  Optimization
+        if (optimize) {
+            Optimizer optimizer = new Optimizer(progAST);
+            if (logInlining) {
+                optimizer.setInlineLog(System.err);
+            }
+            optimizer.setParallelCalls(parallelCalls && executionMode == ExecutionMode.TREE);
+            optimizer.setParallelThreshold(parallelThreshold);
+            progAST = optimizer.optimize();
+            if (treeShaking) {
+                progAST = shaker.shake(progAST);
+            }
+        }
+        removedFunctions = new ArrayList<>();
+        for (FunctionDecl removed : shaker.getRemovedFunctions()) {
+            removedFunctions.add(removed.getName().getLexeme());
+        }
+        if (logTreeShaking) {
+            System.err.print(shaker.report());
+        }
+
+        // Step 4.  Executor
+        if (executionMode == ExecutionMode.STACK) {
+            StackMachine machine = new StackMachine(progAST, maxCallDepth);
+            machine.runProgram();
+        } else if (executionMode == ExecutionMode.IR) {
+            IrProgram program = IrProgram.lower(progAST);
+            if (optimize) {
+                program.optimize();
+            }
+            new IrInterpreter(program, maxCallDepth).runProgram();
+        } else {
+            Executor executor = new Executor(progAST);
+            executor.setMemoCacheSize(memoCacheSize);
+            try {
+                executor.runProgram();
+            } finally {
+                memoCaches = executor.getMemoCaches();
+                if (logMemo) {
+                    for (MemoCache memo : memoCaches.values()) {
+                        System.err.println(memo);
+                    }
+                }
+            }
+        }
+
+        // THE END!
+    }
+
+    private ProgramAST analyzeProgram() throws SplatException {
+
         // Step 1.  Tokenize
         Lexer lexer = new Lexer(progFile);
         List<Token> tokens = lexer.tokenize();
@@ -29,16 +313,38 @@ public class Splat {
         // Step 2.  Parse
         Parser parser = new Parser(tokens);
         ProgramAST progAST = parser.parse();
+        progAST = linkHostFunctions(progAST);
 
         // Step 3.  Semantic Analysis
         SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
         analyzer.analyze();
 
-        // Step 4.  Executor
-        Executor executor = new Executor(progAST);
-        executor.runProgram();
+        // Step 3.1.  Calls to length, contains and size become array and map
+        // operations, and named constants become literals
+        progAST = new CallResolution().rewriteProgram(progAST);
+        return new ConstantSubstitution().rewriteProgram(progAST);
+    }
 
-        // THE END!
+    /**
+     * Adds a HostFunctionDecl for every host function whose name the
+     * program does not declare itself.
+     */
+    private ProgramAST linkHostFunctions(ProgramAST progAST) {
+        if (hostFunctions.isEmpty()) {
+            return progAST;
+        }
+        Set<String> declared = new HashSet<>();
+        for (Declaration decl : progAST.getDecls()) {
+            declared.add(decl.getLabelLexeme());
+        }
+        List<Declaration> decls = new ArrayList<>();
+        for (HostFunction host : hostFunctions.values()) {
+            if (!declared.contains(host.getName())) {
+                decls.add(new HostFunctionDecl(host));
+            }
+        }
+        decls.addAll(progAST.getDecls());
+        return new ProgramAST(decls, progAST.getStmts(), progAST.getToken());
     }
 
 }
@@ -0,0 +1,38 @@
+package splat;
+
+import splat.executor.ExecutionException;
+
+/**
+ * Thrown when a SplatFunction called from Java raises an
+ * ExecutionException, which is its cause.  It is unchecked so that the
+ * functional interfaces a SplatFunction is exported as can throw it.
+ */
+public class SplatCallException extends RuntimeException {
+
+    private final int row;
+
+    public SplatCallException(String functionName, ExecutionException cause) {
+        super("Call to '" + functionName + "' failed: " + cause, cause);
+        this.row = -1;
+    }
+
+    /**
+     * The failure of one row of a batch.
+     */
+    public SplatCallException(String functionName, int row, ExecutionException cause) {
+        super("Call to '" + functionName + "' failed at row " + row + ": " + cause, cause);
+        this.row = row;
+    }
+
+    /**
+     * The row of the batch that failed, or -1 for a single call.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public synchronized ExecutionException getCause() {
+        return (ExecutionException) super.getCause();
+    }
+}
@@ -0,0 +1,324 @@
+package splat;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+import splat.executor.ValueHandles;
+import splat.ir.IrInterpreter;
+import splat.semanticanalyzer.Type;
+
+/**
+ * One function of a SplatProgram, callable from Java on any thread.
+ *
+ * The function is resolved once, when the SplatProgram is made, so a call
+ * only packs the arguments into an array and runs the function's IR.  The
+ * typed views - asIntUnaryOperator and the like for the common shapes,
+ * asMethodHandle for every other signature - convert Integers and Booleans
+ * without boxing.  callBatch runs the function over columns of inputs.
+ * An ExecutionException the function raises reaches Java code as a
+ * SplatCallException.
+ */
+public final class SplatFunction {
+
+    /** A parallel batch is not split into parts of fewer rows than this. */
+    public static final int BATCH_SPLIT_ROWS = 4096;
+
+    private static final MethodHandle INVOKE;
+
+    static {
+        try {
+            INVOKE = MethodHandles.lookup().findVirtual(SplatFunction.class, "invoke",
+                    MethodType.methodType(Value.class, Value[].class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final String name;
+    private final Type returnType;
+    private final List<Type> paramTypes;
+    private final IrInterpreter interpreter;
+    private final int index;
+
+    SplatFunction(String name, Type returnType, List<Type> paramTypes, IrInterpreter interpreter, int index) {
+        this.name = name;
+        this.returnType = returnType;
+        this.paramTypes = List.copyOf(paramTypes);
+        this.interpreter = interpreter;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    public List<Type> getParamTypes() {
+        return paramTypes;
+    }
+
+    /**
+     * Calls the function and returns its result, or null if it is void.
+     * Throws IllegalArgumentException if the arguments do not match the
+     * parameters.
+     */
+    public Value call(Value... args) {
+        if (args.length != paramTypes.size()) {
+            throw new IllegalArgumentException("Function '" + name + "' expects " + paramTypes.size()
+                    + " arguments but got " + args.length);
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null || args[i].getType() != paramTypes.get(i)) {
+                throw new IllegalArgumentException("Argument " + (i + 1) + " for function '" + name
+                        + "' must be " + paramTypes.get(i).getDisplayName());
+            }
+        }
+        return invoke(args);
+    }
+
+    /**
+     * Throws IllegalStateException unless the function takes one Integer
+     * and returns an Integer.
+     */
+    public IntUnaryOperator asIntUnaryOperator() {
+        requireSignature(Type.INTEGER, Type.INTEGER);
+        return x -> invoke(new Value[] { Value.ofInteger(x) }).asInteger();
+    }
+
+    /**
+     * Throws IllegalStateException unless the function takes two Integers
+     * and returns an Integer.
+     */
+    public IntBinaryOperator asIntBinaryOperator() {
+        requireSignature(Type.INTEGER, Type.INTEGER, Type.INTEGER);
+        return (x, y) -> invoke(new Value[] { Value.ofInteger(x), Value.ofInteger(y) }).asInteger();
+    }
+
+    /**
+     * Throws IllegalStateException unless the function takes one Integer
+     * and returns a Boolean.
+     */
+    public IntPredicate asIntPredicate() {
+        requireSignature(Type.BOOLEAN, Type.INTEGER);
+        return x -> invoke(new Value[] { Value.ofInteger(x) }).asBoolean();
+    }
+
+    /**
+     * A handle of the function's own Java signature, with int, boolean and
+     * String for Integer, Boolean and String, to be called with
+     * invokeExact or bound to any interface of the same shape.  Throws
+     * IllegalStateException if the function takes or returns an array or
+     * a map.
+     */
+    public MethodHandle asMethodHandle() {
+        MethodHandle[] wrap = new MethodHandle[paramTypes.size()];
+        try {
+            for (int i = 0; i < wrap.length; i++) {
+                wrap[i] = ValueHandles.fromJava(paramTypes.get(i));
+            }
+            ValueHandles.javaType(returnType);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Function '" + name + "' cannot be called as a MethodHandle: "
+                    + ex.getMessage(), ex);
+        }
+        MethodHandle handle = INVOKE.bindTo(this).asCollector(Value[].class, wrap.length);
+        handle = MethodHandles.filterArguments(handle, 0, wrap);
+        if (returnType == Type.VOID) {
+            return handle.asType(handle.type().changeReturnType(void.class));
+        }
+        return MethodHandles.filterReturnValue(handle, ValueHandles.toJava(returnType));
+    }
+
+    /**
+     * Calls the function once for each of the first rows rows of columns:
+     * column i holds argument i as an int[], boolean[] or String[] for an
+     * Integer, Boolean or String parameter, and the result for row r is
+     * stored in results[r], an int[], boolean[] or String[] by the return
+     * type, or null for a void function.
+     *
+     * The rows share one register file and argument array, so nothing but
+     * the argument Values themselves is allocated per row.  With parallel,
+     * the rows are split in halves on the ForkJoinPool down to
+     * BATCH_SPLIT_ROWS rows; anything the function prints may then come
+     * out in any order.  If rows fail, the SplatCallException of the
+     * lowest of them is thrown, and every row before it has its result.
+     * Throws IllegalArgumentException if the arrays do not fit the
+     * signature or hold fewer than rows rows.
+     */
+    public void callBatch(Object[] columns, Object results, int rows, boolean parallel) {
+        checkBatch(columns, results, rows);
+        if (!parallel || rows <= BATCH_SPLIT_ROWS) {
+            callRows(columns, results, 0, rows);
+            return;
+        }
+        AtomicReference<SplatCallException> failure = new AtomicReference<>();
+        new BatchTask(columns, results, 0, rows, failure).invoke();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SplatFunction(" + name + " " + signature() + ")";
+    }
+
+    private Value invoke(Value[] args) {
+        try {
+            return interpreter.call(index, args);
+        } catch (ExecutionException ex) {
+            throw new SplatCallException(name, ex);
+        }
+    }
+
+    private String signature() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < paramTypes.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(paramTypes.get(i).getDisplayName());
+        }
+        return sb.append(") : ").append(returnType.getDisplayName()).toString();
+    }
+
+    private void callRows(Object[] columns, Object results, int from, int to) {
+        IrInterpreter.Invocation invocation = interpreter.prepare(index);
+        Value[] args = invocation.arguments();
+        for (int row = from; row < to; row++) {
+            for (int i = 0; i < args.length; i++) {
+                Object column = columns[i];
+                switch (paramTypes.get(i)) {
+                    case INTEGER:
+                        args[i] = Value.ofInteger(((int[]) column)[row]);
+                        break;
+                    case BOOLEAN:
+                        args[i] = Value.ofBoolean(((boolean[]) column)[row]);
+                        break;
+                    default:
+                        args[i] = Value.ofString(((String[]) column)[row]);
+                        break;
+                }
+            }
+            Value result;
+            try {
+                result = invocation.run();
+            } catch (ExecutionException ex) {
+                throw new SplatCallException(name, row, ex);
+            }
+            switch (returnType) {
+                case INTEGER:
+                    ((int[]) results)[row] = result.asInteger();
+                    break;
+                case BOOLEAN:
+                    ((boolean[]) results)[row] = result.asBoolean();
+                    break;
+                case STRING:
+                    ((String[]) results)[row] = result.asString();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void checkBatch(Object[] columns, Object results, int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative row count " + rows);
+        }
+        if (columns.length != paramTypes.size()) {
+            throw new IllegalArgumentException("Function '" + name + "' expects " + paramTypes.size()
+                    + " columns but got " + columns.length);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            checkColumn(columns[i], paramTypes.get(i), rows, "Column " + (i + 1));
+            if (paramTypes.get(i) == Type.STRING) {
+                for (int row = 0; row < rows; row++) {
+                    if (((String[]) columns[i])[row] == null) {
+                        throw new IllegalArgumentException("Column " + (i + 1) + " for function '" + name
+                                + "' has null at row " + row);
+                    }
+                }
+            }
+        }
+        if (returnType == Type.VOID) {
+            if (results != null) {
+                throw new IllegalArgumentException("Function '" + name + "' is void, so results must be null");
+            }
+        } else {
+            checkColumn(results, returnType, rows, "The results array");
+        }
+    }
+
+    private void checkColumn(Object column, Type type, int rows, String what) {
+        int length;
+        if (type == Type.INTEGER && column instanceof int[]) {
+            length = ((int[]) column).length;
+        } else if (type == Type.BOOLEAN && column instanceof boolean[]) {
+            length = ((boolean[]) column).length;
+        } else if (type == Type.STRING && column instanceof String[]) {
+            length = ((String[]) column).length;
+        } else {
+            throw new IllegalArgumentException(what + " for function '" + name + "' must be "
+                    + ValueHandles.javaType(type).getSimpleName() + "[] to hold " + type.getDisplayName() + "s");
+        }
+        if (length < rows) {
+            throw new IllegalArgumentException(what + " for function '" + name + "' has " + length
+                    + " rows, not " + rows);
+        }
+    }
+
+    /**
+     * Runs a range of rows, in halves while it is longer than
+     * BATCH_SPLIT_ROWS.  A part stops at its first failing row, which it
+     * reports unless a lower row has already failed.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        private final Object[] columns;
+        private final Object results;
+        private final int from;
+        private final int to;
+        private final AtomicReference<SplatCallException> failure;
+
+        BatchTask(Object[] columns, Object results, int from, int to,
+                  AtomicReference<SplatCallException> failure) {
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SPLIT_ROWS) {
+                try {
+                    callRows(columns, results, from, to);
+                } catch (SplatCallException ex) {
+                    failure.accumulateAndGet(ex, (first, next) ->
+                            first == null || next.getRow() < first.getRow() ? next : first);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(columns, results, from, mid, failure),
+                    new BatchTask(columns, results, mid, to, failure));
+        }
+    }
+
+    private void requireSignature(Type expectedReturn, Type... expectedParams) {
+        if (returnType != expectedReturn || !paramTypes.equals(List.of(expectedParams))) {
+            throw new IllegalStateException("Function '" + name + "' is " + signature());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package splat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.ExecutionException;
+import splat.executor.FrameLayout;
+import splat.ir.IrInterpreter;
+import splat.ir.IrProgram;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.Type;
+
+/**
+ * A program compiled by Splat.compile, whose functions Java code calls as
+ * SplatFunctions.  They run on the IR engine: the program is lowered and
+ * optimized once, here, and every call shares one IrInterpreter without a
+ * step budget.  A SPLAT function sees only its parameters and locals, so
+ * calls share nothing but the read-only program, and a SplatProgram and
+ * its SplatFunctions may be used from any number of threads at once.
+ */
+public final class SplatProgram {
+
+    private final Map<String, SplatFunction> functions;
+
+    SplatProgram(ProgramAST progAST, boolean optimize, int maxCallDepth) throws ExecutionException {
+        IrProgram program = IrProgram.lower(progAST);
+        if (optimize) {
+            program.optimize();
+        }
+        IrInterpreter interpreter = new IrInterpreter(program, maxCallDepth);
+
+        Map<String, SplatFunction> byName = new LinkedHashMap<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl && !(decl instanceof HostFunctionDecl)) {
+                FrameLayout layout = FrameLayout.of((FunctionDecl) decl);
+                List<Type> paramTypes = new ArrayList<>();
+                for (int i = 0; i < layout.getParamCount(); i++) {
+                    paramTypes.add(layout.getSlotType(i));
+                }
+                String name = layout.getName();
+                byName.put(name, new SplatFunction(name, layout.getReturnType(), paramTypes,
+                        interpreter, interpreter.indexOf(name)));
+            }
+        }
+        this.functions = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * The functions the program declares, in declaration order.
+     */
+    public Set<String> getFunctionNames() {
+        return functions.keySet();
+    }
+
+    /**
+     * Throws IllegalArgumentException if the program declares no function
+     * of that name.
+     */
+    public SplatFunction function(String name) {
+        SplatFunction function = functions.get(name);
+        if (function == null) {
+            throw new IllegalArgumentException("The program declares no function '" + name + "'");
+        }
+        return function;
+    }
+}
@@ -1,6 +1,7 @@
 package splat;
 
 import java.io.*;
+import java.util.Properties;
 
 public class  SplatTester {
 
@@ -145,7 +146,7 @@ public class  SplatTester {
 		totalTestsRun++;
 		System.out.print("Test Case " + totalTestsRun + ": " + testFile.getName() + "...");
 
-		Splat splat = new Splat(testFile);
+		Splat splat = makeSplat(testFile);
 
 		// The expected result code is determined by the .splat filename
 		int expectedResultCode = getExpectedResultCode(testFile.getName());
@@ -244,6 +245,33 @@ public class  SplatTester {
 
 	}
 
+	// A test may have a .properties file next to it, such as one that sets
+	// splat.mode=stack; its entries are the system properties in effect
+	// while the test's Splat is made, so they pick the settings it runs with
+	private Splat makeSplat(File testFile) throws IOException {
+
+		String testFilePath = testFile.getAbsolutePath();
+		File optionsFile = new File(testFilePath.substring(0, testFilePath.length() - 5) + "properties");
+		if (!optionsFile.exists()) {
+			return new Splat(testFile);
+		}
+
+		Properties options = new Properties();
+		Reader reader = new FileReader(optionsFile);
+		options.load(reader);
+		reader.close();
+
+		Properties saved = (Properties) System.getProperties().clone();
+		try {
+			for (String key : options.stringPropertyNames()) {
+				System.setProperty(key, options.getProperty(key));
+			}
+			return new Splat(testFile);
+		} finally {
+			System.setProperties(saved);
+		}
+	}
+
 	private boolean outputMatchesExpected(File output, File expected) throws IOException {
 
 		if (!expected.exists()) {
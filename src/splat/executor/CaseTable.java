@@ -0,0 +1,104 @@
+package splat.executor;
+
+import java.util.Arrays;
+
+/**
+ * The dispatch of a case statement: maps a scrutinee to the index of the
+ * arm whose labels contain it, or to the arm count (the else part) when
+ * none do.  Integer labels that are dense enough get a jump table indexed
+ * by key - min; sparse ones go in an IntIntMap, and String labels in a
+ * StringIntMap.  Every engine dispatches through the same table.
+ */
+public final class CaseTable {
+
+    /** A jump table may have this many slots without a label, at least. */
+    private static final int MIN_SPAN = 16;
+
+    private final int armCount;
+    private final int min;
+    private final int[] jumpTable;
+    private final IntIntMap intArms;
+    private final StringIntMap stringArms;
+
+    private CaseTable(int armCount, int min, int[] jumpTable, IntIntMap intArms, StringIntMap stringArms) {
+        this.armCount = armCount;
+        this.min = min;
+        this.jumpTable = jumpTable;
+        this.intArms = intArms;
+        this.stringArms = stringArms;
+    }
+
+    /**
+     * labels[i] belongs to arm arms[i]; the labels must be distinct.  A
+     * jump table is used when it has no more than twice as many slots as
+     * there are labels (or MIN_SPAN slots).
+     */
+    public static CaseTable ofIntegers(int[] labels, int[] arms, int armCount) {
+        if (labels.length == 0) {
+            return new CaseTable(armCount, 0, new int[0], null, null);
+        }
+        int lo = labels[0];
+        int hi = labels[0];
+        for (int label : labels) {
+            lo = Math.min(lo, label);
+            hi = Math.max(hi, label);
+        }
+        long span = (long) hi - lo + 1;
+        if (span <= Math.max(MIN_SPAN, 2L * labels.length)) {
+            int[] table = new int[(int) span];
+            Arrays.fill(table, armCount);
+            for (int i = 0; i < labels.length; i++) {
+                table[labels[i] - lo] = arms[i];
+            }
+            return new CaseTable(armCount, lo, table, null, null);
+        }
+        IntIntMap map = new IntIntMap();
+        for (int i = 0; i < labels.length; i++) {
+            map.put(labels[i], arms[i]);
+        }
+        return new CaseTable(armCount, 0, null, map, null);
+    }
+
+    /**
+     * labels[i] belongs to arm arms[i]; the labels must be distinct.
+     */
+    public static CaseTable ofStrings(String[] labels, int[] arms, int armCount) {
+        StringIntMap map = new StringIntMap();
+        for (int i = 0; i < labels.length; i++) {
+            map.put(labels[i], arms[i]);
+        }
+        return new CaseTable(armCount, 0, null, null, map);
+    }
+
+    public int getArmCount() {
+        return armCount;
+    }
+
+    public boolean isJumpTable() {
+        return jumpTable != null;
+    }
+
+    public int armOf(int key) {
+        if (jumpTable != null) {
+            long index = (long) key - min;
+            return index >= 0 && index < jumpTable.length ? jumpTable[(int) index] : armCount;
+        }
+        if (intArms != null) {
+            int slot = intArms.find(key);
+            return slot < 0 ? armCount : intArms.valueAt(slot);
+        }
+        return armCount;
+    }
+
+    public int armOf(String key) {
+        if (stringArms == null) {
+            return armCount;
+        }
+        int slot = stringArms.find(key);
+        return slot < 0 ? armCount : stringArms.valueAt(slot);
+    }
+
+    public int armOf(Value key) {
+        return key.isInteger() ? armOf(key.asInteger()) : armOf(key.asString());
+    }
+}
@@ -0,0 +1,45 @@
+package splat.executor;
+
+/**
+ * Flat instruction form of one FunctionDecl (or of the main program body),
+ * together with everything the StackMachine needs to set up its frame.
+ */
+final class CompiledFunction {
+
+    final String name;
+    final int[] ops;
+    final int[] args;
+    final int[] lines;
+    final int[] columns;
+    final Value[] constants;
+    final CaseTable[] caseTables;
+    final int[][] caseTargets;
+
+    final int paramCount;
+    final int slotCount;
+    final int maxStack;
+    final Value[] defaults;
+    final boolean returnsValue;
+
+    CompiledFunction(String name, int[] ops, int[] args, int[] lines, int[] columns,
+                     Value[] constants, CaseTable[] caseTables, int[][] caseTargets,
+                     int paramCount, int slotCount, int maxStack, Value[] defaults, boolean returnsValue) {
+        this.name = name;
+        this.ops = ops;
+        this.args = args;
+        this.lines = lines;
+        this.columns = columns;
+        this.constants = constants;
+        this.caseTables = caseTables;
+        this.caseTargets = caseTargets;
+        this.paramCount = paramCount;
+        this.slotCount = slotCount;
+        this.maxStack = maxStack;
+        this.defaults = defaults;
+        this.returnsValue = returnsValue;
+    }
+
+    int frameSize() {
+        return slotCount + maxStack;
+    }
+}
@@ -0,0 +1,33 @@
+package splat.executor;
+
+/**
+ * Result of executing a Statement.  NORMAL means control continues with the
+ * next statement; a return completion carries the function's result (null
+ * for void functions) back up through enclosing blocks, branches and loops
+ * to the FunctionCall that owns the frame.
+ */
+public final class Completion {
+
+    public static final Completion NORMAL = new Completion(false, null);
+    public static final Completion RETURN_VOID = new Completion(true, null);
+
+    private final boolean isReturn;
+    private final Value returnVal;
+
+    private Completion(boolean isReturn, Value returnVal) {
+        this.isReturn = isReturn;
+        this.returnVal = returnVal;
+    }
+
+    public static Completion returning(Value returnVal) {
+        return returnVal == null ? RETURN_VOID : new Completion(true, returnVal);
+    }
+
+    public boolean isReturn() {
+        return isReturn;
+    }
+
+    public Value getReturnVal() {
+        return returnVal;
+    }
+}
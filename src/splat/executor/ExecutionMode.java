@@ -0,0 +1,29 @@
+package splat.executor;
+
+/**
+ * Selects which engine runs a program once it has passed semantic analysis.
+ *
+ * TREE walks the AST directly through Statement.execute and
+ * Expression.evaluate, so SPLAT recursion is bounded by the Java stack.
+ * STACK compiles the AST to flat instructions and runs them on the
+ * StackMachine, which keeps SPLAT call frames on the heap.
+ * IR lowers every function to an SSA control-flow graph, optimizes it and
+ * runs it on the IrInterpreter.
+ */
+public enum ExecutionMode {
+    TREE,
+    STACK,
+    IR;
+
+    public static ExecutionMode fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return TREE;
+        }
+        for (ExecutionMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown execution mode '" + name + "'");
+    }
+}
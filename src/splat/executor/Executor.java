@@ -1,67 +1,127 @@
 package splat.executor;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import splat.parser.elements.Declaration;
 import splat.parser.elements.FunctionDecl;
 import splat.parser.elements.ProgramAST;
 import splat.parser.elements.Statement;
-import splat.parser.elements.VariableDecl;
-import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.optimizer.PurityAnalysis;
 import splat.semanticanalyzer.Type;
-import splat.executor.ReturnFromCall;
 
 public class Executor {
 
     private final ProgramAST progAST;
+    private int memoCacheSize;
+    private final Map<String, MemoCache> memoCaches = new LinkedHashMap<>();
 
     private Map<String, FunctionDecl> funcMap;
-    private Map<String, Value> progVarMap;
+    private ValueStack valueStack;
+    private Frame globalFrame;
 
     public Executor(ProgramAST progAST) {
         this.progAST = progAST;
     }
 
+    /**
+     * Memoizes every pure function that returns a value and takes only
+     * Integers, Booleans and Strings, with a cache of at most the given
+     * number of entries per function.  Zero, the default,
+     * turns memoization off.
+     */
+    public void setMemoCacheSize(int memoCacheSize) {
+        if (memoCacheSize < 0) {
+            throw new IllegalArgumentException("memoCacheSize must not be negative");
+        }
+        this.memoCacheSize = memoCacheSize;
+    }
+
+    /**
+     * The caches used by the last run, by function name.
+     */
+    public Map<String, MemoCache> getMemoCaches() {
+        return Collections.unmodifiableMap(memoCaches);
+    }
+
     public void runProgram() throws ExecutionException {
         initializeMaps();
+        attachMemoCaches();
 
-        try {
-            for (Statement stmt : progAST.getStmts()) {
-                stmt.execute(funcMap, progVarMap);
+        for (Statement stmt : progAST.getStmts()) {
+            if (executeTopLevel(stmt).isReturn()) {
+                reportReturnInProgramBody();
             }
+        }
+    }
+
+    private void reportReturnInProgramBody() throws ExecutionException {
+        System.out.println("Internal error!!! The main program body "
+                + "cannot have a return statement -- this should have "
+                + "been caught during semantic analysis!");
 
-        } catch (ReturnFromCall ex) {
-            System.out.println("Internal error!!! The main program body "
-                    + "cannot have a return statement -- this should have "
-                    + "been caught during semantic analysis!");
+        throw new ExecutionException("Internal error -- fix your "
+                + "semantic analyzer!", -1, -1);
+    }
 
-            throw new ExecutionException("Internal error -- fix your "
-                    + "semantic analyzer!", -1, -1);
+    private Completion executeTopLevel(Statement stmt) throws ExecutionException {
+        try {
+            return stmt.execute(funcMap, globalFrame);
+        } catch (StackOverflowError err) {
+            // The tree walker recurses in Java for every SPLAT call, so deep
+            // recursion ends here rather than at a configurable limit
+            throw new ExecutionException("Call stack overflow -- recursion is too deep for tree "
+                    + "execution, use the stack execution mode instead", stmt);
         }
     }
 
     private void initializeMaps() throws ExecutionException {
         funcMap = new HashMap<>();
-        progVarMap = new HashMap<>();
 
         for (Declaration decl : progAST.getDecls()) {
             if (decl instanceof FunctionDecl) {
                 FunctionDecl funcDecl = (FunctionDecl) decl;
                 funcMap.put(funcDecl.getName().getLexeme(), funcDecl);
-            } else if (decl instanceof VariableDecl) {
-                registerVariable((VariableDecl) decl);
+                FrameLayout.of(funcDecl);
             }
         }
+
+        // Globals are the slots of the bottom frame, initialised from the
+        // program layout's defaults just like a function's locals
+        valueStack = new ValueStack();
+        globalFrame = valueStack.enter(FrameLayout.forProgram(progAST), valueStack.top());
     }
 
-    private void registerVariable(VariableDecl varDecl) throws ExecutionException {
-        try {
-            Type type = Type.fromToken(varDecl.getType());
-            progVarMap.put(varDecl.getName().getLexeme(), Value.defaultValue(type));
-        } catch (SemanticAnalysisException ex) {
-            throw new ExecutionException(ex.getMessage(), varDecl.getLine(), varDecl.getColumn());
+    /**
+     * An array or a map would be a key by identity, which the cache would
+     * keep alive and hardly ever hit.
+     */
+    private static boolean isMemoizable(FrameLayout layout) {
+        if (layout.getReturnType() == Type.VOID) {
+            return false;
         }
+        for (int i = 0; i < layout.getParamCount(); i++) {
+            Type type = layout.getSlotType(i);
+            if (type.isArray() || type.isMap()) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    private void attachMemoCaches() throws ExecutionException {
+        memoCaches.clear();
+        PurityAnalysis purity = memoCacheSize > 0 ? new PurityAnalysis(funcMap) : null;
+        for (FunctionDecl funcDecl : funcMap.values()) {
+            String name = funcDecl.getName().getLexeme();
+            MemoCache memo = null;
+            if (purity != null && purity.isPure(name) && isMemoizable(FrameLayout.of(funcDecl))) {
+                memo = new MemoCache(name, memoCacheSize);
+                memoCaches.put(name, memo);
+            }
+            funcDecl.setMemoCache(memo);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package splat.executor;
+
+/**
+ * View of one active call frame inside a ValueStack.  Variables are read
+ * and written by slot index; AST nodes resolve their variable's slot once
+ * through slotOf() and reuse it afterwards.
+ */
+public final class Frame {
+
+    private final ValueStack stack;
+    private FrameLayout layout;
+    private int base;
+
+    Frame(ValueStack stack) {
+        this.stack = stack;
+    }
+
+    void reset(FrameLayout layout, int base) {
+        this.layout = layout;
+        this.base = base;
+    }
+
+    public ValueStack getStack() {
+        return stack;
+    }
+
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    int getBase() {
+        return base;
+    }
+
+    public int slotOf(String varName) {
+        return layout.slotOf(varName);
+    }
+
+    public Value get(int slot) {
+        return stack.slots[base + slot];
+    }
+
+    public void set(int slot, Value value) {
+        stack.slots[base + slot] = value;
+    }
+
+    /**
+     * Reads the primitive shadow of a slot, which only a running
+     * CountedLoop keeps up to date.
+     */
+    public int getInt(int slot) {
+        return stack.ints[base + slot];
+    }
+
+    public void setInt(int slot, int value) {
+        stack.ints[base + slot] = value;
+    }
+}
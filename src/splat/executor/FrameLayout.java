@@ -0,0 +1,137 @@
+package splat.executor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.VariableDecl;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Precomputed shape of a call frame: one slot per parameter followed by one
+ * slot per local, the type of every slot, and a template holding each
+ * local's default Value.  A layout is built once per FunctionDecl (and once
+ * for the program's globals), so entering a frame is just a copy of the
+ * template into the ValueStack.
+ */
+public final class FrameLayout {
+
+    private final String name;
+    private final String[] slotNames;
+    private final Type[] slotTypes;
+    private final Value[] defaults;
+    private final Map<String, Integer> slotIndex;
+    private final int paramCount;
+    private final Type returnType;
+
+    private FrameLayout(String name, List<VariableDecl> params, List<VariableDecl> locals,
+                        Type returnType) throws ExecutionException {
+        this.name = name;
+        this.paramCount = params.size();
+        this.returnType = returnType;
+
+        int slotCount = params.size() + locals.size();
+        this.slotNames = new String[slotCount];
+        this.slotTypes = new Type[slotCount];
+        this.defaults = new Value[slotCount];
+        this.slotIndex = new HashMap<>();
+
+        int slot = 0;
+        for (VariableDecl param : params) {
+            addSlot(slot++, param, false);
+        }
+        for (VariableDecl local : locals) {
+            addSlot(slot++, local, true);
+        }
+    }
+
+    /**
+     * Returns the layout of the given function, building and attaching it
+     * to the declaration the first time it is asked for.
+     */
+    public static FrameLayout of(FunctionDecl decl) throws ExecutionException {
+        FrameLayout layout = decl.getFrameLayout();
+        if (layout == null) {
+            List<VariableDecl> locals = decl.getLocalVars() != null ? decl.getLocalVars() : List.of();
+            layout = new FrameLayout(decl.getName().getLexeme(), decl.getParams(), locals,
+                    toType(decl.getReturnType(), decl));
+            decl.setFrameLayout(layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Builds the layout of the main program body, whose slots are the
+     * program's global variables.
+     */
+    public static FrameLayout forProgram(ProgramAST progAST) throws ExecutionException {
+        List<VariableDecl> globals = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof VariableDecl) {
+                globals.add((VariableDecl) decl);
+            }
+        }
+        return new FrameLayout("main", List.of(), globals, Type.VOID);
+    }
+
+    private void addSlot(int slot, VariableDecl decl, boolean isLocal) throws ExecutionException {
+        String slotName = decl.getName().getLexeme();
+        Type type = toType(decl.getType(), decl);
+        slotNames[slot] = slotName;
+        slotTypes[slot] = type;
+        defaults[slot] = isLocal ? Value.defaultValue(type) : null;
+        slotIndex.put(slotName, slot);
+    }
+
+    private static Type toType(Token typeToken, ASTElement elem) throws ExecutionException {
+        try {
+            return Type.fromToken(typeToken);
+        } catch (SemanticAnalysisException ex) {
+            throw new ExecutionException(ex.getMessage(), elem.getLine(), elem.getColumn());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSlotCount() {
+        return slotNames.length;
+    }
+
+    public int getParamCount() {
+        return paramCount;
+    }
+
+    public String getSlotName(int slot) {
+        return slotNames[slot];
+    }
+
+    public Type getSlotType(int slot) {
+        return slotTypes[slot];
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * Returns the slot holding the named variable, or -1 when this frame
+     * has no such variable.
+     */
+    public int slotOf(String varName) {
+        Integer slot = slotIndex.get(varName);
+        return slot != null ? slot : -1;
+    }
+
+    Value[] getDefaults() {
+        return defaults;
+    }
+}
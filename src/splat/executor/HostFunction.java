@@ -0,0 +1,97 @@
+package splat.executor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.util.List;
+import java.util.Objects;
+
+import splat.semanticanalyzer.Type;
+
+/**
+ * A Java routine that programs call like one of their own functions,
+ * registered with Splat.registerHostFunction under a SPLAT signature of
+ * Integer, Boolean and String parameters and an Integer, Boolean, String
+ * or void result.
+ *
+ * The MethodHandle is adapted once, here, into an invoker from the
+ * argument Values to the result Value: Integer and Boolean arguments are
+ * unwrapped straight to int and boolean, and the result is wrapped the
+ * same way, so nothing is boxed unless the handle itself asks for boxes.
+ * Each call is then one invokeExact of that invoker, with no reflection.
+ */
+public final class HostFunction {
+
+    private final String name;
+    private final Type returnType;
+    private final List<Type> paramTypes;
+    private final MethodHandle invoker;
+
+    /**
+     * Throws IllegalArgumentException if a type is not allowed in a host
+     * signature, or if the handle's type cannot be converted to the
+     * signature's Java types (int, boolean, String and void).
+     */
+    public HostFunction(String name, MethodHandle handle, Type returnType, List<Type> paramTypes) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.returnType = Objects.requireNonNull(returnType, "returnType");
+        this.paramTypes = List.copyOf(paramTypes);
+
+        Class<?>[] javaParams = new Class<?>[this.paramTypes.size()];
+        MethodHandle[] unwrap = new MethodHandle[javaParams.length];
+        for (int i = 0; i < javaParams.length; i++) {
+            unwrap[i] = ValueHandles.toJava(this.paramTypes.get(i));
+            javaParams[i] = ValueHandles.javaType(this.paramTypes.get(i));
+        }
+        MethodType signature = MethodType.methodType(ValueHandles.javaType(returnType), javaParams);
+        MethodHandle typed;
+        try {
+            typed = handle.asType(signature);
+        } catch (WrongMethodTypeException ex) {
+            throw new IllegalArgumentException("Host function '" + name + "' has type " + handle.type()
+                    + ", which does not fit its SPLAT signature " + signature, ex);
+        }
+
+        MethodHandle adapted = MethodHandles.filterArguments(typed, 0, unwrap);
+        if (returnType != Type.VOID) {
+            adapted = MethodHandles.filterReturnValue(adapted, ValueHandles.fromJava(returnType));
+        } else {
+            // a void result becomes null, which is what void calls produce everywhere
+            adapted = adapted.asType(adapted.type().changeReturnType(Value.class));
+        }
+        this.invoker = adapted.asSpreader(Value[].class, javaParams.length);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    public List<Type> getParamTypes() {
+        return paramTypes;
+    }
+
+    /**
+     * Calls the routine; anything it throws, other than an Error, is
+     * reported as an ExecutionException at the given position.  The result
+     * is null for a void function.
+     */
+    public Value apply(Value[] args, int line, int column) throws ExecutionException {
+        try {
+            return (Value) invoker.invokeExact(args);
+        } catch (ExecutionException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new ExecutionException("Host function '" + name + "' failed: " + ex, line, column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HostFunction(" + name + " " + paramTypes + " : " + returnType + ")";
+    }
+}
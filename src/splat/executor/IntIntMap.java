@@ -0,0 +1,114 @@
+package splat.executor;
+
+import java.util.Arrays;
+
+/**
+ * The table behind a Map<Integer, Integer> value: open addressing with
+ * linear probing over parallel int arrays, so neither keys nor values are
+ * ever boxed and a lookup allocates nothing.  A used flag per slot keeps
+ * every int available as a key.  Entries are never removed.
+ */
+public final class IntIntMap {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The slot holding key, for valueAt, or -1 if the map does not have it.
+     */
+    public int find(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    public void put(int key, int value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        // at most half full, so probe sequences stay short
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        int capacity = oldKeys.length * 2;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads consecutive keys over the table, since the mask keeps only
+     * the low bits.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The entries in ascending key order, as {key=value, ...}.
+     */
+    @Override
+    public String toString() {
+        int[] sorted = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                sorted[n++] = keys[i];
+            }
+        }
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < sorted.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(sorted[i]).append('=').append(valueAt(find(sorted[i])));
+        }
+        return sb.append('}').toString();
+    }
+}
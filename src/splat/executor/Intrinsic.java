@@ -0,0 +1,152 @@
+package splat.executor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.semanticanalyzer.Type;
+
+/**
+ * The native functions every program can call without declaring them,
+ * each run as plain Java code: no frame is entered and nothing is pushed
+ * beyond the argument values.
+ *
+ * Calls are type-checked against the signatures here exactly as calls to
+ * a FunctionDecl are checked against its parameters.  A function the
+ * program declares always wins over an intrinsic of the same name, for
+ * every call in the program; intrinsic names are not reserved, so they
+ * remain free for variables too.
+ */
+public enum Intrinsic {
+
+    ABS("abs", Type.INTEGER, true, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) {
+            return Value.ofInteger(Math.abs(args[0].asInteger()));
+        }
+    },
+    MIN("min", Type.INTEGER, true, Type.INTEGER, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) {
+            return Value.ofInteger(Math.min(args[0].asInteger(), args[1].asInteger()));
+        }
+    },
+    MAX("max", Type.INTEGER, true, Type.INTEGER, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) {
+            return Value.ofInteger(Math.max(args[0].asInteger(), args[1].asInteger()));
+        }
+    },
+    /** base to the power exp, wrapping around on overflow like * does. */
+    POW("pow", Type.INTEGER, false, Type.INTEGER, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) throws ExecutionException {
+            int base = args[0].asInteger();
+            int exp = args[1].asInteger();
+            if (exp < 0) {
+                throw new ExecutionException("Negative exponent " + exp + " in pow", line, column);
+            }
+            int result = 1;
+            while (exp != 0) {
+                if ((exp & 1) != 0) {
+                    result *= base;
+                }
+                base *= base;
+                exp >>>= 1;
+            }
+            return Value.ofInteger(result);
+        }
+    },
+    /** The largest r with r * r <= n. */
+    ISQRT("isqrt", Type.INTEGER, false, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) throws ExecutionException {
+            int n = args[0].asInteger();
+            if (n < 0) {
+                throw new ExecutionException("isqrt of negative number " + n, line, column);
+            }
+            long r = (long) Math.sqrt(n);
+            // the double square root can be one off either way near perfect squares
+            while (r * r > n) {
+                r--;
+            }
+            while ((r + 1) * (r + 1) <= n) {
+                r++;
+            }
+            return Value.ofInteger((int) r);
+        }
+    },
+    /** The characters of s from begin up to, but not including, end. */
+    SUBSTRING("substring", Type.STRING, false, Type.STRING, Type.INTEGER, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) throws ExecutionException {
+            int length = args[0].stringLength();
+            int begin = args[1].asInteger();
+            int end = args[2].asInteger();
+            if (begin < 0 || end < begin || end > length) {
+                throw new ExecutionException("Substring [" + begin + ", " + end
+                        + ") is out of range for a string of length " + length, line, column);
+            }
+            return Value.ofString(args[0].asString().substring(begin, end));
+        }
+    },
+    TO_STRING("to_string", Type.STRING, true, Type.INTEGER) {
+        @Override
+        public Value apply(Value[] args, int line, int column) {
+            return Value.ofString(Integer.toString(args[0].asInteger()));
+        }
+    };
+
+    private static final Map<String, Intrinsic> BY_NAME = new HashMap<>();
+
+    static {
+        for (Intrinsic intrinsic : values()) {
+            BY_NAME.put(intrinsic.name, intrinsic);
+        }
+    }
+
+    private final String name;
+    private final Type returnType;
+    private final boolean total;
+    private final List<Type> paramTypes;
+
+    Intrinsic(String name, Type returnType, boolean total, Type... paramTypes) {
+        this.name = name;
+        this.returnType = returnType;
+        this.total = total;
+        this.paramTypes = List.of(paramTypes);
+    }
+
+    /**
+     * The intrinsic of that name, or null.  Callers must look among the
+     * program's own functions first.
+     */
+    public static Intrinsic lookup(String name) {
+        return BY_NAME.get(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    public List<Type> getParamTypes() {
+        return paramTypes;
+    }
+
+    /**
+     * Whether every call with well-typed arguments returns a value rather
+     * than raising.
+     */
+    public boolean isTotal() {
+        return total;
+    }
+
+    /**
+     * Computes the result; errors are reported at the given position.
+     */
+    public abstract Value apply(Value[] args, int line, int column) throws ExecutionException;
+}
@@ -0,0 +1,109 @@
+package splat.executor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the results of one pure function, keyed on its argument
+ * values.  When it is full the least recently used entry is evicted.  The
+ * hit, miss and eviction counters are kept for tuning the capacity.
+ *
+ * A cache is safe to share between threads, for calls that parallel
+ * evaluation runs on a ForkJoinPool.
+ */
+public final class MemoCache {
+
+    private final String name;
+    private final int capacity;
+    private final LinkedHashMap<Key, Value> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MemoCache(String name, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+                if (size() > MemoCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for the arguments, or null on a miss.
+     */
+    public synchronized Value lookup(Value[] args) {
+        Value result = entries.get(new Key(args));
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    public synchronized void store(Value[] args, Value result) {
+        entries.put(new Key(args), result);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("memo %s: %d hits, %d misses, %d evictions, %d/%d entries",
+                name, hits, misses, evictions, entries.size(), capacity);
+    }
+
+    private static final class Key {
+        private final Value[] args;
+        private final int hash;
+
+        Key(Value[] args) {
+            this.args = args;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(args, ((Key) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
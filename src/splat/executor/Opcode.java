@@ -0,0 +1,60 @@
+package splat.executor;
+
+/**
+ * Instruction set of the StackMachine.  Every instruction is an opcode plus
+ * a single int operand; the operand is unused by most opcodes.
+ */
+final class Opcode {
+
+    static final int CONST = 0;          // push constants[arg]
+    static final int LOAD = 1;           // push frame slot arg
+    static final int STORE = 2;          // pop into frame slot arg
+    static final int POP = 3;
+
+    static final int ADD = 10;
+    static final int SUB = 11;
+    static final int MUL = 12;
+    static final int DIV = 13;
+    static final int MOD = 14;
+    static final int NEG = 15;
+    static final int DIV_UNCHECKED = 16; // divisor proven nonzero
+    static final int MOD_UNCHECKED = 17;
+    static final int CONCAT = 18;        // string +
+
+    static final int LT = 20;
+    static final int LE = 21;
+    static final int GT = 22;
+    static final int GE = 23;
+    static final int EQ = 24;
+    static final int NE = 25;
+
+    static final int NOT = 32;
+
+    static final int JUMP = 40;          // pc = arg
+    static final int JUMP_IF_FALSE = 41; // pop, pc = arg when false
+    static final int JUMP_IF_TRUE = 42;  // pop, pc = arg when true
+    static final int SWITCH = 43;        // pop case key, pc = caseTargets[arg] of its arm in caseTables[arg]
+
+    static final int CALL = 50;          // call functions[arg]
+    static final int RETURN = 51;        // pop return value, leave frame
+    static final int RETURN_VOID = 52;
+    static final int FALL_OFF = 53;      // end of a function body
+    static final int HALT = 54;          // end of the main program body
+    static final int INTRINSIC = 55;     // pop the arguments of Intrinsic arg, push its result
+    static final int HOST_CALL = 56;     // pop the arguments of host function arg, push any result
+
+    static final int PRINT = 60;
+    static final int PRINT_LINE = 61;
+    static final int NEWLINE = 62;
+
+    static final int NEW_ARRAY = 70;     // pop size, push a new array like constants[arg]
+    static final int LOAD_ELEMENT = 71;  // pop index or key, pop array or map, push the element
+    static final int STORE_ELEMENT = 72; // pop value, pop index or key, pop array or map, store
+    static final int LENGTH = 73;        // pop array or string, push its length
+    static final int NEW_MAP = 74;       // push a new map like constants[arg]
+    static final int CONTAINS = 75;      // pop key, pop map, push whether the map has the key
+    static final int SIZE = 76;          // pop map, push its size
+
+    private Opcode() {
+    }
+}
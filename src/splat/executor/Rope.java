@@ -0,0 +1,86 @@
+package splat.executor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The contents of a String value built by concatenation, kept as a tree of
+ * its two halves until someone needs the characters.  Concatenating is then
+ * O(1), so a string grown piece by piece in a loop costs O(total length)
+ * when it is finally flattened, instead of a full copy per step.
+ *
+ * Flattening walks the tree without recursion, since a loop builds a tree
+ * as deep as it has iterations, and caches the result.  The halves are
+ * dropped once the result is cached, or every flattened prefix of a
+ * string grown in a loop would stay reachable from the ropes built on it.
+ * Several threads may flatten the same rope; at worst they each do the
+ * work once.
+ */
+final class Rope {
+
+    // String or Rope, both null once flat is set
+    private volatile Object left;
+    private volatile Object right;
+    private final int length;
+    private volatile String flat;
+
+    Rope(Object left, Object right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    int length() {
+        return length;
+    }
+
+    String flatten() {
+        String result = flat;
+        if (result == null) {
+            result = new String(copyChars());
+            // flat is written first, so whoever sees a half gone finds it
+            flat = result;
+            left = null;
+            right = null;
+        }
+        return result;
+    }
+
+    /**
+     * Fills the characters from the end, so that a left-leaning tree, the
+     * shape s := (s + x) builds, keeps the pending stack short.
+     */
+    private char[] copyChars() {
+        char[] chars = new char[length];
+        int end = length;
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object part = pending.pop();
+            if (part instanceof Rope) {
+                Rope rope = (Rope) part;
+                String done = rope.flat;
+                if (done == null) {
+                    Object ropeLeft = rope.left;
+                    Object ropeRight = rope.right;
+                    if (ropeLeft != null && ropeRight != null) {
+                        pending.push(ropeLeft);
+                        pending.push(ropeRight);
+                        continue;
+                    }
+                    done = rope.flat;
+                }
+                part = done;
+            }
+            String piece = (String) part;
+            end -= piece.length();
+            piece.getChars(0, piece.length(), chars, end);
+        }
+        return chars;
+    }
+
+    @Override
+    public String toString() {
+        return flatten();
+    }
+}
@@ -0,0 +1,458 @@
+package splat.executor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.AddNode;
+import splat.parser.elements.AndNode;
+import splat.parser.elements.ArithmeticOp;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.DivideNode;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
+import splat.parser.elements.LogicalOp;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.NewMap;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Translates an analyzed ProgramAST into CompiledFunctions for the
+ * StackMachine.  Variables are resolved to frame slots here, so the machine
+ * never looks anything up by name.
+ */
+public class StackCompiler {
+
+    private final ProgramAST progAST;
+    private final Map<String, Integer> functionIndex;
+    private final List<FunctionDecl> functionDecls;
+
+    public StackCompiler(ProgramAST progAST) {
+        this.progAST = progAST;
+        this.functionIndex = new HashMap<>();
+        this.functionDecls = new ArrayList<>();
+
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                FunctionDecl funcDecl = (FunctionDecl) decl;
+                functionIndex.put(funcDecl.getName().getLexeme(), functionDecls.size());
+                functionDecls.add(funcDecl);
+            }
+        }
+    }
+
+    public CompiledFunction[] compileFunctions() throws ExecutionException {
+        CompiledFunction[] compiled = new CompiledFunction[functionDecls.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compileFunction(functionDecls.get(i));
+        }
+        return compiled;
+    }
+
+    /**
+     * The host function behind each function index, or null where the
+     * function is the program's own.
+     */
+    public HostFunction[] hostFunctions() {
+        HostFunction[] hosts = new HostFunction[functionDecls.size()];
+        for (int i = 0; i < hosts.length; i++) {
+            if (functionDecls.get(i) instanceof HostFunctionDecl) {
+                hosts[i] = ((HostFunctionDecl) functionDecls.get(i)).getHost();
+            }
+        }
+        return hosts;
+    }
+
+    public CompiledFunction compileMain() throws ExecutionException {
+        FunctionBuilder builder = new FunctionBuilder(FrameLayout.forProgram(progAST));
+        for (Statement stmt : progAST.getStmts()) {
+            builder.compileStatement(stmt);
+        }
+        builder.emit(Opcode.HALT, 0, progAST);
+        return builder.build();
+    }
+
+    private CompiledFunction compileFunction(FunctionDecl decl) throws ExecutionException {
+        FunctionBuilder builder = new FunctionBuilder(FrameLayout.of(decl));
+        if (decl.getBody() != null) {
+            for (Statement stmt : decl.getBody()) {
+                builder.compileStatement(stmt);
+            }
+        }
+        builder.emit(Opcode.FALL_OFF, 0, decl);
+        return builder.build();
+    }
+
+    private class FunctionBuilder {
+
+        private final FrameLayout layout;
+
+        private final List<Value> constants = new ArrayList<>();
+        private final Map<Value, Integer> constantIndex = new HashMap<>();
+        private final List<CaseTable> caseTables = new ArrayList<>();
+        private final List<int[]> caseTargets = new ArrayList<>();
+
+        private int[] ops = new int[32];
+        private int[] args = new int[32];
+        private int[] lines = new int[32];
+        private int[] columns = new int[32];
+        private int size;
+
+        private int stackDepth;
+        private int maxStack;
+
+        FunctionBuilder(FrameLayout layout) {
+            this.layout = layout;
+        }
+
+        CompiledFunction build() {
+            return new CompiledFunction(layout.getName(),
+                    Arrays.copyOf(ops, size), Arrays.copyOf(args, size),
+                    Arrays.copyOf(lines, size), Arrays.copyOf(columns, size),
+                    constants.toArray(new Value[0]),
+                    caseTables.toArray(new CaseTable[0]), caseTargets.toArray(new int[0][]),
+                    layout.getParamCount(), layout.getSlotCount(), maxStack, layout.getDefaults(),
+                    layout.getReturnType() != Type.VOID);
+        }
+
+        void compileStatement(Statement stmt) throws ExecutionException {
+            // Every statement starts and ends with an empty operand stack
+            stackDepth = 0;
+            if (stmt instanceof Assignment) {
+                Assignment assignment = (Assignment) stmt;
+                compileExpression(assignment.getExpression());
+                emit(Opcode.STORE, slotOf(assignment.getVariable().getLexeme(), stmt), stmt);
+            } else if (stmt instanceof PrintStmt) {
+                compilePrint((PrintStmt) stmt);
+            } else if (stmt instanceof ReturnStmt) {
+                ReturnStmt ret = (ReturnStmt) stmt;
+                if (ret.getExpr() == null) {
+                    emit(Opcode.RETURN_VOID, 0, stmt);
+                } else {
+                    compileExpression(ret.getExpr());
+                    emit(Opcode.RETURN, 0, stmt);
+                }
+            } else if (stmt instanceof IfThenElse) {
+                compileIf((IfThenElse) stmt);
+            } else if (stmt instanceof WhileLoop) {
+                compileWhile((WhileLoop) stmt);
+            } else if (stmt instanceof CaseStmt) {
+                compileCase((CaseStmt) stmt);
+            } else if (stmt instanceof Block) {
+                compileStatements(((Block) stmt).getStatements());
+            } else if (stmt instanceof CountedLoop) {
+                compileStatements(((CountedLoop) stmt).getEquivalentStatements());
+            } else if (stmt instanceof ForLoop) {
+                compileStatements(((ForLoop) stmt).getEquivalentStatements());
+            } else if (stmt instanceof FunctionCallStmt) {
+                compileCall(((FunctionCallStmt) stmt).getCall());
+            } else if (stmt instanceof ExpressionStmt) {
+                compileExpression(((ExpressionStmt) stmt).getExpression());
+                emit(Opcode.POP, 0, stmt);
+            } else if (stmt instanceof ArrayAssignment) {
+                ArrayAssignment store = (ArrayAssignment) stmt;
+                emit(Opcode.LOAD, slotOf(store.getVariable().getLexeme(), stmt), stmt);
+                compileExpression(store.getIndex());
+                compileExpression(store.getExpression());
+                // bounds errors point at the bracket, as in the tree walker
+                emit(Opcode.STORE_ELEMENT, 0, store.getBracket().getLine(), store.getBracket().getCol());
+            } else {
+                throw new ExecutionException("Statement cannot be compiled for the stack machine: " + stmt, stmt);
+            }
+        }
+
+        private void compileStatements(List<Statement> stmts) throws ExecutionException {
+            for (Statement stmt : stmts) {
+                compileStatement(stmt);
+            }
+        }
+
+        private void compilePrint(PrintStmt stmt) throws ExecutionException {
+            if (stmt.getExpr() == null) {
+                emit(Opcode.NEWLINE, 0, stmt);
+                return;
+            }
+            compileExpression(stmt.getExpr());
+            boolean isPrintLine = "print_line".equals(stmt.getStartToken().getLexeme());
+            emit(isPrintLine ? Opcode.PRINT_LINE : Opcode.PRINT, 0, stmt);
+        }
+
+        private void compileIf(IfThenElse stmt) throws ExecutionException {
+            compileExpression(stmt.getCondition());
+            int toElse = emit(Opcode.JUMP_IF_FALSE, -1, stmt);
+            compileStatements(stmt.getThenStmts());
+            int toEnd = emit(Opcode.JUMP, -1, stmt);
+            args[toElse] = size;
+            compileStatements(stmt.getElseStmts());
+            args[toEnd] = size;
+        }
+
+        private void compileWhile(WhileLoop stmt) throws ExecutionException {
+            int top = size;
+            compileExpression(stmt.getCondition());
+            int toEnd = emit(Opcode.JUMP_IF_FALSE, -1, stmt);
+            compileStatements(stmt.getBody());
+            emit(Opcode.JUMP, top, stmt);
+            args[toEnd] = size;
+        }
+
+        /**
+         * One SWITCH through the statement's CaseTable, then each arm in
+         * order with the else part last; all but the last jump to the end.
+         */
+        private void compileCase(CaseStmt stmt) throws ExecutionException {
+            CaseTable table = stmt.getTable();
+            int[] targets = new int[table.getArmCount() + 1];
+            compileExpression(stmt.getScrutinee());
+            emit(Opcode.SWITCH, caseTables.size(), stmt);
+            caseTables.add(table);
+            caseTargets.add(targets);
+            List<Integer> toEnd = new ArrayList<>();
+            for (int arm = 0; arm < targets.length; arm++) {
+                targets[arm] = size;
+                compileStatements(stmt.getArmStatements(arm));
+                if (arm < targets.length - 1) {
+                    toEnd.add(emit(Opcode.JUMP, -1, stmt));
+                }
+            }
+            for (int jump : toEnd) {
+                args[jump] = size;
+            }
+        }
+
+        private void compileExpression(Expression expr) throws ExecutionException {
+            if (expr instanceof Literal) {
+                emit(Opcode.CONST, constantOf(decodeLiteral((Literal) expr)), expr);
+            } else if (expr instanceof VariableRef) {
+                emit(Opcode.LOAD, slotOf(((VariableRef) expr).getName().getLexeme(), expr), expr);
+            } else if (expr instanceof LogicalOp) {
+                compileShortCircuit((LogicalOp) expr);
+            } else if (expr instanceof BinaryOp) {
+                BinaryOp binOp = (BinaryOp) expr;
+                compileExpression(binOp.getLeftExpr());
+                compileExpression(binOp.getRightExpr());
+                emit(binaryOpcode(binOp), 0, expr);
+            } else if (expr instanceof UnaryOp) {
+                UnaryOp unOp = (UnaryOp) expr;
+                compileExpression(unOp.getExpr());
+                emit("-".equals(unOp.getOperator().getLexeme()) ? Opcode.NEG : Opcode.NOT, 0, expr);
+            } else if (expr instanceof FunctionCall) {
+                compileCall((FunctionCall) expr);
+            } else if (expr instanceof ParallelOperands) {
+                compileExpression(((ParallelOperands) expr).getExpression());
+            } else if (expr instanceof ArrayIndex) {
+                compileExpression(((ArrayIndex) expr).getArray());
+                compileExpression(((ArrayIndex) expr).getIndex());
+                emit(Opcode.LOAD_ELEMENT, 0, expr);
+            } else if (expr instanceof ArrayLength) {
+                compileExpression(((ArrayLength) expr).getArray());
+                emit(Opcode.LENGTH, 0, expr);
+            } else if (expr instanceof NewArray) {
+                NewArray alloc = (NewArray) expr;
+                compileExpression(alloc.getSize());
+                emit(Opcode.NEW_ARRAY, constantOf(Value.defaultValue(declaredType(alloc.getTypeToken(), alloc))), expr);
+            } else if (expr instanceof NewMap) {
+                NewMap alloc = (NewMap) expr;
+                emit(Opcode.NEW_MAP, constantOf(Value.defaultValue(declaredType(alloc.getTypeToken(), alloc))), expr);
+            } else if (expr instanceof MapContains) {
+                compileExpression(((MapContains) expr).getMap());
+                compileExpression(((MapContains) expr).getKey());
+                emit(Opcode.CONTAINS, 0, expr);
+            } else if (expr instanceof MapSize) {
+                compileExpression(((MapSize) expr).getMap());
+                emit(Opcode.SIZE, 0, expr);
+            } else {
+                throw new ExecutionException("Expression cannot be compiled for the stack machine: " + expr, expr);
+            }
+        }
+
+        /**
+         * and/or jump over their right operand once the left one decides
+         * the result, matching AndNode and OrNode in the tree walker.
+         */
+        private void compileShortCircuit(LogicalOp logicalOp) throws ExecutionException {
+            boolean isAnd = logicalOp instanceof AndNode;
+            compileExpression(logicalOp.getLeftExpr());
+            int toShortCut = emit(isAnd ? Opcode.JUMP_IF_FALSE : Opcode.JUMP_IF_TRUE, -1, logicalOp);
+            compileExpression(logicalOp.getRightExpr());
+            int toEnd = emit(Opcode.JUMP, -1, logicalOp);
+            args[toShortCut] = size;
+            emit(Opcode.CONST, constantOf(Value.ofBoolean(!isAnd)), logicalOp);
+            // only one of the two paths leaves its operand on the stack
+            stackDepth--;
+            args[toEnd] = size;
+        }
+
+        private void compileCall(FunctionCall call) throws ExecutionException {
+            String funcName = call.getName().getLexeme();
+            Integer index = functionIndex.get(funcName);
+            Intrinsic intrinsic = index == null ? Intrinsic.lookup(funcName) : null;
+            if (intrinsic != null) {
+                for (Expression arg : call.getArgs()) {
+                    compileExpression(arg);
+                }
+                emit(Opcode.INTRINSIC, intrinsic.ordinal(), call);
+                stackDepth -= intrinsic.getParamTypes().size() - 1;
+                maxStack = Math.max(maxStack, stackDepth);
+                return;
+            }
+            if (index == null) {
+                throw new ExecutionException("Function '" + funcName + "' is not defined", call);
+            }
+            for (Expression arg : call.getArgs()) {
+                compileExpression(arg);
+            }
+            FunctionDecl decl = functionDecls.get(index);
+            emit(decl instanceof HostFunctionDecl ? Opcode.HOST_CALL : Opcode.CALL, index, call);
+
+            FrameLayout callee = FrameLayout.of(decl);
+            stackDepth -= callee.getParamCount();
+            if (callee.getReturnType() != Type.VOID) {
+                stackDepth++;
+                maxStack = Math.max(maxStack, stackDepth);
+            }
+        }
+
+        private int binaryOpcode(BinaryOp binOp) throws ExecutionException {
+            if (binOp instanceof AddNode && ((AddNode) binOp).isConcatenation()) {
+                return Opcode.CONCAT;
+            }
+            if (binOp instanceof ArithmeticOp && ((ArithmeticOp) binOp).isDivisorNonZero()) {
+                return binOp instanceof DivideNode ? Opcode.DIV_UNCHECKED : Opcode.MOD_UNCHECKED;
+            }
+            String opLexeme = binOp.getOperator().getLexeme();
+            switch (opLexeme) {
+                case "+": return Opcode.ADD;
+                case "-": return Opcode.SUB;
+                case "*": return Opcode.MUL;
+                case "/": return Opcode.DIV;
+                case "%": return Opcode.MOD;
+                case "<": return Opcode.LT;
+                case "<=": return Opcode.LE;
+                case ">": return Opcode.GT;
+                case ">=": return Opcode.GE;
+                case "==": return Opcode.EQ;
+                case "!=": return Opcode.NE;
+                default:
+                    throw new ExecutionException("Unknown operator '" + opLexeme + "'", binOp);
+            }
+        }
+
+        private Value decodeLiteral(Literal literal) throws ExecutionException {
+            Value constant = literal.getConstant();
+            if (constant == null) {
+                throw new ExecutionException("Unknown literal '" + literal.getValue() + "'", literal);
+            }
+            return constant;
+        }
+
+        private Type declaredType(Token typeToken, ASTElement alloc) throws ExecutionException {
+            try {
+                return Type.fromToken(typeToken);
+            } catch (SemanticAnalysisException ex) {
+                throw new ExecutionException(ex.getMessage(), alloc);
+            }
+        }
+
+        private int constantOf(Value value) {
+            Integer index = constantIndex.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndex.put(value, index);
+            }
+            return index;
+        }
+
+        private int slotOf(String varName, ASTElement elem) throws ExecutionException {
+            int slot = layout.slotOf(varName);
+            if (slot < 0) {
+                throw new ExecutionException("Variable '" + varName + "' is not defined", elem);
+            }
+            return slot;
+        }
+
+        int emit(int op, int arg, ASTElement elem) {
+            return emit(op, arg, elem.getLine(), elem.getColumn());
+        }
+
+        int emit(int op, int arg, int line, int column) {
+            if (size == ops.length) {
+                int capacity = size * 2;
+                ops = Arrays.copyOf(ops, capacity);
+                args = Arrays.copyOf(args, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            lines[size] = line;
+            columns[size] = column;
+            trackStackEffect(op, arg);
+            return size++;
+        }
+
+        private void trackStackEffect(int op, int arg) {
+            switch (op) {
+                case Opcode.CONST:
+                case Opcode.LOAD:
+                case Opcode.NEW_MAP:
+                    stackDepth++;
+                    break;
+                case Opcode.CALL:
+                case Opcode.HOST_CALL:
+                case Opcode.INTRINSIC:
+                    // accounted for by compileCall, which knows the callee
+                case Opcode.NEG:
+                case Opcode.NOT:
+                case Opcode.NEW_ARRAY:
+                case Opcode.LENGTH:
+                case Opcode.SIZE:
+                case Opcode.JUMP:
+                case Opcode.RETURN_VOID:
+                case Opcode.FALL_OFF:
+                case Opcode.HALT:
+                case Opcode.NEWLINE:
+                    break;
+                default:
+                    // binary operators, stores, conditional jumps, prints, returns
+                    stackDepth--;
+                    break;
+                case Opcode.STORE_ELEMENT:
+                    stackDepth -= 3;
+                    break;
+            }
+            maxStack = Math.max(maxStack, stackDepth);
+        }
+    }
+}
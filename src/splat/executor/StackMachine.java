@@ -0,0 +1,401 @@
+package splat.executor;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Iterative engine for ExecutionMode.STACK.
+ *
+ * Every SPLAT call frame lives in heap arrays: parameters, locals and the
+ * operand stack share one growable Value array, and the caller's function,
+ * return address and base pointer are pushed onto parallel frame arrays.
+ * Calling a function never recurses in Java, so the only limit on SPLAT
+ * recursion is maxCallDepth, which is reported as an ExecutionException.
+ */
+public class StackMachine {
+
+    public static final int DEFAULT_MAX_CALL_DEPTH = 10_000_000;
+
+    private static final int INITIAL_STACK_SIZE = 1024;
+    private static final int INITIAL_FRAME_COUNT = 64;
+    private static final Intrinsic[] INTRINSICS = Intrinsic.values();
+
+    private final ProgramAST progAST;
+    private final int maxCallDepth;
+
+    private Value[] stack;
+    private CompiledFunction[] callerFunctions;
+    private int[] callerPcs;
+    private int[] callerBases;
+
+    public StackMachine(ProgramAST progAST) {
+        this(progAST, DEFAULT_MAX_CALL_DEPTH);
+    }
+
+    public StackMachine(ProgramAST progAST, int maxCallDepth) {
+        if (maxCallDepth < 0) {
+            throw new IllegalArgumentException("maxCallDepth must not be negative");
+        }
+        this.progAST = progAST;
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    public void runProgram() throws ExecutionException {
+        StackCompiler compiler = new StackCompiler(progAST);
+        CompiledFunction[] functions = compiler.compileFunctions();
+        CompiledFunction main = compiler.compileMain();
+        HostFunction[] hosts = compiler.hostFunctions();
+
+        stack = new Value[Math.max(INITIAL_STACK_SIZE, main.frameSize())];
+        callerFunctions = new CompiledFunction[INITIAL_FRAME_COUNT];
+        callerPcs = new int[INITIAL_FRAME_COUNT];
+        callerBases = new int[INITIAL_FRAME_COUNT];
+
+        try {
+            run(main, functions, hosts);
+        } finally {
+            stack = null;
+            callerFunctions = null;
+        }
+    }
+
+    @SuppressWarnings("fallthrough")
+    private void run(CompiledFunction main, CompiledFunction[] functions,
+                     HostFunction[] hosts) throws ExecutionException {
+        PrintStream out = System.out;
+
+        CompiledFunction fn = main;
+        int[] ops = fn.ops;
+        int[] args = fn.args;
+        Value[] constants = fn.constants;
+
+        System.arraycopy(fn.defaults, 0, stack, 0, fn.slotCount);
+        int bp = 0;
+        int sp = fn.slotCount;
+        int pc = 0;
+        int depth = 0;
+
+        Value[] stack = this.stack;
+
+        while (true) {
+            int op = ops[pc];
+            int arg = args[pc];
+            pc++;
+
+            switch (op) {
+                case Opcode.CONST:
+                    stack[sp++] = constants[arg];
+                    break;
+                case Opcode.LOAD:
+                    stack[sp++] = stack[bp + arg];
+                    break;
+                case Opcode.STORE:
+                    stack[bp + arg] = stack[--sp];
+                    break;
+                case Opcode.POP:
+                    stack[--sp] = null;
+                    break;
+
+                case Opcode.ADD: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() + right);
+                    break;
+                }
+                case Opcode.SUB: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() - right);
+                    break;
+                }
+                case Opcode.MUL: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() * right);
+                    break;
+                }
+                case Opcode.DIV: {
+                    int right = stack[--sp].asInteger();
+                    ensureNonZeroDivisor(right, fn, pc - 1);
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() / right);
+                    break;
+                }
+                case Opcode.MOD: {
+                    int right = stack[--sp].asInteger();
+                    ensureNonZeroDivisor(right, fn, pc - 1);
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() % right);
+                    break;
+                }
+                case Opcode.DIV_UNCHECKED: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() / right);
+                    break;
+                }
+                case Opcode.MOD_UNCHECKED: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].asInteger() % right);
+                    break;
+                }
+                case Opcode.NEG:
+                    stack[sp - 1] = Value.ofInteger(-stack[sp - 1].asInteger());
+                    break;
+                case Opcode.CONCAT: {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = Value.concat(stack[sp - 1], right, fn.lines[pc - 1], fn.columns[pc - 1]);
+                    stack[sp] = null;
+                    break;
+                }
+
+                case Opcode.LT: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofBoolean(stack[sp - 1].asInteger() < right);
+                    break;
+                }
+                case Opcode.LE: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofBoolean(stack[sp - 1].asInteger() <= right);
+                    break;
+                }
+                case Opcode.GT: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofBoolean(stack[sp - 1].asInteger() > right);
+                    break;
+                }
+                case Opcode.GE: {
+                    int right = stack[--sp].asInteger();
+                    stack[sp - 1] = Value.ofBoolean(stack[sp - 1].asInteger() >= right);
+                    break;
+                }
+                case Opcode.EQ: {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = Value.ofBoolean(valuesEqual(stack[sp - 1], right));
+                    break;
+                }
+                case Opcode.NE: {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = Value.ofBoolean(!valuesEqual(stack[sp - 1], right));
+                    break;
+                }
+
+                case Opcode.NOT:
+                    stack[sp - 1] = Value.ofBoolean(!stack[sp - 1].asBoolean());
+                    break;
+
+                case Opcode.JUMP:
+                    pc = arg;
+                    break;
+                case Opcode.JUMP_IF_FALSE:
+                    if (!stack[--sp].asBoolean()) {
+                        pc = arg;
+                    }
+                    break;
+                case Opcode.JUMP_IF_TRUE:
+                    if (stack[--sp].asBoolean()) {
+                        pc = arg;
+                    }
+                    break;
+                case Opcode.SWITCH: {
+                    Value key = stack[--sp];
+                    stack[sp] = null;
+                    pc = fn.caseTargets[arg][fn.caseTables[arg].armOf(key)];
+                    break;
+                }
+
+                case Opcode.CALL: {
+                    CompiledFunction callee = functions[arg];
+                    if (depth >= maxCallDepth) {
+                        throw new ExecutionException("Maximum call depth of " + maxCallDepth
+                                + " exceeded calling '" + callee.name + "'",
+                                fn.lines[pc - 1], fn.columns[pc - 1]);
+                    }
+                    if (depth == callerFunctions.length) {
+                        growFrames();
+                    }
+                    callerFunctions[depth] = fn;
+                    callerPcs[depth] = pc;
+                    callerBases[depth] = bp;
+                    depth++;
+
+                    bp = sp - callee.paramCount;
+                    if (bp + callee.frameSize() > stack.length) {
+                        stack = growStack(bp + callee.frameSize());
+                    }
+                    System.arraycopy(callee.defaults, callee.paramCount, stack, sp,
+                            callee.slotCount - callee.paramCount);
+                    sp = bp + callee.slotCount;
+
+                    fn = callee;
+                    ops = fn.ops;
+                    args = fn.args;
+                    constants = fn.constants;
+                    pc = 0;
+                    break;
+                }
+                case Opcode.RETURN: {
+                    Value result = stack[--sp];
+                    Arrays.fill(stack, bp, sp, null);
+                    sp = bp;
+                    depth--;
+                    fn = callerFunctions[depth];
+                    pc = callerPcs[depth];
+                    bp = callerBases[depth];
+                    callerFunctions[depth] = null;
+                    ops = fn.ops;
+                    args = fn.args;
+                    constants = fn.constants;
+                    stack[sp++] = result;
+                    break;
+                }
+                case Opcode.FALL_OFF:
+                    if (fn.returnsValue) {
+                        CompiledFunction caller = callerFunctions[depth - 1];
+                        int callPc = callerPcs[depth - 1] - 1;
+                        throw new ExecutionException("Function did not return a value",
+                                caller.lines[callPc], caller.columns[callPc]);
+                    }
+                    // fall through: a void function may simply run off its end
+                case Opcode.RETURN_VOID:
+                    Arrays.fill(stack, bp, sp, null);
+                    sp = bp;
+                    depth--;
+                    fn = callerFunctions[depth];
+                    pc = callerPcs[depth];
+                    bp = callerBases[depth];
+                    callerFunctions[depth] = null;
+                    ops = fn.ops;
+                    args = fn.args;
+                    constants = fn.constants;
+                    break;
+                case Opcode.HALT:
+                    return;
+
+                case Opcode.PRINT:
+                    out.print(stack[--sp].toString());
+                    stack[sp] = null;
+                    break;
+                case Opcode.PRINT_LINE:
+                    out.println(stack[--sp].toString());
+                    stack[sp] = null;
+                    break;
+                case Opcode.NEWLINE:
+                    out.println();
+                    break;
+
+                case Opcode.NEW_ARRAY: {
+                    int length = stack[sp - 1].asInteger();
+                    if (length < 0) {
+                        throw new ExecutionException("Negative array size " + length,
+                                fn.lines[pc - 1], fn.columns[pc - 1]);
+                    }
+                    stack[sp - 1] = Value.newArray(constants[arg].getType(), length);
+                    break;
+                }
+                case Opcode.LOAD_ELEMENT: {
+                    Value key = stack[--sp];
+                    Value array = stack[sp - 1];
+                    if (array.isMap()) {
+                        stack[sp - 1] = Value.ofInteger(array.getEntry(key, fn.lines[pc - 1], fn.columns[pc - 1]));
+                        break;
+                    }
+                    int index = key.asInteger();
+                    array.checkIndex(index, fn.lines[pc - 1], fn.columns[pc - 1]);
+                    stack[sp - 1] = array.getElement(index);
+                    break;
+                }
+                case Opcode.STORE_ELEMENT: {
+                    Value value = stack[--sp];
+                    Value key = stack[--sp];
+                    Value array = stack[--sp];
+                    if (array.isMap()) {
+                        array.putEntry(key, value.asInteger());
+                    } else {
+                        int index = key.asInteger();
+                        array.checkIndex(index, fn.lines[pc - 1], fn.columns[pc - 1]);
+                        array.setElement(index, value);
+                    }
+                    stack[sp] = null;
+                    stack[sp + 1] = null;
+                    stack[sp + 2] = null;
+                    break;
+                }
+                case Opcode.LENGTH:
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].length());
+                    break;
+                case Opcode.NEW_MAP:
+                    stack[sp++] = Value.newMap(constants[arg].getType());
+                    break;
+                case Opcode.CONTAINS: {
+                    Value key = stack[--sp];
+                    stack[sp - 1] = Value.ofBoolean(stack[sp - 1].containsKey(key));
+                    break;
+                }
+                case Opcode.SIZE:
+                    stack[sp - 1] = Value.ofInteger(stack[sp - 1].mapSize());
+                    break;
+                case Opcode.INTRINSIC: {
+                    Intrinsic intrinsic = INTRINSICS[arg];
+                    int argBase = sp - intrinsic.getParamTypes().size();
+                    Value[] argValues = Arrays.copyOfRange(stack, argBase, sp);
+                    Arrays.fill(stack, argBase, sp, null);
+                    sp = argBase;
+                    stack[sp++] = intrinsic.apply(argValues, fn.lines[pc - 1], fn.columns[pc - 1]);
+                    break;
+                }
+                case Opcode.HOST_CALL: {
+                    HostFunction host = hosts[arg];
+                    int argBase = sp - host.getParamTypes().size();
+                    Value[] argValues = Arrays.copyOfRange(stack, argBase, sp);
+                    Arrays.fill(stack, argBase, sp, null);
+                    sp = argBase;
+                    Value result = host.apply(argValues, fn.lines[pc - 1], fn.columns[pc - 1]);
+                    if (result != null) {
+                        stack[sp++] = result;
+                    }
+                    break;
+                }
+
+                default:
+                    throw new ExecutionException("Unknown instruction " + op + " in '" + fn.name + "'",
+                            fn.lines[pc - 1], fn.columns[pc - 1]);
+            }
+        }
+    }
+
+    private Value[] growStack(int required) {
+        int capacity = stack.length;
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        stack = Arrays.copyOf(stack, capacity);
+        return stack;
+    }
+
+    private void growFrames() {
+        int capacity = callerFunctions.length * 2;
+        callerFunctions = Arrays.copyOf(callerFunctions, capacity);
+        callerPcs = Arrays.copyOf(callerPcs, capacity);
+        callerBases = Arrays.copyOf(callerBases, capacity);
+    }
+
+    private static void ensureNonZeroDivisor(int divisor, CompiledFunction fn, int pc) throws ExecutionException {
+        if (divisor == 0) {
+            throw new ExecutionException("Division by zero", fn.lines[pc], fn.columns[pc]);
+        }
+    }
+
+    private static boolean valuesEqual(Value leftValue, Value rightValue) {
+        if (leftValue.getType() != rightValue.getType()) {
+            return false;
+        }
+        switch (leftValue.getType()) {
+            case INTEGER:
+                return leftValue.asInteger() == rightValue.asInteger();
+            case BOOLEAN:
+                return leftValue.asBoolean() == rightValue.asBoolean();
+            case STRING:
+                return leftValue.stringLength() == rightValue.stringLength()
+                        && leftValue.asString().equals(rightValue.asString());
+            default:
+                return false;
+        }
+    }
+}
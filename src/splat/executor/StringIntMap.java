@@ -0,0 +1,112 @@
+package splat.executor;
+
+import java.util.Arrays;
+
+/**
+ * The table behind a Map<String, Integer> value: open addressing with
+ * linear probing, values in an int array.  Each slot caches its key's
+ * spread hash, so a probe compares strings only when the hashes agree and
+ * growing the table never hashes a key again.  Entries are never removed.
+ */
+public final class StringIntMap {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The slot holding key, for valueAt, or -1 if the map does not have it.
+     */
+    public int find(String key) {
+        int h = hash(key);
+        int mask = keys.length - 1;
+        for (int slot = h & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == h && keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    public boolean containsKey(String key) {
+        return find(key) >= 0;
+    }
+
+    public void put(String key, int value) {
+        int h = hash(key);
+        int mask = keys.length - 1;
+        int slot = h & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == h && keys[slot].equals(key)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = h;
+        values[slot] = value;
+        // at most half full, so probe sequences stay short
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        int capacity = oldKeys.length * 2;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The entries in ascending key order, as {key=value, ...}.
+     */
+    @Override
+    public String toString() {
+        String[] sorted = new String[size];
+        int n = 0;
+        for (String key : keys) {
+            if (key != null) {
+                sorted[n++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < sorted.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(sorted[i]).append('=').append(valueAt(find(sorted[i])));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -1,14 +1,60 @@
 package splat.executor;
 
+import java.util.Arrays;
+
 import splat.semanticanalyzer.Type;
 
-public class Value {
+/**
+ * Runtime value.  Integers and booleans are kept in a primitive field, so
+ * reading them never unboxes; strings, arrays and maps use the reference
+ * field.  An array value holds an int[], boolean[] or String[] directly, a
+ * map value an IntIntMap or StringIntMap.  A string made by concatenation
+ * may hold a Rope, which is only flattened into a String when its
+ * characters are needed: to print it, compare it or use it as a key.
+ *
+ * Values are immutable except for the elements of an array and the entries
+ * of a map, which belong to the array or map rather than to any variable:
+ * assigning or passing one shares it, and equality of arrays and maps is
+ * identity.
+ *
+ * Values are shared freely: booleans, the defaults and integers in
+ * [SMALL_INT_MIN, SMALL_INT_MAX] come from preallocated instances, so the
+ * common results of arithmetic and comparisons allocate nothing.
+ */
+public final class Value {
+
+    public static final int SMALL_INT_MIN = -128;
+    public static final int SMALL_INT_MAX = 1023;
+
+    private static final Value[] SMALL_INTS = new Value[SMALL_INT_MAX - SMALL_INT_MIN + 1];
+    static {
+        for (int i = 0; i < SMALL_INTS.length; i++) {
+            SMALL_INTS[i] = new Value(Type.INTEGER, i + SMALL_INT_MIN, null);
+        }
+    }
+
+    public static final Value TRUE = new Value(Type.BOOLEAN, 1, null);
+    public static final Value FALSE = new Value(Type.BOOLEAN, 0, null);
+    public static final Value ZERO = SMALL_INTS[-SMALL_INT_MIN];
+    public static final Value EMPTY_STRING = new Value(Type.STRING, 0, "");
+
+    // shorter concatenations are copied at once, since a Rope costs more
+    // than the characters it would save copying
+    private static final int MIN_ROPE_LENGTH = 64;
+
+    // no element of an empty array can be written, so these can be shared
+    private static final Value EMPTY_INTEGER_ARRAY = new Value(Type.INTEGER_ARRAY, 0, new int[0]);
+    private static final Value EMPTY_BOOLEAN_ARRAY = new Value(Type.BOOLEAN_ARRAY, 0, new boolean[0]);
+    private static final Value EMPTY_STRING_ARRAY = new Value(Type.STRING_ARRAY, 0, new String[0]);
+
     private final Type type;
-    private final Object payload;
+    private final int primitive;
+    private final Object ref;
 
-    public Value(Type type, Object payload) {
+    private Value(Type type, int primitive, Object ref) {
         this.type = type;
-        this.payload = payload;
+        this.primitive = primitive;
+        this.ref = ref;
     }
 
     public Type getType() {
@@ -27,29 +73,232 @@ public class Value {
         return type == Type.STRING;
     }
 
+    public boolean isArray() {
+        return type.isArray();
+    }
+
+    public boolean isMap() {
+        return type.isMap();
+    }
+
     public int asInteger() {
         ensureType(Type.INTEGER, "Not an integer value");
-        return (Integer) payload;
+        return primitive;
     }
 
     public boolean asBoolean() {
         ensureType(Type.BOOLEAN, "Not a boolean value");
-        return (Boolean) payload;
+        return primitive != 0;
     }
 
     public String asString() {
         ensureType(Type.STRING, "Not a string value");
-        return (String) payload;
+        Object contents = ref;
+        return contents instanceof String ? (String) contents : ((Rope) contents).flatten();
+    }
+
+    /**
+     * The length of a string, without flattening it.
+     */
+    public int stringLength() {
+        ensureType(Type.STRING, "Not a string value");
+        Object contents = ref;
+        return contents instanceof String ? ((String) contents).length() : ((Rope) contents).length();
+    }
+
+    public int[] asIntArray() {
+        ensureType(Type.INTEGER_ARRAY, "Not an Integer array");
+        return (int[]) ref;
+    }
+
+    public boolean[] asBooleanArray() {
+        ensureType(Type.BOOLEAN_ARRAY, "Not a Boolean array");
+        return (boolean[]) ref;
+    }
+
+    public String[] asStringArray() {
+        ensureType(Type.STRING_ARRAY, "Not a String array");
+        return (String[]) ref;
+    }
+
+    /**
+     * What length(...) gives: the element count of an array, or the
+     * character count of a string.
+     */
+    public int length() {
+        return type == Type.STRING ? stringLength() : arrayLength();
+    }
+
+    public int arrayLength() {
+        switch (type) {
+            case INTEGER_ARRAY:
+                return ((int[]) ref).length;
+            case BOOLEAN_ARRAY:
+                return ((boolean[]) ref).length;
+            case STRING_ARRAY:
+                return ((String[]) ref).length;
+            default:
+                throw new IllegalStateException("Not an array value");
+        }
+    }
+
+    /**
+     * Raises an ExecutionException at the given position unless index is a
+     * valid element index of this array.
+     */
+    public void checkIndex(int index, int line, int column) throws ExecutionException {
+        int length = arrayLength();
+        if (index < 0 || index >= length) {
+            throw new ExecutionException("Array index " + index + " is out of bounds for length " + length,
+                    line, column);
+        }
+    }
+
+    /**
+     * Reads an element of this array; the index must have been checked.
+     */
+    public Value getElement(int index) {
+        switch (type) {
+            case INTEGER_ARRAY:
+                return ofInteger(((int[]) ref)[index]);
+            case BOOLEAN_ARRAY:
+                return ofBoolean(((boolean[]) ref)[index]);
+            case STRING_ARRAY:
+                return ofString(((String[]) ref)[index]);
+            default:
+                throw new IllegalStateException("Not an array value");
+        }
+    }
+
+    /**
+     * Writes an element of this array; the index must have been checked.
+     */
+    public void setElement(int index, Value element) {
+        switch (type) {
+            case INTEGER_ARRAY:
+                ((int[]) ref)[index] = element.asInteger();
+                break;
+            case BOOLEAN_ARRAY:
+                ((boolean[]) ref)[index] = element.asBoolean();
+                break;
+            case STRING_ARRAY:
+                ((String[]) ref)[index] = element.asString();
+                break;
+            default:
+                throw new IllegalStateException("Not an array value");
+        }
+    }
+
+    public IntIntMap asIntMap() {
+        ensureType(Type.INTEGER_MAP, "Not an Integer-keyed map");
+        return (IntIntMap) ref;
     }
 
+    public StringIntMap asStringMap() {
+        ensureType(Type.STRING_MAP, "Not a String-keyed map");
+        return (StringIntMap) ref;
+    }
+
+    public int mapSize() {
+        if (type == Type.INTEGER_MAP) {
+            return ((IntIntMap) ref).size();
+        }
+        return asStringMap().size();
+    }
+
+    public boolean containsKey(Value key) {
+        if (type == Type.INTEGER_MAP) {
+            return ((IntIntMap) ref).containsKey(key.asInteger());
+        }
+        return asStringMap().containsKey(key.asString());
+    }
+
+    /**
+     * The value this map holds for key, raising an ExecutionException at
+     * the given position if it holds none.
+     */
+    public int getEntry(Value key, int line, int column) throws ExecutionException {
+        int slot;
+        if (type == Type.INTEGER_MAP) {
+            IntIntMap map = (IntIntMap) ref;
+            slot = map.find(key.asInteger());
+            if (slot >= 0) {
+                return map.valueAt(slot);
+            }
+        } else {
+            StringIntMap map = asStringMap();
+            slot = map.find(key.asString());
+            if (slot >= 0) {
+                return map.valueAt(slot);
+            }
+        }
+        throw new ExecutionException("Key " + (key.isString() ? "\"" + key + "\"" : key) + " is not in the map",
+                line, column);
+    }
+
+    public void putEntry(Value key, int value) {
+        if (type == Type.INTEGER_MAP) {
+            ((IntIntMap) ref).put(key.asInteger(), value);
+        } else {
+            asStringMap().put(key.asString(), value);
+        }
+    }
+
+    /**
+     * A new, empty map of the given map type.
+     */
+    public static Value newMap(Type mapType) {
+        switch (mapType) {
+            case INTEGER_MAP:
+                return new Value(mapType, 0, new IntIntMap());
+            case STRING_MAP:
+                return new Value(mapType, 0, new StringIntMap());
+            default:
+                throw new IllegalArgumentException("Not a map type: " + mapType);
+        }
+    }
+
+    /**
+     * A new array of the given array type whose elements all hold the
+     * element type's default.
+     */
+    public static Value newArray(Type arrayType, int length) {
+        switch (arrayType) {
+            case INTEGER_ARRAY:
+                return new Value(arrayType, 0, new int[length]);
+            case BOOLEAN_ARRAY:
+                return new Value(arrayType, 0, new boolean[length]);
+            case STRING_ARRAY:
+                String[] strings = new String[length];
+                Arrays.fill(strings, "");
+                return new Value(arrayType, 0, strings);
+            default:
+                throw new IllegalArgumentException("Not an array type: " + arrayType);
+        }
+    }
+
+    /**
+     * The value a variable of the given type holds before it is assigned;
+     * for an array type, a shared empty array, and for a map type, a new
+     * empty map.
+     */
     public static Value defaultValue(Type type) {
         switch (type) {
             case INTEGER:
-                return new Value(Type.INTEGER, 0);
+                return ZERO;
             case BOOLEAN:
-                return new Value(Type.BOOLEAN, false);
+                return FALSE;
             case STRING:
-                return new Value(Type.STRING, "");
+                return EMPTY_STRING;
+            case INTEGER_ARRAY:
+                return EMPTY_INTEGER_ARRAY;
+            case BOOLEAN_ARRAY:
+                return EMPTY_BOOLEAN_ARRAY;
+            case STRING_ARRAY:
+                return EMPTY_STRING_ARRAY;
+            case INTEGER_MAP:
+            case STRING_MAP:
+                return newMap(type);
             case VOID:
             default:
                 return null;
@@ -57,20 +306,87 @@ public class Value {
     }
 
     public static Value ofInteger(int value) {
-        return new Value(Type.INTEGER, value);
+        if (value >= SMALL_INT_MIN && value <= SMALL_INT_MAX) {
+            return SMALL_INTS[value - SMALL_INT_MIN];
+        }
+        return new Value(Type.INTEGER, value, null);
     }
 
     public static Value ofBoolean(boolean value) {
-        return new Value(Type.BOOLEAN, value);
+        return value ? TRUE : FALSE;
     }
 
     public static Value ofString(String value) {
-        return new Value(Type.STRING, value);
+        if (value.isEmpty()) {
+            return EMPTY_STRING;
+        }
+        return new Value(Type.STRING, 0, value);
+    }
+
+    /**
+     * The string left followed by right.  Long results share the operands
+     * in a Rope rather than copying them.  A result too long for a Java
+     * String is an ExecutionException at the given position.
+     */
+    public static Value concat(Value left, Value right, int line, int column) throws ExecutionException {
+        int leftLength = left.stringLength();
+        int rightLength = right.stringLength();
+        if (leftLength == 0) {
+            return right;
+        } else if (rightLength == 0) {
+            return left;
+        }
+        int length = leftLength + rightLength;
+        if (length < 0) {
+            throw new ExecutionException("String too long", line, column);
+        }
+        if (length < MIN_ROPE_LENGTH) {
+            return new Value(Type.STRING, 0, left.asString().concat(right.asString()));
+        }
+        return new Value(Type.STRING, 0, new Rope(left.ref, right.ref, length));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Value)) return false;
+        Value other = (Value) o;
+        if (type != other.type) {
+            return false;
+        }
+        if (type.isArray() || type.isMap()) {
+            return ref == other.ref;
+        }
+        if (type == Type.STRING) {
+            return stringLength() == other.stringLength() && asString().equals(other.asString());
+        }
+        return primitive == other.primitive;
+    }
+
+    @Override
+    public int hashCode() {
+        if (type.isArray() || type.isMap()) {
+            return System.identityHashCode(ref);
+        }
+        return type == Type.STRING ? asString().hashCode() : 31 * type.ordinal() + primitive;
     }
 
     @Override
     public String toString() {
-        return String.valueOf(payload);
+        switch (type) {
+            case INTEGER:
+                return Integer.toString(primitive);
+            case BOOLEAN:
+                return primitive != 0 ? "true" : "false";
+            case INTEGER_ARRAY:
+                return Arrays.toString((int[]) ref);
+            case BOOLEAN_ARRAY:
+                return Arrays.toString((boolean[]) ref);
+            case STRING_ARRAY:
+                return Arrays.toString((String[]) ref);
+            default:
+                return String.valueOf(ref);
+        }
     }
 
     private void ensureType(Type expected, String message) {
@@ -0,0 +1,102 @@
+package splat.executor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+import splat.semanticanalyzer.Type;
+
+/**
+ * The MethodHandles that convert between Values and the Java types SPLAT's
+ * scalar types are passed as at the boundary with Java code: int for
+ * Integer, boolean for Boolean and String for String.  Integers and
+ * Booleans convert without boxing.
+ */
+public final class ValueHandles {
+
+    private static final MethodHandle AS_INTEGER;
+    private static final MethodHandle AS_BOOLEAN;
+    private static final MethodHandle AS_STRING;
+    private static final MethodHandle OF_INTEGER;
+    private static final MethodHandle OF_BOOLEAN;
+    private static final MethodHandle OF_STRING;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            AS_INTEGER = lookup.findVirtual(Value.class, "asInteger", MethodType.methodType(int.class));
+            AS_BOOLEAN = lookup.findVirtual(Value.class, "asBoolean", MethodType.methodType(boolean.class));
+            AS_STRING = lookup.findVirtual(Value.class, "asString", MethodType.methodType(String.class));
+            OF_INTEGER = lookup.findStatic(Value.class, "ofInteger",
+                    MethodType.methodType(Value.class, int.class));
+            OF_BOOLEAN = lookup.findStatic(Value.class, "ofBoolean",
+                    MethodType.methodType(Value.class, boolean.class));
+            OF_STRING = lookup.findStatic(ValueHandles.class, "ofNonNullString",
+                    MethodType.methodType(Value.class, String.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private ValueHandles() {
+    }
+
+    /**
+     * The Java type a value of the given type is passed as; void.class for
+     * VOID.  Throws IllegalArgumentException for arrays and maps.
+     */
+    public static Class<?> javaType(Type type) {
+        switch (type) {
+            case INTEGER:
+                return int.class;
+            case BOOLEAN:
+                return boolean.class;
+            case STRING:
+                return String.class;
+            case VOID:
+                return void.class;
+            default:
+                throw new IllegalArgumentException(type.getDisplayName() + " cannot be passed to or from Java");
+        }
+    }
+
+    /**
+     * (Value) to the Java type of the given scalar type.
+     */
+    public static MethodHandle toJava(Type type) {
+        javaType(type);
+        switch (type) {
+            case INTEGER:
+                return AS_INTEGER;
+            case BOOLEAN:
+                return AS_BOOLEAN;
+            case STRING:
+                return AS_STRING;
+            default:
+                throw new IllegalArgumentException("void has no values");
+        }
+    }
+
+    /**
+     * The Java type of the given scalar type to (Value).  The one for
+     * String rejects null with a NullPointerException.
+     */
+    public static MethodHandle fromJava(Type type) {
+        javaType(type);
+        switch (type) {
+            case INTEGER:
+                return OF_INTEGER;
+            case BOOLEAN:
+                return OF_BOOLEAN;
+            case STRING:
+                return OF_STRING;
+            default:
+                throw new IllegalArgumentException("void has no values");
+        }
+    }
+
+    private static Value ofNonNullString(String value) {
+        return Value.ofString(Objects.requireNonNull(value, "null String"));
+    }
+}
@@ -0,0 +1,97 @@
+package splat.executor;
+
+import java.util.Arrays;
+
+/**
+ * The tree walker's single, growable store for call frames.  Each active
+ * frame owns a contiguous run of slots; calling a function pushes its
+ * arguments on top of the caller's slots and then bumps the frame pointer
+ * over them, so a call costs a capacity check and a copy of the callee's
+ * default template rather than any per-call maps or lists.
+ *
+ * Frame objects are pooled by call depth and reused, so a Frame must not be
+ * kept after the call that entered it has left it.
+ *
+ * Every slot also has a primitive int shadow.  A CountedLoop keeps its
+ * induction variables there while it runs, so reading them never boxes.
+ */
+public final class ValueStack {
+
+    private static final int INITIAL_SLOTS = 256;
+    private static final int INITIAL_FRAMES = 32;
+
+    Value[] slots;
+    int[] ints;
+    private int top;
+
+    private Frame[] frames;
+    private int depth;
+
+    public ValueStack() {
+        this.slots = new Value[INITIAL_SLOTS];
+        this.ints = new int[INITIAL_SLOTS];
+        this.frames = new Frame[INITIAL_FRAMES];
+    }
+
+    /**
+     * Position at which the next pushed value will be stored.  A caller
+     * records it before evaluating arguments and passes it to enter().
+     */
+    public int top() {
+        return top;
+    }
+
+    public void push(Value value) {
+        if (top == slots.length) {
+            grow(top + 1);
+        }
+        slots[top++] = value;
+    }
+
+    /**
+     * Opens a frame for the given layout whose parameters are the values
+     * already pushed starting at argBase.  Locals are reset to their
+     * defaults from the layout's template.
+     */
+    public Frame enter(FrameLayout layout, int argBase) {
+        int paramCount = layout.getParamCount();
+        int end = argBase + layout.getSlotCount();
+        if (end > slots.length) {
+            grow(end);
+        }
+        System.arraycopy(layout.getDefaults(), paramCount, slots, argBase + paramCount,
+                layout.getSlotCount() - paramCount);
+        top = end;
+
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame(this);
+            frames[depth] = frame;
+        }
+        frame.reset(layout, argBase);
+        depth++;
+        return frame;
+    }
+
+    public void leave(Frame frame) {
+        Arrays.fill(slots, frame.getBase(), top, null);
+        top = frame.getBase();
+        depth--;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private void grow(int required) {
+        int capacity = slots.length;
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        slots = Arrays.copyOf(slots, capacity);
+        ints = Arrays.copyOf(ints, capacity);
+    }
+}
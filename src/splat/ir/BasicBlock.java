@@ -0,0 +1,65 @@
+package splat.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A straight-line run of instructions: the block's phis, its body, and a
+ * single terminator that transfers control to its successors.
+ */
+final class BasicBlock {
+
+    final int id;
+    final List<BasicBlock> preds = new ArrayList<>();
+    final List<Instr> phis = new ArrayList<>();
+    final List<Instr> instrs = new ArrayList<>();
+    Instr terminator;
+
+    /** Reverse-postorder number, assigned by Dominators. */
+    int order = -1;
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    BasicBlock[] successors() {
+        return terminator != null && terminator.targets != null ? terminator.targets : new BasicBlock[0];
+    }
+
+    /**
+     * Drops the edge from pred, together with the phi operands that
+     * belonged to it.
+     */
+    void removePredecessor(BasicBlock pred) {
+        int index = preds.indexOf(pred);
+        preds.remove(index);
+        for (Instr phi : phis) {
+            int[] operands = new int[phi.operands.length - 1];
+            System.arraycopy(phi.operands, 0, operands, 0, index);
+            System.arraycopy(phi.operands, index + 1, operands, index, operands.length - index);
+            phi.operands = operands;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("b").append(id).append(':');
+        if (!preds.isEmpty()) {
+            sb.append("  ; preds");
+            for (BasicBlock pred : preds) {
+                sb.append(" b").append(pred.id);
+            }
+        }
+        sb.append('\n');
+        for (Instr phi : phis) {
+            sb.append("    ").append(phi).append('\n');
+        }
+        for (Instr instr : instrs) {
+            sb.append("    ").append(instr).append('\n');
+        }
+        if (terminator != null) {
+            sb.append("    ").append(terminator).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package splat.ir;
+
+import java.util.Iterator;
+
+/**
+ * Removes copies and trivial phis (those whose operands are all the same
+ * register, apart from the phi itself) by rewriting every use to read the
+ * original register instead.
+ */
+final class CopyPropagation {
+
+    private final IrFunction function;
+    private final int[] replacement;
+
+    CopyPropagation(IrFunction function) {
+        this.function = function;
+        this.replacement = new int[function.registerCount];
+        for (int i = 0; i < replacement.length; i++) {
+            replacement[i] = i;
+        }
+    }
+
+    boolean run() {
+        boolean changed = false;
+        // removing one trivial phi can make another trivial, e.g. in nested loops
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (BasicBlock block : function.blocks) {
+                for (Iterator<Instr> it = block.phis.iterator(); it.hasNext(); ) {
+                    Instr phi = it.next();
+                    int same = phi.op == IrOp.COPY ? find(phi.operands[0]) : trivialValue(phi);
+                    if (same >= 0) {
+                        replacement[phi.dest] = same;
+                        it.remove();
+                        progress = true;
+                    }
+                }
+                for (Iterator<Instr> it = block.instrs.iterator(); it.hasNext(); ) {
+                    Instr instr = it.next();
+                    if (instr.op == IrOp.COPY) {
+                        replacement[instr.dest] = find(instr.operands[0]);
+                        it.remove();
+                        progress = true;
+                    }
+                }
+            }
+            changed |= progress;
+        }
+
+        for (BasicBlock block : function.blocks) {
+            for (Instr phi : block.phis) {
+                rewriteOperands(phi);
+            }
+            for (Instr instr : block.instrs) {
+                rewriteOperands(instr);
+            }
+            rewriteOperands(block.terminator);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the single register a phi merges, or -1 if it merges more
+     * than one.
+     */
+    private int trivialValue(Instr phi) {
+        int same = -1;
+        for (int operand : phi.operands) {
+            int value = find(operand);
+            if (value == phi.dest || value == same) {
+                continue;
+            }
+            if (same >= 0) {
+                return -1;
+            }
+            same = value;
+        }
+        return same;
+    }
+
+    private int find(int register) {
+        while (replacement[register] != register) {
+            register = replacement[register];
+        }
+        return register;
+    }
+
+    private void rewriteOperands(Instr instr) {
+        for (int i = 0; i < instr.operands.length; i++) {
+            instr.operands[i] = find(instr.operands[i]);
+        }
+    }
+}
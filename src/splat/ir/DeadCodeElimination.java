@@ -0,0 +1,146 @@
+package splat.ir;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes code that cannot affect the program's output: branches on a
+ * constant become jumps, blocks no longer reachable from the entry are
+ * dropped, and so are instructions whose result is never used.  Calls,
+ * prints, element accesses, and divisions or allocations that might raise
+ * are always kept.
+ */
+final class DeadCodeElimination {
+
+    private final IrFunction function;
+
+    DeadCodeElimination(IrFunction function) {
+        this.function = function;
+    }
+
+    boolean run() {
+        boolean changed = foldConstantBranches();
+        changed |= removeUnreachableBlocks();
+        changed |= removeDeadInstructions();
+        return changed;
+    }
+
+    private boolean foldConstantBranches() {
+        Instr[] defs = function.definitions();
+        boolean changed = false;
+        for (BasicBlock block : function.blocks) {
+            Instr branch = block.terminator;
+            if (branch.op != IrOp.BRANCH && branch.op != IrOp.SWITCH) {
+                continue;
+            }
+            Instr condition = defs[branch.operands[0]];
+            if (condition == null || condition.op != IrOp.CONST) {
+                continue;
+            }
+            BasicBlock taken = branch.op == IrOp.SWITCH
+                    ? branch.targets[branch.caseTable.armOf(condition.constant)]
+                    : branch.targets[condition.constant.asBoolean() ? 0 : 1];
+            // a switch's targets are distinct blocks, as are a branch's
+            for (BasicBlock untaken : branch.targets) {
+                if (untaken != taken) {
+                    untaken.removePredecessor(block);
+                }
+            }
+            branch.caseTable = null;
+            branch.op = IrOp.JUMP;
+            branch.operands = new int[0];
+            branch.targets = new BasicBlock[] { taken };
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean removeUnreachableBlocks() {
+        Set<BasicBlock> reachable = new HashSet<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        reachable.add(function.entry());
+        worklist.push(function.entry());
+        while (!worklist.isEmpty()) {
+            for (BasicBlock successor : worklist.pop().successors()) {
+                if (reachable.add(successor)) {
+                    worklist.push(successor);
+                }
+            }
+        }
+        if (reachable.size() == function.blocks.size()) {
+            return false;
+        }
+
+        for (BasicBlock block : function.blocks) {
+            if (!reachable.contains(block)) {
+                for (BasicBlock successor : block.successors()) {
+                    if (reachable.contains(successor)) {
+                        successor.removePredecessor(block);
+                    }
+                }
+            }
+        }
+        function.blocks.removeIf(block -> !reachable.contains(block));
+        return true;
+    }
+
+    private boolean removeDeadInstructions() {
+        Instr[] defs = function.definitions();
+        boolean[] live = new boolean[function.registerCount];
+        Deque<Instr> worklist = new ArrayDeque<>();
+
+        for (BasicBlock block : function.blocks) {
+            for (Instr instr : block.instrs) {
+                if (hasEffect(instr, defs)) {
+                    worklist.push(instr);
+                }
+            }
+            worklist.push(block.terminator);
+        }
+        while (!worklist.isEmpty()) {
+            for (int operand : worklist.pop().operands) {
+                if (!live[operand]) {
+                    live[operand] = true;
+                    worklist.push(defs[operand]);
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (BasicBlock block : function.blocks) {
+            changed |= block.phis.removeIf(phi -> !live[phi.dest]);
+            changed |= block.instrs.removeIf(instr -> instr.definesValue() && !live[instr.dest]
+                    && !hasEffect(instr, defs));
+        }
+        return changed;
+    }
+
+    private static boolean hasEffect(Instr instr, Instr[] defs) {
+        switch (instr.op) {
+            case IrOp.CALL:
+            case IrOp.HOST_CALL:
+            case IrOp.PRINT:
+            case IrOp.PRINT_LINE:
+            case IrOp.NEWLINE:
+            case IrOp.LOAD_ELEMENT:
+            case IrOp.STORE_ELEMENT:
+                return true;
+            case IrOp.NEW_ARRAY:
+                Instr size = defs[instr.operands[0]];
+                return size.op != IrOp.CONST || size.constant.asInteger() < 0;
+            case IrOp.INTRINSIC:
+                return !IrOp.intrinsic(instr).isTotal();
+            case IrOp.DIV:
+            case IrOp.MOD:
+                if (instr.divisorNonZero) {
+                    return false;
+                }
+                Instr divisor = defs[instr.operands[1]];
+                return divisor.op != IrOp.CONST || divisor.constant.asInteger() == 0;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package splat.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dominator tree of an IrFunction, computed with the iterative algorithm of
+ * Cooper, Harvey and Kennedy over the blocks in reverse postorder.
+ */
+final class Dominators {
+
+    private final List<BasicBlock> reversePostorder;
+    private final BasicBlock[] idom;
+    private final List<List<BasicBlock>> children;
+
+    Dominators(IrFunction function) {
+        for (BasicBlock block : function.blocks) {
+            block.order = -1;
+        }
+        reversePostorder = reversePostorder(function.entry());
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            reversePostorder.get(i).order = i;
+        }
+
+        int count = reversePostorder.size();
+        idom = new BasicBlock[count];
+        idom[0] = function.entry();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < count; i++) {
+                BasicBlock block = reversePostorder.get(i);
+                BasicBlock newIdom = null;
+                for (BasicBlock pred : block.preds) {
+                    if (pred.order < 0 || idom[pred.order] == null) {
+                        continue;
+                    }
+                    newIdom = newIdom == null ? pred : intersect(pred, newIdom);
+                }
+                if (idom[i] != newIdom) {
+                    idom[i] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        children = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 1; i < count; i++) {
+            children.get(idom[i].order).add(reversePostorder.get(i));
+        }
+    }
+
+    List<BasicBlock> reversePostorder() {
+        return reversePostorder;
+    }
+
+    List<BasicBlock> children(BasicBlock block) {
+        return children.get(block.order);
+    }
+
+    private BasicBlock intersect(BasicBlock a, BasicBlock b) {
+        while (a != b) {
+            while (a.order > b.order) {
+                a = idom[a.order];
+            }
+            while (b.order > a.order) {
+                b = idom[b.order];
+            }
+        }
+        return a;
+    }
+
+    private static List<BasicBlock> reversePostorder(BasicBlock entry) {
+        List<BasicBlock> postorder = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<Integer> nextSuccessor = new ArrayDeque<>();
+        blocks.push(entry);
+        nextSuccessor.push(0);
+        visited.add(entry);
+        while (!blocks.isEmpty()) {
+            BasicBlock block = blocks.peek();
+            int next = nextSuccessor.pop();
+            BasicBlock[] successors = block.successors();
+            if (next < successors.length) {
+                nextSuccessor.push(next + 1);
+                BasicBlock successor = successors[next];
+                if (visited.add(successor)) {
+                    blocks.push(successor);
+                    nextSuccessor.push(0);
+                }
+            } else {
+                blocks.pop();
+                postorder.add(block);
+            }
+        }
+        List<BasicBlock> order = new ArrayList<>();
+        for (int i = postorder.size() - 1; i >= 0; i--) {
+            order.add(postorder.get(i));
+        }
+        return order;
+    }
+}
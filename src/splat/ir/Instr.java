@@ -0,0 +1,92 @@
+package splat.ir;
+
+import splat.executor.CaseTable;
+import splat.executor.Value;
+
+/**
+ * One IR instruction.  An instruction that produces a value defines the
+ * virtual register dest exactly once, which is what keeps the IR in SSA
+ * form; operands name the registers it reads.  For a PHI, operand i is the
+ * value flowing in from the block's i-th predecessor.
+ */
+final class Instr {
+
+    int op;
+    final int dest;
+    int[] operands;
+
+    /** The value of a CONST. */
+    Value constant;
+    /**
+     * The parameter number of a PARAM, the callee index of a CALL or
+     * HOST_CALL, or the Intrinsic ordinal of an INTRINSIC; -1 for other
+     * instructions.
+     */
+    final int index;
+    /**
+     * Successor blocks of a JUMP, BRANCH (true target first) or SWITCH (one
+     * per arm, in the order of caseTable's arm indexes).
+     */
+    BasicBlock[] targets;
+    /** The dispatch of a SWITCH. */
+    CaseTable caseTable;
+    /** Set on a DIV or MOD whose divisor range analysis proved nonzero. */
+    boolean divisorNonZero;
+
+    final int line;
+    final int column;
+
+    Instr(int op, int dest, int[] operands, int index, int line, int column) {
+        this.op = op;
+        this.dest = dest;
+        this.operands = operands;
+        this.index = index;
+        this.line = line;
+        this.column = column;
+    }
+
+    boolean definesValue() {
+        return dest >= 0;
+    }
+
+    /**
+     * Turns this instruction into a copy of another register, leaving it for
+     * CopyPropagation to remove.
+     */
+    void becomeCopyOf(int register) {
+        op = IrOp.COPY;
+        operands = new int[] { register };
+        constant = null;
+    }
+
+    void becomeConstant(Value value) {
+        op = IrOp.CONST;
+        operands = new int[0];
+        constant = value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (definesValue()) {
+            sb.append('r').append(dest).append(" = ");
+        }
+        sb.append(IrOp.name(op));
+        if (op == IrOp.CONST) {
+            sb.append(' ').append(constant.isString() ? "\"" + constant + "\"" : constant);
+        } else if (op == IrOp.NEW_ARRAY || op == IrOp.NEW_MAP) {
+            sb.append(' ').append(constant.getType());
+        } else if (op == IrOp.PARAM || op == IrOp.CALL || op == IrOp.HOST_CALL || op == IrOp.INTRINSIC) {
+            sb.append(" #").append(index);
+        }
+        for (int i = 0; i < operands.length; i++) {
+            sb.append(i == 0 ? " " : ", ").append('r').append(operands[i]);
+        }
+        if (targets != null) {
+            for (BasicBlock target : targets) {
+                sb.append(" -> b").append(target.id);
+            }
+        }
+        return sb.toString();
+    }
+}
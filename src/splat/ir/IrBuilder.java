@@ -0,0 +1,504 @@
+package splat.ir;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.ExecutionException;
+import splat.executor.FrameLayout;
+import splat.executor.HostFunction;
+import splat.executor.Intrinsic;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.AddNode;
+import splat.parser.elements.AndNode;
+import splat.parser.elements.ArithmeticOp;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.DivideNode;
+import splat.parser.elements.EqualNode;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.GreaterEqualNode;
+import splat.parser.elements.GreaterThanNode;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.LessEqualNode;
+import splat.parser.elements.LessThanNode;
+import splat.parser.elements.Literal;
+import splat.parser.elements.LogicalOp;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.ModuloNode;
+import splat.parser.elements.MultiplyNode;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.NewMap;
+import splat.parser.elements.NotEqualNode;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.SubtractNode;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Lowers the statements of one function into an IrFunction in SSA form.
+ *
+ * SSA is built directly from the AST (Braun et al., "Simple and Efficient
+ * Construction of Static Single Assignment Form"): every block remembers
+ * the register last written to each variable slot, and reading a slot that
+ * the block has not written looks it up in the predecessors, placing a phi
+ * where paths merge.  A loop header is sealed only once its back edge is
+ * known, so phis for variables the loop body assigns are completed then.
+ */
+final class IrBuilder {
+
+    private final FrameLayout layout;
+    private final Map<String, Integer> functionIndex;
+    private final Map<String, FrameLayout> functionLayouts;
+    private final HostFunction[] hosts;
+    private final IrFunction function;
+
+    private final Map<BasicBlock, int[]> currentDefs = new HashMap<>();
+    private final Map<BasicBlock, Map<Integer, Instr>> incompletePhis = new HashMap<>();
+    private final Set<BasicBlock> sealed = new HashSet<>();
+
+    private int nextBlockId;
+    /** Block receiving instructions, or null after a return. */
+    private BasicBlock current;
+
+    IrBuilder(FrameLayout layout, Map<String, Integer> functionIndex,
+              Map<String, FrameLayout> functionLayouts, HostFunction[] hosts) {
+        this.layout = layout;
+        this.functionIndex = functionIndex;
+        this.functionLayouts = functionLayouts;
+        this.hosts = hosts;
+        this.function = new IrFunction(layout.getName(), layout.getParamCount(),
+                layout.getReturnType() != Type.VOID);
+    }
+
+    IrFunction lower(List<Statement> body, ASTElement owner) throws ExecutionException {
+        BasicBlock entry = newBlock();
+        seal(entry);
+        current = entry;
+
+        // parameters arrive as arguments; every other slot starts at its default
+        for (int slot = 0; slot < layout.getSlotCount(); slot++) {
+            int register = slot < layout.getParamCount()
+                    ? emit(IrOp.PARAM, new int[0], slot, owner).dest
+                    : constant(Value.defaultValue(layout.getSlotType(slot)), owner);
+            writeVariable(slot, entry, register);
+        }
+
+        lowerStatements(body != null ? body : List.of());
+        if (current != null) {
+            terminate(IrOp.FALL_OFF, new int[0], owner);
+        }
+        // join blocks that every path returned before reaching
+        function.blocks.removeIf(block -> block != entry && block.preds.isEmpty());
+        return function;
+    }
+
+    private void lowerStatements(List<Statement> stmts) throws ExecutionException {
+        for (Statement stmt : stmts) {
+            if (current == null) {
+                // everything after a return is unreachable
+                return;
+            }
+            lowerStatement(stmt);
+        }
+    }
+
+    private void lowerStatement(Statement stmt) throws ExecutionException {
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            int value = lowerExpression(assignment.getExpression());
+            writeVariable(slotOf(assignment.getVariable().getLexeme(), stmt), current, value);
+        } else if (stmt instanceof PrintStmt) {
+            PrintStmt print = (PrintStmt) stmt;
+            if (print.getExpr() == null) {
+                emit(IrOp.NEWLINE, new int[0], -1, stmt);
+            } else {
+                int value = lowerExpression(print.getExpr());
+                boolean isPrintLine = "print_line".equals(print.getStartToken().getLexeme());
+                emit(isPrintLine ? IrOp.PRINT_LINE : IrOp.PRINT, new int[] { value }, -1, stmt);
+            }
+        } else if (stmt instanceof ReturnStmt) {
+            ReturnStmt ret = (ReturnStmt) stmt;
+            if (ret.getExpr() == null) {
+                terminate(IrOp.RETURN_VOID, new int[0], stmt);
+            } else {
+                int value = lowerExpression(ret.getExpr());
+                terminate(IrOp.RETURN, new int[] { value }, stmt);
+            }
+        } else if (stmt instanceof IfThenElse) {
+            lowerIf((IfThenElse) stmt);
+        } else if (stmt instanceof WhileLoop) {
+            lowerWhile((WhileLoop) stmt);
+        } else if (stmt instanceof CaseStmt) {
+            lowerCase((CaseStmt) stmt);
+        } else if (stmt instanceof Block) {
+            lowerStatements(((Block) stmt).getStatements());
+        } else if (stmt instanceof CountedLoop) {
+            lowerStatements(((CountedLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof ForLoop) {
+            lowerStatements(((ForLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof FunctionCallStmt) {
+            lowerCall(((FunctionCallStmt) stmt).getCall());
+        } else if (stmt instanceof ExpressionStmt) {
+            lowerExpression(((ExpressionStmt) stmt).getExpression());
+        } else if (stmt instanceof ArrayAssignment) {
+            lowerArrayAssignment((ArrayAssignment) stmt);
+        } else {
+            throw new ExecutionException("Statement cannot be lowered to IR: " + stmt, stmt);
+        }
+    }
+
+    /**
+     * The array register is read before the index and value are lowered,
+     * the order the tree walker evaluates them in; the store is placed at
+     * the bracket, where an out-of-bounds index is reported.
+     */
+    private void lowerArrayAssignment(ArrayAssignment stmt) throws ExecutionException {
+        int array = readVariable(slotOf(stmt.getVariable().getLexeme(), stmt), current);
+        int index = lowerExpression(stmt.getIndex());
+        int value = lowerExpression(stmt.getExpression());
+        current.instrs.add(new Instr(IrOp.STORE_ELEMENT, -1, new int[] { array, index, value }, -1,
+                stmt.getBracket().getLine(), stmt.getBracket().getCol()));
+    }
+
+    private void lowerIf(IfThenElse stmt) throws ExecutionException {
+        int condition = lowerExpression(stmt.getCondition());
+        BasicBlock thenBlock = newBlock();
+        BasicBlock join = newBlock();
+        BasicBlock elseBlock = stmt.getElseStmts().isEmpty() ? join : newBlock();
+        branch(condition, thenBlock, elseBlock, stmt);
+        seal(thenBlock);
+
+        current = thenBlock;
+        lowerStatements(stmt.getThenStmts());
+        jumpTo(join, stmt);
+
+        if (elseBlock != join) {
+            seal(elseBlock);
+            current = elseBlock;
+            lowerStatements(stmt.getElseStmts());
+            jumpTo(join, stmt);
+        }
+        continueIn(join);
+    }
+
+    /**
+     * A SWITCH to one new block per arm, the else part included even when
+     * it is empty, so that every target has the switch as a predecessor
+     * exactly once.
+     */
+    private void lowerCase(CaseStmt stmt) throws ExecutionException {
+        int key = lowerExpression(stmt.getScrutinee());
+        BasicBlock[] arms = new BasicBlock[stmt.getTable().getArmCount() + 1];
+        for (int arm = 0; arm < arms.length; arm++) {
+            arms[arm] = newBlock();
+        }
+        BasicBlock join = newBlock();
+        BasicBlock from = current;
+        terminate(IrOp.SWITCH, new int[] { key }, stmt);
+        from.terminator.targets = arms;
+        from.terminator.caseTable = stmt.getTable();
+        for (int arm = 0; arm < arms.length; arm++) {
+            arms[arm].preds.add(from);
+            seal(arms[arm]);
+            current = arms[arm];
+            lowerStatements(stmt.getArmStatements(arm));
+            jumpTo(join, stmt);
+        }
+        continueIn(join);
+    }
+
+    private void lowerWhile(WhileLoop stmt) throws ExecutionException {
+        BasicBlock header = newBlock();
+        jumpTo(header, stmt);
+        current = header;
+        int condition = lowerExpression(stmt.getCondition());
+
+        BasicBlock body = newBlock();
+        BasicBlock exit = newBlock();
+        branch(condition, body, exit, stmt);
+        seal(body);
+
+        current = body;
+        lowerStatements(stmt.getBody());
+        jumpTo(header, stmt);
+        seal(header);
+        continueIn(exit);
+    }
+
+    private int lowerExpression(Expression expr) throws ExecutionException {
+        if (expr instanceof Literal) {
+            Literal literal = (Literal) expr;
+            if (literal.getConstant() == null) {
+                throw new ExecutionException("Unknown literal '" + literal.getValue() + "'", literal);
+            }
+            return constant(literal.getConstant(), expr);
+        } else if (expr instanceof VariableRef) {
+            return readVariable(slotOf(((VariableRef) expr).getName().getLexeme(), expr), current);
+        } else if (expr instanceof LogicalOp) {
+            return lowerShortCircuit((LogicalOp) expr);
+        } else if (expr instanceof BinaryOp) {
+            BinaryOp binOp = (BinaryOp) expr;
+            int left = lowerExpression(binOp.getLeftExpr());
+            int right = lowerExpression(binOp.getRightExpr());
+            Instr instr = emit(binaryOp(binOp), new int[] { left, right }, -1, expr);
+            instr.divisorNonZero = binOp instanceof ArithmeticOp && ((ArithmeticOp) binOp).isDivisorNonZero();
+            return instr.dest;
+        } else if (expr instanceof UnaryOp) {
+            UnaryOp unOp = (UnaryOp) expr;
+            int operand = lowerExpression(unOp.getExpr());
+            int op = "-".equals(unOp.getOperator().getLexeme()) ? IrOp.NEG : IrOp.NOT;
+            return emit(op, new int[] { operand }, -1, expr).dest;
+        } else if (expr instanceof FunctionCall) {
+            return lowerCall((FunctionCall) expr);
+        } else if (expr instanceof ParallelOperands) {
+            return lowerExpression(((ParallelOperands) expr).getExpression());
+        } else if (expr instanceof ArrayIndex) {
+            int array = lowerExpression(((ArrayIndex) expr).getArray());
+            int index = lowerExpression(((ArrayIndex) expr).getIndex());
+            return emit(IrOp.LOAD_ELEMENT, new int[] { array, index }, -1, expr).dest;
+        } else if (expr instanceof ArrayLength) {
+            int array = lowerExpression(((ArrayLength) expr).getArray());
+            return emit(IrOp.LENGTH, new int[] { array }, -1, expr).dest;
+        } else if (expr instanceof NewArray) {
+            NewArray alloc = (NewArray) expr;
+            int size = lowerExpression(alloc.getSize());
+            Instr instr = emit(IrOp.NEW_ARRAY, new int[] { size }, -1, expr);
+            instr.constant = Value.defaultValue(declaredType(alloc.getTypeToken(), alloc));
+            return instr.dest;
+        } else if (expr instanceof NewMap) {
+            NewMap alloc = (NewMap) expr;
+            Instr instr = emit(IrOp.NEW_MAP, new int[0], -1, expr);
+            instr.constant = Value.defaultValue(declaredType(alloc.getTypeToken(), alloc));
+            return instr.dest;
+        } else if (expr instanceof MapContains) {
+            int map = lowerExpression(((MapContains) expr).getMap());
+            int key = lowerExpression(((MapContains) expr).getKey());
+            return emit(IrOp.CONTAINS, new int[] { map, key }, -1, expr).dest;
+        } else if (expr instanceof MapSize) {
+            int map = lowerExpression(((MapSize) expr).getMap());
+            return emit(IrOp.SIZE, new int[] { map }, -1, expr).dest;
+        }
+        throw new ExecutionException("Expression cannot be lowered to IR: " + expr, expr);
+    }
+
+    /**
+     * and/or become a branch around their right operand, with a phi at the
+     * join choosing between the short-cut constant and the right operand.
+     */
+    private int lowerShortCircuit(LogicalOp logicalOp) throws ExecutionException {
+        boolean isAnd = logicalOp instanceof AndNode;
+        int left = lowerExpression(logicalOp.getLeftExpr());
+        int shortCut = constant(Value.ofBoolean(!isAnd), logicalOp);
+        BasicBlock leftEnd = current;
+
+        BasicBlock rightBlock = newBlock();
+        BasicBlock join = newBlock();
+        if (isAnd) {
+            branch(left, rightBlock, join, logicalOp);
+        } else {
+            branch(left, join, rightBlock, logicalOp);
+        }
+        seal(rightBlock);
+
+        current = rightBlock;
+        int right = lowerExpression(logicalOp.getRightExpr());
+        BasicBlock rightEnd = current;
+        jumpTo(join, logicalOp);
+        continueIn(join);
+
+        Instr phi = newPhi(join, logicalOp);
+        phi.operands = new int[join.preds.size()];
+        phi.operands[join.preds.indexOf(leftEnd)] = shortCut;
+        phi.operands[join.preds.indexOf(rightEnd)] = right;
+        return phi.dest;
+    }
+
+    private int lowerCall(FunctionCall call) throws ExecutionException {
+        String funcName = call.getName().getLexeme();
+        Integer index = functionIndex.get(funcName);
+        Intrinsic intrinsic = index == null ? Intrinsic.lookup(funcName) : null;
+        if (index == null && intrinsic == null) {
+            throw new ExecutionException("Function '" + funcName + "' is not defined", call);
+        }
+        int[] args = new int[call.getArgs().size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = lowerExpression(call.getArgs().get(i));
+        }
+        if (intrinsic != null) {
+            return emit(IrOp.INTRINSIC, args, intrinsic.ordinal(), call).dest;
+        }
+        boolean returnsValue = functionLayouts.get(funcName).getReturnType() != Type.VOID;
+        int op = hosts[index] != null ? IrOp.HOST_CALL : IrOp.CALL;
+        Instr instr = new Instr(op, returnsValue ? function.registerCount++ : -1,
+                args, index, call.getLine(), call.getColumn());
+        current.instrs.add(instr);
+        return instr.dest;
+    }
+
+    private int binaryOp(BinaryOp binOp) throws ExecutionException {
+        if (binOp instanceof AddNode) return ((AddNode) binOp).isConcatenation() ? IrOp.CONCAT : IrOp.ADD;
+        if (binOp instanceof SubtractNode) return IrOp.SUB;
+        if (binOp instanceof MultiplyNode) return IrOp.MUL;
+        if (binOp instanceof DivideNode) return IrOp.DIV;
+        if (binOp instanceof ModuloNode) return IrOp.MOD;
+        if (binOp instanceof LessThanNode) return IrOp.LT;
+        if (binOp instanceof LessEqualNode) return IrOp.LE;
+        if (binOp instanceof GreaterThanNode) return IrOp.GT;
+        if (binOp instanceof GreaterEqualNode) return IrOp.GE;
+        if (binOp instanceof EqualNode) return IrOp.EQ;
+        if (binOp instanceof NotEqualNode) return IrOp.NE;
+        throw new ExecutionException("Unknown operator '" + binOp.getOperator().getLexeme() + "'", binOp);
+    }
+
+    private static Type declaredType(Token typeToken, ASTElement alloc) throws ExecutionException {
+        try {
+            return Type.fromToken(typeToken);
+        } catch (SemanticAnalysisException ex) {
+            throw new ExecutionException(ex.getMessage(), alloc);
+        }
+    }
+
+    private int slotOf(String varName, ASTElement elem) throws ExecutionException {
+        int slot = layout.slotOf(varName);
+        if (slot < 0) {
+            throw new ExecutionException("Variable '" + varName + "' is not defined", elem);
+        }
+        return slot;
+    }
+
+    // ---- SSA construction ----
+
+    private void writeVariable(int slot, BasicBlock block, int register) {
+        currentDefs.get(block)[slot] = register;
+    }
+
+    private int readVariable(int slot, BasicBlock block) {
+        int register = currentDefs.get(block)[slot];
+        if (register >= 0) {
+            return register;
+        }
+        if (!sealed.contains(block)) {
+            // more predecessors may still arrive, so complete the phi on sealing
+            Instr phi = newPhi(block, null);
+            incompletePhis.get(block).put(slot, phi);
+            register = phi.dest;
+        } else if (block.preds.size() == 1) {
+            register = readVariable(slot, block.preds.get(0));
+        } else {
+            Instr phi = newPhi(block, null);
+            // written first so that a cycle back into this block ends here
+            writeVariable(slot, block, phi.dest);
+            fillPhi(slot, phi, block);
+            register = phi.dest;
+        }
+        writeVariable(slot, block, register);
+        return register;
+    }
+
+    private void fillPhi(int slot, Instr phi, BasicBlock block) {
+        int[] operands = new int[block.preds.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = readVariable(slot, block.preds.get(i));
+        }
+        phi.operands = operands;
+    }
+
+    private void seal(BasicBlock block) {
+        for (Map.Entry<Integer, Instr> entry : incompletePhis.get(block).entrySet()) {
+            fillPhi(entry.getKey(), entry.getValue(), block);
+        }
+        incompletePhis.get(block).clear();
+        sealed.add(block);
+    }
+
+    // ---- blocks and instructions ----
+
+    private BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(nextBlockId++);
+        int[] defs = new int[layout.getSlotCount()];
+        Arrays.fill(defs, -1);
+        currentDefs.put(block, defs);
+        incompletePhis.put(block, new LinkedHashMap<>());
+        function.blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Makes a sealed join block current, or leaves the builder in
+     * unreachable code when no path reaches it.
+     */
+    private void continueIn(BasicBlock join) {
+        seal(join);
+        current = join.preds.isEmpty() ? null : join;
+    }
+
+    private Instr newPhi(BasicBlock block, ASTElement elem) {
+        int line = elem != null ? elem.getLine() : -1;
+        int column = elem != null ? elem.getColumn() : -1;
+        Instr phi = new Instr(IrOp.PHI, function.registerCount++, new int[0], -1, line, column);
+        block.phis.add(phi);
+        return phi;
+    }
+
+    private int constant(Value value, ASTElement elem) {
+        Instr instr = emit(IrOp.CONST, new int[0], -1, elem);
+        instr.constant = value;
+        return instr.dest;
+    }
+
+    private Instr emit(int op, int[] operands, int index, ASTElement elem) {
+        boolean definesValue = op != IrOp.PRINT && op != IrOp.PRINT_LINE && op != IrOp.NEWLINE;
+        Instr instr = new Instr(op, definesValue ? function.registerCount++ : -1,
+                operands, index, elem.getLine(), elem.getColumn());
+        current.instrs.add(instr);
+        return instr;
+    }
+
+    private void terminate(int op, int[] operands, ASTElement elem) {
+        current.terminator = new Instr(op, -1, operands, -1, elem.getLine(), elem.getColumn());
+        current = null;
+    }
+
+    private void branch(int condition, BasicBlock ifTrue, BasicBlock ifFalse, ASTElement elem) {
+        BasicBlock from = current;
+        terminate(IrOp.BRANCH, new int[] { condition }, elem);
+        from.terminator.targets = new BasicBlock[] { ifTrue, ifFalse };
+        ifTrue.preds.add(from);
+        ifFalse.preds.add(from);
+    }
+
+    private void jumpTo(BasicBlock target, ASTElement elem) {
+        if (current == null) {
+            return;
+        }
+        BasicBlock from = current;
+        terminate(IrOp.JUMP, new int[0], elem);
+        from.terminator.targets = new BasicBlock[] { target };
+        target.preds.add(from);
+    }
+}
@@ -0,0 +1,55 @@
+package splat.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Control-flow graph of one FunctionDecl (or of the main program body) in
+ * SSA form.  The first block is the entry block.
+ */
+final class IrFunction {
+
+    final String name;
+    final int paramCount;
+    final boolean returnsValue;
+    final List<BasicBlock> blocks = new ArrayList<>();
+    int registerCount;
+
+    IrFunction(String name, int paramCount, boolean returnsValue) {
+        this.name = name;
+        this.paramCount = paramCount;
+        this.returnsValue = returnsValue;
+    }
+
+    BasicBlock entry() {
+        return blocks.get(0);
+    }
+
+    /**
+     * Maps every register to the instruction that defines it.
+     */
+    Instr[] definitions() {
+        Instr[] defs = new Instr[registerCount];
+        for (BasicBlock block : blocks) {
+            for (Instr phi : block.phis) {
+                defs[phi.dest] = phi;
+            }
+            for (Instr instr : block.instrs) {
+                if (instr.definesValue()) {
+                    defs[instr.dest] = instr;
+                }
+            }
+        }
+        return defs;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("function ").append(name)
+                .append(" (").append(paramCount).append(" params)\n");
+        for (BasicBlock block : blocks) {
+            sb.append("  ").append(block);
+        }
+        return sb.toString();
+    }
+}
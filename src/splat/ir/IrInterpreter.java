@@ -0,0 +1,328 @@
+package splat.ir;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Engine for ExecutionMode.IR: runs an IrProgram block by block.
+ *
+ * Each call gets a register file sized to its function.  Entering a block
+ * first evaluates its phis for the edge that was taken, all reading before
+ * any writing, since phis of one block may swap values between them.
+ * SPLAT calls recurse in Java, as in the tree walker, and are additionally
+ * capped at maxCallDepth.  A recursion too deep for the Java stack is
+ * reported at the outermost call, the one made by the main body or by the
+ * function called from Java.
+ *
+ * Without a step budget an interpreter keeps no state between calls, so
+ * one may run calls from many threads at once.
+ */
+public class IrInterpreter {
+
+    private static final String STACK_OVERFLOW = "Call stack overflow -- recursion is too deep for IR "
+            + "execution, use the stack execution mode instead";
+
+    private final IrProgram program;
+    private final int maxCallDepth;
+    private final PrintStream out = System.out;
+    private boolean budgeted;
+    private long stepsLeft;
+
+    public IrInterpreter(IrProgram program, int maxCallDepth) {
+        if (maxCallDepth < 0) {
+            throw new IllegalArgumentException("maxCallDepth must not be negative");
+        }
+        this.program = program;
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    /**
+     * Limits how many basic blocks the interpreter may enter before it
+     * gives up with an ExecutionException.  Unlimited by default.
+     */
+    public void setStepBudget(long stepBudget) {
+        if (stepBudget < 0) {
+            throw new IllegalArgumentException("stepBudget must not be negative");
+        }
+        this.budgeted = true;
+        this.stepsLeft = stepBudget;
+    }
+
+    /**
+     * Runs a single function of the program with the given arguments and
+     * returns its result, or null for a void function.
+     */
+    public Value call(String functionName, Value... args) throws ExecutionException {
+        int index = indexOf(functionName);
+        if (index < 0) {
+            throw new ExecutionException("Function '" + functionName + "' is not defined", -1, -1);
+        }
+        return call(index, args);
+    }
+
+    /**
+     * The index of the named function for call(int, Value...), or -1.
+     */
+    public int indexOf(String functionName) {
+        for (int i = 0; i < program.functions.length; i++) {
+            if (program.functions[i].name.equals(functionName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Like call(String, Value...), for a function found with indexOf.
+     */
+    public Value call(int index, Value... args) throws ExecutionException {
+        IrFunction fn = program.functions[index];
+        return callTopLevel(fn, args, new Value[fn.registerCount]);
+    }
+
+    /**
+     * Prepares repeated calls of the function found with indexOf.
+     */
+    public Invocation prepare(int index) {
+        return new Invocation(program.functions[index]);
+    }
+
+    /**
+     * Calls of one function that reuse one register file and argument
+     * array, for running it over many inputs.  An Invocation belongs to
+     * one thread at a time.
+     */
+    public final class Invocation {
+
+        private final IrFunction fn;
+        private final Value[] args;
+        private final Value[] regs;
+
+        private Invocation(IrFunction fn) {
+            this.fn = fn;
+            this.args = new Value[fn.paramCount];
+            this.regs = new Value[fn.registerCount];
+        }
+
+        /**
+         * The array run() passes as the arguments.
+         */
+        public Value[] arguments() {
+            return args;
+        }
+
+        /**
+         * Calls the function with arguments(), or null if it is void.
+         */
+        public Value run() throws ExecutionException {
+            // every register is written before it is read, so earlier calls leave no trace
+            return callTopLevel(fn, args, regs);
+        }
+    }
+
+    private Value callTopLevel(IrFunction fn, Value[] args, Value[] regs) throws ExecutionException {
+        Value result;
+        try {
+            result = run(fn, args, 0, regs);
+        } catch (StackOverflowError err) {
+            // only when fn overflows before making a call
+            throw new ExecutionException(STACK_OVERFLOW, -1, -1);
+        }
+        if (result == null && fn.returnsValue) {
+            throw new ExecutionException("Function did not return a value", -1, -1);
+        }
+        return result;
+    }
+
+    public void runProgram() throws ExecutionException {
+        try {
+            run(program.main, new Value[0], 0);
+        } catch (StackOverflowError err) {
+            // only when the main body overflows before making a call
+            throw new ExecutionException(STACK_OVERFLOW, -1, -1);
+        }
+    }
+
+    /**
+     * Runs one function and returns its result, or null if it returned
+     * without a value or fell off its end.
+     */
+    private Value run(IrFunction fn, Value[] args, int depth) throws ExecutionException {
+        return run(fn, args, depth, new Value[fn.registerCount]);
+    }
+
+    private Value run(IrFunction fn, Value[] args, int depth, Value[] regs) throws ExecutionException {
+        BasicBlock block = fn.entry();
+        BasicBlock pred = null;
+
+        while (true) {
+            if (budgeted && --stepsLeft < 0) {
+                throw new ExecutionException("Step budget exhausted in '" + fn.name + "'", -1, -1);
+            }
+            List<Instr> phis = block.phis;
+            if (!phis.isEmpty()) {
+                int edge = block.preds.indexOf(pred);
+                Value[] incoming = new Value[phis.size()];
+                for (int i = 0; i < incoming.length; i++) {
+                    incoming[i] = regs[phis.get(i).operands[edge]];
+                }
+                for (int i = 0; i < incoming.length; i++) {
+                    regs[phis.get(i).dest] = incoming[i];
+                }
+            }
+
+            List<Instr> instrs = block.instrs;
+            for (int i = 0, n = instrs.size(); i < n; i++) {
+                Instr instr = instrs.get(i);
+                int[] operands = instr.operands;
+                switch (instr.op) {
+                    case IrOp.CONST:
+                        regs[instr.dest] = instr.constant;
+                        break;
+                    case IrOp.PARAM:
+                        regs[instr.dest] = args[instr.index];
+                        break;
+                    case IrOp.COPY:
+                        regs[instr.dest] = regs[operands[0]];
+                        break;
+                    case IrOp.CALL:
+                        Value result = call(instr, regs, depth);
+                        if (instr.definesValue()) {
+                            regs[instr.dest] = result;
+                        }
+                        break;
+                    case IrOp.HOST_CALL: {
+                        Value[] values = new Value[operands.length];
+                        for (int k = 0; k < values.length; k++) {
+                            values[k] = regs[operands[k]];
+                        }
+                        Value hostResult = program.hosts[instr.index].apply(values, instr.line, instr.column);
+                        if (instr.definesValue()) {
+                            regs[instr.dest] = hostResult;
+                        }
+                        break;
+                    }
+                    case IrOp.PRINT:
+                        out.print(regs[operands[0]].toString());
+                        break;
+                    case IrOp.PRINT_LINE:
+                        out.println(regs[operands[0]].toString());
+                        break;
+                    case IrOp.NEWLINE:
+                        out.println();
+                        break;
+                    case IrOp.NEW_ARRAY: {
+                        int length = regs[operands[0]].asInteger();
+                        if (length < 0) {
+                            throw new ExecutionException("Negative array size " + length,
+                                    instr.line, instr.column);
+                        }
+                        regs[instr.dest] = Value.newArray(instr.constant.getType(), length);
+                        break;
+                    }
+                    case IrOp.LOAD_ELEMENT: {
+                        Value array = regs[operands[0]];
+                        if (array.isMap()) {
+                            regs[instr.dest] = Value.ofInteger(
+                                    array.getEntry(regs[operands[1]], instr.line, instr.column));
+                            break;
+                        }
+                        int index = regs[operands[1]].asInteger();
+                        array.checkIndex(index, instr.line, instr.column);
+                        regs[instr.dest] = array.getElement(index);
+                        break;
+                    }
+                    case IrOp.STORE_ELEMENT: {
+                        Value array = regs[operands[0]];
+                        if (array.isMap()) {
+                            array.putEntry(regs[operands[1]], regs[operands[2]].asInteger());
+                            break;
+                        }
+                        int index = regs[operands[1]].asInteger();
+                        array.checkIndex(index, instr.line, instr.column);
+                        array.setElement(index, regs[operands[2]]);
+                        break;
+                    }
+                    case IrOp.NEW_MAP:
+                        regs[instr.dest] = Value.newMap(instr.constant.getType());
+                        break;
+                    case IrOp.CONTAINS:
+                        regs[instr.dest] = Value.ofBoolean(regs[operands[0]].containsKey(regs[operands[1]]));
+                        break;
+                    case IrOp.SIZE:
+                        regs[instr.dest] = Value.ofInteger(regs[operands[0]].mapSize());
+                        break;
+                    case IrOp.INTRINSIC: {
+                        Value[] values = new Value[operands.length];
+                        for (int k = 0; k < values.length; k++) {
+                            values[k] = regs[operands[k]];
+                        }
+                        regs[instr.dest] = IrOp.apply(instr, values);
+                        break;
+                    }
+                    case IrOp.NEG:
+                    case IrOp.NOT:
+                    case IrOp.LENGTH:
+                        regs[instr.dest] = IrOp.apply(instr, regs[operands[0]], null);
+                        break;
+                    default:
+                        regs[instr.dest] = IrOp.apply(instr, regs[operands[0]], regs[operands[1]]);
+                        break;
+                }
+            }
+
+            Instr terminator = block.terminator;
+            switch (terminator.op) {
+                case IrOp.JUMP:
+                    pred = block;
+                    block = terminator.targets[0];
+                    break;
+                case IrOp.BRANCH:
+                    pred = block;
+                    block = terminator.targets[regs[terminator.operands[0]].asBoolean() ? 0 : 1];
+                    break;
+                case IrOp.SWITCH:
+                    pred = block;
+                    block = terminator.targets[terminator.caseTable.armOf(regs[terminator.operands[0]])];
+                    break;
+                case IrOp.RETURN:
+                    return regs[terminator.operands[0]];
+                case IrOp.RETURN_VOID:
+                case IrOp.FALL_OFF:
+                    return null;
+                default:
+                    throw new ExecutionException("Unknown terminator " + IrOp.name(terminator.op)
+                            + " in '" + fn.name + "'", terminator.line, terminator.column);
+            }
+        }
+    }
+
+    private Value call(Instr instr, Value[] regs, int depth) throws ExecutionException {
+        IrFunction callee = program.functions[instr.index];
+        if (depth >= maxCallDepth) {
+            throw new ExecutionException("Maximum call depth of " + maxCallDepth
+                    + " exceeded calling '" + callee.name + "'", instr.line, instr.column);
+        }
+        Value[] args = new Value[instr.operands.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = regs[instr.operands[i]];
+        }
+        Value result;
+        if (depth == 0) {
+            try {
+                result = run(callee, args, 1);
+            } catch (StackOverflowError err) {
+                throw new ExecutionException(STACK_OVERFLOW, instr.line, instr.column);
+            }
+        } else {
+            result = run(callee, args, depth + 1);
+        }
+        if (result == null && callee.returnsValue) {
+            throw new ExecutionException("Function did not return a value", instr.line, instr.column);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package splat.ir;
+
+import splat.executor.ExecutionException;
+import splat.executor.Intrinsic;
+import splat.executor.Value;
+
+/**
+ * Instruction set of the SSA intermediate representation, together with
+ * the properties the optimization passes need to know about each one.
+ */
+final class IrOp {
+
+    // values
+    static final int CONST = 0;
+    static final int PARAM = 1;
+    static final int PHI = 2;
+    static final int COPY = 3;
+
+    // pure operators
+    static final int ADD = 4;
+    static final int SUB = 5;
+    static final int MUL = 6;
+    static final int DIV = 7;
+    static final int MOD = 8;
+    static final int NEG = 9;
+    static final int LT = 10;
+    static final int LE = 11;
+    static final int GT = 12;
+    static final int GE = 13;
+    static final int EQ = 14;
+    static final int NE = 15;
+    static final int NOT = 16;
+    static final int LENGTH = 17;
+    static final int CONCAT = 18;
+
+    static final int INTRINSIC = 19;     // index is the Intrinsic's ordinal
+
+    // effects
+    static final int CALL = 20;
+    static final int HOST_CALL = 21;     // index is the callee, a HostFunctionDecl
+    static final int PRINT = 22;
+    static final int PRINT_LINE = 23;
+    static final int NEWLINE = 24;
+    static final int NEW_ARRAY = 25;     // constant holds an empty array of the type
+    static final int LOAD_ELEMENT = 26;  // also reads map entries
+    static final int STORE_ELEMENT = 27; // also puts map entries
+    static final int NEW_MAP = 28;       // constant holds a map of the type
+    static final int CONTAINS = 29;
+    static final int SIZE = 30;
+
+    // terminators
+    static final int JUMP = 31;
+    static final int BRANCH = 32;
+    static final int RETURN = 33;
+    static final int RETURN_VOID = 34;
+    static final int FALL_OFF = 35;
+    static final int SWITCH = 36;        // caseTable picks the target, the else part last
+
+    private static final Intrinsic[] INTRINSICS = Intrinsic.values();
+
+    private static final String[] NAMES = {
+            "const", "param", "phi", "copy",
+            "add", "sub", "mul", "div", "mod", "neg",
+            "lt", "le", "gt", "ge", "eq", "ne", "not", "length", "concat", "intrinsic",
+            "call", "host_call", "print", "print_line", "newline", "new_array", "load_element", "store_element",
+            "new_map", "contains", "size",
+            "jump", "branch", "return", "return_void", "fall_off", "switch"
+    };
+
+    private IrOp() {
+    }
+
+    static String name(int op) {
+        return NAMES[op];
+    }
+
+    /**
+     * Operators whose result depends only on their operands.  DIV and MOD
+     * are included: a repeated division computes the same value, and the
+     * first one has already raised if the divisor was zero.  LENGTH is
+     * included because an array's length never changes; its elements may,
+     * so LOAD_ELEMENT is not.  INTRINSIC is included for the same reason
+     * as DIV: intrinsics are deterministic and raise on the same arguments
+     * every time.
+     */
+    static boolean isPure(int op) {
+        return op >= ADD && op <= INTRINSIC;
+    }
+
+    static boolean isCommutative(int op) {
+        return op == ADD || op == MUL || op == EQ || op == NE;
+    }
+
+    static boolean isTerminator(int op) {
+        return op >= JUMP;
+    }
+
+    /**
+     * Applies a pure operator to its operand values, raising at the
+     * instruction's source position on division by zero or a string
+     * too long to build.
+     */
+    static Value apply(Instr instr, Value left, Value right) throws ExecutionException {
+        switch (instr.op) {
+            case ADD:
+                return Value.ofInteger(left.asInteger() + right.asInteger());
+            case SUB:
+                return Value.ofInteger(left.asInteger() - right.asInteger());
+            case MUL:
+                return Value.ofInteger(left.asInteger() * right.asInteger());
+            case DIV:
+                return Value.ofInteger(left.asInteger() / nonZeroDivisor(instr, right));
+            case MOD:
+                return Value.ofInteger(left.asInteger() % nonZeroDivisor(instr, right));
+            case NEG:
+                return Value.ofInteger(-left.asInteger());
+            case LT:
+                return Value.ofBoolean(left.asInteger() < right.asInteger());
+            case LE:
+                return Value.ofBoolean(left.asInteger() <= right.asInteger());
+            case GT:
+                return Value.ofBoolean(left.asInteger() > right.asInteger());
+            case GE:
+                return Value.ofBoolean(left.asInteger() >= right.asInteger());
+            case EQ:
+                return Value.ofBoolean(left.equals(right));
+            case NE:
+                return Value.ofBoolean(!left.equals(right));
+            case NOT:
+                return Value.ofBoolean(!left.asBoolean());
+            case LENGTH:
+                return Value.ofInteger(left.length());
+            case CONCAT:
+                return Value.concat(left, right, instr.line, instr.column);
+            default:
+                throw new ExecutionException("Not a pure operator: " + name(instr.op),
+                        instr.line, instr.column);
+        }
+    }
+
+    /**
+     * Applies a pure operator to the values of all its operands.
+     */
+    static Value apply(Instr instr, Value[] values) throws ExecutionException {
+        if (instr.op == INTRINSIC) {
+            return intrinsic(instr).apply(values, instr.line, instr.column);
+        }
+        return apply(instr, values[0], values.length > 1 ? values[1] : null);
+    }
+
+    static Intrinsic intrinsic(Instr instr) {
+        return INTRINSICS[instr.index];
+    }
+
+    private static int nonZeroDivisor(Instr instr, Value divisor) throws ExecutionException {
+        int value = divisor.asInteger();
+        if (value == 0) {
+            throw new ExecutionException("Division by zero", instr.line, instr.column);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+package splat.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.FrameLayout;
+import splat.executor.HostFunction;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * A whole program in SSA intermediate representation: one control-flow
+ * graph per function plus one for the main program body, whose registers
+ * stand for the global variables.
+ */
+public final class IrProgram {
+
+    final IrFunction[] functions;
+    final IrFunction main;
+    /** The host function behind each function index, or null. */
+    final HostFunction[] hosts;
+
+    private IrProgram(IrFunction[] functions, IrFunction main, HostFunction[] hosts) {
+        this.functions = functions;
+        this.main = main;
+        this.hosts = hosts;
+    }
+
+    /**
+     * Lowers an analyzed ProgramAST into IR.
+     */
+    public static IrProgram lower(ProgramAST progAST) throws ExecutionException {
+        List<FunctionDecl> decls = new ArrayList<>();
+        Map<String, Integer> functionIndex = new HashMap<>();
+        Map<String, FrameLayout> functionLayouts = new HashMap<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                FunctionDecl funcDecl = (FunctionDecl) decl;
+                String name = funcDecl.getName().getLexeme();
+                functionIndex.put(name, decls.size());
+                functionLayouts.put(name, FrameLayout.of(funcDecl));
+                decls.add(funcDecl);
+            }
+        }
+
+        HostFunction[] hosts = new HostFunction[decls.size()];
+        for (int i = 0; i < hosts.length; i++) {
+            if (decls.get(i) instanceof HostFunctionDecl) {
+                hosts[i] = ((HostFunctionDecl) decls.get(i)).getHost();
+            }
+        }
+        IrFunction[] functions = new IrFunction[decls.size()];
+        for (int i = 0; i < functions.length; i++) {
+            FunctionDecl decl = decls.get(i);
+            functions[i] = new IrBuilder(FrameLayout.of(decl), functionIndex, functionLayouts, hosts)
+                    .lower(decl.getBody(), decl);
+        }
+        IrFunction main = new IrBuilder(FrameLayout.forProgram(progAST), functionIndex, functionLayouts, hosts)
+                .lower(progAST.getStmts(), progAST);
+        return new IrProgram(functions, main, hosts);
+    }
+
+    /**
+     * Runs the IR optimization passes over every function: global value
+     * numbering (which subsumes common-subexpression elimination and folds
+     * constants), copy propagation and dead-code elimination, repeated until
+     * none of them finds anything more to do.
+     */
+    public void optimize() {
+        for (IrFunction function : functions) {
+            optimize(function);
+        }
+        optimize(main);
+    }
+
+    private static void optimize(IrFunction function) {
+        boolean changed = true;
+        while (changed) {
+            changed = new ValueNumbering(function).run();
+            changed |= new CopyPropagation(function).run();
+            changed |= new DeadCodeElimination(function).run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (IrFunction function : functions) {
+            sb.append(function);
+        }
+        sb.append(main);
+        return sb.toString();
+    }
+}
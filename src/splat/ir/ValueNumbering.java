@@ -0,0 +1,165 @@
+package splat.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Dominator-based global value numbering.
+ *
+ * Blocks are visited down the dominator tree with a scoped table from
+ * expression to register.  An expression already computed in a dominating
+ * block is redundant, so the instruction becomes a copy of the earlier
+ * register; within a block this is plain common-subexpression elimination.
+ * Pure operators whose operands are all constants are folded on the way,
+ * unless folding would raise, in which case the error is left for run time.
+ */
+final class ValueNumbering {
+
+    private final IrFunction function;
+    private final Instr[] defs;
+    private final int[] leader;
+    private final Map<Key, Integer> table = new HashMap<>();
+    private final List<Key> scope = new ArrayList<>();
+    private boolean changed;
+
+    ValueNumbering(IrFunction function) {
+        this.function = function;
+        this.defs = function.definitions();
+        this.leader = new int[function.registerCount];
+        for (int i = 0; i < leader.length; i++) {
+            leader[i] = i;
+        }
+    }
+
+    boolean run() {
+        Dominators dominators = new Dominators(function);
+
+        // iterative pre-order walk of the dominator tree; the scope mark
+        // recorded on entry is where the block's table entries start
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<Integer> marks = new ArrayDeque<>();
+        Deque<Integer> nextChild = new ArrayDeque<>();
+        blocks.push(function.entry());
+        marks.push(scope.size());
+        nextChild.push(0);
+        numberBlock(function.entry());
+
+        while (!blocks.isEmpty()) {
+            BasicBlock block = blocks.peek();
+            int next = nextChild.pop();
+            List<BasicBlock> children = dominators.children(block);
+            if (next < children.size()) {
+                nextChild.push(next + 1);
+                BasicBlock child = children.get(next);
+                blocks.push(child);
+                marks.push(scope.size());
+                nextChild.push(0);
+                numberBlock(child);
+            } else {
+                blocks.pop();
+                int mark = marks.pop();
+                while (scope.size() > mark) {
+                    table.remove(scope.remove(scope.size() - 1));
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void numberBlock(BasicBlock block) {
+        for (Instr phi : block.phis) {
+            resolveOperands(phi);
+            number(phi, new Key(IrOp.PHI, block.id, null, phi.operands));
+        }
+        for (Instr instr : block.instrs) {
+            resolveOperands(instr);
+            if (IrOp.isPure(instr.op)) {
+                fold(instr);
+            }
+            if (instr.op == IrOp.CONST) {
+                number(instr, new Key(IrOp.CONST, -1, instr.constant, instr.operands));
+            } else if (instr.op == IrOp.PARAM) {
+                number(instr, new Key(IrOp.PARAM, instr.index, null, instr.operands));
+            } else if (IrOp.isPure(instr.op)) {
+                int[] operands = instr.operands;
+                if (IrOp.isCommutative(instr.op) && operands[0] > operands[1]) {
+                    operands = new int[] { operands[1], operands[0] };
+                }
+                number(instr, new Key(instr.op, instr.index, null, operands));
+            }
+        }
+        resolveOperands(block.terminator);
+    }
+
+    private void number(Instr instr, Key key) {
+        Integer existing = table.get(key);
+        if (existing != null) {
+            leader[instr.dest] = existing;
+            instr.becomeCopyOf(existing);
+            changed = true;
+        } else {
+            table.put(key, instr.dest);
+            scope.add(key);
+        }
+    }
+
+    private void fold(Instr instr) {
+        Value[] values = new Value[instr.operands.length];
+        for (int i = 0; i < instr.operands.length; i++) {
+            Instr def = defs[instr.operands[i]];
+            if (def == null || def.op != IrOp.CONST) {
+                return;
+            }
+            values[i] = def.constant;
+        }
+        try {
+            instr.becomeConstant(IrOp.apply(instr, values));
+            changed = true;
+        } catch (ExecutionException ex) {
+            // keep the instruction so the error is raised when it runs
+        }
+    }
+
+    private void resolveOperands(Instr instr) {
+        for (int i = 0; i < instr.operands.length; i++) {
+            instr.operands[i] = leader[instr.operands[i]];
+        }
+    }
+
+    private static final class Key {
+        private final int op;
+        private final int index;
+        private final Value constant;
+        private final int[] operands;
+
+        Key(int op, int index, Value constant, int[] operands) {
+            this.op = op;
+            this.index = index;
+            this.constant = constant;
+            this.operands = operands.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return op == other.op && index == other.index
+                    && Objects.equals(constant, other.constant)
+                    && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(op, index, constant) * 31 + Arrays.hashCode(operands);
+        }
+    }
+}
@@ -233,7 +233,7 @@ public class Lexer {
                     }
                 }
 
-                String singleChars = ";:,()+-*/%<>=.";
+                String singleChars = ";:,()[]+-*/%<>=.";
                 if (singleChars.indexOf(c) != -1) {
                     tokens.add(new Token(String.valueOf(c), line, col));
                     continue;
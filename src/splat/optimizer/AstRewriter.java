@@ -0,0 +1,512 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.Intrinsic;
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.AddNode;
+import splat.parser.elements.ArithmeticOp;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.NewMap;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Bottom-up copy of an analyzed AST.  By default every node is rebuilt only
+ * if one of its children changed, so an unmodified subtree keeps its
+ * identity.  Optimization passes extend this class and override the hooks
+ * for the nodes they transform.
+ *
+ * A statement rewrites to a list so that a pass can drop it (empty list) or
+ * splice several statements in its place.  This is safe because SPLAT has
+ * one flat scope per function: nested statement lists introduce no names.
+ *
+ * While a function (or the main program body) is being rewritten, a pass
+ * can ask for the types of its variables and declare new synthetic ones
+ * with newVariable; they are added to the function's locals, or to the
+ * globals for the main body.
+ */
+public class AstRewriter {
+
+    private final Map<String, FunctionDecl> functions = new HashMap<>();
+    private final Map<String, Type> scopeTypes = new HashMap<>();
+    private final List<VariableDecl> scopeAdditions = new ArrayList<>();
+    private int syntheticCount;
+
+    public ProgramAST rewriteProgram(ProgramAST progAST) {
+        functions.clear();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                functions.put(decl.getLabel().getLexeme(), (FunctionDecl) decl);
+            }
+        }
+
+        List<Declaration> decls = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                decls.add(rewriteFunction((FunctionDecl) decl));
+            } else {
+                decls.add(decl);
+            }
+        }
+
+        List<VariableDecl> globals = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof VariableDecl) {
+                globals.add((VariableDecl) decl);
+            }
+        }
+        enterScope(List.of(), globals);
+        List<Statement> stmts = rewriteMainBody(progAST.getStmts());
+        decls.addAll(scopeAdditions);
+        return new ProgramAST(decls, stmts, progAST.getToken());
+    }
+
+    protected List<Statement> rewriteMainBody(List<Statement> stmts) {
+        return rewriteStatements(stmts);
+    }
+
+    protected FunctionDecl rewriteFunction(FunctionDecl decl) {
+        List<VariableDecl> locals = decl.getLocalVars() != null ? decl.getLocalVars() : List.of();
+        enterScope(decl.getParams(), locals);
+        List<Statement> body = decl.getBody() != null ? rewriteFunctionBody(decl, decl.getBody()) : null;
+        if (scopeAdditions.isEmpty() && (body == null || body.equals(decl.getBody()))) {
+            return decl;
+        }
+        List<VariableDecl> allLocals = new ArrayList<>(locals);
+        allLocals.addAll(scopeAdditions);
+        return new FunctionDecl(decl.getName(), decl.getParams(), decl.getReturnType(),
+                allLocals, body);
+    }
+
+    protected List<Statement> rewriteFunctionBody(FunctionDecl decl, List<Statement> body) {
+        return rewriteStatements(body);
+    }
+
+    private void enterScope(List<VariableDecl> params, List<VariableDecl> locals) {
+        scopeTypes.clear();
+        scopeAdditions.clear();
+        for (VariableDecl var : params) {
+            scopeTypes.put(var.getName().getLexeme(), declaredType(var.getType()));
+        }
+        for (VariableDecl var : locals) {
+            scopeTypes.put(var.getName().getLexeme(), declaredType(var.getType()));
+        }
+    }
+
+    /**
+     * Declares a new variable in the scope being rewritten and returns its
+     * name token, positioned at elem.  Synthetic names start with a digit,
+     * so they can never clash with a SPLAT identifier, and skip any name the
+     * scope already has (such as one added by an earlier pass).
+     */
+    protected Token newVariable(String hint, Type type, ASTElement elem) {
+        String name = (++syntheticCount) + hint;
+        while (scopeTypes.containsKey(name)) {
+            name = (++syntheticCount) + hint;
+        }
+        Token nameToken = new Token(name, elem.getLine(), elem.getColumn());
+        Token typeToken = new Token(type.getDisplayName(), elem.getLine(), elem.getColumn());
+        scopeAdditions.add(new VariableDecl(nameToken, typeToken));
+        scopeTypes.put(name, type);
+        return nameToken;
+    }
+
+    /**
+     * The type of a variable of the scope being rewritten, or null if there
+     * is no such variable.
+     */
+    protected Type variableType(String name) {
+        return scopeTypes.get(name);
+    }
+
+    /**
+     * Names of all the variables of the scope being rewritten.
+     */
+    protected Set<String> scopeVariables() {
+        return Collections.unmodifiableSet(scopeTypes.keySet());
+    }
+
+    protected FunctionDecl function(String name) {
+        return functions.get(name);
+    }
+
+    protected Map<String, FunctionDecl> functions() {
+        return functions;
+    }
+
+    protected static boolean isConcatenation(Expression expr) {
+        return expr instanceof AddNode && ((AddNode) expr).isConcatenation();
+    }
+
+    /**
+     * The static type of an analyzed expression.
+     */
+    protected Type typeOf(Expression expr) {
+        if (expr instanceof Literal) {
+            return ((Literal) expr).getConstant().getType();
+        } else if (expr instanceof VariableRef) {
+            return variableType(((VariableRef) expr).getName().getLexeme());
+        } else if (expr instanceof ArithmeticOp) {
+            return isConcatenation(expr) ? Type.STRING : Type.INTEGER;
+        } else if (expr instanceof BinaryOp) {
+            return Type.BOOLEAN;
+        } else if (expr instanceof UnaryOp) {
+            return "-".equals(((UnaryOp) expr).getOperator().getLexeme()) ? Type.INTEGER : Type.BOOLEAN;
+        } else if (expr instanceof FunctionCall) {
+            String name = ((FunctionCall) expr).getName().getLexeme();
+            FunctionDecl decl = function(name);
+            return decl != null ? declaredType(decl.getReturnType()) : Intrinsic.lookup(name).getReturnType();
+        } else if (expr instanceof ParallelOperands) {
+            return typeOf(((ParallelOperands) expr).getExpression());
+        } else if (expr instanceof ArrayIndex) {
+            return typeOf(((ArrayIndex) expr).getArray()).elementType();
+        } else if (expr instanceof ArrayLength) {
+            return Type.INTEGER;
+        } else if (expr instanceof NewArray) {
+            return declaredType(((NewArray) expr).getTypeToken());
+        } else if (expr instanceof NewMap) {
+            return declaredType(((NewMap) expr).getTypeToken());
+        } else if (expr instanceof MapContains) {
+            return Type.BOOLEAN;
+        } else if (expr instanceof MapSize) {
+            return Type.INTEGER;
+        }
+        throw new IllegalStateException("Cannot type expression " + expr);
+    }
+
+    protected static Type declaredType(Token typeToken) {
+        try {
+            return Type.fromToken(typeToken);
+        } catch (SemanticAnalysisException ex) {
+            throw new IllegalStateException("Optimizing a program that failed analysis: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Names of the variables assigned anywhere in the given statements,
+     * including nested ones.
+     */
+    protected static Set<String> assignedIn(List<Statement> stmts) {
+        Set<String> assigned = new HashSet<>();
+        collectAssigned(stmts, assigned);
+        return assigned;
+    }
+
+    private static void collectAssigned(List<Statement> stmts, Set<String> assigned) {
+        for (Statement stmt : stmts) {
+            if (stmt instanceof Assignment) {
+                assigned.add(((Assignment) stmt).getVariable().getLexeme());
+            } else if (stmt instanceof IfThenElse) {
+                collectAssigned(((IfThenElse) stmt).getThenStmts(), assigned);
+                collectAssigned(((IfThenElse) stmt).getElseStmts(), assigned);
+            } else if (stmt instanceof WhileLoop) {
+                collectAssigned(((WhileLoop) stmt).getBody(), assigned);
+            } else if (stmt instanceof Block) {
+                collectAssigned(((Block) stmt).getStatements(), assigned);
+            } else if (stmt instanceof ForLoop) {
+                collectAssigned(((ForLoop) stmt).getEquivalentStatements(), assigned);
+            } else if (stmt instanceof CaseStmt) {
+                for (CaseStmt.Arm arm : ((CaseStmt) stmt).getArms()) {
+                    collectAssigned(arm.getBody(), assigned);
+                }
+                collectAssigned(((CaseStmt) stmt).getElseStmts(), assigned);
+            }
+        }
+    }
+
+    protected List<Statement> rewriteStatements(List<Statement> stmts) {
+        List<Statement> result = new ArrayList<>(stmts.size());
+        for (Statement stmt : stmts) {
+            result.addAll(rewriteStatement(stmt));
+        }
+        return result;
+    }
+
+    protected List<Statement> rewriteStatement(Statement stmt) {
+        if (stmt instanceof Assignment) {
+            return rewriteAssignment((Assignment) stmt);
+        } else if (stmt instanceof ArrayAssignment) {
+            return rewriteArrayAssignment((ArrayAssignment) stmt);
+        } else if (stmt instanceof PrintStmt) {
+            return rewritePrint((PrintStmt) stmt);
+        } else if (stmt instanceof ReturnStmt) {
+            return rewriteReturn((ReturnStmt) stmt);
+        } else if (stmt instanceof IfThenElse) {
+            return rewriteIf((IfThenElse) stmt);
+        } else if (stmt instanceof WhileLoop) {
+            return rewriteWhile((WhileLoop) stmt);
+        } else if (stmt instanceof Block) {
+            return rewriteBlock((Block) stmt);
+        } else if (stmt instanceof ForLoop) {
+            return rewriteFor((ForLoop) stmt);
+        } else if (stmt instanceof CaseStmt) {
+            return rewriteCase((CaseStmt) stmt);
+        } else if (stmt instanceof FunctionCallStmt) {
+            return rewriteCallStmt((FunctionCallStmt) stmt);
+        } else if (stmt instanceof ExpressionStmt) {
+            return rewriteExpressionStmt((ExpressionStmt) stmt);
+        }
+        return List.of(stmt);
+    }
+
+    protected List<Statement> rewriteAssignment(Assignment stmt) {
+        Expression expr = rewriteExpression(stmt.getExpression());
+        if (expr == stmt.getExpression()) {
+            return List.of(stmt);
+        }
+        return List.of(new Assignment(stmt.getVariable(), expr));
+    }
+
+    protected List<Statement> rewriteArrayAssignment(ArrayAssignment stmt) {
+        Expression index = rewriteExpression(stmt.getIndex());
+        Expression expr = rewriteExpression(stmt.getExpression());
+        if (index == stmt.getIndex() && expr == stmt.getExpression()) {
+            return List.of(stmt);
+        }
+        return List.of(new ArrayAssignment(stmt.getVariable(), stmt.getBracket(), index, expr));
+    }
+
+    protected List<Statement> rewritePrint(PrintStmt stmt) {
+        if (stmt.getExpr() == null) {
+            return List.of(stmt);
+        }
+        Expression expr = rewriteExpression(stmt.getExpr());
+        if (expr == stmt.getExpr()) {
+            return List.of(stmt);
+        }
+        return List.of(new PrintStmt(stmt.getStartToken(), expr));
+    }
+
+    protected List<Statement> rewriteReturn(ReturnStmt stmt) {
+        if (stmt.getExpr() == null) {
+            return List.of(stmt);
+        }
+        Expression expr = rewriteExpression(stmt.getExpr());
+        if (expr == stmt.getExpr()) {
+            return List.of(stmt);
+        }
+        return List.of(new ReturnStmt(stmt.getReturnToken(), expr));
+    }
+
+    protected List<Statement> rewriteIf(IfThenElse stmt) {
+        Expression condition = rewriteExpression(stmt.getCondition());
+        List<Statement> thenStmts = rewriteStatements(stmt.getThenStmts());
+        List<Statement> elseStmts = rewriteStatements(stmt.getElseStmts());
+        if (condition == stmt.getCondition() && thenStmts.equals(stmt.getThenStmts())
+                && elseStmts.equals(stmt.getElseStmts())) {
+            return List.of(stmt);
+        }
+        return List.of(new IfThenElse(stmt.getIfToken(), condition, thenStmts, elseStmts));
+    }
+
+    protected List<Statement> rewriteWhile(WhileLoop stmt) {
+        Expression condition = rewriteExpression(stmt.getCondition());
+        List<Statement> body = rewriteStatements(stmt.getBody());
+        if (condition == stmt.getCondition() && body.equals(stmt.getBody())) {
+            return List.of(stmt);
+        }
+        return List.of(new WhileLoop(stmt.getWhileToken(), condition, body));
+    }
+
+    protected List<Statement> rewriteBlock(Block stmt) {
+        List<Statement> stmts = rewriteStatements(stmt.getStatements());
+        if (stmts.equals(stmt.getStatements())) {
+            return List.of(stmt);
+        }
+        return List.of(new Block(stmt.getStartToken(), stmts));
+    }
+
+    /**
+     * Passes work on a for loop's equivalent statements; the loop becomes
+     * primitive again in CountedLoopRecognizer.
+     */
+    protected List<Statement> rewriteFor(ForLoop stmt) {
+        return rewriteStatements(stmt.getEquivalentStatements());
+    }
+
+    protected List<Statement> rewriteCase(CaseStmt stmt) {
+        Expression scrutinee = rewriteExpression(stmt.getScrutinee());
+        boolean changed = scrutinee != stmt.getScrutinee();
+        List<CaseStmt.Arm> arms = new ArrayList<>();
+        for (CaseStmt.Arm arm : stmt.getArms()) {
+            List<Statement> body = rewriteStatements(arm.getBody());
+            changed |= !body.equals(arm.getBody());
+            arms.add(new CaseStmt.Arm(arm.getLabels(), body));
+        }
+        List<Statement> elseStmts = rewriteStatements(stmt.getElseStmts());
+        if (!changed && elseStmts.equals(stmt.getElseStmts())) {
+            return List.of(stmt);
+        }
+        return List.of(new CaseStmt(stmt.getStartToken(), scrutinee, arms, elseStmts));
+    }
+
+    protected List<Statement> rewriteCallStmt(FunctionCallStmt stmt) {
+        Expression call = rewriteExpression(stmt.getCall());
+        if (call == stmt.getCall()) {
+            return List.of(stmt);
+        }
+        if (call instanceof FunctionCall) {
+            return List.of(new FunctionCallStmt((FunctionCall) call));
+        }
+        return List.of(new ExpressionStmt(call));
+    }
+
+    protected List<Statement> rewriteExpressionStmt(ExpressionStmt stmt) {
+        Expression expr = rewriteExpression(stmt.getExpression());
+        if (expr == stmt.getExpression()) {
+            return List.of(stmt);
+        }
+        return List.of(new ExpressionStmt(expr));
+    }
+
+    protected Expression rewriteExpression(Expression expr) {
+        if (expr instanceof BinaryOp) {
+            return rewriteBinary((BinaryOp) expr);
+        } else if (expr instanceof UnaryOp) {
+            return rewriteUnary((UnaryOp) expr);
+        } else if (expr instanceof FunctionCall) {
+            return rewriteCall((FunctionCall) expr);
+        } else if (expr instanceof ParallelOperands) {
+            return rewriteParallel((ParallelOperands) expr);
+        } else if (expr instanceof ArrayIndex) {
+            return rewriteArrayIndex((ArrayIndex) expr);
+        } else if (expr instanceof ArrayLength) {
+            return rewriteArrayLength((ArrayLength) expr);
+        } else if (expr instanceof NewArray) {
+            return rewriteNewArray((NewArray) expr);
+        } else if (expr instanceof MapContains) {
+            return rewriteMapContains((MapContains) expr);
+        } else if (expr instanceof MapSize) {
+            return rewriteMapSize((MapSize) expr);
+        }
+        return expr;
+    }
+
+    protected Expression rewriteBinary(BinaryOp expr) {
+        Expression left = rewriteExpression(expr.getLeftExpr());
+        Expression right = rewriteExpression(expr.getRightExpr());
+        return expr.withOperands(left, right);
+    }
+
+    protected Expression rewriteUnary(UnaryOp expr) {
+        Expression operand = rewriteExpression(expr.getExpr());
+        if (operand == expr.getExpr()) {
+            return expr;
+        }
+        return new UnaryOp(expr.getOperator(), operand);
+    }
+
+    protected Expression rewriteArrayIndex(ArrayIndex expr) {
+        Expression array = rewriteExpression(expr.getArray());
+        Expression index = rewriteExpression(expr.getIndex());
+        if (array == expr.getArray() && index == expr.getIndex()) {
+            return expr;
+        }
+        return new ArrayIndex(expr.getToken(), array, index);
+    }
+
+    protected Expression rewriteArrayLength(ArrayLength expr) {
+        Expression array = rewriteExpression(expr.getArray());
+        if (array == expr.getArray()) {
+            return expr;
+        }
+        return new ArrayLength(expr.getToken(), array);
+    }
+
+    protected Expression rewriteNewArray(NewArray expr) {
+        Expression size = rewriteExpression(expr.getSize());
+        if (size == expr.getSize()) {
+            return expr;
+        }
+        return new NewArray(expr.getTypeToken(), size);
+    }
+
+    protected Expression rewriteMapContains(MapContains expr) {
+        Expression map = rewriteExpression(expr.getMap());
+        Expression key = rewriteExpression(expr.getKey());
+        if (map == expr.getMap() && key == expr.getKey()) {
+            return expr;
+        }
+        return new MapContains(expr.getToken(), map, key);
+    }
+
+    protected Expression rewriteMapSize(MapSize expr) {
+        Expression map = rewriteExpression(expr.getMap());
+        if (map == expr.getMap()) {
+            return expr;
+        }
+        return new MapSize(expr.getToken(), map);
+    }
+
+    /**
+     * Rewrites the operation and keeps it parallel, as long as the operands
+     * that were forked are still calls.
+     */
+    protected Expression rewriteParallel(ParallelOperands expr) {
+        Expression inner = rewriteExpression(expr.getExpression());
+        if (inner == expr.getExpression()) {
+            return expr;
+        }
+        if (!(inner instanceof BinaryOp || inner instanceof FunctionCall)) {
+            return inner;
+        }
+        List<Expression> operands = ParallelOperands.operandsOf(inner);
+        boolean[] forked = new boolean[operands.size()];
+        for (int i = 0; i < forked.length; i++) {
+            if (expr.isForked(i) && !(operands.get(i) instanceof FunctionCall)) {
+                return inner;
+            }
+            forked[i] = expr.isForked(i);
+        }
+        return new ParallelOperands(inner, forked);
+    }
+
+    protected Expression rewriteCall(FunctionCall expr) {
+        List<Expression> args = new ArrayList<>(expr.getArgs().size());
+        boolean changed = false;
+        for (Expression arg : expr.getArgs()) {
+            Expression rewritten = rewriteExpression(arg);
+            changed |= rewritten != arg;
+            args.add(rewritten);
+        }
+        if (!changed) {
+            return expr;
+        }
+        return new FunctionCall(expr.getName(), args);
+    }
+}
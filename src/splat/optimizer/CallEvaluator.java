@@ -0,0 +1,104 @@
+package splat.optimizer;
+
+import splat.executor.ExecutionException;
+import splat.executor.Intrinsic;
+import splat.executor.Value;
+import splat.ir.IrInterpreter;
+import splat.ir.IrProgram;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.Literal;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Constant folding extended to calls: a call to a pure function whose
+ * arguments are all constants is run at compile time and replaced by a
+ * Literal holding its result.  Since folding is bottom-up, the result can
+ * in turn make the enclosing expression, or an enclosing call, constant.
+ * Intrinsics are applied directly.
+ *
+ * Calls are run on the IR of the program being optimized, each with at
+ * most STEP_BUDGET basic blocks and MAX_CALL_DEPTH nested calls.  A call
+ * that raises, runs out of either, or fails in any other way - even by
+ * running out of Java stack or memory - is left in place, so whatever it
+ * does is still done at run time, from the same source position.
+ */
+public class CallEvaluator extends ConstantFolder {
+
+    public static final long STEP_BUDGET = 100_000;
+    public static final int MAX_CALL_DEPTH = 256;
+
+    private ProgramAST source;
+    private PurityAnalysis purity;
+    private IrProgram program;
+    private boolean unlowerable;
+    private int evaluatedCalls;
+
+    public int getEvaluatedCalls() {
+        return evaluatedCalls;
+    }
+
+    @Override
+    public ProgramAST rewriteProgram(ProgramAST progAST) {
+        source = progAST;
+        purity = null;
+        program = null;
+        unlowerable = false;
+        return super.rewriteProgram(progAST);
+    }
+
+    @Override
+    protected Expression rewriteCall(FunctionCall expr) {
+        FunctionCall call = (FunctionCall) super.rewriteCall(expr);
+        for (Expression arg : call.getArgs()) {
+            if (!isConstant(arg)) {
+                return call;
+            }
+        }
+        String name = call.getName().getLexeme();
+        Value[] args = new Value[call.getArgs().size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = constantOf(call.getArgs().get(i));
+        }
+        if (function(name) == null) {
+            try {
+                Value result = Intrinsic.lookup(name).apply(args, call.getLine(), call.getColumn());
+                evaluatedCalls++;
+                return Literal.ofValue(call.getName(), result);
+            } catch (ExecutionException | RuntimeException ex) {
+                return call;
+            }
+        }
+        if (purity == null) {
+            purity = new PurityAnalysis(functions());
+        }
+        if (!purity.isPure(name) || !ensureLowered()) {
+            return call;
+        }
+
+        IrInterpreter interpreter = new IrInterpreter(program, MAX_CALL_DEPTH);
+        interpreter.setStepBudget(STEP_BUDGET);
+        try {
+            Value result = interpreter.call(name, args);
+            if (result == null) {
+                return call;
+            }
+            evaluatedCalls++;
+            return Literal.ofValue(call.getName(), result);
+        } catch (ExecutionException | RuntimeException | StackOverflowError | OutOfMemoryError ex) {
+            // not worth failing the compile for: the call fails, if at all, at run time
+            return call;
+        }
+    }
+
+    private boolean ensureLowered() {
+        if (program == null && !unlowerable) {
+            try {
+                program = IrProgram.lower(source);
+            } catch (ExecutionException ex) {
+                unlowerable = true;
+            }
+        }
+        return program != null;
+    }
+}
@@ -0,0 +1,157 @@
+package splat.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.WhileLoop;
+
+/**
+ * Which functions each function of a program calls directly.
+ */
+public class CallGraph {
+
+    private final Map<String, Set<String>> callees = new HashMap<>();
+
+    public CallGraph(Map<String, FunctionDecl> functions) {
+        for (FunctionDecl decl : functions.values()) {
+            Set<String> called = new LinkedHashSet<>();
+            if (decl.getBody() != null) {
+                collectCalls(decl.getBody(), called);
+            }
+            callees.put(decl.getName().getLexeme(), called);
+        }
+    }
+
+    public Set<String> callees(String name) {
+        return callees.getOrDefault(name, Set.of());
+    }
+
+    /**
+     * Whether the function can reach a call to itself.
+     */
+    public boolean isRecursive(String name) {
+        return reachableFrom(callees(name)).contains(name);
+    }
+
+    /**
+     * The given functions and every function they call, transitively.
+     */
+    public Set<String> reachableFrom(Set<String> roots) {
+        Set<String> reached = new LinkedHashSet<>();
+        Deque<String> worklist = new ArrayDeque<>(roots);
+        while (!worklist.isEmpty()) {
+            String name = worklist.pop();
+            if (reached.add(name)) {
+                worklist.addAll(callees(name));
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Names of the functions called anywhere in the given statements.
+     */
+    public static Set<String> callsIn(List<Statement> stmts) {
+        Set<String> called = new HashSet<>();
+        collectCalls(stmts, called);
+        return called;
+    }
+
+    private static void collectCalls(List<Statement> stmts, Set<String> called) {
+        for (Statement stmt : stmts) {
+            if (stmt instanceof Assignment) {
+                collectCalls(((Assignment) stmt).getExpression(), called);
+            } else if (stmt instanceof PrintStmt) {
+                collectCalls(((PrintStmt) stmt).getExpr(), called);
+            } else if (stmt instanceof ReturnStmt) {
+                collectCalls(((ReturnStmt) stmt).getExpr(), called);
+            } else if (stmt instanceof IfThenElse) {
+                IfThenElse ite = (IfThenElse) stmt;
+                collectCalls(ite.getCondition(), called);
+                collectCalls(ite.getThenStmts(), called);
+                collectCalls(ite.getElseStmts(), called);
+            } else if (stmt instanceof WhileLoop) {
+                collectCalls(((WhileLoop) stmt).getCondition(), called);
+                collectCalls(((WhileLoop) stmt).getBody(), called);
+            } else if (stmt instanceof CountedLoop) {
+                collectCalls(((CountedLoop) stmt).getEquivalentStatements(), called);
+            } else if (stmt instanceof ForLoop) {
+                collectCalls(((ForLoop) stmt).getEquivalentStatements(), called);
+            } else if (stmt instanceof CaseStmt) {
+                CaseStmt cs = (CaseStmt) stmt;
+                collectCalls(cs.getScrutinee(), called);
+                for (CaseStmt.Arm arm : cs.getArms()) {
+                    collectCalls(arm.getBody(), called);
+                }
+                collectCalls(cs.getElseStmts(), called);
+            } else if (stmt instanceof ArrayAssignment) {
+                collectCalls(((ArrayAssignment) stmt).getIndex(), called);
+                collectCalls(((ArrayAssignment) stmt).getExpression(), called);
+            } else if (stmt instanceof Block) {
+                collectCalls(((Block) stmt).getStatements(), called);
+            } else if (stmt instanceof FunctionCallStmt) {
+                collectCalls(((FunctionCallStmt) stmt).getCall(), called);
+            } else if (stmt instanceof ExpressionStmt) {
+                collectCalls(((ExpressionStmt) stmt).getExpression(), called);
+            }
+        }
+    }
+
+    private static void collectCalls(Expression expr, Set<String> called) {
+        if (expr instanceof ParallelOperands) {
+            collectCalls(((ParallelOperands) expr).getExpression(), called);
+        } else if (expr instanceof BinaryOp) {
+            collectCalls(((BinaryOp) expr).getLeftExpr(), called);
+            collectCalls(((BinaryOp) expr).getRightExpr(), called);
+        } else if (expr instanceof UnaryOp) {
+            collectCalls(((UnaryOp) expr).getExpr(), called);
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            called.add(call.getName().getLexeme());
+            for (Expression arg : call.getArgs()) {
+                collectCalls(arg, called);
+            }
+        } else if (expr instanceof ArrayIndex) {
+            collectCalls(((ArrayIndex) expr).getArray(), called);
+            collectCalls(((ArrayIndex) expr).getIndex(), called);
+        } else if (expr instanceof ArrayLength) {
+            collectCalls(((ArrayLength) expr).getArray(), called);
+        } else if (expr instanceof NewArray) {
+            collectCalls(((NewArray) expr).getSize(), called);
+        } else if (expr instanceof MapContains) {
+            collectCalls(((MapContains) expr).getMap(), called);
+            collectCalls(((MapContains) expr).getKey(), called);
+        } else if (expr instanceof MapSize) {
+            collectCalls(((MapSize) expr).getMap(), called);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package splat.optimizer;
+
+import java.util.List;
+
+import splat.parser.elements.Expression;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.Statement;
+
+/**
+ * Replaces every call to length, contains or size that semantic analysis
+ * resolved to an array or map operation by that operation's node, so the
+ * engines and the optimizer only ever see ArrayLength, MapContains and
+ * MapSize.  The names are ordinary identifiers to the parser, which is
+ * what lets a program keep using them for its own variables and functions.
+ *
+ * Like ConstantSubstitution this always runs, right after semantic
+ * analysis.
+ */
+public class CallResolution extends AstRewriter {
+
+    /**
+     * Keeps for loops, which the tree walker runs with an int counter,
+     * instead of lowering them as optimization passes do.
+     */
+    @Override
+    protected List<Statement> rewriteFor(ForLoop stmt) {
+        Expression from = rewriteExpression(stmt.getFrom());
+        Expression limit = rewriteExpression(stmt.getLimit());
+        List<Statement> body = rewriteStatements(stmt.getBody());
+        if (from == stmt.getFrom() && limit == stmt.getLimit() && body.equals(stmt.getBody())) {
+            return List.of(stmt);
+        }
+        return List.of(stmt.withParts(from, limit, body));
+    }
+
+    @Override
+    protected Expression rewriteCall(FunctionCall expr) {
+        if (expr.getOperation() != null) {
+            return rewriteExpression(expr.getOperation());
+        }
+        return super.rewriteCall(expr);
+    }
+}
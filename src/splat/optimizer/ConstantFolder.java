@@ -0,0 +1,123 @@
+package splat.optimizer;
+
+import java.util.List;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+import splat.parser.elements.AndNode;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.Expression;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
+import splat.parser.elements.LogicalOp;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.WhileLoop;
+
+/**
+ * Folds operators whose operands are constants into Literals and removes
+ * control flow decided by a constant condition: the untaken arm of an
+ * IfThenElse and any 'while false' loop.
+ *
+ * Folding runs the node's own evaluate() on its constant operands, so the
+ * result is exactly what the engines would compute.  A node whose
+ * evaluation raises (such as a division by zero) is left in place, so the
+ * error is still reported at run time, from the same source position.
+ */
+public class ConstantFolder extends AstRewriter {
+
+    private int foldedExpressions;
+    private int removedStatements;
+
+    public int getFoldedExpressions() {
+        return foldedExpressions;
+    }
+
+    public int getRemovedStatements() {
+        return removedStatements;
+    }
+
+    public static boolean isConstant(Expression expr) {
+        return expr instanceof Literal && ((Literal) expr).getConstant() != null;
+    }
+
+    public static Value constantOf(Expression expr) {
+        return ((Literal) expr).getConstant();
+    }
+
+    @Override
+    protected Expression rewriteBinary(BinaryOp expr) {
+        Expression left = rewriteExpression(expr.getLeftExpr());
+
+        // and/or short-circuit, so a constant left operand decides whether
+        // the right operand matters at all
+        if (expr instanceof LogicalOp && isConstant(left)) {
+            boolean leftBool = constantOf(left).asBoolean();
+            boolean isAnd = expr instanceof AndNode;
+            foldedExpressions++;
+            if (leftBool != isAnd) {
+                return Literal.ofValue(expr.getToken(), Value.ofBoolean(leftBool));
+            }
+            return rewriteExpression(expr.getRightExpr());
+        }
+
+        Expression right = rewriteExpression(expr.getRightExpr());
+        BinaryOp rebuilt = expr.withOperands(left, right);
+        if (isConstant(left) && isConstant(right)) {
+            return tryFold(rebuilt);
+        }
+        return rebuilt;
+    }
+
+    @Override
+    protected Expression rewriteUnary(UnaryOp expr) {
+        Expression rebuilt = super.rewriteUnary(expr);
+        if (isConstant(((UnaryOp) rebuilt).getExpr())) {
+            return tryFold(rebuilt);
+        }
+        return rebuilt;
+    }
+
+    @Override
+    protected List<Statement> rewriteIf(IfThenElse stmt) {
+        Expression condition = rewriteExpression(stmt.getCondition());
+        if (isConstant(condition)) {
+            removedStatements++;
+            boolean taken = constantOf(condition).asBoolean();
+            return rewriteStatements(taken ? stmt.getThenStmts() : stmt.getElseStmts());
+        }
+        return super.rewriteIf(stmt);
+    }
+
+    @Override
+    protected List<Statement> rewriteCase(CaseStmt stmt) {
+        Expression scrutinee = rewriteExpression(stmt.getScrutinee());
+        if (isConstant(scrutinee)) {
+            removedStatements++;
+            return rewriteStatements(stmt.getArmStatements(stmt.getTable().armOf(constantOf(scrutinee))));
+        }
+        return super.rewriteCase(stmt);
+    }
+
+    @Override
+    protected List<Statement> rewriteWhile(WhileLoop stmt) {
+        Expression condition = rewriteExpression(stmt.getCondition());
+        if (isConstant(condition) && !constantOf(condition).asBoolean()) {
+            removedStatements++;
+            return List.of();
+        }
+        return super.rewriteWhile(stmt);
+    }
+
+    private Expression tryFold(Expression expr) {
+        try {
+            // constant operands never consult the function map or a frame
+            Value value = expr.evaluate(null, null);
+            foldedExpressions++;
+            return Literal.ofValue(expr.getToken(), value);
+        } catch (ExecutionException ex) {
+            return expr;
+        }
+    }
+}
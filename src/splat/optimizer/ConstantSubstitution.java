@@ -0,0 +1,99 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.Literal;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.VariableRef;
+
+/**
+ * Replaces every use of a named constant by a Literal of its value, at the
+ * position of the use, and drops the constants' declarations, so that no
+ * engine gives them a slot.  Inside a function, a parameter or local of
+ * the same name hides the constant.
+ *
+ * Unlike the Optimizer's passes this always runs, right after semantic
+ * analysis: constants cost nothing at run time even without optimization,
+ * and with it their values fold into the expressions that use them.
+ */
+public class ConstantSubstitution extends AstRewriter {
+
+    private final Map<String, Literal> constants = new HashMap<>();
+    private boolean inFunction;
+    private int substitutions;
+
+    public int getSubstitutions() {
+        return substitutions;
+    }
+
+    @Override
+    public ProgramAST rewriteProgram(ProgramAST progAST) {
+        constants.clear();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof VariableDecl && ((VariableDecl) decl).isConstant()) {
+                constants.put(decl.getLabel().getLexeme(), ((VariableDecl) decl).getConstantValue());
+            }
+        }
+        if (constants.isEmpty()) {
+            return progAST;
+        }
+
+        ProgramAST rewritten = super.rewriteProgram(progAST);
+        List<Declaration> decls = new ArrayList<>();
+        for (Declaration decl : rewritten.getDecls()) {
+            if (!(decl instanceof VariableDecl && ((VariableDecl) decl).isConstant())) {
+                decls.add(decl);
+            }
+        }
+        return new ProgramAST(decls, rewritten.getStmts(), rewritten.getToken());
+    }
+
+    @Override
+    protected List<Statement> rewriteFunctionBody(FunctionDecl decl, List<Statement> body) {
+        inFunction = true;
+        try {
+            return super.rewriteFunctionBody(decl, body);
+        } finally {
+            inFunction = false;
+        }
+    }
+
+    /**
+     * Keeps for loops, which the tree walker runs with an int counter,
+     * instead of lowering them as optimization passes do.
+     */
+    @Override
+    protected List<Statement> rewriteFor(ForLoop stmt) {
+        Expression from = rewriteExpression(stmt.getFrom());
+        Expression limit = rewriteExpression(stmt.getLimit());
+        List<Statement> body = rewriteStatements(stmt.getBody());
+        if (from == stmt.getFrom() && limit == stmt.getLimit() && body.equals(stmt.getBody())) {
+            return List.of(stmt);
+        }
+        return List.of(stmt.withParts(from, limit, body));
+    }
+
+    @Override
+    protected Expression rewriteExpression(Expression expr) {
+        if (expr instanceof VariableRef) {
+            String name = ((VariableRef) expr).getName().getLexeme();
+            Literal value = constants.get(name);
+            // in the main body the constants are the globals of that name
+            if (value != null && !(inFunction && scopeVariables().contains(name))) {
+                substitutions++;
+                return Literal.ofValue(((VariableRef) expr).getName(), value.getConstant());
+            }
+            return expr;
+        }
+        return super.rewriteExpression(expr);
+    }
+}
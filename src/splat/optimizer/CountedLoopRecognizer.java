@@ -0,0 +1,292 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.parser.elements.AddNode;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.ComparisonOp;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.InductionVariableRef;
+import splat.parser.elements.Literal;
+import splat.parser.elements.MultiplyNode;
+import splat.parser.elements.NotEqualNode;
+import splat.parser.elements.Statement;
+import splat.parser.elements.SubtractNode;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Turns counted WhileLoops into CountedLoops.
+ *
+ * A loop is counted when its condition compares a variable i with a bound
+ * that is a literal or a variable the loop never assigns, and its body
+ * ends with i := (i + c) or i := (i - c) for a literal c, with no other
+ * assignment to i.  The increment may also be the overflow guard of a
+ * ForLoop's equivalent statements,
+ *
+ *     if (i > last) then n := last; else i := (i + c); end if;
+ *
+ * which the CountedLoop keeps by ending the loop instead of stepping past
+ * last.  Products (i * k) with a literal k in the body become
+ * derived induction variables, which the CountedLoop advances by c * k per
+ * iteration instead of multiplying.
+ *
+ * Loops are matched outermost first, so that a CountedLoop's body, in
+ * which the outer counters are already primitive reads, is what inner
+ * loops are matched against.  This pass should run last: later passes
+ * would only see a CountedLoop as an opaque statement.
+ */
+public class CountedLoopRecognizer extends AstRewriter {
+
+    private int recognizedCount;
+    private int derivedCount;
+
+    public int getRecognizedCount() {
+        return recognizedCount;
+    }
+
+    public int getDerivedCount() {
+        return derivedCount;
+    }
+
+    @Override
+    protected List<Statement> rewriteWhile(WhileLoop stmt) {
+        List<Statement> body = stmt.getBody();
+        if (!(stmt.getCondition() instanceof ComparisonOp || stmt.getCondition() instanceof NotEqualNode)
+                || body.isEmpty()) {
+            return super.rewriteWhile(stmt);
+        }
+        Statement advance = body.get(body.size() - 1);
+        IfThenElse guard = advance instanceof IfThenElse ? (IfThenElse) advance : null;
+        Assignment increment = guard != null ? guardedIncrement(guard)
+                : advance instanceof Assignment ? (Assignment) advance : null;
+        if (increment == null) {
+            return super.rewriteWhile(stmt);
+        }
+
+        BinaryOp condition = (BinaryOp) stmt.getCondition();
+        String counter = increment.getVariable().getLexeme();
+        String comparison = condition.getOperator().getLexeme();
+        Expression bound;
+        if (readsVariable(condition.getLeftExpr(), counter)) {
+            bound = condition.getRightExpr();
+        } else if (readsVariable(condition.getRightExpr(), counter)) {
+            bound = condition.getLeftExpr();
+            comparison = flip(comparison);
+        } else {
+            return super.rewriteWhile(stmt);
+        }
+
+        Integer step = stepOf(increment.getExpression(), counter);
+        List<Statement> rest = body.subList(0, body.size() - 1);
+        if (step == null || assignedIn(rest).contains(counter)
+                || !isInvariantBound(bound, counter, assignedIn(rest))
+                || guard != null && !isOverflowGuard(guard, counter, comparison, bound, step)) {
+            return super.rewriteWhile(stmt);
+        }
+
+        Map<Integer, Token> derivedByFactor = new LinkedHashMap<>();
+        List<Statement> plainBody = new Substitution(counter, false, derivedByFactor, stmt)
+                .rewriteStatements(rest);
+        List<Statement> primitiveBody = new Substitution(counter, true, derivedByFactor, stmt)
+                .rewriteStatements(rest);
+        // inner loops are matched now, against the body with primitive reads
+        primitiveBody = rewriteStatements(primitiveBody);
+
+        Token[] derived = derivedByFactor.values().toArray(new Token[0]);
+        int[] factors = new int[derived.length];
+        int k = 0;
+        for (int factor : derivedByFactor.keySet()) {
+            factors[k++] = factor;
+        }
+
+        recognizedCount++;
+        derivedCount += derived.length;
+        return List.of(new CountedLoop(stmt.getWhileToken(), increment.getVariable(), comparison, bound,
+                step, guard != null, derived, factors, primitiveBody,
+                equivalentStatements(stmt, increment, advance, step, derived, factors, plainBody)));
+    }
+
+    /**
+     * The loop as plain statements: derived variables are initialized in
+     * front of it and advanced just before the counter, which advance, the
+     * increment or its guard, steps.
+     */
+    private static List<Statement> equivalentStatements(WhileLoop stmt, Assignment increment,
+                                                        Statement advance, int step,
+                                                        Token[] derived, int[] factors,
+                                                        List<Statement> plainBody) {
+        List<Statement> equivalent = new ArrayList<>();
+        List<Statement> loopBody = new ArrayList<>(plainBody);
+        for (int k = 0; k < derived.length; k++) {
+            Token at = derived[k];
+            equivalent.add(new Assignment(derived[k], BinaryOp.create(
+                    new VariableRef(increment.getVariable()), new Token("*", at.getLine(), at.getCol()),
+                    Literal.ofValue(at, Value.ofInteger(factors[k])))));
+            loopBody.add(new Assignment(derived[k], BinaryOp.create(
+                    new VariableRef(derived[k]), new Token("+", at.getLine(), at.getCol()),
+                    Literal.ofValue(at, Value.ofInteger(step * factors[k])))));
+        }
+        loopBody.add(advance);
+        equivalent.add(new WhileLoop(stmt.getWhileToken(), stmt.getCondition(), loopBody));
+        return equivalent;
+    }
+
+    /**
+     * The increment in the else branch of what may be an overflow guard.
+     */
+    private static Assignment guardedIncrement(IfThenElse guard) {
+        if (guard.getThenStmts().size() != 1 || guard.getElseStmts().size() != 1
+                || !(guard.getElseStmts().get(0) instanceof Assignment)) {
+            return null;
+        }
+        return (Assignment) guard.getElseStmts().get(0);
+    }
+
+    /**
+     * Whether guard is if (i > last) then bound := last; ... for a loop
+     * testing i <= bound, or the same with < for i >= bound, where last is
+     * ForLoop.lastSteppable(step): setting the bound then ends the loop.
+     */
+    private static boolean isOverflowGuard(IfThenElse guard, String counter, String comparison,
+                                           Expression bound, int step) {
+        int last = ForLoop.lastSteppable(step);
+        String expected = step > 0 ? ">" : "<";
+        if (!comparison.equals(step > 0 ? "<=" : ">=") || !(guard.getCondition() instanceof BinaryOp)
+                || !(bound instanceof VariableRef) || !(guard.getThenStmts().get(0) instanceof Assignment)) {
+            return false;
+        }
+        BinaryOp test = (BinaryOp) guard.getCondition();
+        Assignment stop = (Assignment) guard.getThenStmts().get(0);
+        Integer tested = intLiteral(test.getRightExpr());
+        Integer assigned = intLiteral(stop.getExpression());
+        return test.getOperator().getLexeme().equals(expected) && readsVariable(test.getLeftExpr(), counter)
+                && tested != null && tested == last && assigned != null && assigned == last
+                && stop.getVariable().getLexeme().equals(((VariableRef) bound).getName().getLexeme());
+    }
+
+    private static boolean readsVariable(Expression expr, String name) {
+        return expr instanceof VariableRef && ((VariableRef) expr).getName().getLexeme().equals(name);
+    }
+
+    private boolean isInvariantBound(Expression bound, String counter, Set<String> assigned) {
+        if (bound instanceof Literal) {
+            return ((Literal) bound).getConstant() != null && ((Literal) bound).getConstant().isInteger();
+        }
+        if (bound instanceof VariableRef) {
+            String name = ((VariableRef) bound).getName().getLexeme();
+            return !name.equals(counter) && !assigned.contains(name);
+        }
+        return false;
+    }
+
+    private static String flip(String comparison) {
+        switch (comparison) {
+            case "<":
+                return ">";
+            case "<=":
+                return ">=";
+            case ">":
+                return "<";
+            case ">=":
+                return "<=";
+            default:
+                return comparison;
+        }
+    }
+
+    /**
+     * The step of i := (i + c), i := (c + i) or i := (i - c), or null if the
+     * expression has another shape.
+     */
+    private static Integer stepOf(Expression expr, String counter) {
+        if (expr instanceof AddNode) {
+            BinaryOp add = (BinaryOp) expr;
+            if (readsVariable(add.getLeftExpr(), counter)) {
+                return intLiteral(add.getRightExpr());
+            }
+            if (readsVariable(add.getRightExpr(), counter)) {
+                return intLiteral(add.getLeftExpr());
+            }
+        } else if (expr instanceof SubtractNode) {
+            BinaryOp sub = (BinaryOp) expr;
+            Integer amount = readsVariable(sub.getLeftExpr(), counter) ? intLiteral(sub.getRightExpr()) : null;
+            return amount != null ? -amount : null;
+        }
+        return null;
+    }
+
+    private static Integer intLiteral(Expression expr) {
+        if (expr instanceof Literal && ((Literal) expr).getConstant() != null
+                && ((Literal) expr).getConstant().isInteger()) {
+            return ((Literal) expr).getConstant().asInteger();
+        }
+        return null;
+    }
+
+    /**
+     * Replaces (i * k) by a derived induction variable and, for the
+     * CountedLoop's own body, reads of i by InductionVariableRefs.
+     */
+    private final class Substitution extends AstRewriter {
+        private final String counter;
+        private final boolean primitive;
+        private final Map<Integer, Token> derivedByFactor;
+        private final WhileLoop loop;
+
+        Substitution(String counter, boolean primitive, Map<Integer, Token> derivedByFactor, WhileLoop loop) {
+            this.counter = counter;
+            this.primitive = primitive;
+            this.derivedByFactor = derivedByFactor;
+            this.loop = loop;
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expr) {
+            Integer factor = factorOf(expr);
+            if (factor != null) {
+                Token variable = derivedByFactor.get(factor);
+                if (variable == null) {
+                    variable = CountedLoopRecognizer.this.newVariable("ind", Type.INTEGER, loop);
+                    derivedByFactor.put(factor, variable);
+                }
+                return read(variable, expr);
+            }
+            if (primitive && readsVariable(expr, counter)) {
+                return read(((VariableRef) expr).getName(), expr);
+            }
+            return super.rewriteExpression(expr);
+        }
+
+        private Expression read(Token variable, Expression at) {
+            Token name = new Token(variable.getLexeme(), at.getLine(), at.getColumn());
+            return primitive ? new InductionVariableRef(name) : new VariableRef(name);
+        }
+
+        private Integer factorOf(Expression expr) {
+            if (!(expr instanceof MultiplyNode)) {
+                return null;
+            }
+            BinaryOp mul = (BinaryOp) expr;
+            Integer factor = null;
+            if (readsVariable(mul.getLeftExpr(), counter)) {
+                factor = intLiteral(mul.getRightExpr());
+            } else if (readsVariable(mul.getRightExpr(), counter)) {
+                factor = intLiteral(mul.getLeftExpr());
+            }
+            // multiplying by 0 or 1 is not worth a variable
+            return factor != null && factor != 0 && factor != 1 ? factor : null;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package splat.optimizer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Replaces calls to small, non-recursive functions with the callee's body.
+ *
+ * A call in an expression is inlined when the callee's body is a run of
+ * assignments followed by one return, every assignment and every argument
+ * is total (see PurityAnalysis) and the resulting expression stays small.
+ * The callee's variables are then substituted away: parameters by the
+ * argument expressions, locals by what was last assigned to them.  Since
+ * only total expressions move, and the returned expression keeps its
+ * shape, evaluation order, prints and errors are those of the call.  A
+ * value other than a literal or a variable may only be substituted once,
+ * or the inlined code would evaluate it once per use.
+ *
+ * A call statement to a small void function with no early return is
+ * inlined as statements: the arguments are assigned, in order, to fresh
+ * copies of the parameters, the locals are reset to their defaults, and
+ * the body follows with every variable renamed.
+ *
+ * Inlined code keeps the callee's source positions, so errors inside it are
+ * reported where they were before.  With a log stream set, every call site
+ * the inliner considers is reported there, whether it was inlined or not.
+ */
+public class Inliner extends AstRewriter {
+
+    static final int MAX_EXPRESSION_SIZE = 24;
+    static final int MAX_BODY_SIZE = 40;
+    static final int MAX_INLINES_PER_FUNCTION = 64;
+
+    private PrintStream log;
+    private PurityAnalysis purity;
+    private CallGraph callGraph;
+
+    private String currentFunction;
+    private int budget;
+    private int inlinedCount;
+
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    public int getInlinedCount() {
+        return inlinedCount;
+    }
+
+    @Override
+    public ProgramAST rewriteProgram(ProgramAST progAST) {
+        purity = null;
+        callGraph = null;
+        return super.rewriteProgram(progAST);
+    }
+
+    @Override
+    protected List<Statement> rewriteFunctionBody(FunctionDecl decl, List<Statement> body) {
+        enterFunction(decl.getName().getLexeme());
+        return super.rewriteFunctionBody(decl, body);
+    }
+
+    @Override
+    protected List<Statement> rewriteMainBody(List<Statement> stmts) {
+        enterFunction("main");
+        return super.rewriteMainBody(stmts);
+    }
+
+    private void enterFunction(String name) {
+        if (purity == null) {
+            purity = new PurityAnalysis(functions());
+            callGraph = new CallGraph(functions());
+        }
+        currentFunction = name;
+        budget = MAX_INLINES_PER_FUNCTION;
+    }
+
+    @Override
+    protected Expression rewriteCall(FunctionCall expr) {
+        FunctionCall call = (FunctionCall) super.rewriteCall(expr);
+        FunctionDecl callee = function(call.getName().getLexeme());
+        if (callee == null || declaredType(callee.getReturnType()) == Type.VOID) {
+            // intrinsics run as Java code already
+            return call;
+        }
+        String refusal = checkCommon(callee);
+        if (refusal == null) {
+            refusal = checkExpressionBody(callee, call);
+        }
+        if (refusal != null) {
+            report(call, "kept", refusal);
+            return call;
+        }
+
+        // checked before inlining any calls inside the callee, so that a
+        // refused site leaves no trace
+        List<Expression> moved = new ArrayList<>();
+        Expression inlined = substitute(callee, call, false, moved);
+        if (usesMoreThanOnce(inlined, moved)) {
+            report(call, "kept", "argument or local used more than once");
+            return call;
+        }
+        if (size(inlined) > MAX_EXPRESSION_SIZE) {
+            report(call, "kept", "inlined expression too large");
+            return call;
+        }
+        budget--;
+        inlinedCount++;
+        report(call, "inlined", null);
+        return substitute(callee, call, true, new ArrayList<>());
+    }
+
+    /**
+     * The callee's returned expression with its variables substituted away,
+     * optionally inlining the calls it makes first.  The substituted values
+     * that are neither literals nor variables are added to moved.
+     */
+    private Expression substitute(FunctionDecl callee, FunctionCall call, boolean inlineNested,
+                                  List<Expression> moved) {
+        Map<String, Expression> values = new HashMap<>();
+        List<VariableDecl> params = callee.getParams();
+        for (int i = 0; i < params.size(); i++) {
+            Expression arg = call.getArgs().get(i);
+            values.put(params.get(i).getName().getLexeme(), arg);
+            if (!isTrivial(arg)) {
+                moved.add(arg);
+            }
+        }
+        for (VariableDecl local : locals(callee)) {
+            values.put(local.getName().getLexeme(), defaultLiteral(local, call));
+        }
+
+        List<Statement> body = callee.getBody();
+        Renamer substitution = new Renamer(values, Map.of());
+        for (Statement stmt : body.subList(0, body.size() - 1)) {
+            Assignment assignment = (Assignment) stmt;
+            Expression expr = inlineNested ? rewriteExpression(assignment.getExpression())
+                    : assignment.getExpression();
+            Expression value = substitution.rewriteExpression(expr);
+            values.put(assignment.getVariable().getLexeme(), value);
+            if (!isTrivial(value)) {
+                moved.add(value);
+            }
+        }
+        Expression returned = ((ReturnStmt) body.get(body.size() - 1)).getExpr();
+        return substitution.rewriteExpression(inlineNested ? rewriteExpression(returned) : returned);
+    }
+
+    @Override
+    protected List<Statement> rewriteCallStmt(FunctionCallStmt stmt) {
+        FunctionCall call = stmt.getCall();
+        FunctionDecl callee = function(call.getName().getLexeme());
+        if (declaredType(callee.getReturnType()) != Type.VOID) {
+            return super.rewriteCallStmt(stmt);
+        }
+
+        List<Expression> args = new ArrayList<>();
+        for (Expression arg : call.getArgs()) {
+            args.add(rewriteExpression(arg));
+        }
+        String refusal = checkCommon(callee);
+        if (refusal == null) {
+            refusal = checkStatementBody(callee);
+        }
+        if (refusal != null) {
+            report(call, "kept", refusal);
+            if (args.equals(call.getArgs())) {
+                return List.of(stmt);
+            }
+            return List.of(new FunctionCallStmt(new FunctionCall(call.getName(), args)));
+        }
+
+        String prefix = callee.getName().getLexeme() + ".";
+        Map<String, Token> renamed = new HashMap<>();
+        List<Statement> result = new ArrayList<>();
+        List<VariableDecl> params = callee.getParams();
+        for (int i = 0; i < params.size(); i++) {
+            Token copy = copyVariable(params.get(i), prefix, call, renamed);
+            result.add(new Assignment(copy, args.get(i)));
+        }
+        for (VariableDecl local : locals(callee)) {
+            Token copy = copyVariable(local, prefix, call, renamed);
+            result.add(new Assignment(copy, defaultLiteral(local, call)));
+        }
+
+        budget--;
+        inlinedCount++;
+        report(call, "inlined", null);
+        List<Statement> body = withoutTrailingReturn(callee.getBody());
+        result.addAll(rewriteStatements(new Renamer(Map.of(), renamed).rewriteStatements(body)));
+        return result;
+    }
+
+    // ---- heuristics ----
+
+    private String checkCommon(FunctionDecl callee) {
+        String name = callee.getName().getLexeme();
+        if (callee instanceof HostFunctionDecl) {
+            return "host function";
+        }
+        if (callGraph.isRecursive(name)) {
+            return "recursive";
+        }
+        if (budget <= 0) {
+            return "inlining budget of " + currentFunction + " used up";
+        }
+        return null;
+    }
+
+    private String checkExpressionBody(FunctionDecl callee, FunctionCall call) {
+        List<Statement> body = callee.getBody();
+        if (body == null || body.isEmpty() || !(body.get(body.size() - 1) instanceof ReturnStmt)) {
+            return "body is not assignments followed by a return";
+        }
+        for (Statement stmt : body.subList(0, body.size() - 1)) {
+            if (!(stmt instanceof Assignment)) {
+                return "body is not assignments followed by a return";
+            }
+            if (!purity.isTotal(((Assignment) stmt).getExpression())) {
+                return "assignment in body may fail or have effects";
+            }
+        }
+        for (Expression arg : call.getArgs()) {
+            if (!purity.isTotal(arg)) {
+                return "argument may fail or have effects";
+            }
+        }
+        return null;
+    }
+
+    private String checkStatementBody(FunctionDecl callee) {
+        List<Statement> body = withoutTrailingReturn(callee.getBody());
+        if (containsReturn(body)) {
+            return "returns early";
+        }
+        if (size(body) > MAX_BODY_SIZE) {
+            return "body too large";
+        }
+        return null;
+    }
+
+    private void report(FunctionCall call, String decision, String reason) {
+        if (log == null) {
+            return;
+        }
+        log.println("inline: " + decision + " " + call.getName().getLexeme() + " in " + currentFunction
+                + " at " + call.getLine() + ":" + call.getColumn()
+                + (reason != null ? " (" + reason + ")" : ""));
+    }
+
+    // ---- helpers ----
+
+    private Token copyVariable(VariableDecl var, String prefix, ASTElement at, Map<String, Token> renamed) {
+        Type type = variableTypeOf(var);
+        Token copy = newVariable(prefix + var.getName().getLexeme(), type, at);
+        renamed.put(var.getName().getLexeme(), copy);
+        return copy;
+    }
+
+    private static Type variableTypeOf(VariableDecl var) {
+        return declaredType(var.getType());
+    }
+
+    private static boolean isTrivial(Expression expr) {
+        return expr instanceof Literal || expr instanceof VariableRef;
+    }
+
+    /**
+     * Whether any of the values occurs more than once in expr.  Substitution
+     * shares a value's node wherever it is used, so occurrences are counted
+     * by identity.
+     */
+    private static boolean usesMoreThanOnce(Expression expr, List<Expression> values) {
+        if (values.isEmpty()) {
+            return false;
+        }
+        Map<Expression, Integer> counts = new IdentityHashMap<>();
+        new AstRewriter() {
+            @Override
+            protected Expression rewriteExpression(Expression node) {
+                counts.merge(node, 1, Integer::sum);
+                return super.rewriteExpression(node);
+            }
+        }.rewriteExpression(expr);
+        for (Expression value : values) {
+            if (counts.getOrDefault(value, 0) > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Literal defaultLiteral(VariableDecl var, ASTElement at) {
+        Token position = new Token(var.getName().getLexeme(), at.getLine(), at.getColumn());
+        return Literal.ofValue(position, Value.defaultValue(variableTypeOf(var)));
+    }
+
+    private static List<VariableDecl> locals(FunctionDecl decl) {
+        return decl.getLocalVars() != null ? decl.getLocalVars() : List.of();
+    }
+
+    private static List<Statement> withoutTrailingReturn(List<Statement> body) {
+        if (body == null) {
+            return List.of();
+        }
+        if (!body.isEmpty() && body.get(body.size() - 1) instanceof ReturnStmt
+                && ((ReturnStmt) body.get(body.size() - 1)).getExpr() == null) {
+            return body.subList(0, body.size() - 1);
+        }
+        return body;
+    }
+
+    private static boolean containsReturn(List<Statement> stmts) {
+        for (Statement stmt : stmts) {
+            if (stmt instanceof ReturnStmt) {
+                return true;
+            } else if (stmt instanceof IfThenElse) {
+                if (containsReturn(((IfThenElse) stmt).getThenStmts())
+                        || containsReturn(((IfThenElse) stmt).getElseStmts())) {
+                    return true;
+                }
+            } else if (stmt instanceof WhileLoop) {
+                if (containsReturn(((WhileLoop) stmt).getBody())) {
+                    return true;
+                }
+            } else if (stmt instanceof Block) {
+                if (containsReturn(((Block) stmt).getStatements())) {
+                    return true;
+                }
+            } else if (stmt instanceof ForLoop) {
+                if (containsReturn(((ForLoop) stmt).getBody())) {
+                    return true;
+                }
+            } else if (stmt instanceof CaseStmt) {
+                CaseStmt cs = (CaseStmt) stmt;
+                if (containsReturn(cs.getElseStmts())) {
+                    return true;
+                }
+                for (CaseStmt.Arm arm : cs.getArms()) {
+                    if (containsReturn(arm.getBody())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Node count, the measure the size limits are expressed in.
+     */
+    static int size(Expression expr) {
+        if (expr instanceof BinaryOp) {
+            return 1 + size(((BinaryOp) expr).getLeftExpr()) + size(((BinaryOp) expr).getRightExpr());
+        } else if (expr instanceof UnaryOp) {
+            return 1 + size(((UnaryOp) expr).getExpr());
+        } else if (expr instanceof FunctionCall) {
+            int size = 1;
+            for (Expression arg : ((FunctionCall) expr).getArgs()) {
+                size += size(arg);
+            }
+            return size;
+        } else if (expr instanceof ArrayIndex) {
+            return 1 + size(((ArrayIndex) expr).getArray()) + size(((ArrayIndex) expr).getIndex());
+        } else if (expr instanceof ArrayLength) {
+            return 1 + size(((ArrayLength) expr).getArray());
+        } else if (expr instanceof NewArray) {
+            return 1 + size(((NewArray) expr).getSize());
+        } else if (expr instanceof MapContains) {
+            return 1 + size(((MapContains) expr).getMap()) + size(((MapContains) expr).getKey());
+        } else if (expr instanceof MapSize) {
+            return 1 + size(((MapSize) expr).getMap());
+        }
+        return 1;
+    }
+
+    static int size(List<Statement> stmts) {
+        int size = 0;
+        for (Statement stmt : stmts) {
+            size++;
+            if (stmt instanceof Assignment) {
+                size += size(((Assignment) stmt).getExpression());
+            } else if (stmt instanceof IfThenElse) {
+                IfThenElse ite = (IfThenElse) stmt;
+                size += size(ite.getCondition()) + size(ite.getThenStmts()) + size(ite.getElseStmts());
+            } else if (stmt instanceof WhileLoop) {
+                size += size(((WhileLoop) stmt).getCondition()) + size(((WhileLoop) stmt).getBody());
+            } else if (stmt instanceof Block) {
+                size += size(((Block) stmt).getStatements());
+            } else if (stmt instanceof FunctionCallStmt) {
+                size += size(((FunctionCallStmt) stmt).getCall());
+            } else if (stmt instanceof ForLoop) {
+                size += size(((ForLoop) stmt).getEquivalentStatements());
+            } else if (stmt instanceof CaseStmt) {
+                CaseStmt cs = (CaseStmt) stmt;
+                size += size(cs.getScrutinee()) + size(cs.getElseStmts());
+                for (CaseStmt.Arm arm : cs.getArms()) {
+                    size += arm.getLabels().size() + size(arm.getBody());
+                }
+            } else if (stmt instanceof ArrayAssignment) {
+                ArrayAssignment store = (ArrayAssignment) stmt;
+                size += size(store.getIndex()) + size(store.getExpression());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies callee code into the caller: variable reads are replaced by
+     * the given expressions, or renamed, and assignments are renamed.
+     */
+    private static final class Renamer extends AstRewriter {
+        private final Map<String, Expression> values;
+        private final Map<String, Token> names;
+
+        Renamer(Map<String, Expression> values, Map<String, Token> names) {
+            this.values = values;
+            this.names = names;
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expr) {
+            if (expr instanceof VariableRef) {
+                Token name = ((VariableRef) expr).getName();
+                Expression value = values.get(name.getLexeme());
+                if (value != null) {
+                    return value;
+                }
+                Token renamed = names.get(name.getLexeme());
+                if (renamed != null) {
+                    return new VariableRef(new Token(renamed.getLexeme(), name.getLine(), name.getCol()));
+                }
+                return expr;
+            }
+            return super.rewriteExpression(expr);
+        }
+
+        @Override
+        protected List<Statement> rewriteAssignment(Assignment stmt) {
+            Token target = stmt.getVariable();
+            Token renamed = names.get(target.getLexeme());
+            Expression expr = rewriteExpression(stmt.getExpression());
+            if (renamed == null) {
+                return List.of(new Assignment(target, expr));
+            }
+            return List.of(new Assignment(new Token(renamed.getLexeme(), target.getLine(), target.getCol()), expr));
+        }
+
+        @Override
+        protected List<Statement> rewriteArrayAssignment(ArrayAssignment stmt) {
+            Token target = stmt.getVariable();
+            Token renamed = names.get(target.getLexeme());
+            Expression index = rewriteExpression(stmt.getIndex());
+            Expression expr = rewriteExpression(stmt.getExpression());
+            if (renamed != null) {
+                target = new Token(renamed.getLexeme(), target.getLine(), target.getCol());
+            }
+            return List.of(new ArrayAssignment(target, stmt.getBracket(), index, expr));
+        }
+    }
+}
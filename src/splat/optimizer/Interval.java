@@ -0,0 +1,179 @@
+package splat.optimizer;
+
+/**
+ * A set of int values for RangeAnalysis: the closed interval [lo, hi],
+ * optionally with zero taken out, which is how "n != 0" is remembered for
+ * an n whose bounds straddle zero.
+ *
+ * The arithmetic methods return null when the exact result could leave
+ * the int range, that is, when the operation might overflow.
+ */
+final class Interval {
+
+    static final Interval TOP = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+    static final Interval ZERO = new Interval(0, 0, false);
+
+    final long lo;
+    final long hi;
+    final boolean excludesZero;
+
+    private Interval(long lo, long hi, boolean excludesZero) {
+        this.lo = lo;
+        this.hi = hi;
+        this.excludesZero = excludesZero;
+    }
+
+    static Interval of(long lo, long hi) {
+        return of(lo, hi, false);
+    }
+
+    /**
+     * The interval [lo, hi] (without zero if asked), or null if it is empty.
+     */
+    static Interval of(long lo, long hi, boolean excludesZero) {
+        if (excludesZero) {
+            if (lo == 0) {
+                lo = 1;
+            }
+            if (hi == 0) {
+                hi = -1;
+            }
+            excludesZero = lo < 0 && hi > 0;
+        }
+        if (lo > hi) {
+            return null;
+        }
+        return new Interval(lo, hi, excludesZero);
+    }
+
+    static Interval constant(int value) {
+        return new Interval(value, value, false);
+    }
+
+    boolean containsZero() {
+        return lo <= 0 && hi >= 0 && !excludesZero;
+    }
+
+    boolean contains(long value) {
+        return lo <= value && value <= hi && !(value == 0 && excludesZero);
+    }
+
+    Interval join(Interval other) {
+        if (other == null) {
+            return this;
+        }
+        return of(Math.min(lo, other.lo), Math.max(hi, other.hi),
+                !containsZero() && !other.containsZero());
+    }
+
+    /**
+     * The values in both, or null if there are none.
+     */
+    Interval meet(Interval other) {
+        return of(Math.max(lo, other.lo), Math.min(hi, other.hi), excludesZero || other.excludesZero);
+    }
+
+    /**
+     * This interval without the given value, as far as an interval can
+     * express that: an end point or zero.
+     */
+    Interval without(long value) {
+        if (value == lo) {
+            return of(lo + 1, hi, excludesZero);
+        } else if (value == hi) {
+            return of(lo, hi - 1, excludesZero);
+        } else if (value == 0) {
+            return of(lo, hi, true);
+        }
+        return this;
+    }
+
+    /**
+     * Join that jumps a bound that moved straight to the end of the int
+     * range, so that loops reach a fixed point quickly.
+     */
+    Interval widen(Interval next) {
+        if (next == null) {
+            return this;
+        }
+        long newLo = next.lo < lo ? Integer.MIN_VALUE : lo;
+        long newHi = next.hi > hi ? Integer.MAX_VALUE : hi;
+        return of(newLo, newHi, !containsZero() && !next.containsZero());
+    }
+
+    Interval add(Interval other) {
+        return checked(lo + other.lo, hi + other.hi, false);
+    }
+
+    Interval subtract(Interval other) {
+        return checked(lo - other.hi, hi - other.lo, false);
+    }
+
+    Interval multiply(Interval other) {
+        long a = lo * other.lo;
+        long b = lo * other.hi;
+        long c = hi * other.lo;
+        long d = hi * other.hi;
+        // without overflow, a product of nonzero factors is nonzero
+        return checked(Math.min(Math.min(a, b), Math.min(c, d)),
+                Math.max(Math.max(a, b), Math.max(c, d)),
+                !containsZero() && !other.containsZero());
+    }
+
+    Interval negate() {
+        return checked(-hi, -lo, excludesZero);
+    }
+
+    /**
+     * Quotient bounds for a divisor that may not be zero: its magnitude
+     * never exceeds the dividend's.  Only MIN_VALUE / -1 overflows.
+     */
+    Interval divide(Interval divisor) {
+        if (contains(Integer.MIN_VALUE) && divisor.contains(-1)) {
+            return null;
+        }
+        if (divisor.lo > 0 || divisor.hi < 0) {
+            long a = lo / divisor.lo;
+            long b = lo / divisor.hi;
+            long c = hi / divisor.lo;
+            long d = hi / divisor.hi;
+            return of(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+        }
+        long magnitude = Math.max(Math.abs(lo), Math.abs(hi));
+        return of(-magnitude, magnitude);
+    }
+
+    /**
+     * Remainder bounds: the sign follows the dividend, and the magnitude is
+     * below the divisor's and at most the dividend's.  Never overflows.
+     */
+    Interval remainder(Interval divisor) {
+        long divisorMagnitude = Math.max(Math.abs(divisor.lo), Math.abs(divisor.hi));
+        long bound = Math.max(0, Math.min(divisorMagnitude - 1, Math.max(Math.abs(lo), Math.abs(hi))));
+        return of(lo >= 0 ? 0 : -bound, hi <= 0 ? 0 : bound);
+    }
+
+    private static Interval checked(long lo, long hi, boolean excludesZero) {
+        if (lo < Integer.MIN_VALUE || hi > Integer.MAX_VALUE) {
+            return null;
+        }
+        return of(lo, hi, excludesZero);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Interval)) return false;
+        Interval other = (Interval) o;
+        return lo == other.lo && hi == other.hi && excludesZero == other.excludesZero;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(lo) * 31 + Long.hashCode(hi) + (excludesZero ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + lo + ", " + hi + "]" + (excludesZero ? "\\{0}" : "");
+    }
+}
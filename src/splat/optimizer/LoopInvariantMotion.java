@@ -0,0 +1,172 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.lexer.Token;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.Literal;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+
+/**
+ * Hoists loop-invariant expressions out of WhileLoops.
+ *
+ * An expression is invariant in a loop if none of the variables it reads
+ * is assigned in the loop (calls cannot assign the caller's variables) and
+ * evaluating it is total in the PurityAnalysis sense: no division by a
+ * possibly-zero value and only calls to total functions.  Each maximal
+ * invariant expression is computed once into a synthetic variable just
+ * before the loop, and identical expressions in the same loop share it.
+ *
+ * Only total expressions move, because evaluating them early (or when the
+ * loop ends up not running at all) can neither raise nor be observed;
+ * anything that might fail stays where it is and fails at the same point.
+ * Inner loops are handled first, so an expression invariant in several
+ * nested loops ends up in front of the outermost of them.
+ */
+public class LoopInvariantMotion extends AstRewriter {
+
+    private PurityAnalysis purity;
+
+    /** Variables assigned in the loop being hoisted from, or null. */
+    private Set<String> loopAssigned;
+    private List<Statement> preheader;
+    private Map<String, Token> hoistedByExpr;
+    /** Synthetic variables that hold hoisted values. */
+    private final Set<String> hoistedVariables = new HashSet<>();
+    private int hoistedCount;
+
+    public int getHoistedCount() {
+        return hoistedCount;
+    }
+
+    @Override
+    public ProgramAST rewriteProgram(ProgramAST progAST) {
+        purity = null;
+        hoistedVariables.clear();
+        return super.rewriteProgram(progAST);
+    }
+
+    @Override
+    protected List<Statement> rewriteFunctionBody(FunctionDecl decl,
+                                                  List<Statement> body) {
+        ensurePurity();
+        return super.rewriteFunctionBody(decl, body);
+    }
+
+    @Override
+    protected List<Statement> rewriteMainBody(List<Statement> stmts) {
+        ensurePurity();
+        return super.rewriteMainBody(stmts);
+    }
+
+    private void ensurePurity() {
+        if (purity == null) {
+            purity = new PurityAnalysis(functions());
+        }
+    }
+
+    @Override
+    protected List<Statement> rewriteWhile(WhileLoop stmt) {
+        if (loopAssigned != null) {
+            // already hoisting from an enclosing loop
+            return super.rewriteWhile(stmt);
+        }
+
+        WhileLoop loop = (WhileLoop) super.rewriteWhile(stmt).get(0);
+        loopAssigned = assignedIn(loop.getBody());
+        preheader = new ArrayList<>();
+        hoistedByExpr = new HashMap<>();
+        try {
+            Expression condition = rewriteExpression(loop.getCondition());
+            List<Statement> body = rewriteStatements(loop.getBody());
+            if (preheader.isEmpty()) {
+                return List.of(loop);
+            }
+            List<Statement> result = new ArrayList<>(preheader);
+            result.add(new WhileLoop(loop.getWhileToken(), condition, body));
+            return result;
+        } finally {
+            loopAssigned = null;
+            preheader = null;
+            hoistedByExpr = null;
+        }
+    }
+
+    @Override
+    protected List<Statement> rewriteAssignment(Assignment stmt) {
+        // a value an inner loop hoisted may be invariant here as well, in
+        // which case its whole assignment moves further out
+        if (loopAssigned != null && hoistedVariables.contains(stmt.getVariable().getLexeme())
+                && isInvariant(stmt.getExpression())) {
+            preheader.add(stmt);
+            return List.of();
+        }
+        return super.rewriteAssignment(stmt);
+    }
+
+    @Override
+    protected Expression rewriteExpression(Expression expr) {
+        if (loopAssigned != null && isWorthHoisting(expr) && isInvariant(expr)) {
+            return hoist(expr);
+        }
+        return super.rewriteExpression(expr);
+    }
+
+    private Expression hoist(Expression expr) {
+        String key = expr.toString();
+        Token variable = hoistedByExpr.get(key);
+        if (variable == null) {
+            variable = newVariable("inv", typeOf(expr), expr);
+            preheader.add(new Assignment(variable, expr));
+            hoistedByExpr.put(key, variable);
+            hoistedVariables.add(variable.getLexeme());
+            hoistedCount++;
+        }
+        return new VariableRef(new Token(variable.getLexeme(), expr.getLine(), expr.getColumn()));
+    }
+
+    private static boolean isWorthHoisting(Expression expr) {
+        return expr instanceof BinaryOp || expr instanceof UnaryOp || expr instanceof FunctionCall
+                || expr instanceof ArrayLength;
+    }
+
+    private boolean isInvariant(Expression expr) {
+        return readsOnlyUnassigned(expr) && purity.isTotal(expr);
+    }
+
+    private boolean readsOnlyUnassigned(Expression expr) {
+        if (expr instanceof VariableRef) {
+            return !loopAssigned.contains(((VariableRef) expr).getName().getLexeme());
+        } else if (expr instanceof BinaryOp) {
+            return readsOnlyUnassigned(((BinaryOp) expr).getLeftExpr())
+                    && readsOnlyUnassigned(((BinaryOp) expr).getRightExpr());
+        } else if (expr instanceof UnaryOp) {
+            return readsOnlyUnassigned(((UnaryOp) expr).getExpr());
+        } else if (expr instanceof FunctionCall) {
+            for (Expression arg : ((FunctionCall) expr).getArgs()) {
+                if (!readsOnlyUnassigned(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expr instanceof ArrayLength) {
+            // an array's length never changes, only which array a variable holds
+            return readsOnlyUnassigned(((ArrayLength) expr).getArray());
+        }
+        return expr instanceof Literal;
+    }
+}
@@ -0,0 +1,67 @@
+package splat.optimizer;
+
+import java.io.PrintStream;
+
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Optimization stage that runs between semantic analysis and execution.
+ * Each pass takes the analyzed ProgramAST and returns an equivalent one;
+ * every execution mode runs the result.
+ */
+public class Optimizer {
+
+    private final ProgramAST progAST;
+    private PrintStream inlineLog;
+    private boolean parallelCalls;
+    private int parallelThreshold = ParallelCallPlanner.DEFAULT_THRESHOLD;
+
+    public Optimizer(ProgramAST progAST) {
+        this.progAST = progAST;
+    }
+
+    /**
+     * Reports every inlining decision to the given stream; null turns the
+     * report off.
+     */
+    public void setInlineLog(PrintStream inlineLog) {
+        this.inlineLog = inlineLog;
+    }
+
+    /**
+     * Marks independent expensive pure calls for parallel evaluation.  Only
+     * the tree walker evaluates them in parallel; other engines run the
+     * marked operations as usual.
+     */
+    public void setParallelCalls(boolean parallelCalls) {
+        this.parallelCalls = parallelCalls;
+    }
+
+    /**
+     * The estimated cost, in weighted AST nodes, below which a call is not
+     * worth evaluating in parallel.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public ProgramAST optimize() {
+        ProgramAST optimized = progAST;
+        optimized = new ConstantFolder().rewriteProgram(optimized);
+        Inliner inliner = new Inliner();
+        inliner.setLog(inlineLog);
+        optimized = inliner.rewriteProgram(optimized);
+        // inlined arguments are often constants, and so are the calls
+        // that take them
+        optimized = new CallEvaluator().rewriteProgram(optimized);
+        optimized = new LoopInvariantMotion().rewriteProgram(optimized);
+        // after every pass that moves code: range facts hold where derived
+        optimized = new RangeAnalysis().rewriteProgram(optimized);
+        if (parallelCalls) {
+            optimized = new ParallelCallPlanner(parallelThreshold).rewriteProgram(optimized);
+        }
+        // last: later passes would not look inside a CountedLoop
+        optimized = new CountedLoopRecognizer().rewriteProgram(optimized);
+        return optimized;
+    }
+}
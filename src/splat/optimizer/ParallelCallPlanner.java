@@ -0,0 +1,228 @@
+package splat.optimizer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.Intrinsic;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.LogicalOp;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Wraps operations that can evaluate several expensive pure calls at once
+ * in ParallelOperands, for the tree walker to run on a ForkJoinPool.
+ *
+ * A call is worth forking when its callee is pure and returns a value, its
+ * arguments are total, and the callee's estimated cost reaches the
+ * granularity threshold; cheaper calls stay inline.  The estimate is the
+ * callee's node count, with loop bodies weighted by LOOP_WEIGHT and the
+ * cost of its own callees added in; a recursive callee counts as unbounded.
+ * A call, or a binary operator other than and/or, becomes parallel when at
+ * least two of its operands are worth forking.
+ */
+public class ParallelCallPlanner extends AstRewriter {
+
+    public static final int DEFAULT_THRESHOLD = 200;
+    static final int LOOP_WEIGHT = 16;
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final int threshold;
+    private final Map<String, Integer> costs = new HashMap<>();
+    private PurityAnalysis purity;
+    private CallGraph callGraph;
+    private int parallelCount;
+
+    public ParallelCallPlanner() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public ParallelCallPlanner(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getParallelCount() {
+        return parallelCount;
+    }
+
+    @Override
+    protected Expression rewriteBinary(BinaryOp expr) {
+        Expression rewritten = super.rewriteBinary(expr);
+        if (rewritten instanceof LogicalOp) {
+            return rewritten;
+        }
+        return parallelize(rewritten);
+    }
+
+    @Override
+    protected Expression rewriteCall(FunctionCall expr) {
+        return parallelize(super.rewriteCall(expr));
+    }
+
+    private Expression parallelize(Expression expr) {
+        List<Expression> operands = ParallelOperands.operandsOf(expr);
+        boolean[] forked = new boolean[operands.size()];
+        int worthForking = 0;
+        for (int i = 0; i < forked.length; i++) {
+            forked[i] = isWorthForking(operands.get(i));
+            if (forked[i]) {
+                worthForking++;
+            }
+        }
+        if (worthForking < 2) {
+            return expr;
+        }
+        parallelCount++;
+        return new ParallelOperands(expr, forked);
+    }
+
+    private boolean isWorthForking(Expression expr) {
+        if (!(expr instanceof FunctionCall)) {
+            return false;
+        }
+        ensureAnalyses();
+        FunctionCall call = (FunctionCall) expr;
+        String name = call.getName().getLexeme();
+        if (!purity.isPure(name) || typeOf(call) == Type.VOID) {
+            return false;
+        }
+        for (Expression arg : call.getArgs()) {
+            if (!purity.isTotal(arg)) {
+                return false;
+            }
+        }
+        return cost(name) >= threshold;
+    }
+
+    private void ensureAnalyses() {
+        if (purity == null) {
+            purity = new PurityAnalysis(functions());
+            callGraph = new CallGraph(functions());
+        }
+    }
+
+    // ---- cost estimate ----
+
+    private int cost(String name) {
+        Integer known = costs.get(name);
+        if (known != null) {
+            return known;
+        }
+        FunctionDecl decl = function(name);
+        int cost;
+        if (decl == null && Intrinsic.lookup(name) != null) {
+            cost = 1;
+        } else if (decl == null || callGraph.isRecursive(name)) {
+            cost = UNBOUNDED;
+        } else {
+            // not recursive, so the walk over its callees terminates
+            cost = add(1, cost(decl.getBody() != null ? decl.getBody() : List.of()));
+        }
+        costs.put(name, cost);
+        return cost;
+    }
+
+    private int cost(List<Statement> stmts) {
+        int cost = 0;
+        for (Statement stmt : stmts) {
+            cost = add(cost, add(1, cost(stmt)));
+        }
+        return cost;
+    }
+
+    private int cost(Statement stmt) {
+        if (stmt instanceof Assignment) {
+            return cost(((Assignment) stmt).getExpression());
+        } else if (stmt instanceof PrintStmt) {
+            return ((PrintStmt) stmt).getExpr() == null ? 0 : cost(((PrintStmt) stmt).getExpr());
+        } else if (stmt instanceof ReturnStmt) {
+            return ((ReturnStmt) stmt).getExpr() == null ? 0 : cost(((ReturnStmt) stmt).getExpr());
+        } else if (stmt instanceof IfThenElse) {
+            IfThenElse ite = (IfThenElse) stmt;
+            return add(cost(ite.getCondition()),
+                    Math.max(cost(ite.getThenStmts()), cost(ite.getElseStmts())));
+        } else if (stmt instanceof WhileLoop) {
+            WhileLoop loop = (WhileLoop) stmt;
+            return multiply(LOOP_WEIGHT, add(cost(loop.getCondition()), cost(loop.getBody())));
+        } else if (stmt instanceof Block) {
+            return cost(((Block) stmt).getStatements());
+        } else if (stmt instanceof CountedLoop) {
+            return cost(((CountedLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof ForLoop) {
+            return cost(((ForLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof CaseStmt) {
+            CaseStmt cs = (CaseStmt) stmt;
+            int arms = cost(cs.getElseStmts());
+            for (CaseStmt.Arm arm : cs.getArms()) {
+                arms = Math.max(arms, cost(arm.getBody()));
+            }
+            return add(cost(cs.getScrutinee()), arms);
+        } else if (stmt instanceof ArrayAssignment) {
+            return add(cost(((ArrayAssignment) stmt).getIndex()), cost(((ArrayAssignment) stmt).getExpression()));
+        } else if (stmt instanceof FunctionCallStmt) {
+            return cost(((FunctionCallStmt) stmt).getCall());
+        } else if (stmt instanceof ExpressionStmt) {
+            return cost(((ExpressionStmt) stmt).getExpression());
+        }
+        return 0;
+    }
+
+    private int cost(Expression expr) {
+        if (expr instanceof BinaryOp) {
+            return add(1, add(cost(((BinaryOp) expr).getLeftExpr()), cost(((BinaryOp) expr).getRightExpr())));
+        } else if (expr instanceof UnaryOp) {
+            return add(1, cost(((UnaryOp) expr).getExpr()));
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            int cost = cost(call.getName().getLexeme());
+            for (Expression arg : call.getArgs()) {
+                cost = add(cost, cost(arg));
+            }
+            return cost;
+        } else if (expr instanceof ParallelOperands) {
+            return cost(((ParallelOperands) expr).getExpression());
+        } else if (expr instanceof ArrayIndex) {
+            return add(1, add(cost(((ArrayIndex) expr).getArray()), cost(((ArrayIndex) expr).getIndex())));
+        } else if (expr instanceof ArrayLength) {
+            return add(1, cost(((ArrayLength) expr).getArray()));
+        } else if (expr instanceof NewArray) {
+            return add(1, cost(((NewArray) expr).getSize()));
+        } else if (expr instanceof MapContains) {
+            return add(1, add(cost(((MapContains) expr).getMap()), cost(((MapContains) expr).getKey())));
+        } else if (expr instanceof MapSize) {
+            return add(1, cost(((MapSize) expr).getMap()));
+        }
+        return 1;
+    }
+
+    private static int add(int a, int b) {
+        return (int) Math.min(UNBOUNDED, (long) a + b);
+    }
+
+    private static int multiply(int a, int b) {
+        return (int) Math.min(UNBOUNDED, (long) a * b);
+    }
+}
@@ -0,0 +1,343 @@
+package splat.optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.Intrinsic;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.DivideNode;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.ForLoop;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.ModuloNode;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.NewMap;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Classifies the functions of a program.
+ *
+ * A function is pure if it never prints and calls only pure functions.
+ * SPLAT functions see nothing but their own parameters and locals, so the
+ * result of a pure call depends only on its argument values and the call
+ * has no observable effect besides returning it (or failing).
+ *
+ * A function is total if, in addition, every call to it is guaranteed to
+ * return normally: it has no loops, no path that falls off its end, no
+ * division or modulo other than by a nonzero literal, and calls only total
+ * functions, with no recursion.  Evaluating a total call early, or when it
+ * would not have been evaluated at all, is unobservable.
+ */
+public class PurityAnalysis {
+
+    private final Map<String, FunctionDecl> functions;
+    private final Map<String, Boolean> pure = new HashMap<>();
+    private final Map<String, Boolean> total = new HashMap<>();
+
+    public PurityAnalysis(Map<String, FunctionDecl> functions) {
+        this.functions = functions;
+        computePurity();
+        for (String name : functions.keySet()) {
+            isTotal(name, new HashSet<>());
+        }
+    }
+
+    /**
+     * Whether calls to the named function or intrinsic have no effect
+     * beyond their result.  Every intrinsic is pure.
+     */
+    public boolean isPure(String name) {
+        Boolean known = pure.get(name);
+        return known != null ? known : Intrinsic.lookup(name) != null;
+    }
+
+    public boolean isTotal(String name) {
+        return isTotal(name, new HashSet<>());
+    }
+
+    /**
+     * Greatest fixed point: every function starts out pure, and a function
+     * loses purity when it prints or calls an impure one, until nothing
+     * changes.  Recursive functions therefore stay pure unless they print.
+     */
+    private void computePurity() {
+        for (FunctionDecl decl : functions.values()) {
+            // nothing is known about what a host function does
+            pure.put(decl.getName().getLexeme(), !(decl instanceof HostFunctionDecl));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionDecl decl : functions.values()) {
+                String name = decl.getName().getLexeme();
+                if (pure.get(name) && !statementsArePure(body(decl))) {
+                    pure.put(name, false);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean isTotal(String name, Set<String> inProgress) {
+        Boolean known = total.get(name);
+        if (known != null) {
+            return known;
+        }
+        FunctionDecl decl = functions.get(name);
+        if (decl == null) {
+            Intrinsic intrinsic = Intrinsic.lookup(name);
+            return intrinsic != null && intrinsic.isTotal();
+        }
+        if (!isPure(name) || !inProgress.add(name)) {
+            // unknown, impure or recursive
+            return false;
+        }
+        boolean result = statementsAreTotal(body(decl), inProgress)
+                && (isVoid(decl) || alwaysReturns(body(decl)));
+        inProgress.remove(name);
+        total.put(name, result);
+        return result;
+    }
+
+    private static boolean isVoid(FunctionDecl decl) {
+        try {
+            return Type.fromToken(decl.getReturnType()) == Type.VOID;
+        } catch (SemanticAnalysisException ex) {
+            return false;
+        }
+    }
+
+    private static List<Statement> body(FunctionDecl decl) {
+        return decl.getBody() != null ? decl.getBody() : List.of();
+    }
+
+    // ---- purity ----
+
+    private boolean statementsArePure(List<Statement> stmts) {
+        for (Statement stmt : stmts) {
+            if (!statementIsPure(stmt)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean statementIsPure(Statement stmt) {
+        if (stmt instanceof PrintStmt) {
+            return false;
+        } else if (stmt instanceof Assignment) {
+            return expressionIsPure(((Assignment) stmt).getExpression());
+        } else if (stmt instanceof ReturnStmt) {
+            return ((ReturnStmt) stmt).getExpr() == null || expressionIsPure(((ReturnStmt) stmt).getExpr());
+        } else if (stmt instanceof IfThenElse) {
+            IfThenElse ite = (IfThenElse) stmt;
+            return expressionIsPure(ite.getCondition())
+                    && statementsArePure(ite.getThenStmts()) && statementsArePure(ite.getElseStmts());
+        } else if (stmt instanceof WhileLoop) {
+            WhileLoop loop = (WhileLoop) stmt;
+            return expressionIsPure(loop.getCondition()) && statementsArePure(loop.getBody());
+        } else if (stmt instanceof Block) {
+            return statementsArePure(((Block) stmt).getStatements());
+        } else if (stmt instanceof CountedLoop) {
+            return statementsArePure(((CountedLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof ForLoop) {
+            return statementsArePure(((ForLoop) stmt).getEquivalentStatements());
+        } else if (stmt instanceof CaseStmt) {
+            CaseStmt cs = (CaseStmt) stmt;
+            if (!expressionIsPure(cs.getScrutinee()) || !statementsArePure(cs.getElseStmts())) {
+                return false;
+            }
+            for (CaseStmt.Arm arm : cs.getArms()) {
+                if (!statementsArePure(arm.getBody())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (stmt instanceof FunctionCallStmt) {
+            return expressionIsPure(((FunctionCallStmt) stmt).getCall());
+        } else if (stmt instanceof ExpressionStmt) {
+            return expressionIsPure(((ExpressionStmt) stmt).getExpression());
+        }
+        return false;
+    }
+
+    private boolean expressionIsPure(Expression expr) {
+        if (expr instanceof ParallelOperands) {
+            return expressionIsPure(((ParallelOperands) expr).getExpression());
+        } else if (expr instanceof ArrayIndex || expr instanceof NewArray
+                || expr instanceof NewMap || expr instanceof MapContains || expr instanceof MapSize) {
+            // elements and entries can change between calls, and each allocation is new
+            return false;
+        } else if (expr instanceof ArrayLength) {
+            return expressionIsPure(((ArrayLength) expr).getArray());
+        } else if (expr instanceof BinaryOp) {
+            return expressionIsPure(((BinaryOp) expr).getLeftExpr())
+                    && expressionIsPure(((BinaryOp) expr).getRightExpr());
+        } else if (expr instanceof UnaryOp) {
+            return expressionIsPure(((UnaryOp) expr).getExpr());
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            if (!isPure(call.getName().getLexeme())) {
+                return false;
+            }
+            for (Expression arg : call.getArgs()) {
+                if (!expressionIsPure(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return true;
+    }
+
+    // ---- totality ----
+
+    private boolean statementsAreTotal(List<Statement> stmts, Set<String> inProgress) {
+        for (Statement stmt : stmts) {
+            if (!statementIsTotal(stmt, inProgress)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean statementIsTotal(Statement stmt, Set<String> inProgress) {
+        if (stmt instanceof Assignment) {
+            return expressionIsTotal(((Assignment) stmt).getExpression(), inProgress);
+        } else if (stmt instanceof ReturnStmt) {
+            Expression expr = ((ReturnStmt) stmt).getExpr();
+            return expr == null || expressionIsTotal(expr, inProgress);
+        } else if (stmt instanceof IfThenElse) {
+            IfThenElse ite = (IfThenElse) stmt;
+            return expressionIsTotal(ite.getCondition(), inProgress)
+                    && statementsAreTotal(ite.getThenStmts(), inProgress)
+                    && statementsAreTotal(ite.getElseStmts(), inProgress);
+        } else if (stmt instanceof Block) {
+            return statementsAreTotal(((Block) stmt).getStatements(), inProgress);
+        } else if (stmt instanceof CaseStmt) {
+            CaseStmt cs = (CaseStmt) stmt;
+            if (!expressionIsTotal(cs.getScrutinee(), inProgress)
+                    || !statementsAreTotal(cs.getElseStmts(), inProgress)) {
+                return false;
+            }
+            for (CaseStmt.Arm arm : cs.getArms()) {
+                if (!statementsAreTotal(arm.getBody(), inProgress)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (stmt instanceof FunctionCallStmt) {
+            return expressionIsTotal(((FunctionCallStmt) stmt).getCall(), inProgress);
+        } else if (stmt instanceof ExpressionStmt) {
+            return expressionIsTotal(((ExpressionStmt) stmt).getExpression(), inProgress);
+        }
+        // loops may not terminate; prints are already ruled out by purity
+        return false;
+    }
+
+    /**
+     * Whether evaluating the expression is certain to produce a value
+     * rather than raise.
+     */
+    public boolean isTotal(Expression expr) {
+        return expressionIsTotal(expr, new HashSet<>());
+    }
+
+    private boolean expressionIsTotal(Expression expr, Set<String> inProgress) {
+        if (expr instanceof ParallelOperands) {
+            return expressionIsTotal(((ParallelOperands) expr).getExpression(), inProgress);
+        } else if (expr instanceof ArrayIndex || expr instanceof NewArray) {
+            return false;
+        } else if (expr instanceof MapContains) {
+            return expressionIsTotal(((MapContains) expr).getMap(), inProgress)
+                    && expressionIsTotal(((MapContains) expr).getKey(), inProgress);
+        } else if (expr instanceof MapSize) {
+            return expressionIsTotal(((MapSize) expr).getMap(), inProgress);
+        } else if (expr instanceof ArrayLength) {
+            return expressionIsTotal(((ArrayLength) expr).getArray(), inProgress);
+        }
+        if (expr instanceof DivideNode || expr instanceof ModuloNode) {
+            Expression divisor = ((BinaryOp) expr).getRightExpr();
+            if (!isNonZeroLiteral(divisor)) {
+                return false;
+            }
+        }
+        if (expr instanceof BinaryOp) {
+            return expressionIsTotal(((BinaryOp) expr).getLeftExpr(), inProgress)
+                    && expressionIsTotal(((BinaryOp) expr).getRightExpr(), inProgress);
+        } else if (expr instanceof UnaryOp) {
+            return expressionIsTotal(((UnaryOp) expr).getExpr(), inProgress);
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            if (!isTotal(call.getName().getLexeme(), inProgress)) {
+                return false;
+            }
+            for (Expression arg : call.getArgs()) {
+                if (!expressionIsTotal(arg, inProgress)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return true;
+    }
+
+    private static boolean isNonZeroLiteral(Expression expr) {
+        return expr instanceof Literal && ((Literal) expr).getConstant() != null
+                && ((Literal) expr).getConstant().isInteger()
+                && ((Literal) expr).getConstant().asInteger() != 0;
+    }
+
+    private static boolean alwaysReturns(List<Statement> stmts) {
+        for (Statement stmt : stmts) {
+            if (alwaysReturns(stmt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean alwaysReturns(Statement stmt) {
+        if (stmt instanceof ReturnStmt) {
+            return true;
+        } else if (stmt instanceof IfThenElse) {
+            IfThenElse ite = (IfThenElse) stmt;
+            return alwaysReturns(ite.getThenStmts()) && alwaysReturns(ite.getElseStmts());
+        } else if (stmt instanceof Block) {
+            return alwaysReturns(((Block) stmt).getStatements());
+        } else if (stmt instanceof CaseStmt) {
+            CaseStmt cs = (CaseStmt) stmt;
+            for (CaseStmt.Arm arm : cs.getArms()) {
+                if (!alwaysReturns(arm.getBody())) {
+                    return false;
+                }
+            }
+            return alwaysReturns(cs.getElseStmts());
+        }
+        return false;
+    }
+}
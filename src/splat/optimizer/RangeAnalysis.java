@@ -0,0 +1,522 @@
+package splat.optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.Value;
+import splat.parser.elements.AddNode;
+import splat.parser.elements.AndNode;
+import splat.parser.elements.ArithmeticOp;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.ArrayIndex;
+import splat.parser.elements.ArrayLength;
+import splat.parser.elements.Assignment;
+import splat.parser.elements.BinaryOp;
+import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
+import splat.parser.elements.CountedLoop;
+import splat.parser.elements.DivideNode;
+import splat.parser.elements.EqualNode;
+import splat.parser.elements.EqualityOp;
+import splat.parser.elements.Expression;
+import splat.parser.elements.ExpressionStmt;
+import splat.parser.elements.FunctionCall;
+import splat.parser.elements.FunctionCallStmt;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.GreaterEqualNode;
+import splat.parser.elements.GreaterThanNode;
+import splat.parser.elements.IfThenElse;
+import splat.parser.elements.LessEqualNode;
+import splat.parser.elements.LessThanNode;
+import splat.parser.elements.Literal;
+import splat.parser.elements.LogicalOp;
+import splat.parser.elements.MapContains;
+import splat.parser.elements.MapSize;
+import splat.parser.elements.ModuloNode;
+import splat.parser.elements.MultiplyNode;
+import splat.parser.elements.NewArray;
+import splat.parser.elements.NotEqualNode;
+import splat.parser.elements.ParallelOperands;
+import splat.parser.elements.PrintStmt;
+import splat.parser.elements.ReturnStmt;
+import splat.parser.elements.Statement;
+import splat.parser.elements.SubtractNode;
+import splat.parser.elements.UnaryOp;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.VariableRef;
+import splat.parser.elements.WhileLoop;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Interval analysis of the Integer variables of each function body and of
+ * the main program, recording what it proves on the ArithmeticOps: that a
+ * / or % can never see a zero divisor, and that an operation can never
+ * overflow.
+ *
+ * Parameters start out unknown; locals and globals start at 0, their
+ * default.  Assignments, if conditions and while conditions narrow and
+ * widen the intervals as the program flows: (k < n) bounds k by n on the
+ * true side, (d != 0) takes zero out of d, and a loop is iterated with
+ * widening until its entry state stops changing.  Nothing is assumed about
+ * what a call returns.
+ *
+ * The facts hold where the analysis saw the node, so this pass runs after
+ * every pass that moves code.
+ */
+public class RangeAnalysis extends AstRewriter {
+
+    private static final int MAX_LOOP_ITERATIONS = 32;
+
+    private final Map<ArithmeticOp, boolean[]> facts = new IdentityHashMap<>();
+    private boolean recording;
+    private int uncheckedDivisions;
+    private int overflowFreeOperations;
+
+    public int getUncheckedDivisions() {
+        return uncheckedDivisions;
+    }
+
+    public int getOverflowFreeOperations() {
+        return overflowFreeOperations;
+    }
+
+    @Override
+    protected List<Statement> rewriteMainBody(List<Statement> stmts) {
+        analyze(stmts, initialEnvironment(List.of()));
+        return super.rewriteMainBody(stmts);
+    }
+
+    @Override
+    protected List<Statement> rewriteFunctionBody(FunctionDecl decl, List<Statement> body) {
+        analyze(body, initialEnvironment(decl.getParams()));
+        return super.rewriteFunctionBody(decl, body);
+    }
+
+    @Override
+    protected Expression rewriteBinary(BinaryOp expr) {
+        Expression rewritten = super.rewriteBinary(expr);
+        boolean[] proven = facts.get(expr);
+        if (proven == null || !(rewritten instanceof ArithmeticOp)) {
+            return rewritten;
+        }
+        boolean isDivision = rewritten instanceof DivideNode || rewritten instanceof ModuloNode;
+        boolean divisorNonZero = isDivision && proven[1];
+        if (proven[0]) {
+            overflowFreeOperations++;
+        }
+        if (divisorNonZero) {
+            uncheckedDivisions++;
+        }
+        return ((ArithmeticOp) rewritten).withRangeFacts(proven[0], divisorNonZero);
+    }
+
+    private Map<String, Interval> initialEnvironment(List<VariableDecl> params) {
+        Map<String, Interval> env = new HashMap<>();
+        for (String name : scopeVariables()) {
+            if (variableType(name) == Type.INTEGER) {
+                env.put(name, Interval.ZERO);
+            }
+        }
+        for (VariableDecl param : params) {
+            if (variableType(param.getName().getLexeme()) == Type.INTEGER) {
+                env.put(param.getName().getLexeme(), Interval.TOP);
+            }
+        }
+        return env;
+    }
+
+    private void analyze(List<Statement> stmts, Map<String, Interval> env) {
+        facts.clear();
+        recording = true;
+        analyzeStatements(stmts, env);
+    }
+
+    // ---- statements: each takes the state before it and returns the state
+    // after it, where null means the point cannot be reached ----
+
+    private Map<String, Interval> analyzeStatements(List<Statement> stmts, Map<String, Interval> env) {
+        for (Statement stmt : stmts) {
+            if (env == null) {
+                return null;
+            }
+            env = analyzeStatement(stmt, env);
+        }
+        return env;
+    }
+
+    private Map<String, Interval> analyzeStatement(Statement stmt, Map<String, Interval> env) {
+        if (stmt instanceof Assignment) {
+            Assignment assignment = (Assignment) stmt;
+            Interval value = eval(assignment.getExpression(), env);
+            String name = assignment.getVariable().getLexeme();
+            if (variableType(name) != Type.INTEGER) {
+                return env;
+            }
+            Map<String, Interval> after = new HashMap<>(env);
+            after.put(name, value != null ? value : Interval.TOP);
+            return after;
+        } else if (stmt instanceof ArrayAssignment) {
+            // only an element changes, and elements are not tracked
+            eval(((ArrayAssignment) stmt).getIndex(), env);
+            eval(((ArrayAssignment) stmt).getExpression(), env);
+            return env;
+        } else if (stmt instanceof PrintStmt) {
+            if (((PrintStmt) stmt).getExpr() != null) {
+                eval(((PrintStmt) stmt).getExpr(), env);
+            }
+            return env;
+        } else if (stmt instanceof ReturnStmt) {
+            if (((ReturnStmt) stmt).getExpr() != null) {
+                eval(((ReturnStmt) stmt).getExpr(), env);
+            }
+            return null;
+        } else if (stmt instanceof IfThenElse) {
+            IfThenElse ite = (IfThenElse) stmt;
+            eval(ite.getCondition(), env);
+            Map<String, Interval> thenEnv = refine(env, ite.getCondition(), true);
+            Map<String, Interval> elseEnv = refine(env, ite.getCondition(), false);
+            return join(thenEnv == null ? null : analyzeStatements(ite.getThenStmts(), thenEnv),
+                    elseEnv == null ? null : analyzeStatements(ite.getElseStmts(), elseEnv));
+        } else if (stmt instanceof CaseStmt) {
+            CaseStmt cs = (CaseStmt) stmt;
+            eval(cs.getScrutinee(), env);
+            Map<String, Interval> after = analyzeStatements(cs.getElseStmts(), env);
+            for (CaseStmt.Arm arm : cs.getArms()) {
+                after = join(after, analyzeStatements(arm.getBody(), env));
+            }
+            return after;
+        } else if (stmt instanceof WhileLoop) {
+            return analyzeWhile((WhileLoop) stmt, env);
+        } else if (stmt instanceof Block) {
+            return analyzeStatements(((Block) stmt).getStatements(), env);
+        } else if (stmt instanceof FunctionCallStmt) {
+            eval(((FunctionCallStmt) stmt).getCall(), env);
+            return env;
+        } else if (stmt instanceof ExpressionStmt) {
+            eval(((ExpressionStmt) stmt).getExpression(), env);
+            return env;
+        } else if (stmt instanceof CountedLoop) {
+            // its nodes are not rewritten here, so only its effect matters
+            boolean saved = recording;
+            recording = false;
+            Map<String, Interval> after = analyzeStatements(((CountedLoop) stmt).getEquivalentStatements(), env);
+            recording = saved;
+            return after;
+        }
+        return unknownAfter(env);
+    }
+
+    /**
+     * Iterates the loop without recording until the state at its condition
+     * is stable, then makes one recording pass over it in that state.
+     */
+    private Map<String, Interval> analyzeWhile(WhileLoop loop, Map<String, Interval> env) {
+        boolean saved = recording;
+        recording = false;
+        Map<String, Interval> head = env;
+        for (int iteration = 0; ; iteration++) {
+            Map<String, Interval> bodyEnv = refine(head, loop.getCondition(), true);
+            Map<String, Interval> back = bodyEnv == null ? null : analyzeStatements(loop.getBody(), bodyEnv);
+            Map<String, Interval> next = iteration < MAX_LOOP_ITERATIONS
+                    ? widen(head, join(head, back))
+                    : unknownAfter(head);
+            if (next.equals(head)) {
+                break;
+            }
+            head = next;
+        }
+        recording = saved;
+
+        eval(loop.getCondition(), head);
+        Map<String, Interval> bodyEnv = refine(head, loop.getCondition(), true);
+        if (bodyEnv != null) {
+            analyzeStatements(loop.getBody(), bodyEnv);
+        }
+        return refine(head, loop.getCondition(), false);
+    }
+
+    private Map<String, Interval> unknownAfter(Map<String, Interval> env) {
+        Map<String, Interval> after = new HashMap<>();
+        for (String name : env.keySet()) {
+            after.put(name, Interval.TOP);
+        }
+        return after;
+    }
+
+    private static Map<String, Interval> join(Map<String, Interval> a, Map<String, Interval> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        Map<String, Interval> joined = new HashMap<>();
+        for (String name : union(a, b)) {
+            joined.put(name, lookup(a, name).join(lookup(b, name)));
+        }
+        return joined;
+    }
+
+    private static Map<String, Interval> widen(Map<String, Interval> previous, Map<String, Interval> next) {
+        Map<String, Interval> widened = new HashMap<>();
+        for (String name : union(previous, next)) {
+            widened.put(name, lookup(previous, name).widen(lookup(next, name)));
+        }
+        return widened;
+    }
+
+    private static Set<String> union(Map<String, Interval> a, Map<String, Interval> b) {
+        Set<String> names = new HashSet<>(a.keySet());
+        names.addAll(b.keySet());
+        return names;
+    }
+
+    private static Interval lookup(Map<String, Interval> env, String name) {
+        Interval interval = env.get(name);
+        return interval != null ? interval : Interval.TOP;
+    }
+
+    // ---- expressions ----
+
+    /**
+     * The interval of an Integer expression (null for other types), noting
+     * what holds for each ArithmeticOp in it while recording.
+     */
+    private Interval eval(Expression expr, Map<String, Interval> env) {
+        if (expr instanceof Literal) {
+            Value constant = ((Literal) expr).getConstant();
+            return constant != null && constant.isInteger() ? Interval.constant(constant.asInteger()) : null;
+        } else if (expr instanceof VariableRef) {
+            String name = ((VariableRef) expr).getName().getLexeme();
+            return variableType(name) == Type.INTEGER ? lookup(env, name) : null;
+        } else if (isConcatenation(expr)) {
+            eval(((BinaryOp) expr).getLeftExpr(), env);
+            eval(((BinaryOp) expr).getRightExpr(), env);
+            return null;
+        } else if (expr instanceof ArithmeticOp) {
+            return evalArithmetic((ArithmeticOp) expr, env);
+        } else if (expr instanceof LogicalOp) {
+            LogicalOp logicalOp = (LogicalOp) expr;
+            eval(logicalOp.getLeftExpr(), env);
+            // the right operand only runs when the left one did not decide
+            Map<String, Interval> rightEnv = refine(env, logicalOp.getLeftExpr(), logicalOp instanceof AndNode);
+            if (rightEnv != null) {
+                eval(logicalOp.getRightExpr(), rightEnv);
+            }
+            return null;
+        } else if (expr instanceof BinaryOp) {
+            eval(((BinaryOp) expr).getLeftExpr(), env);
+            eval(((BinaryOp) expr).getRightExpr(), env);
+            return null;
+        } else if (expr instanceof UnaryOp) {
+            UnaryOp unOp = (UnaryOp) expr;
+            Interval operand = eval(unOp.getExpr(), env);
+            if (!"-".equals(unOp.getOperator().getLexeme())) {
+                return null;
+            }
+            // an operand with no interval, such as a literal out of the int
+            // range, fails at run time, which nothing here may rule out
+            Interval negated = operand != null ? operand.negate() : null;
+            return negated != null ? negated : Interval.TOP;
+        } else if (expr instanceof FunctionCall) {
+            for (Expression arg : ((FunctionCall) expr).getArgs()) {
+                eval(arg, env);
+            }
+            return typeOf(expr) == Type.INTEGER ? Interval.TOP : null;
+        } else if (expr instanceof ParallelOperands) {
+            return eval(((ParallelOperands) expr).getExpression(), env);
+        } else if (expr instanceof ArrayIndex) {
+            eval(((ArrayIndex) expr).getArray(), env);
+            eval(((ArrayIndex) expr).getIndex(), env);
+        } else if (expr instanceof ArrayLength) {
+            eval(((ArrayLength) expr).getArray(), env);
+            return Interval.of(0, Integer.MAX_VALUE);
+        } else if (expr instanceof NewArray) {
+            eval(((NewArray) expr).getSize(), env);
+        } else if (expr instanceof MapContains) {
+            eval(((MapContains) expr).getMap(), env);
+            eval(((MapContains) expr).getKey(), env);
+        } else if (expr instanceof MapSize) {
+            eval(((MapSize) expr).getMap(), env);
+            return Interval.of(0, Integer.MAX_VALUE);
+        }
+        return typeOf(expr) == Type.INTEGER ? Interval.TOP : null;
+    }
+
+    private Interval evalArithmetic(ArithmeticOp op, Map<String, Interval> env) {
+        Interval left = eval(op.getLeftExpr(), env);
+        Interval right = eval(op.getRightExpr(), env);
+        Interval result;
+        boolean divisorNonZero = false;
+        if (op instanceof AddNode) {
+            result = left.add(right);
+        } else if (op instanceof SubtractNode) {
+            result = left.subtract(right);
+        } else if (op instanceof MultiplyNode) {
+            result = left.multiply(right);
+        } else if (op instanceof DivideNode) {
+            divisorNonZero = !right.containsZero();
+            result = left.divide(right);
+        } else if (op instanceof ModuloNode) {
+            divisorNonZero = !right.containsZero();
+            result = left.remainder(right);
+        } else {
+            result = null;
+        }
+        if (recording) {
+            boolean[] known = facts.get(op);
+            if (known == null) {
+                facts.put(op, new boolean[] { result != null, divisorNonZero });
+            } else {
+                // a node reached from two places must satisfy both
+                known[0] &= result != null;
+                known[1] &= divisorNonZero;
+            }
+        }
+        return result != null ? result : Interval.TOP;
+    }
+
+    // ---- conditions ----
+
+    /**
+     * The state in which cond evaluates to the given truth value, or null
+     * if it never can.
+     */
+    private Map<String, Interval> refine(Map<String, Interval> env, Expression cond, boolean truth) {
+        if (env == null) {
+            return null;
+        }
+        if (cond instanceof LogicalOp) {
+            LogicalOp logicalOp = (LogicalOp) cond;
+            boolean isAnd = logicalOp instanceof AndNode;
+            Expression left = logicalOp.getLeftExpr();
+            Expression right = logicalOp.getRightExpr();
+            if (truth == isAnd) {
+                // both operands took this value
+                return refine(refine(env, left, truth), right, truth);
+            }
+            return join(refine(env, left, truth), refine(refine(env, left, !truth), right, truth));
+        } else if (cond instanceof UnaryOp && "not".equals(((UnaryOp) cond).getOperator().getLexeme())) {
+            return refine(env, ((UnaryOp) cond).getExpr(), !truth);
+        } else if (cond instanceof Literal) {
+            Value constant = ((Literal) cond).getConstant();
+            return constant != null && constant.isBoolean() && constant.asBoolean() != truth ? null : env;
+        } else if (cond instanceof BinaryOp && isIntegerComparison((BinaryOp) cond)) {
+            return refineComparison(env, (BinaryOp) cond, truth);
+        }
+        return env;
+    }
+
+    private boolean isIntegerComparison(BinaryOp cond) {
+        if (cond instanceof EqualityOp) {
+            return ((EqualityOp) cond).getOperandType() == Type.INTEGER;
+        }
+        return cond instanceof LessThanNode || cond instanceof LessEqualNode
+                || cond instanceof GreaterThanNode || cond instanceof GreaterEqualNode;
+    }
+
+    private enum Relation { LT, LE, GT, GE, EQ, NE }
+
+    private Map<String, Interval> refineComparison(Map<String, Interval> env, BinaryOp cond, boolean truth) {
+        Relation relation = relationOf(cond);
+        if (!truth) {
+            relation = negate(relation);
+        }
+        boolean saved = recording;
+        recording = false;
+        Interval left = eval(cond.getLeftExpr(), env);
+        Interval right = eval(cond.getRightExpr(), env);
+        recording = saved;
+
+        Map<String, Interval> refined = env;
+        if (cond.getLeftExpr() instanceof VariableRef) {
+            refined = constrain(refined, ((VariableRef) cond.getLeftExpr()).getName().getLexeme(),
+                    left, relation, right);
+        }
+        if (refined != null && cond.getRightExpr() instanceof VariableRef) {
+            refined = constrain(refined, ((VariableRef) cond.getRightExpr()).getName().getLexeme(),
+                    right, mirror(relation), left);
+        }
+        return refined;
+    }
+
+    /**
+     * Narrows variable name, currently in value, to what satisfies
+     * (name relation other).
+     */
+    private static Map<String, Interval> constrain(Map<String, Interval> env, String name, Interval value,
+                                                   Relation relation, Interval other) {
+        if (value == null || other == null) {
+            return env;
+        }
+        Interval narrowed;
+        switch (relation) {
+            case LT:
+                narrowed = meetBound(value, Interval.of(Integer.MIN_VALUE, other.hi - 1));
+                break;
+            case LE:
+                narrowed = meetBound(value, Interval.of(Integer.MIN_VALUE, other.hi));
+                break;
+            case GT:
+                narrowed = meetBound(value, Interval.of(other.lo + 1, Integer.MAX_VALUE));
+                break;
+            case GE:
+                narrowed = meetBound(value, Interval.of(other.lo, Integer.MAX_VALUE));
+                break;
+            case EQ:
+                narrowed = value.meet(other);
+                break;
+            default:
+                narrowed = other.lo == other.hi ? value.without(other.lo) : value;
+                break;
+        }
+        if (narrowed == null) {
+            return null;
+        }
+        Map<String, Interval> refined = new HashMap<>(env);
+        refined.put(name, narrowed);
+        return refined;
+    }
+
+    /**
+     * value within bound, or null if there is nothing in both.  A null
+     * bound is empty, as "n > MAX_VALUE" is, so nothing satisfies it.
+     */
+    private static Interval meetBound(Interval value, Interval bound) {
+        return bound != null ? value.meet(bound) : null;
+    }
+
+    private static Relation relationOf(BinaryOp cond) {
+        if (cond instanceof LessThanNode) return Relation.LT;
+        if (cond instanceof LessEqualNode) return Relation.LE;
+        if (cond instanceof GreaterThanNode) return Relation.GT;
+        if (cond instanceof GreaterEqualNode) return Relation.GE;
+        if (cond instanceof EqualNode) return Relation.EQ;
+        return Relation.NE;
+    }
+
+    private static Relation negate(Relation relation) {
+        switch (relation) {
+            case LT: return Relation.GE;
+            case LE: return Relation.GT;
+            case GT: return Relation.LE;
+            case GE: return Relation.LT;
+            case EQ: return Relation.NE;
+            default: return Relation.EQ;
+        }
+    }
+
+    private static Relation mirror(Relation relation) {
+        switch (relation) {
+            case LT: return Relation.GT;
+            case LE: return Relation.GE;
+            case GT: return Relation.LT;
+            case GE: return Relation.LE;
+            default: return relation;
+        }
+    }
+}
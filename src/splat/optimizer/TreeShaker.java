@@ -0,0 +1,70 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Removes every function that no path from the main program body can
+ * call, so that no later stage optimizes, compiles, caches or registers
+ * it.  Reachability follows the CallGraph from the calls in the main body.
+ *
+ * A program is only shaken after semantic analysis, so removed functions
+ * have still been checked.  One TreeShaker may shake several versions of a
+ * program (say, before and after inlining); getRemovedFunctions() lists
+ * everything it removed, in the order it did so.
+ */
+public class TreeShaker {
+
+    private final List<FunctionDecl> removed = new ArrayList<>();
+
+    public ProgramAST shake(ProgramAST progAST) {
+        Map<String, FunctionDecl> functions = new HashMap<>();
+        for (Declaration decl : progAST.getDecls()) {
+            // host functions cost nothing to keep
+            if (decl instanceof FunctionDecl && !(decl instanceof HostFunctionDecl)) {
+                functions.put(decl.getLabel().getLexeme(), (FunctionDecl) decl);
+            }
+        }
+        Set<String> reachable = new CallGraph(functions).reachableFrom(CallGraph.callsIn(progAST.getStmts()));
+        if (reachable.containsAll(functions.keySet())) {
+            return progAST;
+        }
+
+        List<Declaration> kept = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            String label = decl.getLabel().getLexeme();
+            if (functions.containsKey(label) && !reachable.contains(label)) {
+                removed.add((FunctionDecl) decl);
+            } else {
+                kept.add(decl);
+            }
+        }
+        return new ProgramAST(kept, progAST.getStmts(), progAST.getToken());
+    }
+
+    public List<FunctionDecl> getRemovedFunctions() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * One line per removed function, with where it was declared.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (FunctionDecl decl : removed) {
+            sb.append("tree-shake: removed ").append(decl.getName().getLexeme())
+                    .append(" declared at ").append(decl.getLine()).append(':').append(decl.getColumn())
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.*;
 
@@ -13,12 +14,14 @@ public class Parser {
 
     private final List<Token> tokens;
     private int position;
+    private List<VariableDecl> scopeLocals = new ArrayList<>();
+    private int hiddenCount;
 
     private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
             "program", "begin", "end", "if", "then", "else",
             "while", "loop", "do", "return", "is",
             "print", "print_line", "and", "or", "not",
-            "true", "false", "for"
+            "true", "false", "for", "case"
     ));
 
     public Parser(List<Token> tokens) {
@@ -30,7 +33,10 @@ public class Parser {
         Token programToken = expect("program");
         List<Declaration> declarations = parseDeclarations();
         expect("begin");
-        List<Statement> statements = parseStatementList("end");
+        scopeLocals = new ArrayList<>();
+        List<Statement> statements = allocations(declarations);
+        statements.addAll(parseStatementList("end"));
+        declarations.addAll(scopeLocals);
         expect("end");
         match(";");
         ensureEOF();
@@ -51,7 +57,7 @@ public class Parser {
     private Declaration parseDeclaration() throws ParseException {
         Token name = consumeIdentifier("identifier at start of declaration");
         if (check(":")) {
-            return parseVariableDecl(name);
+            return parseVariableDecl(name, true);
         } else if (check("(")) {
             return parseFunctionDecl(name);
         }
@@ -59,11 +65,102 @@ public class Parser {
         throw new ParseException("Unexpected token after identifier '" + name.getLexeme() + "'", next != null ? next : name);
     }
 
-    private VariableDecl parseVariableDecl(Token nameToken) throws ParseException {
+    /**
+     * name : Type; or, where constants are allowed, name : const Type := literal;
+     */
+    private VariableDecl parseVariableDecl(Token nameToken, boolean allowConstant) throws ParseException {
         expect(":");
-        Token typeToken = consumeIdentifier("type name");
+        Token constToken = peek();
+        if (match("const")) {
+            if (!allowConstant) {
+                throw new ParseException("Constants can only be declared in the program's declarations", constToken);
+            }
+            Token typeToken = parseTypeName("type name");
+            expect(":=");
+            Literal value = parseSignedLiteral("constant value");
+            expect(";");
+            return VariableDecl.constant(nameToken, typeToken, value);
+        }
+        Token typeToken = parseTypeName("type name");
+        Expression arraySize = null;
+        if (check("[")) {
+            advance();
+            if (!check("]")) {
+                arraySize = parseArraySize();
+            }
+            expect("]");
+            typeToken = arrayType(typeToken);
+        }
         expect(";");
-        return new VariableDecl(nameToken, typeToken);
+        return new VariableDecl(nameToken, typeToken, arraySize);
+    }
+
+    /**
+     * A type name, optionally followed by [] to make it an array type.
+     */
+    private Token parseType(String context) throws ParseException {
+        Token typeToken = parseTypeName(context);
+        if (match("[")) {
+            expect("]");
+            typeToken = arrayType(typeToken);
+        }
+        return typeToken;
+    }
+
+    /**
+     * A type name, or a map type Map<Key, Value>, which becomes a single
+     * token such as Map<String,Integer>.
+     */
+    private Token parseTypeName(String context) throws ParseException {
+        Token typeToken = consumeIdentifier(context);
+        if (typeToken.getLexeme().equals("Map") && match("<")) {
+            Token keyType = consumeIdentifier("map key type");
+            expect(",");
+            Token valueType = consumeIdentifier("map value type");
+            expect(">");
+            typeToken = new Token("Map<" + keyType.getLexeme() + "," + valueType.getLexeme() + ">",
+                    typeToken.getLine(), typeToken.getCol());
+        }
+        return typeToken;
+    }
+
+    private Token arrayType(Token elementType) {
+        return new Token(elementType.getLexeme() + "[]", elementType.getLine(), elementType.getCol());
+    }
+
+    private Expression parseArraySize() throws ParseException {
+        Token token = peek();
+        if (isLiteralToken(token) && token.getLexeme().matches("\\d+")) {
+            advance();
+            return new Literal(token);
+        }
+        if (isIdentifier(token)) {
+            advance();
+            return new VariableRef(token);
+        }
+        throw new ParseException("Array size must be an integer literal or a variable",
+                token != null ? token : lastToken());
+    }
+
+    /**
+     * Statements allocating the arrays of the variables declared with a
+     * size and the maps of the variables declared with a map type, in
+     * declaration order, to run before the body that follows.
+     */
+    private List<Statement> allocations(List<? extends Declaration> decls) {
+        List<Statement> allocations = new ArrayList<>();
+        for (Declaration decl : decls) {
+            if (!(decl instanceof VariableDecl)) {
+                continue;
+            }
+            VariableDecl var = (VariableDecl) decl;
+            if (var.getArraySize() != null) {
+                allocations.add(new Assignment(var.getName(), new NewArray(var.getType(), var.getArraySize())));
+            } else if (var.getType().getLexeme().startsWith("Map<")) {
+                allocations.add(new Assignment(var.getName(), new NewMap(var.getType())));
+            }
+        }
+        return allocations;
     }
 
     private FunctionDecl parseFunctionDecl(Token nameToken) throws ParseException {
@@ -73,23 +170,25 @@ public class Parser {
             do {
                 Token paramName = consumeIdentifier("parameter name");
                 expect(":");
-                Token paramType = consumeIdentifier("parameter type");
+                Token paramType = parseType("parameter type");
                 params.add(new VariableDecl(paramName, paramType));
             } while (match(","));
         }
         expect(")");
         expect(":");
-        Token returnType = consumeIdentifier("return type");
+        Token returnType = parseType("return type");
         expect("is");
 
         List<VariableDecl> locals = new ArrayList<>();
         while (isIdentifier(peek()) && ":".equals(lookAheadLexeme(1))) {
             Token localName = consumeIdentifier("local variable name");
-            locals.add(parseVariableDecl(localName));
+            locals.add(parseVariableDecl(localName, false));
         }
 
         expect("begin");
-        List<Statement> body = parseStatementList("end");
+        scopeLocals = locals;
+        List<Statement> body = allocations(locals);
+        body.addAll(parseStatementList("end"));
         expect("end");
         if (check(nameToken.getLexeme())) {
             advance();
@@ -121,6 +220,10 @@ public class Parser {
                 return parseIf();
             case "while":
                 return parseWhile();
+            case "for":
+                return parseFor();
+            case "case":
+                return parseCase();
             case "print":
             case "print_line":
                 return parsePrint();
@@ -131,6 +234,8 @@ public class Parser {
             default:
                 if (isIdentifier(token) && ":=".equals(lookAheadLexeme(1))) {
                     return parseAssignment();
+                } else if (isIdentifier(token) && "[".equals(lookAheadLexeme(1))) {
+                    return parseArrayAssignment();
                 } else if (isIdentifier(token) && "(".equals(lookAheadLexeme(1))) {
                     FunctionCall call = parseFunctionCall();
                     expect(";");
@@ -149,6 +254,18 @@ public class Parser {
         return new Assignment(name, expr);
     }
 
+    private ArrayAssignment parseArrayAssignment() throws ParseException {
+        Token name = consumeIdentifier("variable name");
+        Token bracket = expect("[");
+        Expression index = parseExpression();
+        expect("]");
+        expect(":=");
+        ensureParenthesizedArithmeticInAssignment();
+        Expression expr = parseExpression();
+        expect(";");
+        return new ArrayAssignment(name, bracket, index, expr);
+    }
+
     private IfThenElse parseIf() throws ParseException {
         Token ifToken = expect("if");
         Expression condition = parseExpression();
@@ -181,6 +298,101 @@ public class Parser {
         return new WhileLoop(whileToken, condition, body);
     }
 
+    private ForLoop parseFor() throws ParseException {
+        Token forToken = expect("for");
+        Token counter = consumeIdentifier("loop variable");
+        expect(":=");
+        Expression from = parseExpression();
+        expect("to");
+        Expression limit = parseExpression();
+        Expression step = null;
+        if (match("step")) {
+            step = parseUnary();
+        }
+        expect("do");
+        List<Statement> body = parseStatementList("end");
+        expect("end");
+        expect("for");
+        expect(";");
+        return new ForLoop(forToken, counter, from, limit, step, body,
+                hiddenLocal("for.start", forToken), hiddenLocal("for.end", forToken));
+    }
+
+    /**
+     * case expr of label, ...: stmts ... [else stmts] end case;
+     *
+     * An arm's statements run up to the next label, else or end; no
+     * statement starts with a literal or '-', so the next label is plain.
+     */
+    private CaseStmt parseCase() throws ParseException {
+        Token caseToken = expect("case");
+        Expression scrutinee = parseExpression();
+        expect("of");
+        List<CaseStmt.Arm> arms = new ArrayList<>();
+        do {
+            List<Literal> labels = new ArrayList<>();
+            labels.add(parseSignedLiteral("case label"));
+            while (match(",")) {
+                labels.add(parseSignedLiteral("case label"));
+            }
+            expect(":");
+            List<Statement> body = new ArrayList<>();
+            while (!isAtEnd() && !check("else") && !check("end") && !startsCaseLabel()) {
+                body.add(parseStatement());
+            }
+            arms.add(new CaseStmt.Arm(labels, body));
+        } while (startsCaseLabel());
+        List<Statement> elsePart = new ArrayList<>();
+        if (match("else")) {
+            elsePart = parseStatementList("end");
+        }
+        expect("end");
+        expect("case");
+        expect(";");
+        return new CaseStmt(caseToken, scrutinee, arms, elsePart);
+    }
+
+    private boolean startsCaseLabel() {
+        return check("-") || isLiteralToken(peek());
+    }
+
+    /**
+     * A literal, or '-' and an integer literal, where only a constant may
+     * appear; what names the place for error messages.
+     */
+    private Literal parseSignedLiteral(String what) throws ParseException {
+        Token token = peek();
+        if (match("-")) {
+            Token digits = peek();
+            if (digits == null || !digits.getLexeme().matches("\\d+")) {
+                throw new ParseException("Expected an integer after '-' in " + what,
+                        digits != null ? digits : lastToken());
+            }
+            advance();
+            try {
+                return Literal.ofValue(token, Value.ofInteger(Integer.parseInt("-" + digits.getLexeme())));
+            } catch (NumberFormatException ex) {
+                throw new ParseException("Integer out of range in " + what, digits);
+            }
+        }
+        if (!isLiteralToken(token)) {
+            throw new ParseException("Expected a literal as " + what, token != null ? token : lastToken());
+        }
+        advance();
+        return new Literal(token);
+    }
+
+    /**
+     * Declares an Integer local for a statement that needs one, in the
+     * function (or main program) being parsed.  The name starts with a
+     * digit, so it cannot clash with anything in the source.
+     */
+    private Token hiddenLocal(String hint, Token at) {
+        Token name = new Token((++hiddenCount) + hint, at.getLine(), at.getCol());
+        scopeLocals.add(new VariableDecl(name, new Token("Integer", at.getLine(), at.getCol())));
+        return name;
+    }
+
     private PrintStmt parsePrint() throws ParseException {
         Token printToken = advance();
         Expression expr = null;
@@ -252,7 +464,7 @@ public class Parser {
         while (match("or")) {
             Token op = previous();
             Expression right = parseAnd();
-            expr = new BinaryOp(expr, op, right);
+            expr = BinaryOp.create(expr, op, right);
         }
         return expr;
     }
@@ -262,7 +474,7 @@ public class Parser {
         while (match("and")) {
             Token op = previous();
             Expression right = parseComparison();
-            expr = new BinaryOp(expr, op, right);
+            expr = BinaryOp.create(expr, op, right);
         }
         return expr;
     }
@@ -272,7 +484,7 @@ public class Parser {
         while (check("<") || check("<=") || check(">") || check(">=") || check("==") || check("!=")) {
             Token op = advance();
             Expression right = parseAddSub();
-            expr = new BinaryOp(expr, op, right);
+            expr = BinaryOp.create(expr, op, right);
         }
         return expr;
     }
@@ -282,7 +494,7 @@ public class Parser {
         while (check("+") || check("-")) {
             Token op = advance();
             Expression right = parseMulDiv();
-            expr = new BinaryOp(expr, op, right);
+            expr = BinaryOp.create(expr, op, right);
         }
         return expr;
     }
@@ -292,7 +504,7 @@ public class Parser {
         while (check("*") || check("/") || check("%")) {
             Token op = advance();
             Expression right = parseUnary();
-            expr = new BinaryOp(expr, op, right);
+            expr = BinaryOp.create(expr, op, right);
         }
         return expr;
     }
@@ -307,6 +519,17 @@ public class Parser {
     }
 
     private Expression parsePrimary() throws ParseException {
+        Expression expr = parseAtom();
+        while (check("[")) {
+            Token bracket = advance();
+            Expression index = parseExpression();
+            expect("]");
+            expr = new ArrayIndex(bracket, expr, index);
+        }
+        return expr;
+    }
+
+    private Expression parseAtom() throws ParseException {
         Token token = peek();
         if (token == null) {
             throw new ParseException("Unexpected end of input in expression", lastToken());
@@ -346,10 +569,13 @@ public class Parser {
      * Utility helpers
      * ---------------------------------------------------- */
     private boolean isIdentifier(Token token) {
-        if (token == null) {
-            return false;
-        }
-        String lexeme = token.getLexeme();
+        return token != null && isIdentifier(token.getLexeme());
+    }
+
+    /**
+     * Whether the lexeme can name a variable or function.
+     */
+    public static boolean isIdentifier(String lexeme) {
         if (lexeme.isEmpty() || KEYWORDS.contains(lexeme)) {
             return false;
         }
@@ -453,9 +679,9 @@ public class Parser {
         int depth = 0;
         for (int i = position; i < tokens.size(); i++) {
             String lexeme = tokens.get(i).getLexeme();
-            if (lexeme.equals("(")) {
+            if (lexeme.equals("(") || lexeme.equals("[")) {
                 depth++;
-            } else if (lexeme.equals(")")) {
+            } else if (lexeme.equals(")") || lexeme.equals("]")) {
                 if (depth > 0) {
                     depth--;
                 }
@@ -0,0 +1,79 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Integer addition, (a + b), or, when analysis finds two String operands,
+ * string concatenation.  A concatenation builds its result as a rope (see
+ * Value.concat), so it is never an integer operation and carries no range
+ * facts.
+ */
+public class AddNode extends ArithmeticOp {
+
+    private boolean concatenation;
+
+    public AddNode(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    public boolean isConcatenation() {
+        return concatenation;
+    }
+
+    @Override
+    public BinaryOp withOperands(Expression newLeft, Expression newRight) {
+        BinaryOp rebuilt = super.withOperands(newLeft, newRight);
+        ((AddNode) rebuilt).concatenation = concatenation;
+        return rebuilt;
+    }
+
+    @Override
+    public ArithmeticOp withRangeFacts(boolean overflowFree, boolean divisorNonZero) {
+        ArithmeticOp rebuilt = super.withRangeFacts(overflowFree, divisorNonZero);
+        ((AddNode) rebuilt).concatenation = concatenation;
+        return rebuilt;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type leftType = getLeftExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        Type rightType = getRightExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        if (leftType == Type.STRING && rightType == Type.STRING) {
+            concatenation = true;
+            return Type.STRING;
+        }
+        if (leftType == Type.STRING || rightType == Type.STRING) {
+            throw new SemanticAnalysisException(
+                    "Operator '+' requires two integer or two string operands",
+                    getOperator().getLine(), getOperator().getCol());
+        }
+        ensureIntegerOperands(leftType, rightType);
+        return Type.INTEGER;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        if (concatenation) {
+            Value leftValue = getLeftExpr().evaluate(funcMap, frame);
+            return Value.concat(leftValue, getRightExpr().evaluate(funcMap, frame),
+                    getOperator().getLine(), getOperator().getCol());
+        }
+        return Value.ofInteger(evaluateInt(funcMap, frame));
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        int leftInt = getLeftExpr().evaluateInt(funcMap, frame);
+        return leftInt + getRightExpr().evaluateInt(funcMap, frame);
+    }
+}
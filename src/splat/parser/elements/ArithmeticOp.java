@@ -0,0 +1,80 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Integer operators: +, -, *, / and %.  Subclasses implement evaluateInt,
+ * so nested arithmetic stays in primitive ints until a result is stored.
+ *
+ * Range analysis may record two facts on a node: that it never overflows,
+ * and, for / and %, that its divisor is never zero, which lets every engine
+ * skip the division check.  Both only hold where the node was analyzed, so
+ * code must not be moved once they are recorded.
+ */
+public abstract class ArithmeticOp extends BinaryOp {
+
+    private boolean overflowFree;
+    private boolean divisorNonZero;
+
+    protected ArithmeticOp(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    public boolean isOverflowFree() {
+        return overflowFree;
+    }
+
+    public boolean isDivisorNonZero() {
+        return divisorNonZero;
+    }
+
+    /**
+     * Returns a node for the same operation carrying the given facts, or
+     * this node if it already carries exactly those.
+     */
+    public ArithmeticOp withRangeFacts(boolean overflowFree, boolean divisorNonZero) {
+        if (overflowFree == this.overflowFree && divisorNonZero == this.divisorNonZero) {
+            return this;
+        }
+        ArithmeticOp copy = (ArithmeticOp) create(getLeftExpr(), getOperator(), getRightExpr());
+        copy.overflowFree = overflowFree;
+        copy.divisorNonZero = divisorNonZero;
+        return copy;
+    }
+
+    @Override
+    public BinaryOp withOperands(Expression newLeft, Expression newRight) {
+        BinaryOp rebuilt = super.withOperands(newLeft, newRight);
+        if (rebuilt != this) {
+            ((ArithmeticOp) rebuilt).overflowFree = overflowFree;
+            ((ArithmeticOp) rebuilt).divisorNonZero = divisorNonZero;
+        }
+        return rebuilt;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type leftType = getLeftExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        Type rightType = getRightExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        ensureIntegerOperands(leftType, rightType);
+        return Type.INTEGER;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofInteger(evaluateInt(funcMap, frame));
+    }
+
+    @Override
+    public abstract int evaluateInt(Map<String, FunctionDecl> funcMap,
+                                    Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,119 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Write of an array element or map entry, name[index] := expr.  The
+ * variable, the index and the new value are evaluated in that order before
+ * an array index is checked; Integer and Boolean elements, and the entries
+ * of an Integer-keyed map, are stored without a Value.
+ */
+public class ArrayAssignment extends Statement {
+    private final Token targetName;
+    private final Token bracket;
+    private final Expression index;
+    private final Expression assignedExpr;
+    private int slot = -1;
+
+    public ArrayAssignment(Token variable, Token bracket, Expression index, Expression expr) {
+        super(variable);
+        this.targetName = variable;
+        this.bracket = bracket;
+        this.index = index;
+        this.assignedExpr = expr;
+    }
+
+    public Token getVariable() { return targetName; }
+    public Token getBracket() { return bracket; }
+    public Expression getIndex() { return index; }
+    public Expression getExpression() { return assignedExpr; }
+
+    @Override
+    public String toString() {
+        return targetName.getLexeme() + "[" + index + "] := " + assignedExpr;
+    }
+
+    @Override
+    public void analyze(Map<String, FunctionDecl> funcMap,
+                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        String variableName = targetName.getLexeme();
+        Type arrayType = varAndParamMap.get(variableName);
+        if (arrayType == null) {
+            throw new SemanticAnalysisException(
+                    "Variable '" + variableName + "' is not defined",
+                    targetName.getLine(), targetName.getCol());
+        }
+        if (!arrayType.isArray() && !arrayType.isMap()) {
+            throw new SemanticAnalysisException(
+                    "Cannot index variable '" + variableName + "' of type " + arrayType,
+                    bracket.getLine(), bracket.getCol());
+        }
+        if (arrayType.isMap()) {
+            Type keyType = index.analyzeAndGetType(funcMap, varAndParamMap);
+            if (keyType != arrayType.keyType()) {
+                throw new SemanticAnalysisException(
+                        "Map key must be " + arrayType.keyType() + ", found " + keyType,
+                        index.getLine(), index.getColumn());
+            }
+        } else if (index.analyzeAndGetType(funcMap, varAndParamMap) != Type.INTEGER) {
+            throw new SemanticAnalysisException(
+                    "Array index must be Integer",
+                    index.getLine(), index.getColumn());
+        }
+        Type elementType = arrayType.elementType();
+        Type expressionType = assignedExpr.analyzeAndGetType(funcMap, varAndParamMap);
+        if (expressionType != elementType) {
+            throw new SemanticAnalysisException(
+                    "Type mismatch: cannot assign " + expressionType + " to an element of " + arrayType,
+                    targetName.getLine(), targetName.getCol());
+        }
+    }
+
+    @Override
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        if (slot < 0) {
+            slot = frame.slotOf(targetName.getLexeme());
+            if (slot < 0) {
+                throw new ExecutionException(
+                        "Variable '" + targetName.getLexeme() + "' is not defined",
+                        targetName.getLine(), targetName.getCol());
+            }
+        }
+
+        Value array = frame.get(slot);
+        Type arrayType = array.getType();
+        if (arrayType == Type.INTEGER_MAP) {
+            int key = index.evaluateInt(funcMap, frame);
+            array.asIntMap().put(key, assignedExpr.evaluateInt(funcMap, frame));
+            return Completion.NORMAL;
+        } else if (arrayType == Type.STRING_MAP) {
+            String key = index.evaluate(funcMap, frame).asString();
+            array.asStringMap().put(key, assignedExpr.evaluateInt(funcMap, frame));
+            return Completion.NORMAL;
+        }
+        int i = index.evaluateInt(funcMap, frame);
+        if (arrayType == Type.INTEGER_ARRAY) {
+            int value = assignedExpr.evaluateInt(funcMap, frame);
+            array.checkIndex(i, bracket.getLine(), bracket.getCol());
+            array.asIntArray()[i] = value;
+        } else if (arrayType == Type.BOOLEAN_ARRAY) {
+            boolean value = assignedExpr.evaluateBoolean(funcMap, frame);
+            array.checkIndex(i, bracket.getLine(), bracket.getCol());
+            array.asBooleanArray()[i] = value;
+        } else {
+            Value value = assignedExpr.evaluate(funcMap, frame);
+            array.checkIndex(i, bracket.getLine(), bracket.getCol());
+            array.setElement(i, value);
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -0,0 +1,112 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.IntIntMap;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Read of an array element, array[index], or of a map entry, map[key].
+ * An array index is checked against the array's length and a map key
+ * must be present; an Integer element or value is read without a Value
+ * by evaluateInt.
+ */
+public class ArrayIndex extends Expression {
+    private final Expression array;
+    private final Expression index;
+
+    /**
+     * bracket is the opening '[', where an out-of-bounds index or missing
+     * key is reported.
+     */
+    public ArrayIndex(Token bracket, Expression array, Expression index) {
+        super(bracket);
+        this.array = array;
+        this.index = index;
+    }
+
+    public Expression getArray() {
+        return array;
+    }
+
+    public Expression getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return array + "[" + index + "]";
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type arrayType = array.analyzeAndGetType(funcMap, varAndParamMap);
+        if (arrayType.isMap()) {
+            Type keyType = index.analyzeAndGetType(funcMap, varAndParamMap);
+            if (keyType != arrayType.keyType()) {
+                throw new SemanticAnalysisException(
+                        "Map key must be " + arrayType.keyType() + ", found " + keyType,
+                        index.getLine(), index.getColumn());
+            }
+            return arrayType.elementType();
+        }
+        if (!arrayType.isArray()) {
+            throw new SemanticAnalysisException(
+                    "Cannot index an expression of type " + arrayType,
+                    getLine(), getColumn());
+        }
+        if (index.analyzeAndGetType(funcMap, varAndParamMap) != Type.INTEGER) {
+            throw new SemanticAnalysisException(
+                    "Array index must be Integer",
+                    index.getLine(), index.getColumn());
+        }
+        return arrayType.elementType();
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        Value arrayValue = array.evaluate(funcMap, frame);
+        if (arrayValue.isMap()) {
+            return Value.ofInteger(arrayValue.getEntry(index.evaluate(funcMap, frame), getLine(), getColumn()));
+        }
+        int i = index.evaluateInt(funcMap, frame);
+        arrayValue.checkIndex(i, getLine(), getColumn());
+        return arrayValue.getElement(i);
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        Value arrayValue = array.evaluate(funcMap, frame);
+        if (arrayValue.getType() == Type.INTEGER_MAP) {
+            IntIntMap map = arrayValue.asIntMap();
+            int key = index.evaluateInt(funcMap, frame);
+            int slot = map.find(key);
+            if (slot < 0) {
+                throw new ExecutionException("Key " + key + " is not in the map", getLine(), getColumn());
+            }
+            return map.valueAt(slot);
+        } else if (arrayValue.isMap()) {
+            return arrayValue.getEntry(index.evaluate(funcMap, frame), getLine(), getColumn());
+        }
+        int i = index.evaluateInt(funcMap, frame);
+        arrayValue.checkIndex(i, getLine(), getColumn());
+        return arrayValue.asIntArray()[i];
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        Value arrayValue = array.evaluate(funcMap, frame);
+        int i = index.evaluateInt(funcMap, frame);
+        arrayValue.checkIndex(i, getLine(), getColumn());
+        return arrayValue.asBooleanArray()[i];
+    }
+}
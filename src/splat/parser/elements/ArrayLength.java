@@ -0,0 +1,55 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * The length intrinsic, length(array) or length(string).
+ */
+public class ArrayLength extends Expression {
+    private final Expression array;
+
+    public ArrayLength(Token tok, Expression array) {
+        super(tok);
+        this.array = array;
+    }
+
+    public Expression getArray() {
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return "length(" + array + ")";
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type arrayType = array.analyzeAndGetType(funcMap, varAndParamMap);
+        if (!arrayType.isArray() && arrayType != Type.STRING) {
+            throw new SemanticAnalysisException(
+                    "length requires an array or a String, found " + arrayType,
+                    array.getLine(), array.getColumn());
+        }
+        return Type.INTEGER;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofInteger(evaluateInt(funcMap, frame));
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        return array.evaluate(funcMap, frame).length();
+    }
+}
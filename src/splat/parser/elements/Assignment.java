@@ -2,7 +2,9 @@ package splat.parser.elements;
 
 import java.util.Map;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -11,6 +13,7 @@ import splat.semanticanalyzer.Type;
 public class Assignment extends Statement {
     private final Token targetName;
     private final Expression assignedExpr;
+    private int slot = -1;
 
     public Assignment(Token variable, Expression expr) {
         super(variable);
@@ -42,13 +45,15 @@ public class Assignment extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ExecutionException {
-        String variableName = targetName.getLexeme();
-        ensureVariableIsDefined(varAndParamMap, variableName);
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        if (slot < 0) {
+            slot = resolveSlot(frame);
+        }
 
-        Value value = assignedExpr.evaluate(funcMap, varAndParamMap);
-        varAndParamMap.put(variableName, value);
+        Value value = assignedExpr.evaluate(funcMap, frame);
+        frame.set(slot, value);
+        return Completion.NORMAL;
     }
 
     private void ensureVariableExists(String variableName, Type existingType) throws SemanticAnalysisException {
@@ -59,11 +64,14 @@ public class Assignment extends Statement {
         }
     }
 
-    private void ensureVariableIsDefined(Map<String, Value> varAndParamMap, String variableName) throws ExecutionException {
-        if (!varAndParamMap.containsKey(variableName)) {
+    private int resolveSlot(Frame frame) throws ExecutionException {
+        String variableName = targetName.getLexeme();
+        int resolved = frame.slotOf(variableName);
+        if (resolved < 0) {
             throw new ExecutionException(
                     "Variable '" + variableName + "' is not defined",
                     targetName.getLine(), targetName.getCol());
         }
+        return resolved;
     }
 }
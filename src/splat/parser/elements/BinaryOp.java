@@ -1,67 +1,91 @@
 package splat.parser.elements;
 
-import java.util.Map;
-
 import splat.executor.ExecutionException;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.semanticanalyzer.Type;
 
-public class BinaryOp extends Expression {
+/**
+ * Base class of all binary operator nodes.  The parser builds one node class
+ * per operator through create(), so evaluation dispatches on the node's class
+ * instead of re-inspecting the operator lexeme on every evaluation.
+ */
+public abstract class BinaryOp extends Expression {
     private final Expression left;
     private final Token op;
     private final Expression right;
 
-    public BinaryOp(Expression left, Token op, Expression right) {
+    protected BinaryOp(Expression left, Token op, Expression right) {
         super(op);
         this.left = left;
         this.op = op;
         this.right = right;
     }
 
-    @Override
-    public String toString() {
-        return "(" + left + " " + op.getLexeme() + " " + right + ")";
-    }
-
-    @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
-                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type leftType = left.analyzeAndGetType(funcMap, varAndParamMap);
-        Type rightType = right.analyzeAndGetType(funcMap, varAndParamMap);
-        String opLexeme = op.getLexeme();
-
-        switch (opLexeme) {
+    public static BinaryOp create(Expression left, Token op, Expression right) {
+        switch (op.getLexeme()) {
             case "+":
+                return new AddNode(left, op, right);
             case "-":
+                return new SubtractNode(left, op, right);
             case "*":
+                return new MultiplyNode(left, op, right);
             case "/":
+                return new DivideNode(left, op, right);
             case "%":
-                ensureIntegerOperands(leftType, rightType);
-                return Type.INTEGER;
-            case "and":
-            case "or":
-                ensureBooleanOperands(leftType, rightType);
-                return Type.BOOLEAN;
+                return new ModuloNode(left, op, right);
             case "<":
+                return new LessThanNode(left, op, right);
             case "<=":
+                return new LessEqualNode(left, op, right);
             case ">":
+                return new GreaterThanNode(left, op, right);
             case ">=":
-                ensureIntegerOperands(leftType, rightType);
-                return Type.BOOLEAN;
+                return new GreaterEqualNode(left, op, right);
             case "==":
+                return new EqualNode(left, op, right);
             case "!=":
-                ensureComparableOperands(leftType, rightType);
-                return Type.BOOLEAN;
+                return new NotEqualNode(left, op, right);
+            case "and":
+                return new AndNode(left, op, right);
+            case "or":
+                return new OrNode(left, op, right);
             default:
-                throw new SemanticAnalysisException(
-                        "Unknown binary operator '" + opLexeme + "'",
-                        op.getLine(), op.getCol());
+                throw new IllegalArgumentException("Unknown binary operator '" + op.getLexeme() + "'");
         }
     }
 
-    private void ensureIntegerOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
+    /**
+     * Returns a node for the same operator over new operands, carrying over
+     * anything semantic analysis recorded on this node.  Returns this node
+     * when both operands are unchanged.
+     */
+    public BinaryOp withOperands(Expression newLeft, Expression newRight) {
+        if (newLeft == left && newRight == right) {
+            return this;
+        }
+        return create(newLeft, op, newRight);
+    }
+
+    public Expression getLeftExpr() {
+        return left;
+    }
+
+    public Token getOperator() {
+        return op;
+    }
+
+    public Expression getRightExpr() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + " " + op.getLexeme() + " " + right + ")";
+    }
+
+    protected void ensureIntegerOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
         if (leftType != Type.INTEGER || rightType != Type.INTEGER) {
             throw new SemanticAnalysisException(
                     "Operator '" + op.getLexeme() + "' requires integer operands",
@@ -69,7 +93,7 @@ public class BinaryOp extends Expression {
         }
     }
 
-    private void ensureBooleanOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
+    protected void ensureBooleanOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
         if (leftType != Type.BOOLEAN || rightType != Type.BOOLEAN) {
             throw new SemanticAnalysisException(
                     "Operator '" + op.getLexeme() + "' requires boolean operands",
@@ -77,106 +101,26 @@ public class BinaryOp extends Expression {
         }
     }
 
-    private void ensureComparableOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
+    protected void ensureComparableOperands(Type leftType, Type rightType) throws SemanticAnalysisException {
         if (leftType == Type.VOID || rightType == Type.VOID || leftType != rightType) {
             throw new SemanticAnalysisException(
                     "Equality operator requires operands of the same non-void type",
                     op.getLine(), op.getCol());
         }
-    }
-
-    @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap,
-                          Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value leftValue = left.evaluate(funcMap, varAndParamMap);
-        Value rightValue = right.evaluate(funcMap, varAndParamMap);
-        String opLexeme = op.getLexeme();
-
-        switch (opLexeme) {
-            case "+":
-            case "-":
-            case "*":
-            case "/":
-            case "%":
-                return evaluateArithmetic(opLexeme, leftValue, rightValue);
-            case "and":
-            case "or":
-                return evaluateBoolean(opLexeme, leftValue, rightValue);
-            case "<":
-            case "<=":
-            case ">":
-            case ">=":
-                return evaluateComparison(opLexeme, leftValue, rightValue);
-            case "==":
-            case "!=":
-                boolean valuesEqual = equalsValues(leftValue, rightValue);
-                return Value.ofBoolean(opLexeme.equals("==") ? valuesEqual : !valuesEqual);
-            default:
-                throw new ExecutionException("Unknown operator '" + opLexeme + "'", op.getLine(), op.getCol());
-        }
-    }
-
-    private Value evaluateArithmetic(String operator, Value leftValue, Value rightValue) throws ExecutionException {
-        int leftInt = leftValue.asInteger();
-        int rightInt = rightValue.asInteger();
-
-        switch (operator) {
-            case "+":
-                return Value.ofInteger(leftInt + rightInt);
-            case "-":
-                return Value.ofInteger(leftInt - rightInt);
-            case "*":
-                return Value.ofInteger(leftInt * rightInt);
-            case "/":
-                ensureNonZeroDivisor(rightInt);
-                return Value.ofInteger(leftInt / rightInt);
-            case "%":
-                ensureNonZeroDivisor(rightInt);
-                return Value.ofInteger(leftInt % rightInt);
-            default:
-                throw new ExecutionException("Unknown operator '" + operator + "'", op.getLine(), op.getCol());
-        }
-    }
-
-    private Value evaluateBoolean(String operator, Value leftValue, Value rightValue) {
-        boolean leftBool = leftValue.asBoolean();
-        boolean rightBool = rightValue.asBoolean();
-
-        switch (operator) {
-            case "and":
-                return Value.ofBoolean(leftBool && rightBool);
-            case "or":
-                return Value.ofBoolean(leftBool || rightBool);
-            default:
-                throw new IllegalArgumentException("Unexpected boolean operator: " + operator);
-        }
-    }
-
-    private Value evaluateComparison(String operator, Value leftValue, Value rightValue) {
-        int leftInt = leftValue.asInteger();
-        int rightInt = rightValue.asInteger();
-
-        switch (operator) {
-            case "<":
-                return Value.ofBoolean(leftInt < rightInt);
-            case "<=":
-                return Value.ofBoolean(leftInt <= rightInt);
-            case ">":
-                return Value.ofBoolean(leftInt > rightInt);
-            case ">=":
-                return Value.ofBoolean(leftInt >= rightInt);
-            default:
-                throw new IllegalArgumentException("Unexpected comparison operator: " + operator);
+        if (leftType.isArray() || leftType.isMap()) {
+            throw new SemanticAnalysisException(
+                    (leftType.isArray() ? "Arrays" : "Maps") + " cannot be compared with " + op.getLexeme(),
+                    op.getLine(), op.getCol());
         }
     }
 
-    private void ensureNonZeroDivisor(int divisor) throws ExecutionException {
+    protected void ensureNonZeroDivisor(int divisor) throws ExecutionException {
         if (divisor == 0) {
             throw new ExecutionException("Division by zero", op.getLine(), op.getCol());
         }
     }
 
-    private boolean equalsValues(Value leftValue, Value rightValue) {
+    protected static boolean equalsValues(Value leftValue, Value rightValue) {
         if (leftValue.getType() != rightValue.getType()) {
             return false;
         }
@@ -186,7 +130,9 @@ public class BinaryOp extends Expression {
             case BOOLEAN:
                 return leftValue.asBoolean() == rightValue.asBoolean();
             case STRING:
-                return leftValue.asString().equals(rightValue.asString());
+                // strings of different lengths differ without flattening a rope
+                return leftValue.stringLength() == rightValue.stringLength()
+                        && leftValue.asString().equals(rightValue.asString());
             default:
                 return false;
         }
@@ -4,7 +4,8 @@ import java.util.List;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -31,10 +32,14 @@ public class Block extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
         for (Statement stmt : statements) {
-            stmt.execute(funcMap, varAndParamMap);
+            Completion completion = stmt.execute(funcMap, frame);
+            if (completion.isReturn()) {
+                return completion;
+            }
         }
+        return Completion.NORMAL;
     }
 }
@@ -0,0 +1,193 @@
+package splat.parser.elements;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.executor.CaseTable;
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * The statement
+ *
+ *     case expr of
+ *         1, 2: ...
+ *         -7: ...
+ *     else
+ *         ...
+ *     end case;
+ *
+ * over an Integer or String expression, evaluated once.  Labels are
+ * literals of the expression's type, each in at most one arm; the else
+ * part runs when no label matches and may be left out.  Every engine
+ * dispatches through the CaseTable built from the labels, so a case costs
+ * one lookup however many arms it has.
+ */
+public class CaseStmt extends Statement {
+
+    /**
+     * One arm: its labels and the statements they select.
+     */
+    public static final class Arm {
+
+        private final List<Literal> labels;
+        private final List<Statement> body;
+
+        public Arm(List<Literal> labels, List<Statement> body) {
+            this.labels = labels;
+            this.body = body;
+        }
+
+        public List<Literal> getLabels() {
+            return labels;
+        }
+
+        public List<Statement> getBody() {
+            return body;
+        }
+    }
+
+    private final Expression scrutinee;
+    private final List<Arm> arms;
+    private final List<Statement> elseStmts;
+
+    private volatile CaseTable table;
+
+    /**
+     * arms must not be empty.
+     */
+    public CaseStmt(Token caseToken, Expression scrutinee, List<Arm> arms, List<Statement> elseStmts) {
+        super(caseToken);
+        this.scrutinee = scrutinee;
+        this.arms = arms;
+        this.elseStmts = elseStmts;
+    }
+
+    public Expression getScrutinee() {
+        return scrutinee;
+    }
+
+    public List<Arm> getArms() {
+        return arms;
+    }
+
+    public List<Statement> getElseStmts() {
+        return elseStmts;
+    }
+
+    /**
+     * The statements that run for the given arm index, where the arm count
+     * stands for the else part.
+     */
+    public List<Statement> getArmStatements(int arm) {
+        return arm < arms.size() ? arms.get(arm).getBody() : elseStmts;
+    }
+
+    /**
+     * The labels' dispatch table, built on first use.  Only valid once the
+     * statement has passed semantic analysis.
+     */
+    public CaseTable getTable() {
+        CaseTable built = table;
+        if (built == null) {
+            built = buildTable();
+            table = built;
+        }
+        return built;
+    }
+
+    @Override
+    public String toString() {
+        return "case " + scrutinee;
+    }
+
+    @Override
+    public void analyze(Map<String, FunctionDecl> funcMap,
+                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type type = scrutinee.analyzeAndGetType(funcMap, varAndParamMap);
+        if (type != Type.INTEGER && type != Type.STRING) {
+            throw new SemanticAnalysisException(
+                    "Case expression must be Integer or String",
+                    scrutinee.getLine(), scrutinee.getColumn());
+        }
+        Set<Value> seen = new HashSet<>();
+        for (Arm arm : arms) {
+            for (Literal label : arm.getLabels()) {
+                if (label.analyzeAndGetType(funcMap, varAndParamMap) != type) {
+                    throw new SemanticAnalysisException(
+                            "Case label " + label + " must be " + type.getDisplayName(),
+                            label.getLine(), label.getColumn());
+                }
+                if (label.getConstant() == null) {
+                    throw new SemanticAnalysisException(
+                            "Unknown literal '" + label + "'",
+                            label.getLine(), label.getColumn());
+                }
+                if (!seen.add(label.getConstant())) {
+                    throw new SemanticAnalysisException(
+                            "Duplicate case label " + label,
+                            label.getLine(), label.getColumn());
+                }
+            }
+            for (Statement stmt : arm.getBody()) {
+                stmt.analyze(funcMap, varAndParamMap);
+            }
+        }
+        for (Statement stmt : elseStmts) {
+            stmt.analyze(funcMap, varAndParamMap);
+        }
+    }
+
+    @Override
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        CaseTable dispatch = getTable();
+        int arm = hasIntegerLabels()
+                ? dispatch.armOf(scrutinee.evaluateInt(funcMap, frame))
+                : dispatch.armOf(scrutinee.evaluate(funcMap, frame).asString());
+        for (Statement stmt : getArmStatements(arm)) {
+            Completion completion = stmt.execute(funcMap, frame);
+            if (completion.isReturn()) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    private boolean hasIntegerLabels() {
+        return arms.get(0).getLabels().get(0).isIntegerLiteral();
+    }
+
+    private CaseTable buildTable() {
+        int count = 0;
+        for (Arm arm : arms) {
+            count += arm.getLabels().size();
+        }
+        int[] armOf = new int[count];
+        int[] intLabels = new int[count];
+        String[] stringLabels = new String[count];
+        int n = 0;
+        for (int i = 0; i < arms.size(); i++) {
+            for (Literal label : arms.get(i).getLabels()) {
+                Value constant = label.getConstant();
+                armOf[n] = i;
+                if (constant.isInteger()) {
+                    intLabels[n] = constant.asInteger();
+                } else {
+                    stringLabels[n] = constant.asString();
+                }
+                n++;
+            }
+        }
+        return hasIntegerLabels()
+                ? CaseTable.ofIntegers(intLabels, armOf, arms.size())
+                : CaseTable.ofStrings(stringLabels, armOf, arms.size());
+    }
+}
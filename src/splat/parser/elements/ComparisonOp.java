@@ -0,0 +1,39 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Ordering operators on integers: <, <=, > and >=.
+ */
+public abstract class ComparisonOp extends BinaryOp {
+
+    protected ComparisonOp(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type leftType = getLeftExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        Type rightType = getRightExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        ensureIntegerOperands(leftType, rightType);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofBoolean(evaluateBoolean(funcMap, frame));
+    }
+
+    @Override
+    public abstract boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                            Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,189 @@
+package splat.parser.elements;
+
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * A WhileLoop recognized by the optimizer as counting an Integer variable
+ * towards a bound that does not change in the loop:
+ *
+ *     while (i < n) do ... i := (i + step); end while;
+ *
+ * The tree walker runs it with the counter in a Java int: the bound is
+ * evaluated once, and the body reads the counter (and every derived
+ * variable standing for a product (i * factor)) through
+ * InductionVariableRefs, which see the primitive shadow of the slot.
+ * Derived variables are advanced by step * factor instead of multiplying
+ * again.  A loop with an overflow guard, from a ForLoop, ends instead of
+ * stepping the counter out of the Integer range.  The counter's slot gets
+ * its Value back when the loop ends.
+ *
+ * The other engines run the equivalent statements instead: the original
+ * loop with the products replaced by the derived variables, which are
+ * initialized before it and advanced at the end of each iteration.
+ */
+public class CountedLoop extends Statement {
+
+    private static final int LT = 0;
+    private static final int LE = 1;
+    private static final int GT = 2;
+    private static final int GE = 3;
+    private static final int NE = 4;
+
+    private final Token counter;
+    private final String comparison;
+    private final int comparisonKind;
+    private final Expression bound;
+    private final int step;
+    private final boolean guarded;
+    private final int last;
+    private final Token[] derived;
+    private final int[] factors;
+    private final List<Statement> body;
+    private final List<Statement> equivalent;
+
+    private int counterSlot = -1;
+    private int[] derivedSlots;
+
+    public CountedLoop(Token whileToken, Token counter, String comparison, Expression bound,
+                       int step, boolean guarded, Token[] derived, int[] factors, List<Statement> body,
+                       List<Statement> equivalent) {
+        super(whileToken);
+        this.counter = counter;
+        this.comparison = comparison;
+        this.comparisonKind = comparisonKind(comparison);
+        this.bound = bound;
+        this.step = step;
+        this.guarded = guarded;
+        this.last = ForLoop.lastSteppable(step);
+        this.derived = derived;
+        this.factors = factors;
+        this.body = body;
+        this.equivalent = equivalent;
+    }
+
+    public Token getCounter() {
+        return counter;
+    }
+
+    public List<Statement> getBody() {
+        return body;
+    }
+
+    /**
+     * Plain statements with the same effect as this loop, for engines and
+     * passes that do not handle CountedLoop themselves.
+     */
+    public List<Statement> getEquivalentStatements() {
+        return equivalent;
+    }
+
+    @Override
+    public String toString() {
+        return "for " + counter.getLexeme() + " " + comparison + " " + bound + " step " + step;
+    }
+
+    @Override
+    public void analyze(Map<String, FunctionDecl> funcMap,
+                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        for (Statement stmt : equivalent) {
+            stmt.analyze(funcMap, varAndParamMap);
+        }
+    }
+
+    @Override
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        if (counterSlot < 0) {
+            resolveSlots(frame);
+        }
+
+        int i = frame.get(counterSlot).asInteger();
+        int limit = bound.evaluateInt(funcMap, frame);
+        for (int k = 0; k < derivedSlots.length; k++) {
+            frame.setInt(derivedSlots[k], i * factors[k]);
+        }
+
+        try {
+            while (test(i, limit)) {
+                frame.setInt(counterSlot, i);
+                for (Statement stmt : body) {
+                    Completion completion = stmt.execute(funcMap, frame);
+                    if (completion.isReturn()) {
+                        return completion;
+                    }
+                }
+                if (guarded && (step > 0 ? i > last : i < last)) {
+                    break;
+                }
+                i += step;
+                for (int k = 0; k < derivedSlots.length; k++) {
+                    frame.setInt(derivedSlots[k], frame.getInt(derivedSlots[k]) + step * factors[k]);
+                }
+            }
+            return Completion.NORMAL;
+        } finally {
+            frame.set(counterSlot, Value.ofInteger(i));
+            for (int k = 0; k < derivedSlots.length; k++) {
+                frame.set(derivedSlots[k], Value.ofInteger(frame.getInt(derivedSlots[k])));
+            }
+        }
+    }
+
+    private static int comparisonKind(String comparison) {
+        switch (comparison) {
+            case "<":
+                return LT;
+            case "<=":
+                return LE;
+            case ">":
+                return GT;
+            case ">=":
+                return GE;
+            case "!=":
+                return NE;
+            default:
+                throw new IllegalArgumentException("Not a counted-loop comparison: " + comparison);
+        }
+    }
+
+    private boolean test(int i, int limit) {
+        switch (comparisonKind) {
+            case LT:
+                return i < limit;
+            case LE:
+                return i <= limit;
+            case GT:
+                return i > limit;
+            case GE:
+                return i >= limit;
+            default:
+                return i != limit;
+        }
+    }
+
+    private void resolveSlots(Frame frame) throws ExecutionException {
+        int[] slots = new int[derived.length];
+        for (int k = 0; k < derived.length; k++) {
+            slots[k] = resolveSlot(frame, derived[k]);
+        }
+        derivedSlots = slots;
+        counterSlot = resolveSlot(frame, counter);
+    }
+
+    private int resolveSlot(Frame frame, Token name) throws ExecutionException {
+        int slot = frame.slotOf(name.getLexeme());
+        if (slot < 0) {
+            throw new ExecutionException("Variable '" + name.getLexeme() + "' is not defined", this);
+        }
+        return slot;
+    }
+}
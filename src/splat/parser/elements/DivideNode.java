@@ -0,0 +1,28 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.lexer.Token;
+
+/**
+ * Integer division, (a / b); raises "Division by zero" at the operator.
+ */
+public class DivideNode extends ArithmeticOp {
+
+    public DivideNode(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        int dividend = getLeftExpr().evaluateInt(funcMap, frame);
+        int divisor = getRightExpr().evaluateInt(funcMap, frame);
+        if (!isDivisorNonZero()) {
+            ensureNonZeroDivisor(divisor);
+        }
+        return dividend / divisor;
+    }
+}
@@ -0,0 +1,23 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.lexer.Token;
+
+/**
+ * Equality of two values of the same type, (a == b).
+ */
+public class EqualNode extends EqualityOp {
+
+    public EqualNode(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        return operandsEqual(funcMap, frame);
+    }
+}
@@ -0,0 +1,67 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * == and != on two operands of the same type.  The operand type recorded
+ * during analysis lets integers and booleans be compared as primitives.
+ */
+public abstract class EqualityOp extends BinaryOp {
+
+    private Type operandType;
+
+    protected EqualityOp(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    public Type getOperandType() {
+        return operandType;
+    }
+
+    @Override
+    public BinaryOp withOperands(Expression newLeft, Expression newRight) {
+        BinaryOp rebuilt = super.withOperands(newLeft, newRight);
+        if (rebuilt != this) {
+            ((EqualityOp) rebuilt).operandType = operandType;
+        }
+        return rebuilt;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type leftType = getLeftExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        Type rightType = getRightExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        ensureComparableOperands(leftType, rightType);
+        operandType = leftType;
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofBoolean(evaluateBoolean(funcMap, frame));
+    }
+
+    protected boolean operandsEqual(Map<String, FunctionDecl> funcMap,
+                                    Frame frame) throws ExecutionException {
+        if (operandType == Type.INTEGER) {
+            int leftInt = getLeftExpr().evaluateInt(funcMap, frame);
+            return leftInt == getRightExpr().evaluateInt(funcMap, frame);
+        }
+        if (operandType == Type.BOOLEAN) {
+            boolean leftBool = getLeftExpr().evaluateBoolean(funcMap, frame);
+            return leftBool == getRightExpr().evaluateBoolean(funcMap, frame);
+        }
+        Value leftValue = getLeftExpr().evaluate(funcMap, frame);
+        Value rightValue = getRightExpr().evaluate(funcMap, frame);
+        return equalsValues(leftValue, rightValue);
+    }
+}
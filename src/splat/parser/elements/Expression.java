@@ -3,6 +3,7 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -25,14 +26,41 @@ public abstract class Expression extends ASTElement {
      * recursively call the same method on all sub-expressions.
      *
      * funcMap is needed in case this expression or a sub-expression contains
-     * a function call -- we will have to evaluate the individual arguments and
-     * create a new varAndParamMap to bind the function params to the new values
-     * and then execute the function body.  More on this later...
+     * a function call -- we will have to evaluate the individual arguments onto
+     * the frame's ValueStack, enter a new frame that binds them to the function
+     * params and then execute the function body.
      *
-     * varAndParamMap is needed in case this expression or a sub-expression
-     * contains variables or parameters -- we use this map to keep track of the
-     * values of the items that are currently in scope
+     * frame is needed in case this expression or a sub-expression contains
+     * variables or parameters -- it holds the values of the items that are
+     * currently in scope, addressed by the slots of its FrameLayout
      */
     public abstract Value evaluate(Map<String, FunctionDecl> funcMap,
-                                   Map<String, Value> varAndParamMap) throws ExecutionException;
+                                   Frame frame) throws ExecutionException;
+
+    /**
+     * Primitive fast path for expressions already known to be Integer.
+     * Subclasses that compute ints directly override this so that nested
+     * arithmetic never wraps intermediate results in Value objects.
+     */
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        Value value = evaluate(funcMap, frame);
+        if (value == null || !value.isInteger()) {
+            throw new ExecutionException("Expected an Integer value", getLine(), getColumn());
+        }
+        return value.asInteger();
+    }
+
+    /**
+     * Primitive fast path for Boolean expressions, used by conditions and
+     * logical operators.
+     */
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        Value value = evaluate(funcMap, frame);
+        if (value == null || !value.isBoolean()) {
+            throw new ExecutionException("Expected a Boolean value", getLine(), getColumn());
+        }
+        return value.asBoolean();
+    }
 }
@@ -2,7 +2,9 @@ package splat.parser.elements;
 
 import java.util.Map;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.semanticanalyzer.Type;
@@ -27,9 +29,10 @@ public class ExpressionStmt extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ExecutionException {
-        expr.evaluate(funcMap, varAndParamMap);
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        expr.evaluate(funcMap, frame);
+        return Completion.NORMAL;
     }
 
     private void enforceNonVoid(Type type) throws SemanticAnalysisException {
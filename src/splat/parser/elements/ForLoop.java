@@ -0,0 +1,273 @@
+package splat.parser.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * The counted loop
+ *
+ *     for i := from to limit step s do ... end for;
+ *
+ * The counter i must be an Integer variable that the body does not assign.
+ * from and limit are evaluated once, in that order, before i is set; the
+ * step is an Integer constant other than zero, 1 if omitted.  The loop runs
+ * while i <= limit for a positive step, or i >= limit for a negative one,
+ * and leaves i at the first value past the limit.  A limit at the end of
+ * the Integer range is no exception: when the next value would not fit in
+ * an Integer, the loop ends without stepping, and i keeps its last value.
+ *
+ * The tree walker runs it with the counter in a Java int.  The other
+ * engines and the optimizer use the equivalent statements instead:
+ *
+ *     start := from; end := limit; i := start;
+ *     while (i <= end) do
+ *         ...
+ *         if (i > last) then end := last; else i := (i + s); end if;
+ *     end while;
+ *
+ * where start and end are hidden locals the parser declares for the loop,
+ * and last, MAX_VALUE - s, is the last value i can step from (for a
+ * negative step, MIN_VALUE - s, with >= and < in place of <= and >).
+ */
+public class ForLoop extends Statement {
+
+    private final Token counter;
+    private final Expression from;
+    private final Expression limit;
+    private final Expression stepExpr;
+    private final Integer step;
+    private final List<Statement> body;
+    private final Token startVar;
+    private final Token limitVar;
+    private final List<Statement> equivalent;
+
+    private int counterSlot = -1;
+
+    /**
+     * stepExpr is null when the loop has no step clause; startVar and
+     * limitVar name the hidden Integer locals of the equivalent statements.
+     */
+    public ForLoop(Token forToken, Token counter, Expression from, Expression limit, Expression stepExpr,
+                   List<Statement> body, Token startVar, Token limitVar) {
+        super(forToken);
+        this.counter = counter;
+        this.from = from;
+        this.limit = limit;
+        this.stepExpr = stepExpr;
+        this.step = stepExpr == null ? Integer.valueOf(1) : constantStep(stepExpr);
+        this.body = body;
+        this.startVar = startVar;
+        this.limitVar = limitVar;
+        this.equivalent = equivalentStatements(startVar, limitVar);
+    }
+
+    /**
+     * This loop with other bounds and body, keeping its counter, step and
+     * hidden locals.
+     */
+    public ForLoop withParts(Expression from, Expression limit, List<Statement> body) {
+        return new ForLoop(getStartToken(), counter, from, limit, stepExpr, body, startVar, limitVar);
+    }
+
+    public Token getCounter() {
+        return counter;
+    }
+
+    public Expression getFrom() {
+        return from;
+    }
+
+    public Expression getLimit() {
+        return limit;
+    }
+
+    public List<Statement> getBody() {
+        return body;
+    }
+
+    /**
+     * Plain statements with the same effect as this loop, for engines and
+     * passes that do not handle ForLoop themselves.
+     */
+    public List<Statement> getEquivalentStatements() {
+        return equivalent;
+    }
+
+    @Override
+    public String toString() {
+        return "for " + counter.getLexeme() + " := " + from + " to " + limit
+                + (stepExpr != null ? " step " + stepExpr : "");
+    }
+
+    @Override
+    public void analyze(Map<String, FunctionDecl> funcMap,
+                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type counterType = varAndParamMap.get(counter.getLexeme());
+        if (counterType == null) {
+            throw new SemanticAnalysisException(
+                    "Variable '" + counter.getLexeme() + "' is not defined",
+                    counter.getLine(), counter.getCol());
+        }
+        if (counterType != Type.INTEGER) {
+            throw new SemanticAnalysisException(
+                    "For loop variable '" + counter.getLexeme() + "' must be Integer",
+                    counter.getLine(), counter.getCol());
+        }
+        verifyIntegerBound(from, funcMap, varAndParamMap);
+        verifyIntegerBound(limit, funcMap, varAndParamMap);
+        if (step == null) {
+            throw new SemanticAnalysisException(
+                    "For loop step must be an Integer constant",
+                    stepExpr.getLine(), stepExpr.getColumn());
+        }
+        if (step == 0) {
+            throw new SemanticAnalysisException(
+                    "For loop step cannot be zero",
+                    stepExpr.getLine(), stepExpr.getColumn());
+        }
+        Assignment assignment = findAssignment(body, counter.getLexeme());
+        if (assignment != null) {
+            throw new SemanticAnalysisException(
+                    "Cannot assign to loop variable '" + counter.getLexeme() + "' inside its for loop",
+                    assignment.getLine(), assignment.getColumn());
+        }
+        for (Statement stmt : equivalent) {
+            stmt.analyze(funcMap, varAndParamMap);
+        }
+    }
+
+    @Override
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        if (counterSlot < 0) {
+            counterSlot = frame.slotOf(counter.getLexeme());
+            if (counterSlot < 0) {
+                throw new ExecutionException("Variable '" + counter.getLexeme() + "' is not defined", this);
+            }
+        }
+
+        int i = from.evaluateInt(funcMap, frame);
+        int end = limit.evaluateInt(funcMap, frame);
+        int s = step;
+        int last = lastSteppable(s);
+        try {
+            while (s > 0 ? i <= end : i >= end) {
+                frame.set(counterSlot, Value.ofInteger(i));
+                for (Statement stmt : body) {
+                    Completion completion = stmt.execute(funcMap, frame);
+                    if (completion.isReturn()) {
+                        return completion;
+                    }
+                }
+                if (s > 0 ? i > last : i < last) {
+                    break;
+                }
+                i += s;
+            }
+            return Completion.NORMAL;
+        } finally {
+            frame.set(counterSlot, Value.ofInteger(i));
+        }
+    }
+
+    /**
+     * The last value a counter stepping by s can take a step from without
+     * leaving the Integer range.
+     */
+    public static int lastSteppable(int s) {
+        return s > 0 ? Integer.MAX_VALUE - s : Integer.MIN_VALUE - s;
+    }
+
+    private static void verifyIntegerBound(Expression bound, Map<String, FunctionDecl> funcMap,
+                                           Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        if (bound.analyzeAndGetType(funcMap, varAndParamMap) != Type.INTEGER) {
+            throw new SemanticAnalysisException(
+                    "For loop bounds must be Integer",
+                    bound.getLine(), bound.getColumn());
+        }
+    }
+
+    /**
+     * The value of an integer literal, possibly negated, or null for any
+     * other expression.
+     */
+    private static Integer constantStep(Expression expr) {
+        boolean negated = false;
+        if (expr instanceof UnaryOp && "-".equals(((UnaryOp) expr).getOperator().getLexeme())) {
+            negated = true;
+            expr = ((UnaryOp) expr).getExpr();
+        }
+        if (!(expr instanceof Literal)) {
+            return null;
+        }
+        Value constant = ((Literal) expr).getConstant();
+        if (constant == null || !constant.isInteger()) {
+            return null;
+        }
+        return negated ? -constant.asInteger() : constant.asInteger();
+    }
+
+    private static Assignment findAssignment(List<Statement> stmts, String name) {
+        for (Statement stmt : stmts) {
+            Assignment found = null;
+            if (stmt instanceof Assignment) {
+                if (((Assignment) stmt).getVariable().getLexeme().equals(name)) {
+                    return (Assignment) stmt;
+                }
+            } else if (stmt instanceof IfThenElse) {
+                found = findAssignment(((IfThenElse) stmt).getThenStmts(), name);
+                if (found == null) {
+                    found = findAssignment(((IfThenElse) stmt).getElseStmts(), name);
+                }
+            } else if (stmt instanceof WhileLoop) {
+                found = findAssignment(((WhileLoop) stmt).getBody(), name);
+            } else if (stmt instanceof Block) {
+                found = findAssignment(((Block) stmt).getStatements(), name);
+            } else if (stmt instanceof ForLoop) {
+                found = findAssignment(((ForLoop) stmt).getEquivalentStatements(), name);
+            } else if (stmt instanceof CaseStmt) {
+                found = findAssignment(((CaseStmt) stmt).getElseStmts(), name);
+                for (CaseStmt.Arm arm : ((CaseStmt) stmt).getArms()) {
+                    if (found == null) {
+                        found = findAssignment(arm.getBody(), name);
+                    }
+                }
+            }
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private List<Statement> equivalentStatements(Token startVar, Token limitVar) {
+        Token at = getStartToken();
+        int s = step != null ? step : 1;
+        Literal last = Literal.ofValue(at, Value.ofInteger(lastSteppable(s)));
+        Statement increment = new Assignment(counter, BinaryOp.create(new VariableRef(counter),
+                new Token("+", at.getLine(), at.getCol()), Literal.ofValue(at, Value.ofInteger(s))));
+        // setting end to last fails the loop test, since i is past last
+        Expression overflows = BinaryOp.create(new VariableRef(counter),
+                new Token(s > 0 ? ">" : "<", at.getLine(), at.getCol()), last);
+        List<Statement> loopBody = new ArrayList<>(body);
+        loopBody.add(new IfThenElse(at, overflows, List.of(new Assignment(limitVar, last)),
+                List.of(increment)));
+        Expression condition = BinaryOp.create(new VariableRef(counter),
+                new Token(s > 0 ? "<=" : ">=", at.getLine(), at.getCol()), new VariableRef(limitVar));
+        List<Statement> stmts = new ArrayList<>();
+        stmts.add(new Assignment(startVar, from));
+        stmts.add(new Assignment(limitVar, limit));
+        stmts.add(new Assignment(counter, new VariableRef(startVar)));
+        stmts.add(new WhileLoop(at, condition, loopBody));
+        return stmts;
+    }
+}
@@ -1,21 +1,26 @@
 package splat.parser.elements;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.FrameLayout;
+import splat.executor.Intrinsic;
+import splat.executor.MemoCache;
+import splat.executor.Completion;
 import splat.executor.Value;
+import splat.executor.ValueStack;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.semanticanalyzer.Type;
-import splat.parser.elements.Statement;
 
 public class FunctionCall extends Expression {
     private final Token name;
     private final List<Expression> args;
+    private FunctionDecl resolvedDecl;
+    private Intrinsic resolvedIntrinsic;
+    private Expression operation;
 
     public FunctionCall(Token name, List<Expression> args) {
         super(name);
@@ -23,6 +28,7 @@ public class FunctionCall extends Expression {
         this.args = args;
     }
 
+    public Token getName() { return name; }
     public List<Expression> getArgs() { return args; }
 
     public Token getStartToken() {
@@ -49,35 +55,149 @@ public class FunctionCall extends Expression {
 
     public Type analyzeCall(Map<String, FunctionDecl> funcMap,
                             Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        if (!funcMap.containsKey(name.getLexeme())) {
+            operation = arrayOrMapOperation();
+            if (operation != null) {
+                return operation.analyzeAndGetType(funcMap, varAndParamMap);
+            }
+        }
+        Intrinsic intrinsic = funcMap.containsKey(name.getLexeme()) ? null : Intrinsic.lookup(name.getLexeme());
+        if (intrinsic != null) {
+            List<Type> paramTypes = intrinsic.getParamTypes();
+            verifyArgumentCount(paramTypes.size());
+            for (int i = 0; i < paramTypes.size(); i++) {
+                validateArgumentType(funcMap, varAndParamMap, i, paramTypes.get(i));
+            }
+            return intrinsic.getReturnType();
+        }
+
         FunctionDecl decl = requireFunctionDeclaration(funcMap);
-        verifyArgumentCount(decl);
+        verifyArgumentCount(decl.getParams().size());
         validateArgumentTypes(funcMap, varAndParamMap, decl);
 
         Token returnToken = decl.getReturnType();
         return Type.fromToken(returnToken);
     }
 
+    /**
+     * The ArrayLength, MapContains or MapSize node that analyzeCall found
+     * this call to length, contains or size to stand for, or null.  Like
+     * the other intrinsics, these names call a function of the program
+     * instead if it declares one.  CallResolution puts the node in the
+     * call's place right after analysis.
+     */
+    public Expression getOperation() {
+        return operation;
+    }
+
+    /**
+     * The intrinsic this call runs, or null if it calls a function of the
+     * program, which takes precedence.
+     */
+    public Intrinsic intrinsic(Map<String, FunctionDecl> funcMap) {
+        if (resolvedIntrinsic == null && resolvedDecl == null && !funcMap.containsKey(name.getLexeme())) {
+            resolvedIntrinsic = Intrinsic.lookup(name.getLexeme());
+        }
+        return resolvedIntrinsic;
+    }
+
     @Override
     public Value evaluate(Map<String, FunctionDecl> funcMap,
-                          Map<String, Value> varAndParamMap) throws ExecutionException {
+                          Frame frame) throws ExecutionException {
+        Intrinsic intrinsic = intrinsic(funcMap);
+        if (intrinsic != null) {
+            return intrinsic.apply(evaluateArgs(funcMap, frame), name.getLine(), name.getCol());
+        }
         FunctionDecl declaration = fetchFunctionDeclaration(funcMap);
-        Map<String, Value> callContext = prepareCallContext(declaration, funcMap, varAndParamMap);
+        if (declaration instanceof HostFunctionDecl) {
+            return ((HostFunctionDecl) declaration).getHost()
+                    .apply(evaluateArgs(funcMap, frame), name.getLine(), name.getCol());
+        }
+        FrameLayout layout = FrameLayout.of(declaration);
+        Frame callFrame = prepareCallFrame(layout, funcMap, frame);
+        return run(declaration, layout, funcMap, callFrame);
+    }
 
-        List<Statement> body = declaration.getBody();
+    /**
+     * Calls the function with argument values that were computed elsewhere,
+     * entering its frame on the given stack.  This lets the call run on a
+     * thread other than the one that evaluated the arguments.
+     */
+    public Value invoke(Value[] argValues, Map<String, FunctionDecl> funcMap,
+                        ValueStack stack) throws ExecutionException {
+        Intrinsic intrinsic = intrinsic(funcMap);
+        if (intrinsic != null) {
+            return intrinsic.apply(argValues, name.getLine(), name.getCol());
+        }
+        FunctionDecl declaration = fetchFunctionDeclaration(funcMap);
+        if (declaration instanceof HostFunctionDecl) {
+            return ((HostFunctionDecl) declaration).getHost().apply(argValues, name.getLine(), name.getCol());
+        }
+        FrameLayout layout = FrameLayout.of(declaration);
+        int argBase = stack.top();
+        for (Value argValue : argValues) {
+            stack.push(argValue);
+        }
+        return run(declaration, layout, funcMap, stack.enter(layout, argBase));
+    }
+
+    /**
+     * Runs the body in the entered frame.  Calls to a memoized function
+     * consult its cache first; failed calls are not cached, so they fail
+     * again, at the same place, the next time.
+     */
+    private Value run(FunctionDecl declaration, FrameLayout layout,
+                      Map<String, FunctionDecl> funcMap,
+                      Frame callFrame) throws ExecutionException {
+        MemoCache memo = declaration.getMemoCache();
+        Value[] memoKey = null;
         try {
+            if (memo != null) {
+                memoKey = new Value[layout.getParamCount()];
+                for (int i = 0; i < memoKey.length; i++) {
+                    memoKey[i] = callFrame.get(i);
+                }
+                Value cached = memo.lookup(memoKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            List<Statement> body = declaration.getBody();
             if (body != null) {
                 for (Statement stmt : body) {
-                    stmt.execute(funcMap, callContext);
+                    Completion completion = stmt.execute(funcMap, callFrame);
+                    if (completion.isReturn()) {
+                        if (memo != null) {
+                            memo.store(memoKey, completion.getReturnVal());
+                        }
+                        return completion.getReturnVal();
+                    }
                 }
             }
-        } catch (ReturnFromCall ret) {
-            return ret.getReturnVal();
+        } finally {
+            callFrame.getStack().leave(callFrame);
         }
 
-        ensureVoidReturn(declaration);
+        ensureVoidReturn(layout);
         return null;
     }
 
+    private Expression arrayOrMapOperation() throws SemanticAnalysisException {
+        switch (name.getLexeme()) {
+            case "length":
+                verifyArgumentCount(1);
+                return new ArrayLength(name, args.get(0));
+            case "contains":
+                verifyArgumentCount(2);
+                return new MapContains(name, args.get(0), args.get(1));
+            case "size":
+                verifyArgumentCount(1);
+                return new MapSize(name, args.get(0));
+            default:
+                return null;
+        }
+    }
+
     private FunctionDecl requireFunctionDeclaration(Map<String, FunctionDecl> funcMap) throws SemanticAnalysisException {
         String funcName = name.getLexeme();
         FunctionDecl decl = funcMap.get(funcName);
@@ -89,11 +209,10 @@ public class FunctionCall extends Expression {
         return decl;
     }
 
-    private void verifyArgumentCount(FunctionDecl decl) throws SemanticAnalysisException {
-        List<VariableDecl> params = decl.getParams();
-        if (params.size() != args.size()) {
+    private void verifyArgumentCount(int expected) throws SemanticAnalysisException {
+        if (expected != args.size()) {
             throw new SemanticAnalysisException(
-                    "Function '" + name.getLexeme() + "' expects " + params.size()
+                    "Function '" + name.getLexeme() + "' expects " + expected
                             + " arguments but got " + args.size(),
                     name.getLine(), name.getCol());
         }
@@ -111,63 +230,62 @@ public class FunctionCall extends Expression {
                         "Parameter '" + paramDecl.getName().getLexeme() + "' cannot be void",
                         paramDecl.getLine(), paramDecl.getColumn());
             }
+            validateArgumentType(funcMap, varAndParamMap, i, expected);
+        }
+    }
 
-            Type actual = args.get(i).analyzeAndGetType(funcMap, varAndParamMap);
-            if (expected != actual) {
-                throw new SemanticAnalysisException(
-                        "Argument " + (i + 1) + " for function '" + name.getLexeme()
-                                + "' expected type " + expected + " but found " + actual,
-                        args.get(i).getLine(), args.get(i).getColumn());
-            }
+    private void validateArgumentType(Map<String, FunctionDecl> funcMap,
+                                      Map<String, Type> varAndParamMap,
+                                      int i, Type expected) throws SemanticAnalysisException {
+        Type actual = args.get(i).analyzeAndGetType(funcMap, varAndParamMap);
+        if (expected != actual) {
+            throw new SemanticAnalysisException(
+                    "Argument " + (i + 1) + " for function '" + name.getLexeme()
+                            + "' expected type " + expected + " but found " + actual,
+                    args.get(i).getLine(), args.get(i).getColumn());
         }
     }
 
     private FunctionDecl fetchFunctionDeclaration(Map<String, FunctionDecl> funcMap) throws ExecutionException {
+        if (resolvedDecl != null) {
+            return resolvedDecl;
+        }
         FunctionDecl decl = funcMap.get(name.getLexeme());
         if (decl == null) {
             throw new ExecutionException(
                     "Function '" + name.getLexeme() + "' is not defined",
                     name.getLine(), name.getCol());
         }
+        resolvedDecl = decl;
         return decl;
     }
 
-    private Map<String, Value> prepareCallContext(FunctionDecl decl,
-                                                 Map<String, FunctionDecl> funcMap,
-                                                 Map<String, Value> varAndParamMap) throws ExecutionException {
-        List<Value> argVals = new ArrayList<>();
-        for (Expression arg : args) {
-            argVals.add(arg.evaluate(funcMap, varAndParamMap));
-        }
-
-        Map<String, Value> callVarMap = new HashMap<>();
-        List<VariableDecl> params = decl.getParams();
-        for (int i = 0; i < params.size(); i++) {
-            VariableDecl paramDecl = params.get(i);
-            callVarMap.put(paramDecl.getName().getLexeme(), argVals.get(i));
+    private Value[] evaluateArgs(Map<String, FunctionDecl> funcMap, Frame frame) throws ExecutionException {
+        Value[] argValues = new Value[args.size()];
+        for (int i = 0; i < argValues.length; i++) {
+            argValues[i] = args.get(i).evaluate(funcMap, frame);
         }
+        return argValues;
+    }
 
-        if (decl.getLocalVars() != null) {
-            for (VariableDecl local : decl.getLocalVars()) {
-                try {
-                    Type type = Type.fromToken(local.getType());
-                    callVarMap.put(local.getName().getLexeme(), Value.defaultValue(type));
-                } catch (SemanticAnalysisException ex) {
-                    throw new ExecutionException(ex.getMessage(), local.getLine(), local.getColumn());
-                }
-            }
+    /**
+     * Evaluates the arguments straight onto the value stack, where they
+     * become the parameter slots of the callee's frame.
+     */
+    private Frame prepareCallFrame(FrameLayout layout,
+                                   Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        ValueStack stack = frame.getStack();
+        int argBase = stack.top();
+        for (Expression arg : args) {
+            stack.push(arg.evaluate(funcMap, frame));
         }
-        return callVarMap;
+        return stack.enter(layout, argBase);
     }
 
-    private void ensureVoidReturn(FunctionDecl decl) throws ExecutionException {
-        try {
-            Type returnType = Type.fromToken(decl.getReturnType());
-            if (returnType != Type.VOID) {
-                throw new ExecutionException("Function did not return a value", name.getLine(), name.getCol());
-            }
-        } catch (SemanticAnalysisException ex) {
-            throw new ExecutionException(ex.getMessage(), name.getLine(), name.getCol());
+    private void ensureVoidReturn(FrameLayout layout) throws ExecutionException {
+        if (layout.getReturnType() != Type.VOID) {
+            throw new ExecutionException("Function did not return a value", name.getLine(), name.getCol());
         }
     }
 }
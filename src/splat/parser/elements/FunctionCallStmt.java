@@ -2,7 +2,9 @@ package splat.parser.elements;
 
 import java.util.Map;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -16,6 +18,10 @@ public class FunctionCallStmt extends Statement {
         this.call = call;
     }
 
+    public FunctionCall getCall() {
+        return call;
+    }
+
     @Override
     public String toString() {
         return "FunctionCallStmt(" + call + ")";
@@ -29,9 +35,10 @@ public class FunctionCallStmt extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ExecutionException {
-        call.evaluate(funcMap, varAndParamMap);
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        call.evaluate(funcMap, frame);
+        return Completion.NORMAL;
     }
 
     private void ensureVoidCall(Type returnType, Token startToken) throws SemanticAnalysisException {
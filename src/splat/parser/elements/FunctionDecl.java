@@ -1,6 +1,9 @@
 package splat.parser.elements;
 
 import java.util.List;
+
+import splat.executor.FrameLayout;
+import splat.executor.MemoCache;
 import splat.lexer.Token;
 
 public class FunctionDecl extends Declaration {
@@ -8,6 +11,8 @@ public class FunctionDecl extends Declaration {
     private final Token returnType;
     private final List<VariableDecl> localVars;
     private final List<Statement> body;
+    private FrameLayout frameLayout;
+    private MemoCache memoCache;
 
     public FunctionDecl(Token name, List<VariableDecl> params, Token returnType,
                         List<VariableDecl> localVars, List<Statement> body) {
@@ -39,6 +44,26 @@ public class FunctionDecl extends Declaration {
         return body;
     }
 
+    public FrameLayout getFrameLayout() {
+        return frameLayout;
+    }
+
+    public void setFrameLayout(FrameLayout frameLayout) {
+        this.frameLayout = frameLayout;
+    }
+
+    /**
+     * The cache FunctionCall consults before running the body, or null if
+     * calls to this function are not memoized.
+     */
+    public MemoCache getMemoCache() {
+        return memoCache;
+    }
+
+    public void setMemoCache(MemoCache memoCache) {
+        this.memoCache = memoCache;
+    }
+
     @Override
     public String toString() {
         String ret = (returnType == null) ? "void" : returnType.getLexeme();
@@ -0,0 +1,42 @@
+package splat.parser.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.executor.HostFunction;
+import splat.lexer.Token;
+
+/**
+ * Stands in the program's declarations for a HostFunction, so that calls
+ * to it are resolved and type-checked exactly like calls to a function the
+ * program declares.  It has no body: every engine calls the host function
+ * directly.  Its tokens are at 0:0, since it has no source position.
+ */
+public class HostFunctionDecl extends FunctionDecl {
+
+    private final HostFunction host;
+
+    public HostFunctionDecl(HostFunction host) {
+        super(new Token(host.getName(), 0, 0), params(host),
+                new Token(host.getReturnType().getDisplayName(), 0, 0), List.of(), null);
+        this.host = host;
+    }
+
+    public HostFunction getHost() {
+        return host;
+    }
+
+    @Override
+    public String toString() {
+        return "HostFunctionDecl(" + host + ")";
+    }
+
+    private static List<VariableDecl> params(HostFunction host) {
+        List<VariableDecl> params = new ArrayList<>();
+        for (int i = 0; i < host.getParamTypes().size(); i++) {
+            params.add(new VariableDecl(new Token("arg" + (i + 1), 0, 0),
+                    new Token(host.getParamTypes().get(i).getDisplayName(), 0, 0)));
+        }
+        return params;
+    }
+}
@@ -5,7 +5,8 @@ import java.util.List;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -51,11 +52,10 @@ public class IfThenElse extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        Value condVal = condition.evaluate(funcMap, varAndParamMap);
-        ensureBooleanCondition(condVal);
-        executeBranch(funcMap, varAndParamMap, condVal.asBoolean() ? thenStmts : elseStmts);
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        boolean condVal = condition.evaluateBoolean(funcMap, frame);
+        return executeBranch(funcMap, frame, condVal ? thenStmts : elseStmts);
     }
 
     private void validateConditionType(Map<String, FunctionDecl> funcMap,
@@ -77,17 +77,15 @@ public class IfThenElse extends Statement {
         }
     }
 
-    private void ensureBooleanCondition(Value condVal) throws ExecutionException {
-        if (!condVal.isBoolean()) {
-            throw new ExecutionException("If condition must be Boolean", condition.getLine(), condition.getColumn());
-        }
-    }
-
-    private void executeBranch(Map<String, FunctionDecl> funcMap,
-                               Map<String, Value> varAndParamMap,
-                               List<Statement> branchStatements) throws ReturnFromCall, ExecutionException {
+    private Completion executeBranch(Map<String, FunctionDecl> funcMap,
+                                     Frame frame,
+                                     List<Statement> branchStatements) throws ExecutionException {
         for (Statement stmt : branchStatements) {
-            stmt.execute(funcMap, varAndParamMap);
+            Completion completion = stmt.execute(funcMap, frame);
+            if (completion.isReturn()) {
+                return completion;
+            }
         }
+        return Completion.NORMAL;
     }
 }
@@ -0,0 +1,39 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+
+/**
+ * Read of an Integer variable that an enclosing CountedLoop keeps in the
+ * primitive shadow of its slot.  Arithmetic on it through evaluateInt never
+ * touches a Value.
+ */
+public class InductionVariableRef extends VariableRef {
+    private int slot = -1;
+
+    public InductionVariableRef(Token name) {
+        super(name);
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofInteger(evaluateInt(funcMap, frame));
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        if (slot < 0) {
+            slot = frame.slotOf(getName().getLexeme());
+            if (slot < 0) {
+                throw new ExecutionException("Variable '" + getName().getLexeme() + "' is not defined", this);
+            }
+        }
+        return frame.getInt(slot);
+    }
+}
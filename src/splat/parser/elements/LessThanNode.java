@@ -0,0 +1,24 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.lexer.Token;
+
+/**
+ * Integer comparison, (a < b).
+ */
+public class LessThanNode extends ComparisonOp {
+
+    public LessThanNode(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        int leftInt = getLeftExpr().evaluateInt(funcMap, frame);
+        return leftInt < getRightExpr().evaluateInt(funcMap, frame);
+    }
+}
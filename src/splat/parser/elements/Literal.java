@@ -3,72 +3,138 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.semanticanalyzer.Type;
 
+/**
+ * A constant.  The lexeme is decoded into its Value once, when the node is
+ * built, so evaluating a literal is a field read.  The optimizer also uses
+ * Literal for constants it has folded, in which case the token only
+ * supplies the source position.
+ */
 public class Literal extends Expression {
     private final String lexeme;
+    private final Type type;
+    private final Value constant;
 
     public Literal(Token token) {
         super(token);
         this.lexeme = token.getLexeme();
+        this.type = literalType(lexeme);
+        this.constant = decode(lexeme, type);
+    }
+
+    private Literal(Token position, Value constant) {
+        super(position);
+        this.lexeme = constant.isString() ? "\"" + constant.asString() + "\"" : constant.toString();
+        this.type = constant.getType();
+        this.constant = constant;
+    }
+
+    /**
+     * Builds a literal for a computed constant, reported at the given token.
+     */
+    public static Literal ofValue(Token position, Value constant) {
+        return new Literal(position, constant);
+    }
+
+    private static Type literalType(String lexeme) {
+        if (!lexeme.isEmpty() && lexeme.chars().allMatch(Character::isDigit)) {
+            return Type.INTEGER;
+        }
+        if ("true".equals(lexeme) || "false".equals(lexeme)) {
+            return Type.BOOLEAN;
+        }
+        if (lexeme.length() >= 2 && lexeme.startsWith("\"") && lexeme.endsWith("\"")) {
+            return Type.STRING;
+        }
+        return null;
+    }
+
+    private static Value decode(String lexeme, Type type) {
+        if (type == Type.INTEGER) {
+            try {
+                return Value.ofInteger(Integer.parseInt(lexeme));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        if (type == Type.BOOLEAN) {
+            return Value.ofBoolean(Boolean.parseBoolean(lexeme));
+        }
+        if (type == Type.STRING) {
+            return Value.ofString(lexeme.substring(1, lexeme.length() - 1));
+        }
+        return null;
     }
 
     public String getValue() {
         return lexeme;
     }
 
+    /**
+     * The decoded constant, or null if the lexeme is not a valid literal.
+     */
+    public Value getConstant() {
+        return constant;
+    }
+
     public String getStringValue() {
         if (isStringLiteral()) {
-            return lexeme.substring(1, lexeme.length() - 1);
+            return constant.asString();
         }
         return lexeme;
     }
 
     public boolean isStringLiteral() {
-        return lexeme.startsWith("\"") && lexeme.endsWith("\"");
+        return type == Type.STRING;
     }
 
     public boolean isIntegerLiteral() {
-        return lexeme.matches("\\d+");
+        return type == Type.INTEGER;
     }
 
     public boolean isBooleanLiteral() {
-        return "true".equals(lexeme) || "false".equals(lexeme);
+        return type == Type.BOOLEAN;
+    }
+
+    @Override
+    public String toString() {
+        return lexeme;
     }
 
     @Override
     public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
                                   Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        if (isIntegerLiteral()) {
-            return Type.INTEGER;
-        }
-        if (isBooleanLiteral()) {
-            return Type.BOOLEAN;
+        if (type == null) {
+            throw new SemanticAnalysisException(
+                    "Unknown literal '" + lexeme + "'",
+                    getLine(), getColumn());
         }
-        if (isStringLiteral()) {
-            return Type.STRING;
-        }
-
-        throw new SemanticAnalysisException(
-                "Unknown literal '" + lexeme + "'",
-                getLine(), getColumn());
+        return type;
     }
 
     @Override
     public Value evaluate(Map<String, FunctionDecl> funcMap,
-                          Map<String, Value> varAndParamMap) throws ExecutionException {
-        if (isIntegerLiteral()) {
-            return Value.ofInteger(Integer.parseInt(lexeme));
+                          Frame frame) throws ExecutionException {
+        if (constant == null) {
+            throw new ExecutionException("Unknown literal '" + lexeme + "'", getLine(), getColumn());
         }
-        if (isBooleanLiteral()) {
-            return Value.ofBoolean(Boolean.parseBoolean(lexeme));
-        }
-        if (isStringLiteral()) {
-            return Value.ofString(getStringValue());
-        }
-        throw new ExecutionException("Unknown literal '" + lexeme + "'", getLine(), getColumn());
+        return constant;
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        return evaluate(funcMap, frame).asInteger();
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        return evaluate(funcMap, frame).asBoolean();
     }
 }
@@ -0,0 +1,41 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Boolean connectives.  As of this node split, and/or short-circuit: the
+ * right operand is only evaluated when the left one does not already decide
+ * the result, so a function call on the right may not run at all.
+ */
+public abstract class LogicalOp extends BinaryOp {
+
+    protected LogicalOp(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type leftType = getLeftExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        Type rightType = getRightExpr().analyzeAndGetType(funcMap, varAndParamMap);
+        ensureBooleanOperands(leftType, rightType);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofBoolean(evaluateBoolean(funcMap, frame));
+    }
+
+    @Override
+    public abstract boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                            Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,72 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * The contains intrinsic, contains(map, key): whether the map holds a value
+ * for the key.
+ */
+public class MapContains extends Expression {
+    private final Expression map;
+    private final Expression key;
+
+    public MapContains(Token tok, Expression map, Expression key) {
+        super(tok);
+        this.map = map;
+        this.key = key;
+    }
+
+    public Expression getMap() {
+        return map;
+    }
+
+    public Expression getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "contains(" + map + ", " + key + ")";
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type mapType = map.analyzeAndGetType(funcMap, varAndParamMap);
+        if (!mapType.isMap()) {
+            throw new SemanticAnalysisException(
+                    "contains requires a map, found " + mapType,
+                    map.getLine(), map.getColumn());
+        }
+        Type keyType = key.analyzeAndGetType(funcMap, varAndParamMap);
+        if (keyType != mapType.keyType()) {
+            throw new SemanticAnalysisException(
+                    "Map key must be " + mapType.keyType() + ", found " + keyType,
+                    key.getLine(), key.getColumn());
+        }
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofBoolean(evaluateBoolean(funcMap, frame));
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        Value mapValue = map.evaluate(funcMap, frame);
+        if (mapValue.getType() == Type.INTEGER_MAP) {
+            return mapValue.asIntMap().containsKey(key.evaluateInt(funcMap, frame));
+        }
+        return mapValue.containsKey(key.evaluate(funcMap, frame));
+    }
+}
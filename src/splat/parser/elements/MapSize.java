@@ -0,0 +1,56 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * The size intrinsic, size(map): the number of keys the map holds.  Unlike
+ * an array's length this changes as entries are put.
+ */
+public class MapSize extends Expression {
+    private final Expression map;
+
+    public MapSize(Token tok, Expression map) {
+        super(tok);
+        this.map = map;
+    }
+
+    public Expression getMap() {
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "size(" + map + ")";
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type mapType = map.analyzeAndGetType(funcMap, varAndParamMap);
+        if (!mapType.isMap()) {
+            throw new SemanticAnalysisException(
+                    "size requires a map, found " + mapType,
+                    map.getLine(), map.getColumn());
+        }
+        return Type.INTEGER;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        return Value.ofInteger(evaluateInt(funcMap, frame));
+    }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        return map.evaluate(funcMap, frame).mapSize();
+    }
+}
@@ -0,0 +1,74 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Allocation of a fresh array.  SPLAT has no syntax for it: the parser
+ * assigns one to every variable declared with a size, such as
+ * xs : Integer[n], at the start of the function (or of the main program
+ * body), so each call gets arrays of its own.
+ */
+public class NewArray extends Expression {
+    private final Token typeToken;
+    private final Expression size;
+    private Type arrayType;
+
+    /**
+     * typeToken is the array type, for example Integer[].
+     */
+    public NewArray(Token typeToken, Expression size) {
+        super(typeToken);
+        this.typeToken = typeToken;
+        this.size = size;
+    }
+
+    public Token getTypeToken() {
+        return typeToken;
+    }
+
+    public Expression getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        String name = typeToken.getLexeme();
+        return "new " + name.substring(0, name.length() - 1) + size + "]";
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        Type type = Type.fromToken(typeToken);
+        if (size.analyzeAndGetType(funcMap, varAndParamMap) != Type.INTEGER) {
+            throw new SemanticAnalysisException(
+                    "Array size must be Integer",
+                    size.getLine(), size.getColumn());
+        }
+        return type;
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        int length = size.evaluateInt(funcMap, frame);
+        if (length < 0) {
+            throw new ExecutionException("Negative array size " + length, this);
+        }
+        if (arrayType == null) {
+            try {
+                arrayType = Type.fromToken(typeToken);
+            } catch (SemanticAnalysisException ex) {
+                throw new ExecutionException(ex.getMessage(), this);
+            }
+        }
+        return Value.newArray(arrayType, length);
+    }
+}
@@ -0,0 +1,56 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.lexer.Token;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * Allocation of a fresh, empty map.  Like NewArray it has no syntax: the
+ * parser assigns one to every variable declared with a map type at the
+ * start of the function (or of the main program body).
+ */
+public class NewMap extends Expression {
+    private final Token typeToken;
+    private Type mapType;
+
+    /**
+     * typeToken is the map type, for example Map<String,Integer>.
+     */
+    public NewMap(Token typeToken) {
+        super(typeToken);
+        this.typeToken = typeToken;
+    }
+
+    public Token getTypeToken() {
+        return typeToken;
+    }
+
+    @Override
+    public String toString() {
+        return "new " + typeToken.getLexeme();
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        return Type.fromToken(typeToken);
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        if (mapType == null) {
+            try {
+                mapType = Type.fromToken(typeToken);
+            } catch (SemanticAnalysisException ex) {
+                throw new ExecutionException(ex.getMessage(), this);
+            }
+        }
+        return Value.newMap(mapType);
+    }
+}
@@ -0,0 +1,24 @@
+package splat.parser.elements;
+
+import java.util.Map;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.lexer.Token;
+
+/**
+ * Short-circuit disjunction: b is not evaluated when a is true.
+ */
+public class OrNode extends LogicalOp {
+
+    public OrNode(Expression left, Token op, Expression right) {
+        super(left, op, right);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        return getLeftExpr().evaluateBoolean(funcMap, frame)
+                || getRightExpr().evaluateBoolean(funcMap, frame);
+    }
+}
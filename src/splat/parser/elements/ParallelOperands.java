@@ -0,0 +1,155 @@
+package splat.parser.elements;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.executor.ValueStack;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.Type;
+
+/**
+ * A binary operator or a call whose operands include several expensive
+ * pure calls, marked by the optimizer, that the tree walker evaluates on a
+ * ForkJoinPool.
+ *
+ * The first marked call runs on the current thread; the others are forked,
+ * their arguments evaluated up front (the optimizer only marks calls whose
+ * arguments are total, so that is unobservable).  Operands are then taken
+ * in their usual order, joining each forked call when its turn comes.  A
+ * forked call that failed is simply evaluated again in place, so the error
+ * a program reports, and where, is the one the sequential run reports.
+ *
+ * Inside a pool worker, nothing is forked once the worker already has
+ * SURPLUS_LIMIT tasks queued beyond what idle workers could take, which
+ * keeps deep recursions from splitting into ever smaller tasks.
+ *
+ * Other execution engines and analyses use getExpression(), the operation
+ * itself.
+ */
+public class ParallelOperands extends Expression {
+
+    private static final int SURPLUS_LIMIT = 2;
+
+    private final Expression expr;
+    private final boolean[] forked;
+
+    /**
+     * expr is a BinaryOp or a FunctionCall; forked marks which of its
+     * operands are pure calls worth evaluating in parallel.
+     */
+    public ParallelOperands(Expression expr, boolean[] forked) {
+        super(expr.getToken());
+        this.expr = expr;
+        this.forked = forked.clone();
+    }
+
+    public Expression getExpression() {
+        return expr;
+    }
+
+    public boolean isForked(int operand) {
+        return forked[operand];
+    }
+
+    public static List<Expression> operandsOf(Expression expr) {
+        if (expr instanceof BinaryOp) {
+            return List.of(((BinaryOp) expr).getLeftExpr(), ((BinaryOp) expr).getRightExpr());
+        }
+        return ((FunctionCall) expr).getArgs();
+    }
+
+    @Override
+    public String toString() {
+        return "parallel" + expr;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
+                                  Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+        return expr.analyzeAndGetType(funcMap, varAndParamMap);
+    }
+
+    @Override
+    public Value evaluate(Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread
+                && ForkJoinTask.getSurplusQueuedTaskCount() > SURPLUS_LIMIT) {
+            return expr.evaluate(funcMap, frame);
+        }
+
+        List<Expression> operands = operandsOf(expr);
+        CallTask[] tasks = new CallTask[operands.size()];
+        boolean firstMarked = true;
+        for (int i = 0; i < tasks.length; i++) {
+            if (forked[i] && !firstMarked) {
+                FunctionCall call = (FunctionCall) operands.get(i);
+                Value[] argValues = new Value[call.getArgs().size()];
+                for (int k = 0; k < argValues.length; k++) {
+                    argValues[k] = call.getArgs().get(k).evaluate(funcMap, frame);
+                }
+                tasks[i] = new CallTask(call, argValues, funcMap);
+                tasks[i].fork();
+            }
+            firstMarked &= !forked[i];
+        }
+
+        Value[] values = new Value[tasks.length];
+        int next = 0;
+        try {
+            for (; next < values.length; next++) {
+                Value value = tasks[next] != null ? tasks[next].join() : null;
+                values[next] = value != null ? value : operands.get(next).evaluate(funcMap, frame);
+            }
+        } finally {
+            for (int i = next + 1; i < tasks.length; i++) {
+                if (tasks[i] != null) {
+                    tasks[i].cancel(false);
+                }
+            }
+        }
+        return combine(values, funcMap, frame);
+    }
+
+    private Value combine(Value[] values, Map<String, FunctionDecl> funcMap,
+                          Frame frame) throws ExecutionException {
+        if (expr instanceof BinaryOp) {
+            BinaryOp binOp = (BinaryOp) expr;
+            return binOp.withOperands(Literal.ofValue(binOp.getLeftExpr().getToken(), values[0]),
+                    Literal.ofValue(binOp.getRightExpr().getToken(), values[1])).evaluate(funcMap, frame);
+        }
+        return ((FunctionCall) expr).invoke(values, funcMap, frame.getStack());
+    }
+
+    /**
+     * One forked call, run on a fresh ValueStack of its own.  It yields
+     * null if the call failed in any way, leaving the error to be
+     * reproduced on the joining thread.
+     */
+    private static final class CallTask extends RecursiveTask<Value> {
+
+        private final FunctionCall call;
+        private final Value[] argValues;
+        private final Map<String, FunctionDecl> funcMap;
+
+        CallTask(FunctionCall call, Value[] argValues, Map<String, FunctionDecl> funcMap) {
+            this.call = call;
+            this.argValues = argValues;
+            this.funcMap = funcMap;
+        }
+
+        @Override
+        protected Value compute() {
+            try {
+                return call.invoke(argValues, funcMap, new ValueStack());
+            } catch (ExecutionException | RuntimeException | StackOverflowError ex) {
+                return null;
+            }
+        }
+    }
+}
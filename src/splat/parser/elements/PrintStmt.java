@@ -2,7 +2,9 @@ package splat.parser.elements;
 
 import java.util.Map;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -72,19 +74,20 @@ public class PrintStmt extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ExecutionException {
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
         boolean isPrintLine = isPrintLine();
         if (expr == null) {
             System.out.println();
-            return;
+            return Completion.NORMAL;
         }
 
-        Value value = expr.evaluate(funcMap, varAndParamMap);
+        Value value = expr.evaluate(funcMap, frame);
         if (isPrintLine) {
             System.out.println(value.toString());
         } else {
             System.out.print(value.toString());
         }
+        return Completion.NORMAL;
     }
 }
@@ -3,7 +3,8 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -53,13 +54,13 @@ public class ReturnStmt extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
         if (expr == null) {
-            throw new ReturnFromCall(null);
+            return Completion.RETURN_VOID;
         }
-        Value value = expr.evaluate(funcMap, varAndParamMap);
-        throw new ReturnFromCall(value);
+        Value value = expr.evaluate(funcMap, frame);
+        return Completion.returning(value);
     }
 
     private void ensureInsideFunction(Type expected) throws SemanticAnalysisException {
@@ -3,7 +3,8 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -29,10 +30,14 @@ public abstract class Statement extends ASTElement {
      * This will be needed for Phase 4 - this abstract method will need to be
      * implemented by every Statement subclass.  This method is used to
      * execute each statement, which may result in output to the console, or
-     * updating the varAndParamMap.  Both of the given maps may be needed for
+     * updating a slot of the frame.  Both funcMap and frame may be needed for
      * evaluating any sub-expressions in the statement.
+     *
+     * The returned Completion tells the enclosing statement whether to carry
+     * on (Completion.NORMAL) or to stop and hand a return value back to the
+     * function call that is executing this statement.
      */
-    public abstract void execute(Map<String, FunctionDecl> funcMap,
-                                 Map<String, Value> varAndParamMap)
-            throws ReturnFromCall, ExecutionException;
+    public abstract Completion execute(Map<String, FunctionDecl> funcMap,
+                                       Frame frame)
+            throws ExecutionException;
 }
@@ -3,6 +3,7 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -62,17 +63,28 @@ public class UnaryOp extends Expression {
 
     @Override
     public Value evaluate(Map<String, FunctionDecl> funcMap,
-                          Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value child = expr.evaluate(funcMap, varAndParamMap);
+                          Frame frame) throws ExecutionException {
         String opLexeme = op.getLexeme();
 
         switch (opLexeme) {
             case "-":
-                return Value.ofInteger(-child.asInteger());
+                return Value.ofInteger(evaluateInt(funcMap, frame));
             case "not":
-                return Value.ofBoolean(!child.asBoolean());
+                return Value.ofBoolean(evaluateBoolean(funcMap, frame));
             default:
                 throw new ExecutionException("Unknown unary operator '" + opLexeme + "'", op.getLine(), op.getCol());
         }
     }
+
+    @Override
+    public int evaluateInt(Map<String, FunctionDecl> funcMap,
+                           Frame frame) throws ExecutionException {
+        return -expr.evaluateInt(funcMap, frame);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Map<String, FunctionDecl> funcMap,
+                                   Frame frame) throws ExecutionException {
+        return !expr.evaluateBoolean(funcMap, frame);
+    }
 }
@@ -4,10 +4,46 @@ import splat.lexer.Token;
 
 public class VariableDecl extends Declaration {
     private final Token typeToken;
+    private final Expression arraySize;
+    private final Literal constantValue;
 
     public VariableDecl(Token name, Token type) {
+        this(name, type, null);
+    }
+
+    /**
+     * A variable of an array type declared with a size, as in
+     * xs : Integer[10]; the parser allocates the array.
+     */
+    public VariableDecl(Token name, Token type, Expression arraySize) {
+        this(name, type, arraySize, null);
+    }
+
+    private VariableDecl(Token name, Token type, Expression arraySize, Literal constantValue) {
         super(name);
         this.typeToken = type;
+        this.arraySize = arraySize;
+        this.constantValue = constantValue;
+    }
+
+    /**
+     * A named constant, as in limit : const Integer := 100;  it cannot be
+     * assigned, and every use is replaced by its value before the program
+     * runs.
+     */
+    public static VariableDecl constant(Token name, Token type, Literal value) {
+        return new VariableDecl(name, type, null, value);
+    }
+
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    /**
+     * The value of a constant, or null for a variable.
+     */
+    public Literal getConstantValue() {
+        return constantValue;
     }
 
     public Token getName() {
@@ -18,16 +54,27 @@ public class VariableDecl extends Declaration {
         return typeToken;
     }
 
+    /**
+     * The declared size of an array variable, or null.
+     */
+    public Expression getArraySize() {
+        return arraySize;
+    }
+
     public Token getStartToken() {
         return getLabel();
     }
 
     @Override
     public String toString() {
+        if (constantValue != null) {
+            return String.format("ConstDecl(name=%s, type=%s, value=%s)",
+                    getLabel().getLexeme(), typeToken.getLexeme(), constantValue);
+        }
         return String.format(
                 "VarDecl(name=%s, type=%s)",
                 getLabel().getLexeme(),
-                typeToken.getLexeme()
+                arraySize != null ? typeToken.getLexeme().replace("]", arraySize + "]") : typeToken.getLexeme()
         );
     }
 }
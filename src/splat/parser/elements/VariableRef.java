@@ -3,6 +3,7 @@ package splat.parser.elements;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -10,6 +11,7 @@ import splat.semanticanalyzer.Type;
 
 public class VariableRef extends Expression {
     private final Token name;
+    private int slot = -1;
 
     public VariableRef(Token name) {
         super(name);
@@ -40,10 +42,13 @@ public class VariableRef extends Expression {
 
     @Override
     public Value evaluate(Map<String, FunctionDecl> funcMap,
-                          Map<String, Value> varAndParamMap) throws ExecutionException {
-        String lexeme = name.getLexeme();
-        Value value = varAndParamMap.get(lexeme);
+                          Frame frame) throws ExecutionException {
+        if (slot < 0) {
+            slot = frame.slotOf(name.getLexeme());
+        }
+        Value value = slot >= 0 ? frame.get(slot) : null;
         if (value == null) {
+            String lexeme = name.getLexeme();
             throw new ExecutionException(
                     "Variable '" + lexeme + "' has no value",
                     name.getLine(),
@@ -5,7 +5,8 @@ import java.util.List;
 import java.util.Map;
 
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
@@ -45,13 +46,17 @@ public class WhileLoop extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap,
-                        Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        while (shouldContinue(funcMap, varAndParamMap)) {
+    public Completion execute(Map<String, FunctionDecl> funcMap,
+                              Frame frame) throws ExecutionException {
+        while (shouldContinue(funcMap, frame)) {
             for (Statement stmt : body) {
-                stmt.execute(funcMap, varAndParamMap);
+                Completion completion = stmt.execute(funcMap, frame);
+                if (completion.isReturn()) {
+                    return completion;
+                }
             }
         }
+        return Completion.NORMAL;
     }
 
     private void verifyConditionType(Map<String, FunctionDecl> funcMap,
@@ -66,11 +71,7 @@ public class WhileLoop extends Statement {
     }
 
     private boolean shouldContinue(Map<String, FunctionDecl> funcMap,
-                                   Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value condVal = condition.evaluate(funcMap, varAndParamMap);
-        if (!condVal.isBoolean()) {
-            throw new ExecutionException("While condition must be Boolean", condition.getLine(), condition.getColumn());
-        }
-        return condVal.asBoolean();
+                                   Frame frame) throws ExecutionException {
+        return condition.evaluateBoolean(funcMap, frame);
     }
 }
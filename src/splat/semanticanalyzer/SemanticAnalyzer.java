@@ -6,14 +6,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import splat.lexer.Token;
+import splat.parser.elements.ArrayAssignment;
+import splat.parser.elements.Assignment;
 import splat.parser.elements.Block;
+import splat.parser.elements.CaseStmt;
 import splat.parser.elements.Declaration;
+import splat.parser.elements.ForLoop;
 import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.HostFunctionDecl;
 import splat.parser.elements.IfThenElse;
+import splat.parser.elements.Literal;
 import splat.parser.elements.ProgramAST;
 import splat.parser.elements.ReturnStmt;
 import splat.parser.elements.Statement;
 import splat.parser.elements.VariableDecl;
+import splat.parser.elements.VariableRef;
 import splat.parser.elements.WhileLoop;
 
 public class SemanticAnalyzer {
@@ -21,11 +29,13 @@ public class SemanticAnalyzer {
     private final ProgramAST program;
     private final Map<String, FunctionDecl> functionByName;
     private final Map<String, Type> globalVariableTypes;
+    private final Map<String, Type> constantTypes;
 
     public SemanticAnalyzer(ProgramAST program) {
         this.program = program;
         this.functionByName = new HashMap<>();
         this.globalVariableTypes = new HashMap<>();
+        this.constantTypes = new HashMap<>();
     }
 
     public void analyze() throws SemanticAnalysisException {
@@ -41,11 +51,19 @@ public class SemanticAnalyzer {
             ensureUniqueGlobalLabel(declaredLabels, decl, label);
             registerGlobalDeclaration(decl, label);
         }
+        for (Declaration decl : program.getDecls()) {
+            if (decl instanceof VariableDecl) {
+                ensureArraySizeKnownOnEntry((VariableDecl) decl, List.of(), constantTypes.keySet());
+            }
+        }
     }
 
     private void analyzeFunctions() throws SemanticAnalysisException {
         for (FunctionDecl functionDecl : functionByName.values()) {
-            analyzeFunction(functionDecl);
+            // a host function's signature was checked against its handle when it was registered
+            if (!(functionDecl instanceof HostFunctionDecl)) {
+                analyzeFunction(functionDecl);
+            }
         }
     }
 
@@ -58,12 +76,26 @@ public class SemanticAnalyzer {
         populateVariableTypes(functionDecl.getLocalVars(), "Local variables cannot be declared with type void",
                 typeEnvironment, namesInFunction);
 
+        // constants are visible in every function that does not reuse the name
+        Set<String> constants = new HashSet<>();
+        for (Map.Entry<String, Type> constant : constantTypes.entrySet()) {
+            if (typeEnvironment.putIfAbsent(constant.getKey(), constant.getValue()) == null) {
+                constants.add(constant.getKey());
+            }
+        }
+        if (functionDecl.getLocalVars() != null) {
+            for (VariableDecl local : functionDecl.getLocalVars()) {
+                ensureArraySizeKnownOnEntry(local, functionDecl.getParams(), constants);
+            }
+        }
+
         Type returnType = Type.fromToken(functionDecl.getReturnType());
         typeEnvironment.put(Statement.RETURN_TYPE_SLOT, returnType);
 
         List<Statement> body = functionDecl.getBody();
         if (body != null) {
             for (Statement stmt : body) {
+                ensureNoConstantAssigned(stmt, constants);
                 stmt.analyze(functionByName, typeEnvironment);
             }
         }
@@ -78,6 +110,7 @@ public class SemanticAnalyzer {
     private void analyzeProgramBody() throws SemanticAnalysisException {
         Map<String, Type> scope = new HashMap<>(globalVariableTypes);
         for (Statement stmt : program.getStmts()) {
+            ensureNoConstantAssigned(stmt, constantTypes.keySet());
             stmt.analyze(functionByName, scope);
         }
     }
@@ -106,9 +139,90 @@ public class SemanticAnalyzer {
                     "Variables cannot be declared with type void",
                     varDecl.getLine(), varDecl.getColumn());
         }
+        if (varDecl.isConstant()) {
+            registerConstant(varDecl, label, type);
+        }
         globalVariableTypes.put(label, type);
     }
 
+    private void registerConstant(VariableDecl constDecl, String label, Type type) throws SemanticAnalysisException {
+        if (type != Type.INTEGER && type != Type.BOOLEAN && type != Type.STRING) {
+            throw new SemanticAnalysisException(
+                    "Constants must be Integer, Boolean or String",
+                    constDecl.getLine(), constDecl.getColumn());
+        }
+        Literal value = constDecl.getConstantValue();
+        if (value.analyzeAndGetType(functionByName, globalVariableTypes) != type || value.getConstant() == null) {
+            throw new SemanticAnalysisException(
+                    "Constant '" + label + "' must be given a " + type.getDisplayName() + " literal",
+                    value.getLine(), value.getColumn());
+        }
+        constantTypes.put(label, type);
+    }
+
+    /**
+     * Constants are never stored to: not by assignment, and not as the
+     * counter of a for loop.
+     */
+    private void ensureNoConstantAssigned(Statement stmt, Set<String> constants) throws SemanticAnalysisException {
+        Token target = null;
+        if (stmt instanceof Assignment) {
+            target = ((Assignment) stmt).getVariable();
+        } else if (stmt instanceof ArrayAssignment) {
+            target = ((ArrayAssignment) stmt).getVariable();
+        } else if (stmt instanceof ForLoop) {
+            target = ((ForLoop) stmt).getCounter();
+            ensureNoConstantAssigned(((ForLoop) stmt).getBody(), constants);
+        } else if (stmt instanceof IfThenElse) {
+            ensureNoConstantAssigned(((IfThenElse) stmt).getThenStmts(), constants);
+            ensureNoConstantAssigned(((IfThenElse) stmt).getElseStmts(), constants);
+        } else if (stmt instanceof WhileLoop) {
+            ensureNoConstantAssigned(((WhileLoop) stmt).getBody(), constants);
+        } else if (stmt instanceof Block) {
+            ensureNoConstantAssigned(((Block) stmt).getStatements(), constants);
+        } else if (stmt instanceof CaseStmt) {
+            for (CaseStmt.Arm arm : ((CaseStmt) stmt).getArms()) {
+                ensureNoConstantAssigned(arm.getBody(), constants);
+            }
+            ensureNoConstantAssigned(((CaseStmt) stmt).getElseStmts(), constants);
+        }
+        if (target != null && constants.contains(target.getLexeme())) {
+            throw new SemanticAnalysisException(
+                    "Cannot assign to constant '" + target.getLexeme() + "'",
+                    target.getLine(), target.getCol());
+        }
+    }
+
+    private void ensureNoConstantAssigned(List<Statement> stmts, Set<String> constants)
+            throws SemanticAnalysisException {
+        for (Statement stmt : stmts) {
+            ensureNoConstantAssigned(stmt, constants);
+        }
+    }
+
+    /**
+     * Arrays are allocated before anything else runs, when only literals,
+     * constants and the parameters have their values.
+     */
+    private void ensureArraySizeKnownOnEntry(VariableDecl decl, List<VariableDecl> params, Set<String> constants)
+            throws SemanticAnalysisException {
+        if (!(decl.getArraySize() instanceof VariableRef)) {
+            return;
+        }
+        VariableRef size = (VariableRef) decl.getArraySize();
+        if (constants.contains(size.getName().getLexeme())) {
+            return;
+        }
+        for (VariableDecl param : params) {
+            if (param.getName().getLexeme().equals(size.getName().getLexeme())) {
+                return;
+            }
+        }
+        throw new SemanticAnalysisException(
+                "Array size must be an integer literal, a constant or a parameter",
+                size.getLine(), size.getColumn());
+    }
+
     private void registerLocalName(VariableDecl decl, Set<String> names) throws SemanticAnalysisException {
         String label = decl.getName().getLexeme();
         if (!names.add(label)) {
@@ -182,6 +296,20 @@ public class SemanticAnalyzer {
             return containsReturn(((Block) statement).getStatements());
         }
 
+        if (statement instanceof ForLoop) {
+            return containsReturn(((ForLoop) statement).getBody());
+        }
+
+        if (statement instanceof CaseStmt) {
+            CaseStmt caseStmt = (CaseStmt) statement;
+            for (CaseStmt.Arm arm : caseStmt.getArms()) {
+                if (containsReturn(arm.getBody())) {
+                    return true;
+                }
+            }
+            return containsReturn(caseStmt.getElseStmts());
+        }
+
         return false;
     }
 }
\ No newline at end of file
@@ -6,6 +6,11 @@ public enum Type {
     INTEGER("Integer"),
     BOOLEAN("Boolean"),
     STRING("String"),
+    INTEGER_ARRAY("Integer[]"),
+    BOOLEAN_ARRAY("Boolean[]"),
+    STRING_ARRAY("String[]"),
+    INTEGER_MAP("Map<Integer,Integer>"),
+    STRING_MAP("Map<String,Integer>"),
     VOID("void");
 
     private final String displayName;
@@ -18,6 +23,63 @@ public enum Type {
         return displayName;
     }
 
+    public boolean isArray() {
+        return this == INTEGER_ARRAY || this == BOOLEAN_ARRAY || this == STRING_ARRAY;
+    }
+
+    public boolean isMap() {
+        return this == INTEGER_MAP || this == STRING_MAP;
+    }
+
+    /**
+     * The key type of a map type, or null for other types.
+     */
+    public Type keyType() {
+        switch (this) {
+            case INTEGER_MAP:
+                return INTEGER;
+            case STRING_MAP:
+                return STRING;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The type of the elements of an array type or the values of a map
+     * type, or null for other types.
+     */
+    public Type elementType() {
+        switch (this) {
+            case INTEGER_ARRAY:
+            case INTEGER_MAP:
+            case STRING_MAP:
+                return INTEGER;
+            case BOOLEAN_ARRAY:
+                return BOOLEAN;
+            case STRING_ARRAY:
+                return STRING;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The array type with this element type, or null if there is none.
+     */
+    public Type arrayOf() {
+        switch (this) {
+            case INTEGER:
+                return INTEGER_ARRAY;
+            case BOOLEAN:
+                return BOOLEAN_ARRAY;
+            case STRING:
+                return STRING_ARRAY;
+            default:
+                return null;
+        }
+    }
+
     public static Type fromToken(Token token) throws SemanticAnalysisException {
         if (token == null) {
             return Type.VOID;
@@ -37,6 +99,16 @@ public enum Type {
                 return BOOLEAN;
             case "string":
                 return STRING;
+            case "integer[]":
+                return INTEGER_ARRAY;
+            case "boolean[]":
+                return BOOLEAN_ARRAY;
+            case "string[]":
+                return STRING_ARRAY;
+            case "map<integer,integer>":
+                return INTEGER_MAP;
+            case "map<string,integer>":
+                return STRING_MAP;
             case "void":
                 return VOID;
             default: